@@ -11,10 +11,7 @@ import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
-import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
-import javax.xml.bind.Marshaller;
-import javax.xml.bind.Unmarshaller;
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlElementWrapper;
 import javax.xml.bind.annotation.XmlRootElement;
@@ -64,17 +61,12 @@ public class AnnotationClassList implements Serializable {
      * Savves the annotation data to a XML file.
      */
     public void write() {
-        JAXBContext jc;
         File file = new File("../covida-res/classes.xml");
         log.debug("Write data to: " + file);
         FileWriter w = null;
         try {
-            jc = JAXBContext.newInstance(AnnotationClassList.class);
-            Marshaller m = jc.createMarshaller();
-            m.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
             w = new FileWriter(file);
-            m.marshal(this, w);
-            m.toString();
+            JAXBRegistry.get(AnnotationClassList.class).marshal(this, w);
             log.debug(
                     "Written data to: " + file);
         } catch (JAXBException | IOException e) {
@@ -95,9 +87,8 @@ public class AnnotationClassList implements Serializable {
         AnnotationClassList instance;
         try {
             if (file != null && file.canRead()) {
-                JAXBContext jc = JAXBContext.newInstance(AnnotationClassList.class);
-                Unmarshaller u = jc.createUnmarshaller();
-                instance = (AnnotationClassList) u.unmarshal(file);
+                instance = (AnnotationClassList) JAXBRegistry
+                        .get(AnnotationClassList.class).unmarshal(file);
 
                 log.debug(
                         "Data file loaded at location: {}",
@@ -28,14 +28,16 @@
 package de.dfki.covida.covidacore.data;
 
 import de.dfki.covida.covidacore.components.IVideoComponent;
-import java.awt.Point;
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
-import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
-import javax.xml.bind.Marshaller;
 import javax.xml.bind.Unmarshaller;
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlElementWrapper;
@@ -88,15 +90,47 @@ public class AnnotationData implements Serializable {
     @XmlElementWrapper(name = "annotations")
     @XmlElement(name = "annotation")
     private List<Annotation> annotations;
+    /**
+     * {@link Annotation}s by {@link UUID}
+     */
+    private transient Map<UUID, Annotation> lookup;
+    /**
+     * Write-ahead {@link AnnotationJournal} of the changes since the last
+     * snapshot
+     */
+    private transient AnnotationJournal journal;
+    /**
+     * Lock which serializes snapshot writes
+     */
+    private final transient Object writeLock = new Object();
+    /**
+     * Determines if the snapshot could not be loaded and must not be
+     * overwritten
+     */
+    private transient boolean corruptSnapshot;
+
+    /**
+     * Creates a new empty instance of {@link AnnotationData}, used by JAXB
+     */
+    private AnnotationData() {
+        annotations = new ArrayList<>();
+        lookup = new HashMap<>();
+        uuid = null;
+    }
 
     /**
      * Creates a new instance of {@link AnnotationData}
+     *
+     * @param uuid {@link UUID} of the video
+     * @param videoSource video source
+     * @param title video title
      */
-    private AnnotationData(IVideoComponent component) {
+    private AnnotationData(UUID uuid, String videoSource, String title) {
         annotations = new ArrayList<>();
-        videoSource = component.getSource();
-        title = component.getTitle();
-        uuid = component.getUUID();
+        lookup = new HashMap<>();
+        this.videoSource = videoSource;
+        this.title = title;
+        this.uuid = uuid;
     }
 
     /**
@@ -239,29 +273,30 @@ public class AnnotationData implements Serializable {
             Element el;
             Element token;
             Element point;
-            for (int i = 0; i < size(); i++) {
+            List<Annotation> entries = copyAnnotations();
+            for (int i = 0; i < entries.size(); i++) {
                 el = doc.createElement("el");
                 el.setAttribute("index", String.valueOf(i));
-                el.setAttribute("start", String.valueOf(annotations.get(i).time_start));
-                el.setAttribute("end", String.valueOf(annotations.get(i).time_end));
+                el.setAttribute("start", String.valueOf(entries.get(i).time_start));
+                el.setAttribute("end", String.valueOf(entries.get(i).time_end));
                 track.appendChild(el);
                 token = doc.createElement("token");
-                token.setTextContent(annotations.get(i).description);
+                token.setTextContent(entries.get(i).description);
                 el.appendChild(token);
-                if (annotations.get(i).strokelist == null) {
+                if (entries.get(i).strokelist == null) {
                     Stroke points = new Stroke();
                     StrokeList strokes = new StrokeList();
-                    points.points.add(new Point(0, 0));
+                    points.add(0, 0);
                     strokes.strokelist.add(points);
-                    annotations.get(i).strokelist = strokes;
+                    entries.get(i).strokelist = strokes;
                     log.debug(
                             "data.shapePointsList.get(i) == null - Annotation: "
                             + i + "Video: " + videoSource);
                 }
-                for (Stroke points : annotations.get(i).strokelist.strokelist) {
-                    for (Point p : points.points) {
+                for (Stroke points : entries.get(i).strokelist.strokelist) {
+                    for (int j = 0; j < points.size(); j++) {
                         point = doc.createElement("point");
-                        point.setTextContent(p.x + "," + p.y);
+                        point.setTextContent(points.getX(j) + "," + points.getY(j));
                         el.appendChild(point);
                     }
                 }
@@ -309,32 +344,72 @@ public class AnnotationData implements Serializable {
     }
 
     /**
-     * Savves the annotation data to a XML file.
+     * Saves the annotation data to a XML snapshot file and compacts the
+     * {@link AnnotationJournal}.
+     *
+     * The snapshot is written to a temporary file which replaces the former
+     * snapshot once it is completely on disk.
      */
     public void write() {
-        JAXBContext jc;
-        File file = new File(videoSource + ".xml");
-        log.debug("Write data to: " + file);
-        FileWriter w = null;
-        try {
-            jc = JAXBContext.newInstance(AnnotationData.class);
-            Marshaller m = jc.createMarshaller();
-            m.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
-            w = new FileWriter(file);
-            m.marshal(this, w);
-            m.toString();
-            log.debug(
-                    "Written data to: " + file);
-        } catch (JAXBException | IOException e) {
-            log.error("", e);
-        } finally {
-            if (w != null) {
-                try {
-                    w.close();
-                } catch (IOException ex) {
-                    log.error("", ex);
+        synchronized (writeLock) {
+            if (corruptSnapshot) {
+                log.error("Not overwriting corrupt data file "
+                        + videoSource + ".xml");
+                return;
+            }
+            File file = new File(videoSource + ".xml");
+            File tmp = new File(videoSource + ".xml.tmp");
+            log.debug("Write data to: " + file);
+            ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+            try {
+                JAXBRegistry registry = JAXBRegistry.get(AnnotationData.class);
+                synchronized (this) {
+                    registry.marshal(this, snapshot);
+                    if (journal != null) {
+                        journal.rotate();
+                    }
                 }
+            } catch (JAXBException e) {
+                log.error("", e);
+                return;
             }
+            try (FileOutputStream out = new FileOutputStream(tmp)) {
+                snapshot.writeTo(out);
+                out.getFD().sync();
+            } catch (IOException e) {
+                log.error("", e);
+                return;
+            }
+            try {
+                Files.move(tmp.toPath(), file.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                log.error("", e);
+                return;
+            }
+            if (journal != null) {
+                journal.commit();
+            }
+            log.debug("Written data to: " + file);
+        }
+    }
+
+    /**
+     * Forces all journaled changes to disk.
+     */
+    public void sync() {
+        if (journal != null) {
+            journal.sync();
+        }
+    }
+
+    /**
+     * Forces all journaled changes to disk and closes the journal.
+     */
+    public void close() {
+        if (journal != null) {
+            journal.close();
         }
     }
 
@@ -344,12 +419,11 @@ public class AnnotationData implements Serializable {
      * @param id {@link UUID} of the {@link Annotation}
      * @return true if removing was a success
      */
-    public boolean remove(UUID id) {
-        for (Annotation annotation : annotations) {
-            if (annotation.uuid.equals(id)) {
-                annotations.remove(annotation);
-                return true;
-            }
+    public synchronized boolean remove(UUID id) {
+        if (unapply(id)) {
+            journal.appendDelete(id);
+            AnnotationStorage.getInstance().onRemove(this, id);
+            return true;
         }
         return false;
     }
@@ -360,8 +434,8 @@ public class AnnotationData implements Serializable {
      * @param annotation {@link Annotation}
      * @return true if removing was successfull
      */
-    public boolean remove(Annotation annotation) {
-        return annotations.remove(annotation);
+    public synchronized boolean remove(Annotation annotation) {
+        return remove(annotation.uuid);
     }
 
     /**
@@ -370,7 +444,7 @@ public class AnnotationData implements Serializable {
      *
      * @return {@link List} of {@link Long}.
      */
-    public ArrayList<Long> getTimeList() {
+    public synchronized ArrayList<Long> getTimeList() {
         ArrayList<Long> list = new ArrayList<>();
         for (Annotation annotation : annotations) {
             list.add(annotation.time_start);
@@ -381,10 +455,35 @@ public class AnnotationData implements Serializable {
     /**
      * Returns the {@link List} of {@link Annotation}s
      *
+     * Note that the {@link List} can not be modified, use
+     * {@link #save(Annotation)} and {@link #remove(UUID)}.
+     *
      * @return {@link List} of {@link Annotation}s
      */
     public List<Annotation> getAnnotations() {
-        return annotations;
+        return Collections.unmodifiableList(annotations);
+    }
+
+    /**
+     * Returns a copy of the {@link List} of {@link Annotation}s which can be
+     * iterated by background exporters while the {@link AnnotationData}
+     * changes.
+     *
+     * @return copy of the {@link List} of {@link Annotation}s
+     */
+    public synchronized List<Annotation> copyAnnotations() {
+        return new ArrayList<>(annotations);
+    }
+
+    /**
+     * Returns the {@link Annotation} with the given {@link UUID}.
+     *
+     * @param id {@link UUID} of the {@link Annotation}
+     * @return {@link Annotation} or {@code null} if no {@link Annotation}
+     * with the {@link UUID} exists
+     */
+    public synchronized Annotation getAnnotation(UUID id) {
+        return lookup.get(id);
     }
 
     /**
@@ -397,24 +496,62 @@ public class AnnotationData implements Serializable {
      * @return {@link AnnotationData}
      */
     public static AnnotationData load(IVideoComponent component) {
-        File file = new File(component.getSource() + ".xml");
+        return load(component.getUUID(), component.getSource(),
+                component.getTitle());
+    }
+
+    /**
+     * Loads {@link AnnotationData} of the video with the given
+     * {@link UUID}, source and title.
+     *
+     * A snapshot which cannot be loaded is moved to
+     * {@code source + ".xml.corrupt"}, so the next snapshot write does not
+     * replace it. If it cannot be moved, no snapshot is written for the
+     * video.
+     *
+     * @param uuid {@link UUID} of the video
+     * @param source video source
+     * @param title video title
+     * @return {@link AnnotationData}
+     */
+    static AnnotationData load(UUID uuid, String source, String title) {
+        File file = new File(source + ".xml");
         AnnotationData instance;
         try {
             if (file != null && file.canRead()) {
-                JAXBContext jc = JAXBContext.newInstance(AnnotationData.class);
-                Unmarshaller u = jc.createUnmarshaller();
-                instance = (AnnotationData) u.unmarshal(file);
+                instance = (AnnotationData) JAXBRegistry
+                        .get(AnnotationData.class).unmarshal(file);
 
                 log.debug(
                         "Data file loaded at location: {}",
                         file.getAbsolutePath());
             } else {
                 log.debug("No data file exists, create new VideoAnnotationData");
-                instance = new AnnotationData(component);
+                instance = new AnnotationData(uuid, source, title);
             }
         } catch (JAXBException e) {
-            log.debug("XML parsing error: {}, create new VideoAnnotationData", e);
-            instance = new AnnotationData(component);
+            log.error("Could not load data file " + file.getAbsolutePath()
+                    + ", create new VideoAnnotationData", e);
+            instance = new AnnotationData(uuid, source, title);
+            File corrupt = new File(source + ".xml.corrupt");
+            try {
+                Files.move(file.toPath(), corrupt.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+                log.error("Moved corrupt data file to "
+                        + corrupt.getAbsolutePath());
+            } catch (IOException ex) {
+                log.error("Could not move corrupt data file "
+                        + file.getAbsolutePath(), ex);
+                instance.corruptSnapshot = true;
+            }
+        }
+        if (instance.videoSource == null) {
+            instance.videoSource = source;
+        }
+        instance.journal = new AnnotationJournal(instance);
+        instance.journal.replay();
+        if (instance.journal.hasRotated()) {
+            instance.write();
         }
         return instance;
     }
@@ -427,20 +564,57 @@ public class AnnotationData implements Serializable {
      *
      * @param annotation {@link Annotation}
      */
-    public void save(Annotation annotation) {
-        for (Annotation entry : annotations) {
-            if (entry.uuid.equals(annotation.uuid)) {
-                annotations.remove(entry);
-                break;
-            }
-        }
+    public synchronized void save(Annotation annotation) {
         if (annotation.creator == null) {
             annotation.creator = "default user";
         }
         if (annotation.description == null) {
             annotation.description = "";
         }
+        apply(annotation);
+        journal.appendSave(annotation);
+        AnnotationStorage.getInstance().onSave(this, annotation);
+    }
+
+    /**
+     * Adds the {@link Annotation} or replaces the {@link Annotation} with the
+     * same {@link UUID} without journaling the change.
+     *
+     * @param annotation {@link Annotation}
+     */
+    void apply(Annotation annotation) {
+        unapply(annotation.uuid);
         annotations.add(annotation);
+        lookup.put(annotation.uuid, annotation);
+    }
+
+    /**
+     * Removes the {@link Annotation} with the given {@link UUID} without
+     * journaling the change.
+     *
+     * @param id {@link UUID} of the {@link Annotation}
+     * @return true if removing was a success
+     */
+    boolean unapply(UUID id) {
+        Annotation annotation = lookup.remove(id);
+        if (annotation == null) {
+            return false;
+        }
+        annotations.remove(annotation);
+        return true;
+    }
+
+    /**
+     * Rebuilds the {@link UUID} lookup after unmarshalling, called by JAXB.
+     *
+     * @param unmarshaller {@link Unmarshaller}
+     * @param parent parent object
+     */
+    private void afterUnmarshal(Unmarshaller unmarshaller, Object parent) {
+        lookup = new HashMap<>();
+        for (Annotation annotation : annotations) {
+            lookup.put(annotation.uuid, annotation);
+        }
     }
 
     @Override
@@ -0,0 +1,115 @@
+/*
+ * AnnotationHeader.java
+ *
+ * Copyright (c) 2012, Tobias Zimmermann All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of
+ * conditions and the following disclaimer. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors may be used to endorse or
+ * promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package de.dfki.covida.covidacore.data;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Resident summary of an {@link AnnotationData}, which stays in memory while
+ * the {@link AnnotationData} itself may be evicted by the
+ * {@link AnnotationStorage}.
+ *
+ * @author Tobias Zimmermann <Tobias.Zimmermann@dfki.de>
+ */
+public class AnnotationHeader {
+
+    /**
+     * {@link UUID} of the video
+     */
+    public final UUID uuid;
+    /**
+     * Video source
+     */
+    public final String videoSource;
+    /**
+     * Video title
+     */
+    public final String title;
+    /**
+     * Start times of the {@link Annotation}s by {@link Annotation}
+     * {@link UUID}
+     */
+    private final Map<UUID, Long> times;
+
+    /**
+     * Creates a new {@link AnnotationHeader} of the given
+     * {@link AnnotationData}
+     *
+     * @param data {@link AnnotationData}
+     */
+    AnnotationHeader(AnnotationData data) {
+        this.uuid = data.uuid;
+        this.videoSource = data.videoSource;
+        this.title = data.title;
+        this.times = new LinkedHashMap<>();
+        for (Annotation annotation : data.copyAnnotations()) {
+            times.put(annotation.uuid, annotation.time_start);
+        }
+    }
+
+    /**
+     * Returns the amount of {@link Annotation}s.
+     *
+     * @return amount of {@link Annotation}s
+     */
+    public synchronized int size() {
+        return times.size();
+    }
+
+    /**
+     * Returns the start times of the {@link Annotation}s.
+     *
+     * @return {@link ArrayList} of {@link Long}
+     * @see AnnotationData#getTimeList()
+     */
+    public synchronized ArrayList<Long> getTimeList() {
+        return new ArrayList<>(times.values());
+    }
+
+    /**
+     * Updates the header after an {@link Annotation} was saved.
+     *
+     * @param annotation saved {@link Annotation}
+     */
+    synchronized void put(Annotation annotation) {
+        times.remove(annotation.uuid);
+        times.put(annotation.uuid, annotation.time_start);
+    }
+
+    /**
+     * Updates the header after an {@link Annotation} was removed.
+     *
+     * @param annotation {@link UUID} of the removed {@link Annotation}
+     */
+    synchronized void remove(UUID annotation) {
+        times.remove(annotation);
+    }
+}
@@ -0,0 +1,368 @@
+/*
+ * AnnotationIndex.java
+ *
+ * Copyright (c) 2012, Tobias Zimmermann All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of
+ * conditions and the following disclaimer. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors may be used to endorse or
+ * promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package de.dfki.covida.covidacore.data;
+
+import de.dfki.covida.covidacore.utils.BKTree;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Inverted term index over the descriptions of all {@link Annotation}s which
+ * are held by the {@link AnnotationStorage}.
+ *
+ * Every description token is mapped to the postings of the {@link Annotation}s
+ * which contain it. A second dictionary maps the lower case form of a token to
+ * its original spellings, so case insensitive lookups do not have to touch the
+ * postings. The vocabulary is additionally held in a {@link BKTree} for
+ * bounded edit distance lookups.
+ *
+ * @author Tobias Zimmermann <Tobias.Zimmermann@dfki.de>
+ */
+public class AnnotationIndex {
+
+    /**
+     * Token to postings mapping
+     */
+    private final Map<String, Set<Posting>> postings;
+    /**
+     * Lower case token to original tokens mapping
+     */
+    private final Map<String, Set<String>> dictionary;
+    /**
+     * Indexed entries mapped by the {@link UUID} of the {@link Annotation}
+     */
+    private final Map<UUID, Entry> entries;
+    /**
+     * {@link BKTree} over all indexed tokens
+     */
+    private final BKTree fuzzy;
+
+    /**
+     * Creates a new empty {@link AnnotationIndex}
+     */
+    public AnnotationIndex() {
+        postings = new HashMap<>();
+        dictionary = new HashMap<>();
+        entries = new HashMap<>();
+        fuzzy = new BKTree();
+    }
+
+    /**
+     * Splits a description into its distinct search tokens.
+     *
+     * @param description description as {@link String}
+     * @return {@link Set} of tokens
+     */
+    public static Set<String> tokenize(String description) {
+        Set<String> tokens = new LinkedHashSet<>();
+        if (description != null) {
+            for (String token : description.split(" ")) {
+                if (!token.isEmpty()) {
+                    tokens.add(token);
+                }
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Adds or re-indexes an {@link Annotation} of the given
+     * {@link AnnotationData}.
+     *
+     * @param data {@link AnnotationData} which contains the {@link Annotation}
+     * @param annotation {@link Annotation} to index
+     */
+    public synchronized void add(AnnotationData data, Annotation annotation) {
+        remove(annotation.uuid);
+        Set<String> tokens = tokenize(annotation.description);
+        Posting posting = new Posting(data.uuid, annotation.uuid);
+        for (String token : tokens) {
+            Set<Posting> list = postings.get(token);
+            if (list == null) {
+                list = new HashSet<>();
+                postings.put(token, list);
+                fuzzy.add(token);
+                String lower = token.toLowerCase();
+                Set<String> spellings = dictionary.get(lower);
+                if (spellings == null) {
+                    spellings = new HashSet<>();
+                    dictionary.put(lower, spellings);
+                }
+                spellings.add(token);
+            }
+            list.add(posting);
+        }
+        entries.put(annotation.uuid, new Entry(data.uuid, tokens));
+    }
+
+    /**
+     * Adds all {@link Annotation}s of the given {@link AnnotationData}.
+     *
+     * @param data {@link AnnotationData}
+     */
+    public synchronized void addAll(AnnotationData data) {
+        for (Annotation annotation : data.copyAnnotations()) {
+            add(data, annotation);
+        }
+    }
+
+    /**
+     * Removes the {@link Annotation} with the given {@link UUID} from the
+     * index.
+     *
+     * @param uuid {@link UUID} of the {@link Annotation}
+     * @return true if the {@link Annotation} was indexed
+     */
+    public synchronized boolean remove(UUID uuid) {
+        Entry entry = entries.remove(uuid);
+        if (entry == null) {
+            return false;
+        }
+        Posting posting = new Posting(entry.video, uuid);
+        for (String token : entry.tokens) {
+            Set<Posting> list = postings.get(token);
+            if (list != null) {
+                list.remove(posting);
+                if (list.isEmpty()) {
+                    postings.remove(token);
+                    fuzzy.remove(token);
+                    String lower = token.toLowerCase();
+                    Set<String> spellings = dictionary.get(lower);
+                    if (spellings != null) {
+                        spellings.remove(token);
+                        if (spellings.isEmpty()) {
+                            dictionary.remove(lower);
+                        }
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes all {@link Annotation}s of the video with the given
+     * {@link UUID}.
+     *
+     * @param video {@link UUID} of the {@link AnnotationData}
+     */
+    public synchronized void removeAll(UUID video) {
+        List<UUID> remove = new ArrayList<>();
+        for (Map.Entry<UUID, Entry> entry : entries.entrySet()) {
+            if (entry.getValue().video.equals(video)) {
+                remove.add(entry.getKey());
+            }
+        }
+        for (UUID uuid : remove) {
+            remove(uuid);
+        }
+    }
+
+    /**
+     * Returns the {@link Annotation}s which contain exactly the given token.
+     *
+     * @param term search term
+     * @return {@link Set} of {@link Annotation} {@link UUID}s
+     */
+    public synchronized Set<UUID> exact(String term) {
+        Set<UUID> result = new HashSet<>();
+        collect(term, result);
+        return result;
+    }
+
+    /**
+     * Returns the {@link Annotation}s which contain the given token ignoring
+     * the case.
+     *
+     * @param term search term
+     * @return {@link Set} of {@link Annotation} {@link UUID}s
+     */
+    public synchronized Set<UUID> caseInsensitive(String term) {
+        Set<UUID> result = new HashSet<>();
+        Set<String> spellings = dictionary.get(term.toLowerCase());
+        if (spellings != null) {
+            for (String token : spellings) {
+                collect(token, result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the {@link Annotation}s which contain a token that contains the
+     * given term.
+     *
+     * @param term search term
+     * @return {@link Set} of {@link Annotation} {@link UUID}s
+     */
+    public synchronized Set<UUID> substring(String term) {
+        Set<UUID> result = new HashSet<>();
+        for (String token : postings.keySet()) {
+            if (token.contains(term)) {
+                collect(token, result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns all indexed tokens which have a Levenshtein distance lower or
+     * equal than {@code maxDistance} to the given term.
+     *
+     * @param term search term
+     * @param maxDistance maximal distance (inclusive)
+     * @return {@link Map} of tokens to their distance
+     */
+    public synchronized Map<String, Integer> fuzzy(String term, int maxDistance) {
+        return fuzzy.search(term, maxDistance);
+    }
+
+    /**
+     * Returns the {@link Annotation}s which contain one of the given tokens.
+     *
+     * @param tokens {@link Collection} of tokens
+     * @return {@link Set} of {@link Annotation} {@link UUID}s
+     */
+    public synchronized Set<UUID> lookup(Collection<String> tokens) {
+        Set<UUID> result = new HashSet<>();
+        for (String token : tokens) {
+            collect(token, result);
+        }
+        return result;
+    }
+
+    /**
+     * Returns a snapshot of all indexed tokens.
+     *
+     * @return {@link Set} of tokens
+     */
+    public synchronized Set<String> getVocabulary() {
+        return new HashSet<>(postings.keySet());
+    }
+
+    /**
+     * Returns the {@link UUID} of the video which contains the
+     * {@link Annotation} with the given {@link UUID}.
+     *
+     * @param uuid {@link UUID} of the {@link Annotation}
+     * @return {@link UUID} of the {@link AnnotationData} or {@code null} if
+     * the {@link Annotation} is not indexed
+     */
+    public synchronized UUID getVideo(UUID uuid) {
+        Entry entry = entries.get(uuid);
+        return entry == null ? null : entry.video;
+    }
+
+    /**
+     * Returns the amount of indexed {@link Annotation}s.
+     *
+     * @return amount of indexed {@link Annotation}s
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Adds the {@link Annotation} {@link UUID}s of the postings of a token.
+     *
+     * @param token token
+     * @param result {@link Set} to add the {@link UUID}s to
+     */
+    private void collect(String token, Set<UUID> result) {
+        Set<Posting> list = postings.get(token);
+        if (list != null) {
+            for (Posting posting : list) {
+                result.add(posting.annotation);
+            }
+        }
+    }
+
+    /**
+     * Posting of a token which refers to an {@link Annotation} of a video.
+     */
+    public static class Posting {
+
+        /**
+         * {@link UUID} of the video
+         */
+        public final UUID video;
+        /**
+         * {@link UUID} of the {@link Annotation}
+         */
+        public final UUID annotation;
+
+        /**
+         * Creates a new {@link Posting}
+         *
+         * @param video {@link UUID} of the video
+         * @param annotation {@link UUID} of the {@link Annotation}
+         */
+        public Posting(UUID video, UUID annotation) {
+            this.video = video;
+            this.annotation = annotation;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Posting)) {
+                return false;
+            }
+            Posting other = (Posting) obj;
+            return video.equals(other.video)
+                    && annotation.equals(other.annotation);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * video.hashCode() + annotation.hashCode();
+        }
+    }
+
+    /**
+     * Indexed {@link Annotation} with the {@link UUID} of its video and its
+     * tokens. Entries do not refer to the {@link Annotation} itself, so the
+     * index stays resident while the {@link AnnotationData} is evicted.
+     */
+    private static class Entry {
+
+        private final UUID video;
+        private final Set<String> tokens;
+
+        private Entry(UUID video, Set<String> tokens) {
+            this.video = video;
+            this.tokens = tokens;
+        }
+    }
+}
@@ -0,0 +1,436 @@
+/*
+ * AnnotationJournal.java
+ *
+ * Copyright (c) 2012, Tobias Zimmermann All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of
+ * conditions and the following disclaimer. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors may be used to endorse or
+ * promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package de.dfki.covida.covidacore.data;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import javax.xml.bind.JAXBException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only write-ahead journal of the changes of an {@link AnnotationData}.
+ *
+ * Each saved or removed {@link Annotation} is appended as one checksummed
+ * record to {@code <videoSource>.journal}. The journal is forced to disk in
+ * batches and rolled into the {@code <videoSource>.xml} snapshot by a
+ * background compaction once it holds {@link #COMPACT_THRESHOLD} records.
+ *
+ * Record layout: {@code op (byte), uuid (2 x long), length (int), payload
+ * (length bytes), crc32 (long)}. The payload of a save record is the
+ * {@link Annotation} as XML fragment, delete records have no payload. A torn
+ * or corrupt record ends the replay and is truncated.
+ *
+ * During compaction the journal is rotated to {@code <videoSource>.journal.old}
+ * which is deleted once the new snapshot is in place, so the state is always
+ * recoverable from snapshot, rotated journal and journal.
+ *
+ * @author Tobias Zimmermann <Tobias.Zimmermann@dfki.de>
+ */
+public class AnnotationJournal {
+
+    /**
+     * Logger
+     */
+    private static Logger log = LoggerFactory.getLogger(AnnotationJournal.class);
+    /**
+     * Save record
+     */
+    private static final byte SAVE = 1;
+    /**
+     * Delete record
+     */
+    private static final byte DELETE = 2;
+    /**
+     * Delay in ms after which appended records are forced to disk
+     */
+    private static final long FLUSH_DELAY = 50;
+    /**
+     * Amount of records after which the journal is compacted
+     */
+    public static final int COMPACT_THRESHOLD = 64;
+    /**
+     * Executor for batched flushes and compactions
+     */
+    private static final ScheduledExecutorService executor =
+            Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "Annotation Journal");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    /**
+     * Journaled {@link AnnotationData}
+     */
+    private final AnnotationData data;
+    /**
+     * Journal file
+     */
+    private final File file;
+    /**
+     * Rotated journal file
+     */
+    private final File rotated;
+    /**
+     * Length of the valid part of the journal file, -1 if unknown
+     */
+    private long validLength = -1;
+    /**
+     * Length of the valid part of the rotated journal file, -1 if unknown
+     */
+    private long rotatedLength = -1;
+    /**
+     * Append channel, opened on the first append
+     */
+    private FileChannel channel;
+    /**
+     * Amount of records since the last compaction
+     */
+    private int records;
+    /**
+     * Flush scheduled
+     */
+    private boolean flushScheduled;
+    /**
+     * Compaction scheduled
+     */
+    private boolean compactionScheduled;
+
+    /**
+     * Creates a new {@link AnnotationJournal} for the given
+     * {@link AnnotationData}
+     *
+     * @param data {@link AnnotationData}
+     */
+    AnnotationJournal(AnnotationData data) {
+        this.data = data;
+        this.file = new File(data.videoSource + ".journal");
+        this.rotated = new File(data.videoSource + ".journal.old");
+    }
+
+    /**
+     * Appends a save record.
+     *
+     * @param annotation saved {@link Annotation}
+     */
+    public synchronized void appendSave(Annotation annotation) {
+        try {
+            ByteArrayOutputStream payload = new ByteArrayOutputStream();
+            JAXBRegistry.get(Annotation.class).marshalFragment(annotation, payload);
+            append(SAVE, annotation.uuid, payload.toByteArray());
+        } catch (JAXBException e) {
+            log.error("", e);
+        }
+    }
+
+    /**
+     * Appends a delete record.
+     *
+     * @param uuid {@link UUID} of the removed {@link Annotation}
+     */
+    public synchronized void appendDelete(UUID uuid) {
+        append(DELETE, uuid, new byte[0]);
+    }
+
+    /**
+     * Writes a record to the journal and schedules the batched flush and, if
+     * necessary, the compaction.
+     *
+     * @param op record type
+     * @param uuid {@link UUID} of the {@link Annotation}
+     * @param payload record payload
+     */
+    private void append(byte op, UUID uuid, byte[] payload) {
+        try {
+            if (channel == null) {
+                open();
+            }
+            ByteBuffer record = ByteBuffer.allocate(1 + 16 + 4 + payload.length + 8);
+            record.put(op);
+            record.putLong(uuid.getMostSignificantBits());
+            record.putLong(uuid.getLeastSignificantBits());
+            record.putInt(payload.length);
+            record.put(payload);
+            CRC32 crc = new CRC32();
+            crc.update(record.array(), 0, record.position());
+            record.putLong(crc.getValue());
+            record.flip();
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+            validLength += record.limit();
+            records++;
+        } catch (IOException e) {
+            log.error("", e);
+            return;
+        }
+        if (!flushScheduled) {
+            flushScheduled = true;
+            executor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    sync();
+                }
+            }, FLUSH_DELAY, TimeUnit.MILLISECONDS);
+        }
+        if (records >= COMPACT_THRESHOLD && !compactionScheduled) {
+            compactionScheduled = true;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    data.write();
+                }
+            });
+        }
+    }
+
+    /**
+     * Opens the append channel and cuts off a torn record tail.
+     *
+     * @throws IOException
+     */
+    private void open() throws IOException {
+        channel = new RandomAccessFile(file, "rw").getChannel();
+        if (validLength >= 0 && channel.size() > validLength) {
+            log.warn("Truncate corrupt journal tail of {}", file);
+            channel.truncate(validLength);
+        }
+        channel.position(channel.size());
+        validLength = channel.size();
+    }
+
+    /**
+     * Forces all appended records to disk.
+     */
+    public synchronized void sync() {
+        flushScheduled = false;
+        if (channel != null) {
+            try {
+                channel.force(false);
+            } catch (IOException e) {
+                log.error("", e);
+            }
+        }
+    }
+
+    /**
+     * Returns true if a rotated journal of an unfinished compaction exists.
+     *
+     * @return true if a rotated journal exists
+     */
+    public boolean hasRotated() {
+        return rotated.exists();
+    }
+
+    /**
+     * Rotates the journal before a snapshot is written. Must be called while
+     * the {@link AnnotationData} is locked, so the snapshot contains exactly
+     * the rotated records.
+     */
+    synchronized void rotate() {
+        sync();
+        closeChannel();
+        if (!file.exists()) {
+            return;
+        }
+        // records behind a torn record could never be replayed
+        try {
+            truncate(file, validLength);
+            truncate(rotated, rotatedLength);
+        } catch (IOException e) {
+            log.error("", e);
+            return;
+        }
+        if (rotated.exists()) {
+            // an earlier compaction did not finish, keep its records in order
+            try (FileOutputStream out = new FileOutputStream(rotated, true);
+                    FileInputStream in = new FileInputStream(file)) {
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+                out.getFD().sync();
+            } catch (IOException e) {
+                log.error("", e);
+                return;
+            }
+            if (!file.delete()) {
+                log.error("Could not delete journal {}", file);
+            }
+        } else if (!file.renameTo(rotated)) {
+            log.error("Could not rotate journal {}", file);
+            return;
+        }
+        rotatedLength = rotated.length();
+        validLength = 0;
+        records = 0;
+    }
+
+    /**
+     * Cuts off the part of a journal file behind its valid length.
+     *
+     * @param journal journal file
+     * @param length valid length, -1 if unknown
+     * @throws IOException
+     */
+    private void truncate(File journal, long length) throws IOException {
+        if (length < 0 || !journal.exists() || journal.length() <= length) {
+            return;
+        }
+        log.warn("Truncate corrupt journal tail of {}", journal);
+        try (RandomAccessFile out = new RandomAccessFile(journal, "rw")) {
+            out.getChannel().truncate(length);
+            out.getFD().sync();
+        }
+    }
+
+    /**
+     * Deletes the rotated journal after the snapshot was written.
+     */
+    synchronized void commit() {
+        compactionScheduled = false;
+        if (rotated.exists() && !rotated.delete()) {
+            log.error("Could not delete rotated journal {}", rotated);
+        }
+        rotatedLength = -1;
+    }
+
+    /**
+     * Replays the rotated journal and the journal on the
+     * {@link AnnotationData}.
+     */
+    synchronized void replay() {
+        if (rotated.exists()) {
+            rotatedLength = replay(rotated);
+        }
+        if (file.exists()) {
+            validLength = replay(file);
+        }
+    }
+
+    /**
+     * Replays a journal file on the {@link AnnotationData}.
+     *
+     * @param journal journal file
+     * @return length of the valid part of the journal file
+     */
+    private long replay(File journal) {
+        long valid = 0;
+        int count = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(journal)))) {
+            CRC32 crc = new CRC32();
+            while (true) {
+                byte op;
+                try {
+                    op = in.readByte();
+                } catch (EOFException e) {
+                    break;
+                }
+                long msb = in.readLong();
+                long lsb = in.readLong();
+                int length = in.readInt();
+                if (length < 0 || length > journal.length()) {
+                    log.warn("Corrupt record in journal {}", journal);
+                    break;
+                }
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                long checksum = in.readLong();
+                ByteBuffer header = ByteBuffer.allocate(1 + 16 + 4);
+                header.put(op).putLong(msb).putLong(lsb).putInt(length);
+                crc.reset();
+                crc.update(header.array());
+                crc.update(payload);
+                if (crc.getValue() != checksum) {
+                    log.warn("Corrupt record in journal {}", journal);
+                    break;
+                }
+                UUID uuid = new UUID(msb, lsb);
+                if (op == SAVE) {
+                    Annotation annotation = (Annotation) JAXBRegistry
+                            .get(Annotation.class)
+                            .unmarshal(new ByteArrayInputStream(payload));
+                    data.apply(annotation);
+                } else if (op == DELETE) {
+                    data.unapply(uuid);
+                }
+                valid += header.capacity() + length + 8;
+                count++;
+            }
+        } catch (EOFException e) {
+            log.warn("Torn record at the end of journal {}", journal);
+        } catch (IOException | JAXBException e) {
+            log.error("", e);
+        }
+        records += count;
+        log.debug("Replayed {} records of {}", count, journal);
+        return valid;
+    }
+
+    /**
+     * Forces and closes the journal.
+     */
+    public synchronized void close() {
+        sync();
+        closeChannel();
+    }
+
+    /**
+     * Closes the append channel.
+     */
+    private void closeChannel() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.error("", e);
+            }
+            channel = null;
+        }
+    }
+}
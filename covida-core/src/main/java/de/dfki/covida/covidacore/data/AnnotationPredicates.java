@@ -0,0 +1,274 @@
+/*
+ * AnnotationPredicates.java
+ *
+ * Copyright (c) 2012, Tobias Zimmermann All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of
+ * conditions and the following disclaimer. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors may be used to endorse or
+ * promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package de.dfki.covida.covidacore.data;
+
+import de.dfki.touchandwrite.shape.ShapeType;
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Factory of composable {@link IAnnotationPredicate}s.
+ *
+ * Example, all annotations of a user between 00:10 and 00:20 which intersect
+ * a region:
+ * <pre>
+ * and(creator("user"), during(10000, 20000), intersects(region))
+ * </pre>
+ *
+ * @author Tobias Zimmermann <Tobias.Zimmermann@dfki.de>
+ */
+public class AnnotationPredicates {
+
+    /**
+     * Private constructor, use the static factory methods
+     */
+    private AnnotationPredicates() {
+    }
+
+    /**
+     * Matches the {@link Annotation} with the given {@link UUID}.
+     *
+     * @param uuid {@link UUID} of the {@link Annotation}
+     * @return {@link IAnnotationPredicate}
+     */
+    public static IAnnotationPredicate uuid(final UUID uuid) {
+        return new IAnnotationPredicate() {
+            @Override
+            public boolean matches(AnnotationRecord record) {
+                return record.uuid.equals(uuid);
+            }
+
+            @Override
+            public Set<UUID> candidates(AnnotationQueryIndex index) {
+                return Collections.singleton(uuid);
+            }
+        };
+    }
+
+    /**
+     * Matches the {@link Annotation}s of a video.
+     *
+     * @param video {@link UUID} of the video
+     * @return {@link IAnnotationPredicate}
+     */
+    public static IAnnotationPredicate video(final UUID video) {
+        return new IAnnotationPredicate() {
+            @Override
+            public boolean matches(AnnotationRecord record) {
+                return record.video.equals(video);
+            }
+
+            @Override
+            public Set<UUID> candidates(AnnotationQueryIndex index) {
+                return index.byVideo(video);
+            }
+        };
+    }
+
+    /**
+     * Matches the {@link Annotation}s of a creator.
+     *
+     * @param creator creator
+     * @return {@link IAnnotationPredicate}
+     */
+    public static IAnnotationPredicate creator(final String creator) {
+        return new IAnnotationPredicate() {
+            @Override
+            public boolean matches(AnnotationRecord record) {
+                return creator.equals(record.creator);
+            }
+
+            @Override
+            public Set<UUID> candidates(AnnotationQueryIndex index) {
+                return index.byCreator(creator);
+            }
+        };
+    }
+
+    /**
+     * Matches the {@link Annotation}s of a {@link ShapeType}.
+     *
+     * @param shapeType {@link ShapeType}
+     * @return {@link IAnnotationPredicate}
+     */
+    public static IAnnotationPredicate shapeType(final ShapeType shapeType) {
+        return new IAnnotationPredicate() {
+            @Override
+            public boolean matches(AnnotationRecord record) {
+                return shapeType.equals(record.shapeType);
+            }
+
+            @Override
+            public Set<UUID> candidates(AnnotationQueryIndex index) {
+                return index.byShapeType(shapeType);
+            }
+        };
+    }
+
+    /**
+     * Matches the {@link Annotation}s whose time span overlaps
+     * {@code [from, to]}.
+     *
+     * @param from start in ms
+     * @param to end in ms
+     * @return {@link IAnnotationPredicate}
+     */
+    public static IAnnotationPredicate during(final long from, final long to) {
+        return new IAnnotationPredicate() {
+            @Override
+            public boolean matches(AnnotationRecord record) {
+                return record.overlaps(from, to);
+            }
+
+            @Override
+            public Set<UUID> candidates(AnnotationQueryIndex index) {
+                return index.during(from, to);
+            }
+        };
+    }
+
+    /**
+     * Matches the {@link Annotation}s with a {@link Stroke} bounding box
+     * which intersects the region.
+     *
+     * @param region region
+     * @return {@link IAnnotationPredicate}
+     */
+    public static IAnnotationPredicate intersects(final Rectangle region) {
+        final Rectangle copy = new Rectangle(region);
+        return new IAnnotationPredicate() {
+            @Override
+            public boolean matches(AnnotationRecord record) {
+                return record.intersects(copy);
+            }
+
+            @Override
+            public Set<UUID> candidates(AnnotationQueryIndex index) {
+                return index.intersecting(copy);
+            }
+        };
+    }
+
+    /**
+     * Matches if all predicates match. The candidates are the smallest
+     * candidate set of the indexed predicates.
+     *
+     * @param predicates {@link IAnnotationPredicate}s
+     * @return {@link IAnnotationPredicate}
+     */
+    public static IAnnotationPredicate and(IAnnotationPredicate... predicates) {
+        final List<IAnnotationPredicate> list = Arrays.asList(predicates.clone());
+        return new IAnnotationPredicate() {
+            @Override
+            public boolean matches(AnnotationRecord record) {
+                for (IAnnotationPredicate predicate : list) {
+                    if (!predicate.matches(record)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+
+            @Override
+            public Set<UUID> candidates(AnnotationQueryIndex index) {
+                Set<UUID> smallest = null;
+                for (IAnnotationPredicate predicate : list) {
+                    Set<UUID> candidates = predicate.candidates(index);
+                    if (candidates != null && (smallest == null
+                            || candidates.size() < smallest.size())) {
+                        smallest = candidates;
+                        if (smallest.isEmpty()) {
+                            break;
+                        }
+                    }
+                }
+                return smallest;
+            }
+        };
+    }
+
+    /**
+     * Matches if any predicate matches. The candidates are the union of the
+     * candidates, if all predicates are indexed.
+     *
+     * @param predicates {@link IAnnotationPredicate}s
+     * @return {@link IAnnotationPredicate}
+     */
+    public static IAnnotationPredicate or(IAnnotationPredicate... predicates) {
+        final List<IAnnotationPredicate> list = Arrays.asList(predicates.clone());
+        return new IAnnotationPredicate() {
+            @Override
+            public boolean matches(AnnotationRecord record) {
+                for (IAnnotationPredicate predicate : list) {
+                    if (predicate.matches(record)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+
+            @Override
+            public Set<UUID> candidates(AnnotationQueryIndex index) {
+                Set<UUID> union = new HashSet<>();
+                for (IAnnotationPredicate predicate : list) {
+                    Set<UUID> candidates = predicate.candidates(index);
+                    if (candidates == null) {
+                        return null;
+                    }
+                    union.addAll(candidates);
+                }
+                return union;
+            }
+        };
+    }
+
+    /**
+     * Matches if the predicate does not match. Negations are not indexed.
+     *
+     * @param predicate {@link IAnnotationPredicate}
+     * @return {@link IAnnotationPredicate}
+     */
+    public static IAnnotationPredicate not(final IAnnotationPredicate predicate) {
+        return new IAnnotationPredicate() {
+            @Override
+            public boolean matches(AnnotationRecord record) {
+                return !predicate.matches(record);
+            }
+
+            @Override
+            public Set<UUID> candidates(AnnotationQueryIndex index) {
+                return null;
+            }
+        };
+    }
+}
@@ -0,0 +1,302 @@
+/*
+ * AnnotationQueryIndex.java
+ *
+ * Copyright (c) 2012, Tobias Zimmermann All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of
+ * conditions and the following disclaimer. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors may be used to endorse or
+ * promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package de.dfki.covida.covidacore.data;
+
+import de.dfki.covida.covidacore.utils.IntervalTree;
+import de.dfki.covida.covidacore.utils.RTree;
+import de.dfki.touchandwrite.shape.ShapeType;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Query index over all {@link Annotation}s which are held by the
+ * {@link AnnotationStorage}.
+ *
+ * An {@link AnnotationRecord} per {@link Annotation} is kept in hash indexes
+ * by {@link UUID}, video, creator and {@link ShapeType}, in an
+ * {@link IntervalTree} over the time spans and in an {@link RTree} over the
+ * {@link Stroke} bounding boxes. Queries are {@link IAnnotationPredicate}s,
+ * see {@link AnnotationPredicates}.
+ *
+ * @author Tobias Zimmermann <Tobias.Zimmermann@dfki.de>
+ */
+public class AnnotationQueryIndex {
+
+    /**
+     * Records by {@link Annotation} {@link UUID}
+     */
+    private final Map<UUID, AnnotationRecord> records;
+    /**
+     * {@link Annotation} {@link UUID}s by video {@link UUID}
+     */
+    private final Map<UUID, Set<UUID>> byVideo;
+    /**
+     * {@link Annotation} {@link UUID}s by creator
+     */
+    private final Map<String, Set<UUID>> byCreator;
+    /**
+     * {@link Annotation} {@link UUID}s by {@link ShapeType}
+     */
+    private final Map<ShapeType, Set<UUID>> byShapeType;
+    /**
+     * Time spans
+     */
+    private final IntervalTree<UUID> times;
+    /**
+     * {@link Stroke} bounding boxes
+     */
+    private final RTree<UUID> strokes;
+
+    /**
+     * Creates a new empty {@link AnnotationQueryIndex}
+     */
+    public AnnotationQueryIndex() {
+        records = new HashMap<>();
+        byVideo = new HashMap<>();
+        byCreator = new HashMap<>();
+        byShapeType = new HashMap<>();
+        times = new IntervalTree<>();
+        strokes = new RTree<>();
+    }
+
+    /**
+     * Adds or re-indexes an {@link Annotation} of the given
+     * {@link AnnotationData}.
+     *
+     * @param data {@link AnnotationData} which contains the {@link Annotation}
+     * @param annotation {@link Annotation} to index
+     */
+    public synchronized void add(AnnotationData data, Annotation annotation) {
+        remove(annotation.uuid);
+        AnnotationRecord record = new AnnotationRecord(data.uuid, annotation);
+        records.put(record.uuid, record);
+        put(byVideo, record.video, record.uuid);
+        if (record.creator != null) {
+            put(byCreator, record.creator, record.uuid);
+        }
+        if (record.shapeType != null) {
+            put(byShapeType, record.shapeType, record.uuid);
+        }
+        times.add(record.timeStart, record.timeEnd, record.uuid);
+        for (Rectangle bounds : record.strokeBounds) {
+            strokes.add(bounds, record.uuid);
+        }
+    }
+
+    /**
+     * Adds all {@link Annotation}s of the given {@link AnnotationData}.
+     *
+     * @param data {@link AnnotationData}
+     */
+    public synchronized void addAll(AnnotationData data) {
+        for (Annotation annotation : data.copyAnnotations()) {
+            add(data, annotation);
+        }
+    }
+
+    /**
+     * Removes the {@link Annotation} with the given {@link UUID}.
+     *
+     * @param uuid {@link UUID} of the {@link Annotation}
+     * @return true if the {@link Annotation} was indexed
+     */
+    public synchronized boolean remove(UUID uuid) {
+        AnnotationRecord record = records.remove(uuid);
+        if (record == null) {
+            return false;
+        }
+        take(byVideo, record.video, uuid);
+        if (record.creator != null) {
+            take(byCreator, record.creator, uuid);
+        }
+        if (record.shapeType != null) {
+            take(byShapeType, record.shapeType, uuid);
+        }
+        times.remove(record.timeStart, uuid);
+        for (Rectangle bounds : record.strokeBounds) {
+            strokes.remove(bounds, uuid);
+        }
+        return true;
+    }
+
+    /**
+     * Removes all {@link Annotation}s of the video with the given
+     * {@link UUID}.
+     *
+     * @param video {@link UUID} of the {@link AnnotationData}
+     */
+    public synchronized void removeAll(UUID video) {
+        Set<UUID> uuids = byVideo.get(video);
+        if (uuids != null) {
+            for (UUID uuid : new ArrayList<>(uuids)) {
+                remove(uuid);
+            }
+        }
+    }
+
+    /**
+     * Returns the {@link AnnotationRecord} of the {@link Annotation} with the
+     * given {@link UUID}.
+     *
+     * @param uuid {@link UUID} of the {@link Annotation}
+     * @return {@link AnnotationRecord} or {@code null} if not indexed
+     */
+    public synchronized AnnotationRecord getRecord(UUID uuid) {
+        return records.get(uuid);
+    }
+
+    /**
+     * Returns the amount of indexed {@link Annotation}s.
+     *
+     * @return amount of indexed {@link Annotation}s
+     */
+    public synchronized int size() {
+        return records.size();
+    }
+
+    /**
+     * Returns the {@link AnnotationRecord}s which match the predicate, ordered
+     * by start time.
+     *
+     * The candidates are taken from the indexes the predicate can use, only
+     * predicates without index support scan all records.
+     *
+     * @param predicate {@link IAnnotationPredicate}
+     * @return {@link List} of {@link AnnotationRecord}s
+     */
+    public synchronized List<AnnotationRecord> query(IAnnotationPredicate predicate) {
+        Set<UUID> candidates = predicate.candidates(this);
+        List<AnnotationRecord> result = new ArrayList<>();
+        for (UUID uuid : candidates == null ? records.keySet() : candidates) {
+            AnnotationRecord record = records.get(uuid);
+            if (record != null && predicate.matches(record)) {
+                result.add(record);
+            }
+        }
+        Collections.sort(result, new Comparator<AnnotationRecord>() {
+            @Override
+            public int compare(AnnotationRecord o1, AnnotationRecord o2) {
+                return Long.compare(o1.timeStart, o2.timeStart);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Returns the {@link UUID}s of all indexed {@link Annotation}s.
+     *
+     * @return {@link Set} of {@link Annotation} {@link UUID}s
+     */
+    public synchronized Set<UUID> all() {
+        return new HashSet<>(records.keySet());
+    }
+
+    /**
+     * Returns the {@link Annotation}s of a video.
+     *
+     * @param video {@link UUID} of the video
+     * @return {@link Set} of {@link Annotation} {@link UUID}s
+     */
+    public synchronized Set<UUID> byVideo(UUID video) {
+        return copy(byVideo.get(video));
+    }
+
+    /**
+     * Returns the {@link Annotation}s of a creator.
+     *
+     * @param creator creator
+     * @return {@link Set} of {@link Annotation} {@link UUID}s
+     */
+    public synchronized Set<UUID> byCreator(String creator) {
+        return copy(byCreator.get(creator));
+    }
+
+    /**
+     * Returns the {@link Annotation}s of a {@link ShapeType}.
+     *
+     * @param shapeType {@link ShapeType}
+     * @return {@link Set} of {@link Annotation} {@link UUID}s
+     */
+    public synchronized Set<UUID> byShapeType(ShapeType shapeType) {
+        return copy(byShapeType.get(shapeType));
+    }
+
+    /**
+     * Returns the {@link Annotation}s whose time span overlaps
+     * {@code [from, to]}.
+     *
+     * @param from start in ms
+     * @param to end in ms
+     * @return {@link Set} of {@link Annotation} {@link UUID}s
+     */
+    public synchronized Set<UUID> during(long from, long to) {
+        return new HashSet<>(times.overlapping(from, to));
+    }
+
+    /**
+     * Returns the {@link Annotation}s with a {@link Stroke} bounding box
+     * which intersects the region.
+     *
+     * @param region region
+     * @return {@link Set} of {@link Annotation} {@link UUID}s
+     */
+    public synchronized Set<UUID> intersecting(Rectangle region) {
+        return new HashSet<>(strokes.intersecting(region));
+    }
+
+    private static <K> void put(Map<K, Set<UUID>> map, K key, UUID uuid) {
+        Set<UUID> set = map.get(key);
+        if (set == null) {
+            set = new HashSet<>();
+            map.put(key, set);
+        }
+        set.add(uuid);
+    }
+
+    private static <K> void take(Map<K, Set<UUID>> map, K key, UUID uuid) {
+        Set<UUID> set = map.get(key);
+        if (set != null) {
+            set.remove(uuid);
+            if (set.isEmpty()) {
+                map.remove(key);
+            }
+        }
+    }
+
+    private static Set<UUID> copy(Set<UUID> set) {
+        return set == null ? new HashSet<UUID>() : new HashSet<>(set);
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * AnnotationRecord.java
+ *
+ * Copyright (c) 2012, Tobias Zimmermann All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of
+ * conditions and the following disclaimer. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors may be used to endorse or
+ * promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package de.dfki.covida.covidacore.data;
+
+import de.dfki.touchandwrite.shape.ShapeType;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Immutable summary of an {@link Annotation} which is held by the
+ * {@link AnnotationQueryIndex}.
+ *
+ * @author Tobias Zimmermann <Tobias.Zimmermann@dfki.de>
+ */
+public class AnnotationRecord {
+
+    /**
+     * {@link UUID} of the {@link Annotation}
+     */
+    public final UUID uuid;
+    /**
+     * {@link UUID} of the video
+     */
+    public final UUID video;
+    /**
+     * Start time in ms
+     */
+    public final long timeStart;
+    /**
+     * End time in ms, not before {@link #timeStart}
+     */
+    public final long timeEnd;
+    /**
+     * Creator or {@code null}
+     */
+    public final String creator;
+    /**
+     * {@link ShapeType} or {@code null}
+     */
+    public final ShapeType shapeType;
+    /**
+     * Bounding boxes of the non empty {@link Stroke}s
+     */
+    public final List<Rectangle> strokeBounds;
+
+    /**
+     * Creates the {@link AnnotationRecord} of an {@link Annotation}.
+     *
+     * Note that missing times are treated as 0 and a missing end time as the
+     * start time.
+     *
+     * @param video {@link UUID} of the video
+     * @param annotation {@link Annotation}
+     */
+    AnnotationRecord(UUID video, Annotation annotation) {
+        this.uuid = annotation.uuid;
+        this.video = video;
+        this.timeStart = annotation.time_start == null ? 0 : annotation.time_start;
+        this.timeEnd = annotation.time_end == null
+                ? timeStart : Math.max(timeStart, annotation.time_end);
+        this.creator = annotation.creator;
+        this.shapeType = annotation.shapeType;
+        List<Rectangle> bounds = new ArrayList<>();
+        if (annotation.strokelist != null) {
+            for (Stroke stroke : annotation.strokelist.strokelist) {
+                Rectangle rectangle = stroke.getBounds();
+                if (rectangle != null) {
+                    bounds.add(rectangle);
+                }
+            }
+        }
+        this.strokeBounds = Collections.unmodifiableList(bounds);
+    }
+
+    /**
+     * Returns true if the time span of the {@link Annotation} overlaps the
+     * closed interval {@code [from, to]}.
+     *
+     * @param from start in ms
+     * @param to end in ms
+     * @return true if overlapping
+     */
+    public boolean overlaps(long from, long to) {
+        return timeStart <= to && timeEnd >= from;
+    }
+
+    /**
+     * Returns true if a {@link Stroke} bounding box intersects the region.
+     * Bounding boxes are treated as closed.
+     *
+     * @param region region
+     * @return true if intersecting
+     */
+    public boolean intersects(Rectangle region) {
+        for (Rectangle r : strokeBounds) {
+            if (r.x <= (long) region.x + region.width
+                    && region.x <= (long) r.x + r.width
+                    && r.y <= (long) region.y + region.height
+                    && region.y <= (long) r.y + r.height) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -27,29 +27,38 @@
  */
 package de.dfki.covida.covidacore.data;
 
-import com.hp.hpl.jena.rdf.model.Model;
-import com.hp.hpl.jena.rdf.model.ModelFactory;
-import com.hp.hpl.jena.rdf.model.Resource;
-import com.hp.hpl.jena.vocabulary.DC;
-import com.hp.hpl.jena.vocabulary.VCARD;
 import de.dfki.covida.covidacore.components.IVideoComponent;
 import de.dfki.covida.covidacore.tw.TouchAndWriteComponentHandler;
 import de.dfki.covida.covidacore.utils.AnnotationSearch;
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
-import java.util.logging.Level;
+import java.util.concurrent.ConcurrentHashMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Class which holds all {@link AnnotationData}.
  *
+ * An {@link AnnotationHeader} and the index entries of every stored video stay
+ * resident, the {@link AnnotationData} itself is loaded on demand and held in
+ * a least recently used cache which is bounded by the amount of resident
+ * {@link Annotation}s.
+ *
  * @author Tobias Zimmermann <Tobias.Zimmermann@dfki.de>
  */
 public class AnnotationStorage {
@@ -63,15 +72,55 @@ public class AnnotationStorage {
      */
     private static AnnotationStorage instance;
     /**
-     * Data list
+     * Location of the patch log of the {@link RDFStore}
+     */
+    private static final String RDF_PATCH_LOG = "../covida-res/rdf.patch";
+    /**
+     * Location of the full RDF export
+     */
+    private static final String RDF_EXPORT = "../covida-res/rdf.nt";
+    /**
+     * Maximal amount of {@link Annotation}s of resident {@link AnnotationData}
+     */
+    private static final int MAX_RESIDENT_ANNOTATIONS = 4096;
+    /**
+     * Resident headers of all stored {@link AnnotationData}
+     */
+    private final Map<UUID, AnnotationHeader> headers;
+    /**
+     * Resident {@link AnnotationData} in least recently used order
      */
-    private Map<UUID, AnnotationData> dataList;
+    private final LinkedHashMap<UUID, AnnotationData> resident;
+    /**
+     * Evicted {@link AnnotationData} which are not yet written back
+     */
+    private final Map<UUID, AnnotationData> evicting;
+    /**
+     * Term index over the descriptions of all stored {@link Annotation}s
+     */
+    private final AnnotationIndex index;
+    /**
+     * Query index over all stored {@link Annotation}s
+     */
+    private final AnnotationQueryIndex queryIndex;
+    /**
+     * Incremental RDF model of all stored {@link Annotation}s
+     */
+    private RDFStore rdf;
+    /**
+     * Lock of the lazily created {@link RDFStore}
+     */
+    private final Object rdfLock = new Object();
 
     /**
      * Private constructor of {@link AnnotationStorage}
      */
     private AnnotationStorage() {
-        dataList = new HashMap<>();
+        headers = new ConcurrentHashMap<>();
+        resident = new LinkedHashMap<>(16, 0.75f, true);
+        evicting = new HashMap<>();
+        index = new AnnotationIndex();
+        queryIndex = new AnnotationQueryIndex();
     }
 
     /**
@@ -90,14 +139,44 @@ public class AnnotationStorage {
      * Returns the to the given {@link IVideoComponent} linked
      * {@link AnnotationData}
      *
+     * Note that the {@link AnnotationData} is loaded if it is not resident.
+     *
      * @param component {@link IVideoComponent}
      * @return {@link AnnotationData}
      */
-    public AnnotationData getAnnotationData(IVideoComponent component) {
-        if (!dataList.containsKey(component.getUUID())) {
+    public synchronized AnnotationData getAnnotationData(IVideoComponent component) {
+        if (!headers.containsKey(component.getUUID())) {
             addNewComponent(component);
         }
-        return dataList.get(component.getUUID());
+        return getAnnotationData(component.getUUID());
+    }
+
+    /**
+     * Returns the {@link AnnotationData} of the video with the given
+     * {@link UUID}.
+     *
+     * Note that the {@link AnnotationData} is loaded if it is not resident.
+     *
+     * @param uuid {@link UUID} of the video
+     * @return {@link AnnotationData} or {@code null} if the video is not
+     * stored
+     */
+    public synchronized AnnotationData getAnnotationData(UUID uuid) {
+        AnnotationData data = resident.get(uuid);
+        if (data != null) {
+            return data;
+        }
+        data = evicting.remove(uuid);
+        if (data == null) {
+            AnnotationHeader header = headers.get(uuid);
+            if (header == null) {
+                return null;
+            }
+            data = AnnotationData.load(uuid, header.videoSource, header.title);
+        }
+        resident.put(uuid, data);
+        evict();
+        return data;
     }
 
     /**
@@ -106,19 +185,186 @@ public class AnnotationStorage {
      * @param component {@link IVideoComponent} to add
      */
     private void addNewComponent(IVideoComponent component) {
-        if (!dataList.containsKey(component.getUUID())) {
-            AnnotationData data = AnnotationData.load(component);
-            dataList.put(component.getUUID(), data);
+        AnnotationData data = AnnotationData.load(component);
+        headers.put(component.getUUID(), new AnnotationHeader(data));
+        resident.put(component.getUUID(), data);
+        index.addAll(data);
+        queryIndex.addAll(data);
+        evict();
+    }
+
+    /**
+     * Evicts least recently used {@link AnnotationData} until the resident
+     * {@link Annotation}s fit into {@link #MAX_RESIDENT_ANNOTATIONS}.
+     *
+     * The {@link AnnotationData} of opened videos and the most recently used
+     * {@link AnnotationData} are never evicted. Evicted
+     * {@link AnnotationData} are written back by the
+     * {@link PersistenceService} and reused if they are requested before.
+     */
+    private void evict() {
+        int size = 0;
+        for (AnnotationData data : resident.values()) {
+            size += data.size();
+        }
+        if (size <= MAX_RESIDENT_ANNOTATIONS) {
+            return;
+        }
+        Set<UUID> pinned = new HashSet<>();
+        for (IVideoComponent video : TouchAndWriteComponentHandler.getInstance()
+                .getVideos()) {
+            pinned.add(video.getUUID());
+        }
+        Iterator<AnnotationData> iterator = resident.values().iterator();
+        int remaining = resident.size();
+        while (size > MAX_RESIDENT_ANNOTATIONS && remaining > 1) {
+            AnnotationData data = iterator.next();
+            remaining--;
+            if (pinned.contains(data.uuid)) {
+                continue;
+            }
+            iterator.remove();
+            size -= data.size();
+            evicting.put(data.uuid, data);
+            log.debug("Evict annotation data: {}", data.videoSource);
+            PersistenceService.getInstance().release(data);
+        }
+    }
+
+    /**
+     * Drops an evicted {@link AnnotationData} after it was written back,
+     * unless it was requested again in the meantime.
+     *
+     * @param data written back {@link AnnotationData}
+     */
+    synchronized void onReleased(AnnotationData data) {
+        if (evicting.get(data.uuid) == data) {
+            evicting.remove(data.uuid);
         }
     }
 
     /**
-     * Returns a {@link Iterable} of all stored {@link AnnotationData}.
+     * Returns true if the given {@link AnnotationData} is the stored instance
+     * of its video.
+     *
+     * @param data {@link AnnotationData}
+     * @return true if the {@link AnnotationData} is stored
+     */
+    private synchronized boolean isStored(AnnotationData data) {
+        return resident.get(data.uuid) == data
+                || evicting.get(data.uuid) == data;
+    }
+
+    /**
+     * Returns the {@link AnnotationIndex} over all stored {@link Annotation}s.
+     *
+     * @return {@link AnnotationIndex}
+     */
+    public AnnotationIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Returns the {@link AnnotationQueryIndex} over all stored
+     * {@link Annotation}s.
+     *
+     * @return {@link AnnotationQueryIndex}
+     */
+    public AnnotationQueryIndex getQueryIndex() {
+        return queryIndex;
+    }
+
+    /**
+     * Returns the stored {@link Annotation}s which match the predicate,
+     * ordered by start time and grouped by {@link AnnotationData}.
+     *
+     * @param predicate {@link IAnnotationPredicate}, see
+     * {@link AnnotationPredicates}
+     * @return {@link Map} of {@link AnnotationData} to {@link List} of
+     * {@link Annotation}s
+     */
+    public Map<AnnotationData, List<Annotation>> query(IAnnotationPredicate predicate) {
+        Map<AnnotationData, List<Annotation>> result = new LinkedHashMap<>();
+        for (AnnotationRecord record : queryIndex.query(predicate)) {
+            AnnotationData data = getAnnotationData(record.video);
+            Annotation annotation = data == null ? null : data.getAnnotation(record.uuid);
+            if (annotation == null) {
+                continue;
+            }
+            List<Annotation> list = result.get(data);
+            if (list == null) {
+                list = new ArrayList<>();
+                result.put(data, list);
+            }
+            list.add(annotation);
+        }
+        return result;
+    }
+
+    /**
+     * Updates the indexes and the {@link AnnotationHeader}
+     * after an {@link Annotation} was saved to a stored
+     * {@link AnnotationData}.
+     *
+     * @param data {@link AnnotationData}
+     * @param annotation saved {@link Annotation}
+     */
+    void onSave(AnnotationData data, Annotation annotation) {
+        if (isStored(data)) {
+            index.add(data, annotation);
+            queryIndex.add(data, annotation);
+            headers.get(data.uuid).put(annotation);
+        }
+    }
+
+    /**
+     * Updates the indexes and the {@link AnnotationHeader}
+     * after an {@link Annotation} was removed from a stored
+     * {@link AnnotationData}.
+     *
+     * @param data {@link AnnotationData}
+     * @param uuid {@link UUID} of the removed {@link Annotation}
+     */
+    void onRemove(AnnotationData data, UUID uuid) {
+        if (isStored(data)) {
+            index.remove(uuid);
+            queryIndex.remove(uuid);
+            headers.get(data.uuid).remove(uuid);
+        }
+    }
+
+    /**
+     * Returns the {@link AnnotationHeader} of the video with the given
+     * {@link UUID}.
+     *
+     * @param uuid {@link UUID} of the video
+     * @return {@link AnnotationHeader} or {@code null} if the video is not
+     * stored
+     */
+    public AnnotationHeader getHeader(UUID uuid) {
+        return headers.get(uuid);
+    }
+
+    /**
+     * Returns the {@link AnnotationHeader}s of all stored
+     * {@link AnnotationData}.
+     *
+     * @return {@link Iterable} of {@link AnnotationHeader}
+     */
+    public Iterable<AnnotationHeader> getHeaders() {
+        return headers.values();
+    }
+
+    /**
+     * Returns a {@link Iterable} of all resident {@link AnnotationData}.
+     *
+     * Note that evicted {@link AnnotationData} are not contained, use
+     * {@link #getHeaders()} to iterate all stored videos.
      *
      * @return {@link Iterable} of {@link AnnotationData}
      */
-    public Iterable<AnnotationData> getAnnotationDatas() {
-        return dataList.values();
+    public synchronized Iterable<AnnotationData> getAnnotationDatas() {
+        return new ArrayList<>(resident.values());
     }
 
     /**
@@ -131,15 +377,9 @@ public class AnnotationStorage {
      */
     public List<IVideoComponent> getVideo(AnnotationData data) {
         List<IVideoComponent> videos = new ArrayList<>();
-        if (dataList.containsValue(data)) {
-            for (UUID uuid : dataList.keySet()) {
-                if (dataList.get(uuid).equals(data)) {
-                    for (IVideoComponent video : TouchAndWriteComponentHandler
-                            .getInstance().getVideos()) {
-                        videos.add(video);
-                    }
-                }
-            }
+        if (headers.containsKey(data.uuid)) {
+            videos.addAll(TouchAndWriteComponentHandler.getInstance()
+                    .getVideos(data.uuid));
         }
         return videos;
     }
@@ -152,28 +392,22 @@ public class AnnotationStorage {
      * {@link AnnotationData} to {@link List} of {@link Annotation}s
      */
     public Map<AnnotationData, List<Annotation>> search(List<String> terms) {
-        return AnnotationSearch.search(terms, getAnnotationDatas());
+        return AnnotationSearch.search(terms, index);
     }
 
     public void load(UUID uuid) {
-        for (UUID dataUUID : dataList.keySet()) {
-            AnnotationData data = dataList.get(dataUUID);
-            if (data != null) {
-                for (Annotation annotation : data.getAnnotations()) {
-                    if (annotation.uuid.equals(uuid)) {
-                        for (IVideoComponent video :
-                                TouchAndWriteComponentHandler.getInstance()
-                                .getVideos()) {
-                            if (video.getUUID().equals(data.uuid)) {
-                                video.load(annotation);
-                            }
-                        }
-                        break;
-                    }
-                }
+        UUID dataUUID = index.getVideo(uuid);
+        if (dataUUID == null) {
+            return;
+        }
+        AnnotationData data = getAnnotationData(dataUUID);
+        Annotation annotation = data == null ? null : data.getAnnotation(uuid);
+        if (annotation != null) {
+            for (IVideoComponent video : TouchAndWriteComponentHandler
+                    .getInstance().getVideos(data.uuid)) {
+                video.load(annotation);
             }
         }
-
     }
 
     /**
@@ -181,9 +415,17 @@ public class AnnotationStorage {
      *
      * @param uuid {@link UUID} which represents the {@link AnnotationData}
      */
-    public void remove(UUID uuid) {
-        if (dataList.get(uuid).uuid.equals(uuid)) {
-            dataList.remove(uuid);
+    public synchronized void remove(UUID uuid) {
+        if (headers.remove(uuid) != null) {
+            AnnotationData data = resident.remove(uuid);
+            if (data == null) {
+                data = evicting.remove(uuid);
+            }
+            if (data != null) {
+                data.close();
+            }
+            index.removeAll(uuid);
+            queryIndex.removeAll(uuid);
         }
     }
 
@@ -193,69 +435,108 @@ public class AnnotationStorage {
      * @param uuid {@link UUID} which represents the {@link Annotation}
      */
     public void removeAnnotation(UUID uuid) {
-        for (IVideoComponent video : TouchAndWriteComponentHandler.getInstance().getVideos()) {
-            AnnotationData data = dataList.get(video.getUUID());
-            if (data != null) {
-                for (Annotation annotation : data.getAnnotations()) {
-                    if (annotation.uuid.equals(uuid)) {
-                        data.remove(annotation);
-                        break;
-                    }
-                }
-            }
+        UUID dataUUID = index.getVideo(uuid);
+        AnnotationData data = dataUUID == null ? null : getAnnotationData(dataUUID);
+        if (data != null) {
+            data.remove(uuid);
         }
     }
 
-    public void generateRDF() {
-        DateAdapter dateAdapter = new DateAdapter();
-        // create an empty model
-        Model model = ModelFactory.createDefaultModel();
+    /**
+     * Forces the journaled changes of all resident {@link AnnotationData} to
+     * disk and closes their journals.
+     */
+    public void close() {
         for (AnnotationData data : getAnnotationDatas()) {
-            Resource video = model.createResource();
-            video.addProperty(DC.title, data.title);
-            video.addProperty(DC.source, data.videoSource);
-            for (Annotation annotation : data.getAnnotations()) {
-                Resource creator = model.createResource();
-                if (annotation.creator == null) {
-                    for (PenData pen : CovidaConfiguration.getInstance().pens) {
-                        if (pen.userlogin != null) {
-                            annotation.creator = pen.userlogin;
-                            break;
-                        }
-                    }
-                    if (annotation.creator == null) {
-                        annotation.creator = "default_user";
-                    }
-                }
-                creator.addProperty(VCARD.NAME, annotation.creator);
-                creator.addProperty(VCARD.CLASS, "User");
-                String dat = "";
-                if (annotation.date != null) {
-                    try {
-                        dat = dateAdapter.marshal(annotation.date);
-                    } catch (Exception ex) {
-                        log.error("", ex);
-                    }
-                }
-                Resource annot = model.createResource(video);
-                annot.addProperty(DC.creator, creator);
-                annot.addProperty(DC.date, dat);
-                annot.addProperty(DC.description, annotation.description);
-                annot.addProperty(DC.creator, creator);
-                annot.addProperty(DC.description, annotation.description);
-                video.addProperty(DC.subject, annot);
+            data.close();
+        }
+        synchronized (rdfLock) {
+            if (rdf != null) {
+                rdf.close();
             }
+        }
+    }
 
+    /**
+     * Returns the incremental {@link RDFStore}, the store is created and its
+     * patch log replayed on first access.
+     *
+     * @return {@link RDFStore}
+     */
+    public RDFStore getRDFStore() {
+        synchronized (rdfLock) {
+            if (rdf == null) {
+                rdf = new RDFStore(new File(RDF_PATCH_LOG));
+            }
+            return rdf;
         }
-        File file = new File("../covida-res/rdf.xml");
-        log.debug("Write rdf to: " + file);
-        FileWriter w = null;
+    }
+
+    /**
+     * Updates the statements of the {@link AnnotationData} in the
+     * {@link RDFStore}, which only appends the changes to its patch log.
+     *
+     * @param data changed {@link AnnotationData}
+     */
+    public void updateRDF(AnnotationData data) {
+        getRDFStore().update(data);
+    }
+
+    /**
+     * Writes the live statements of the {@link RDFStore} as N-Triples to
+     * {@code ../covida-res/rdf.nt}, streamed from its patch log. The export
+     * is written to a temporary file which replaces the previous export, so
+     * readers never see a partial file.
+     */
+    public void exportRDF() {
+        File file = new File(RDF_EXPORT);
+        File tmp = new File(RDF_EXPORT + ".tmp");
         try {
-            w = new FileWriter(file);
-            model.write(w);
+            try (Writer w = new BufferedWriter(new OutputStreamWriter(
+                            new FileOutputStream(tmp), "UTF-8"))) {
+                getRDFStore().export(w);
+            }
+            Files.move(tmp.toPath(), file.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
             log.debug("Written rdf to: " + file);
         } catch (IOException ex) {
-            java.util.logging.Logger.getLogger(AnnotationData.class.getName()).log(Level.SEVERE, null, ex);
+            log.error("Could not write rdf to: " + file, ex);
+        }
+    }
+
+    /**
+     * Writes the RDF export to {@code ../covida-res/rdf.nt}, e.g. at
+     * shutdown.
+     *
+     * Every save already updated the {@link RDFStore}. Only videos with
+     * annotations which are missing in the store, because they were not
+     * changed since the patch log was created, are loaded one at a time
+     * without making them resident.
+     */
+    public void generateRDF() {
+        RDFStore store = getRDFStore();
+        for (AnnotationHeader header : getHeaders()) {
+            if (header.size() == 0
+                    || store.contains(header.videoSource, header.uuid)) {
+                continue;
+            }
+            AnnotationData data;
+            synchronized (this) {
+                data = resident.get(header.uuid);
+                if (data == null) {
+                    data = evicting.get(header.uuid);
+                }
+            }
+            if (data != null) {
+                store.update(data);
+            } else {
+                data = AnnotationData.load(header.uuid, header.videoSource,
+                        header.title);
+                store.update(data);
+                data.close();
+            }
         }
+        exportRDF();
     }
 }
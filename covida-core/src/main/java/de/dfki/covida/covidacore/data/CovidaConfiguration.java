@@ -27,6 +27,7 @@
  */
 package de.dfki.covida.covidacore.data;
 
+import de.dfki.covida.covidacore.utils.StrokeFilter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
@@ -34,10 +35,7 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
-import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
-import javax.xml.bind.Marshaller;
-import javax.xml.bind.Unmarshaller;
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlElementWrapper;
 import javax.xml.bind.annotation.XmlRootElement;
@@ -79,6 +77,22 @@ public class CovidaConfiguration implements Serializable {
     public Boolean autologon;
     @XmlElement(name = "thumbcount")
     public int thumbcount;
+    /**
+     * Maximum amount of libvlc media players, including idle pooled ones
+     */
+    @XmlElement(name = "maxplayers")
+    public int maxplayers;
+    /**
+     * Memory limit of the cache of prefetched video frames in MB
+     */
+    @XmlElement(name = "framecache")
+    public int framecache;
+    /**
+     * If true pen strokes are drawn and stored with every sample instead of
+     * being simplified by the {@link StrokeFilter}
+     */
+    @XmlElement(name = "rawstrokes")
+    public boolean rawstrokes;
     /**
      * If autologon is true this login is used
      *
@@ -107,6 +121,9 @@ public class CovidaConfiguration implements Serializable {
         autologon = false;
         defaultlogin = "Covida User";
         thumbcount = 5;
+        maxplayers = 8;
+        framecache = 128;
+        rawstrokes = false;
 
         VideoMediaData data = new VideoMediaData();
         data.videoName = "CoVidA Demo";
@@ -149,16 +166,12 @@ public class CovidaConfiguration implements Serializable {
      * Note that the {@link CovidaConfiguration} is saved to "covida.xml"
      */
     public synchronized void save() {
-        JAXBContext jc;
         File file = new File("../covida-res/config.xml");
         log.debug("Write data to: " + file);
         FileWriter w = null;
         try {
-            jc = JAXBContext.newInstance(CovidaConfiguration.class);
-            Marshaller m = jc.createMarshaller();
-            m.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
             w = new FileWriter(file);
-            m.marshal(this, w);
+            JAXBRegistry.get(CovidaConfiguration.class).marshal(this, w);
             log.debug("Written data to: " + file);
         } catch (JAXBException | IOException e) {
             log.error("", e);
@@ -182,9 +195,8 @@ public class CovidaConfiguration implements Serializable {
         File file = new File("../covida-res/config.xml");
         try {
             if (file != null && file.canRead()) {
-                JAXBContext jc = JAXBContext.newInstance(CovidaConfiguration.class);
-                Unmarshaller u = jc.createUnmarshaller();
-                instance = (CovidaConfiguration) u.unmarshal(file);
+                instance = (CovidaConfiguration) JAXBRegistry
+                        .get(CovidaConfiguration.class).unmarshal(file);
                 log.debug("Data file loaded at location: "
                         + file.getAbsolutePath());
             } else {
@@ -195,6 +207,7 @@ public class CovidaConfiguration implements Serializable {
             log.debug(e + " create new VideoAnnotationData");
             instance = CovidaConfiguration.getInstance();
         }
+        boolean migrated = false;
         for (VideoMediaData data : instance.videos) {
             if (data.uuid == null) {
                 data.uuid = UUID.randomUUID();
@@ -202,6 +215,11 @@ public class CovidaConfiguration implements Serializable {
             if(data.thumbs == null){
                 data.thumbs = new ArrayList<>();
             }
+            migrated |= ThumbnailCache.getInstance().migrate(data);
+        }
+        if (migrated) {
+            log.debug("Moved inline thumbnails into the thumbnail cache");
+            instance.save();
         }
         return instance;
     }
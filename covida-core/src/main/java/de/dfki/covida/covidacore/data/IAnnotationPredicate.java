@@ -0,0 +1,61 @@
+/*
+ * IAnnotationPredicate.java
+ *
+ * Copyright (c) 2012, Tobias Zimmermann All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of
+ * conditions and the following disclaimer. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors may be used to endorse or
+ * promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package de.dfki.covida.covidacore.data;
+
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Predicate over {@link AnnotationRecord}s for the
+ * {@link AnnotationQueryIndex}.
+ *
+ * Predicates are composed with {@link AnnotationPredicates#and},
+ * {@link AnnotationPredicates#or} and {@link AnnotationPredicates#not}.
+ *
+ * @author Tobias Zimmermann <Tobias.Zimmermann@dfki.de>
+ */
+public interface IAnnotationPredicate {
+
+    /**
+     * Returns true if the {@link AnnotationRecord} matches.
+     *
+     * @param record {@link AnnotationRecord}
+     * @return true if matching
+     */
+    public boolean matches(AnnotationRecord record);
+
+    /**
+     * Returns the {@link UUID}s of the {@link Annotation}s which may match
+     * according to an index, or {@code null} if the predicate can not be
+     * answered by an index.
+     *
+     * @param index {@link AnnotationQueryIndex}
+     * @return {@link Set} of {@link Annotation} {@link UUID}s or {@code null}
+     */
+    public Set<UUID> candidates(AnnotationQueryIndex index);
+}
@@ -0,0 +1,281 @@
+/*
+ * JAXBRegistry.java
+ *
+ * Copyright (c) 2012, Tobias Zimmermann All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of
+ * conditions and the following disclaimer. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors may be used to endorse or
+ * promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package de.dfki.covida.covidacore.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.bind.ValidationEvent;
+import javax.xml.bind.ValidationEventHandler;
+
+/**
+ * Thread safe registry of {@link JAXBContext}s with pooled
+ * {@link Marshaller}s and {@link Unmarshaller}s.
+ *
+ * Building a {@link JAXBContext} is expensive, so every bound class gets
+ * exactly one context for the lifetime of the application. {@link Marshaller}
+ * and {@link Unmarshaller} are not thread safe, they are borrowed from a small
+ * pool for the duration of one call.
+ *
+ * @author Tobias Zimmermann <Tobias.Zimmermann@dfki.de>
+ */
+public class JAXBRegistry {
+
+    /**
+     * Maximal amount of pooled {@link Marshaller}s and {@link Unmarshaller}s
+     * per context
+     */
+    private static final int POOL_SIZE = 4;
+    /**
+     * Registered {@link JAXBRegistry} entries by bound class
+     */
+    private static final Map<Class<?>, JAXBRegistry> registry =
+            new ConcurrentHashMap<>();
+    /**
+     * Aborts unmarshalling if a setter rejected corrupt data with an
+     * {@link IOException}. Other errors are ignored like by the default
+     * handler, so unknown elements of older files are still skipped. Corrupt
+     * {@link Stroke}s do not abort, they are dropped by {@link StrokeList}.
+     */
+    private static final ValidationEventHandler CORRUPT_DATA_HANDLER =
+            new ValidationEventHandler() {
+                @Override
+                public boolean handleEvent(ValidationEvent event) {
+                    if (event.getSeverity() == ValidationEvent.FATAL_ERROR) {
+                        return false;
+                    }
+                    for (Throwable t = event.getLinkedException(); t != null;
+                            t = t.getCause()) {
+                        if (t instanceof IOException) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }
+            };
+    /**
+     * {@link JAXBContext}
+     */
+    private final JAXBContext context;
+    /**
+     * Pooled {@link Marshaller}s
+     */
+    private final Queue<Marshaller> marshallers;
+    /**
+     * Pooled {@link Unmarshaller}s
+     */
+    private final Queue<Unmarshaller> unmarshallers;
+
+    /**
+     * Creates a new {@link JAXBRegistry} entry for the given class.
+     *
+     * @param type bound class
+     * @throws JAXBException
+     */
+    private JAXBRegistry(Class<?> type) throws JAXBException {
+        context = JAXBContext.newInstance(type);
+        marshallers = new ConcurrentLinkedQueue<>();
+        unmarshallers = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * Returns the {@link JAXBRegistry} entry of the given class. The
+     * {@link JAXBContext} is created on the first call.
+     *
+     * @param type bound class
+     * @return {@link JAXBRegistry}
+     * @throws JAXBException
+     */
+    public static JAXBRegistry get(Class<?> type) throws JAXBException {
+        JAXBRegistry entry = registry.get(type);
+        if (entry == null) {
+            synchronized (registry) {
+                entry = registry.get(type);
+                if (entry == null) {
+                    entry = new JAXBRegistry(type);
+                    registry.put(type, entry);
+                }
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Returns the {@link JAXBContext}.
+     *
+     * @return {@link JAXBContext}
+     */
+    public JAXBContext getContext() {
+        return context;
+    }
+
+    /**
+     * Marshals an object as formatted XML document.
+     *
+     * @param object object to marshal
+     * @param out {@link OutputStream}
+     * @throws JAXBException
+     */
+    public void marshal(Object object, OutputStream out) throws JAXBException {
+        Marshaller m = acquireMarshaller(true, false);
+        try {
+            m.marshal(object, out);
+        } finally {
+            release(m);
+        }
+    }
+
+    /**
+     * Marshals an object as formatted XML document.
+     *
+     * @param object object to marshal
+     * @param writer {@link Writer}
+     * @throws JAXBException
+     */
+    public void marshal(Object object, Writer writer) throws JAXBException {
+        Marshaller m = acquireMarshaller(true, false);
+        try {
+            m.marshal(object, writer);
+        } finally {
+            release(m);
+        }
+    }
+
+    /**
+     * Marshals an object as unformatted XML fragment without declaration.
+     *
+     * @param object object to marshal
+     * @param out {@link OutputStream}
+     * @throws JAXBException
+     */
+    public void marshalFragment(Object object, OutputStream out) throws JAXBException {
+        Marshaller m = acquireMarshaller(false, true);
+        try {
+            m.marshal(object, out);
+        } finally {
+            release(m);
+        }
+    }
+
+    /**
+     * Unmarshals an XML file.
+     *
+     * @param file XML {@link File}
+     * @return unmarshalled object
+     * @throws JAXBException
+     */
+    public Object unmarshal(File file) throws JAXBException {
+        Unmarshaller u = acquireUnmarshaller();
+        try {
+            return u.unmarshal(file);
+        } finally {
+            release(u);
+        }
+    }
+
+    /**
+     * Unmarshals an XML stream.
+     *
+     * @param in {@link InputStream}
+     * @return unmarshalled object
+     * @throws JAXBException
+     */
+    public Object unmarshal(InputStream in) throws JAXBException {
+        Unmarshaller u = acquireUnmarshaller();
+        try {
+            return u.unmarshal(in);
+        } finally {
+            release(u);
+        }
+    }
+
+    /**
+     * Borrows a {@link Marshaller} from the pool.
+     *
+     * @param formatted true for formatted output
+     * @param fragment true to omit the XML declaration
+     * @return {@link Marshaller}
+     * @throws JAXBException
+     */
+    private Marshaller acquireMarshaller(boolean formatted, boolean fragment) throws JAXBException {
+        Marshaller m = marshallers.poll();
+        if (m == null) {
+            m = context.createMarshaller();
+        }
+        m.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, formatted);
+        m.setProperty(Marshaller.JAXB_FRAGMENT, fragment);
+        return m;
+    }
+
+    /**
+     * Borrows an {@link Unmarshaller} from the pool.
+     *
+     * @return {@link Unmarshaller}
+     * @throws JAXBException
+     */
+    private Unmarshaller acquireUnmarshaller() throws JAXBException {
+        Unmarshaller u = unmarshallers.poll();
+        if (u == null) {
+            u = context.createUnmarshaller();
+            u.setEventHandler(CORRUPT_DATA_HANDLER);
+        }
+        return u;
+    }
+
+    /**
+     * Returns a {@link Marshaller} to the pool.
+     *
+     * @param m {@link Marshaller}
+     */
+    private void release(Marshaller m) {
+        if (marshallers.size() < POOL_SIZE) {
+            marshallers.offer(m);
+        }
+    }
+
+    /**
+     * Returns an {@link Unmarshaller} to the pool.
+     *
+     * @param u {@link Unmarshaller}
+     */
+    private void release(Unmarshaller u) {
+        if (unmarshallers.size() < POOL_SIZE) {
+            unmarshallers.offer(u);
+        }
+    }
+}
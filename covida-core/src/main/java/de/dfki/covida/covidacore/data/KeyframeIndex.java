@@ -0,0 +1,169 @@
+/*
+ * KeyframeIndex.java
+ *
+ * Copyright (c) 2012, Tobias Zimmermann All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of
+ * conditions and the following disclaimer. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors may be used to endorse or
+ * promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package de.dfki.covida.covidacore.data;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sorted keyframe time stamps of a video.
+ *
+ * The index is built once by the {@link KeyframeIndexWriter} when the video
+ * is preloaded and cached next to the video as {@code <video>.keyframes}:
+ * the magic "CVKF", the size and the modification time of the indexed video,
+ * the amount of keyframes and their time stamps in ms (big endian). An index
+ * of a changed video is ignored.
+ *
+ * @author Tobias Zimmermann <Tobias.Zimmermann@dfki.de>
+ */
+public class KeyframeIndex {
+
+    /**
+     * Logger
+     */
+    private static Logger log = LoggerFactory.getLogger(KeyframeIndex.class);
+    /**
+     * Magic number of a keyframe index file, "CVKF"
+     */
+    public static final int MAGIC = 0x43564b46;
+    /**
+     * File extension of the keyframe index
+     */
+    public static final String EXTENSION = ".keyframes";
+    /**
+     * Keyframe time stamps in ms, ascending
+     */
+    private final long[] times;
+
+    /**
+     * Creates an instance of {@link KeyframeIndex}
+     *
+     * @param times keyframe time stamps in ms, ascending
+     */
+    public KeyframeIndex(long[] times) {
+        this.times = times;
+    }
+
+    /**
+     * Returns the index file of the video.
+     *
+     * @param source video path
+     * @return {@link File}
+     */
+    public static File file(String source) {
+        return new File(source + EXTENSION);
+    }
+
+    /**
+     * Loads the cached keyframe index of the video.
+     *
+     * @param source video path
+     * @return {@link KeyframeIndex} or null if there is no valid index
+     */
+    public static KeyframeIndex load(String source) {
+        File video = new File(source);
+        File file = file(source);
+        if (!file.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                log.warn("{} is no keyframe index", file);
+                return null;
+            }
+            if (in.readLong() != video.length()
+                    || in.readLong() != video.lastModified()) {
+                log.debug("Keyframe index of {} is outdated", source);
+                return null;
+            }
+            long[] times = new long[in.readInt()];
+            for (int i = 0; i < times.length; i++) {
+                times[i] = in.readLong();
+            }
+            log.debug("Loaded {} keyframes of {}", times.length, source);
+            return new KeyframeIndex(times);
+        } catch (IOException e) {
+            log.warn("Could not load keyframe index {}: {}", file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the amount of keyframes.
+     *
+     * @return amount of keyframes
+     */
+    public int size() {
+        return times.length;
+    }
+
+    /**
+     * Returns the last keyframe at or before {@code time}.
+     *
+     * @param time time in ms
+     * @return keyframe time in ms, {@code time} if there is none
+     */
+    public long floor(long time) {
+        int i = Arrays.binarySearch(times, time);
+        if (i >= 0) {
+            return times[i];
+        }
+        i = -i - 2;
+        return i < 0 ? time : times[i];
+    }
+
+    /**
+     * Returns the keyframe closest to {@code time}.
+     *
+     * @param time time in ms
+     * @return keyframe time in ms, {@code time} if there is none
+     */
+    public long nearest(long time) {
+        int i = Arrays.binarySearch(times, time);
+        if (i >= 0) {
+            return times[i];
+        }
+        i = -i - 1;
+        if (i == 0) {
+            return times.length == 0 ? time : times[0];
+        }
+        if (i == times.length) {
+            return times[i - 1];
+        }
+        long before = times[i - 1];
+        long after = times[i];
+        return time - before <= after - time ? before : after;
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * KeyframeIndexWriter.java
+ *
+ * Copyright (c) 2012, Tobias Zimmermann All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of
+ * conditions and the following disclaimer. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors may be used to endorse or
+ * promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package de.dfki.covida.covidacore.data;
+
+import de.dfki.covida.covidacore.utils.KeyframeScanner;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Builds the {@link KeyframeIndex} of a video with the
+ * {@link KeyframeScanner} and caches it next to the video in the format
+ * read by {@link KeyframeIndex#load(String)}.
+ *
+ * @author Tobias Zimmermann <Tobias.Zimmermann@dfki.de>
+ */
+public class KeyframeIndexWriter {
+
+    /**
+     * Logger
+     */
+    private static Logger log = LoggerFactory.getLogger(KeyframeIndexWriter.class);
+
+    private KeyframeIndexWriter() {
+    }
+
+    /**
+     * Builds and writes the keyframe index of the video if it is missing or
+     * outdated.
+     *
+     * @param source video path
+     * @return {@link KeyframeIndex} or null if the container is not supported
+     */
+    public static KeyframeIndex write(String source) {
+        KeyframeIndex index = KeyframeIndex.load(source);
+        if (index != null) {
+            return index;
+        }
+        File video = new File(source);
+        if (!video.isFile()) {
+            return null;
+        }
+        long start = System.currentTimeMillis();
+        long[] keyframes;
+        try {
+            keyframes = KeyframeScanner.scan(video);
+        } catch (IOException e) {
+            log.warn("Could not read keyframes of {}: {}", source, e);
+            return null;
+        }
+        if (keyframes == null) {
+            log.debug("No keyframe index for container of {}", source);
+            return null;
+        }
+        write(video, keyframes);
+        log.debug("Indexed {} keyframes of {} in {} ms", new Object[]{
+                    keyframes.length, source, System.currentTimeMillis() - start});
+        return new KeyframeIndex(keyframes);
+    }
+
+    /**
+     * Writes the keyframe time stamps of the video to its index file.
+     *
+     * @param video video file
+     * @param keyframes keyframe time stamps in ms, ascending
+     */
+    static void write(File video, long[] keyframes) {
+        File file = KeyframeIndex.file(video.getPath());
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                out.writeInt(KeyframeIndex.MAGIC);
+                out.writeLong(video.length());
+                out.writeLong(video.lastModified());
+                out.writeInt(keyframes.length);
+                for (long keyframe : keyframes) {
+                    out.writeLong(keyframe);
+                }
+            }
+            Files.move(tmp.toPath(), file.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            log.error("Could not write keyframe index {}: {}", file, e);
+            tmp.delete();
+        }
+    }
+
+    /**
+     * Writes the keyframe index of every video.
+     *
+     * @param args video files or directories of videos
+     */
+    public static void main(String[] args) {
+        for (String arg : args) {
+            File file = new File(arg);
+            File[] files = file.isDirectory() ? file.listFiles() : new File[]{file};
+            if (files == null) {
+                continue;
+            }
+            for (File video : files) {
+                if (video.isFile() && !video.getName().endsWith(KeyframeIndex.EXTENSION)) {
+                    write(video.getPath());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,402 @@
+/*
+ * PersistenceService.java
+ *
+ * Copyright (c) 2012, Tobias Zimmermann All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of
+ * conditions and the following disclaimer. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors may be used to endorse or
+ * promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package de.dfki.covida.covidacore.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the {@link IPersistenceSink}s of changed {@link AnnotationData} on a
+ * background thread.
+ *
+ * Changes which are submitted within {@link #COALESCE_DELAY} ms are coalesced
+ * into one write per artifact. The amount of scheduled writes is bounded.
+ * Submitting never blocks the caller, e.g. the render thread: while the
+ * bound is reached, changes are deferred per artifact and coalesced until a
+ * finished write hands its slot on.
+ *
+ * @author Tobias Zimmermann <Tobias.Zimmermann@dfki.de>
+ */
+public class PersistenceService {
+
+    /**
+     * Logger
+     */
+    private static Logger log = LoggerFactory.getLogger(PersistenceService.class);
+    /**
+     * Delay in ms in which submitted changes are coalesced
+     */
+    public static final long COALESCE_DELAY = 250;
+    /**
+     * Maximal amount of scheduled writes
+     */
+    private static final int MAX_PENDING = 32;
+    /**
+     * Timeout in seconds for the shutdown
+     */
+    private static final long SHUTDOWN_TIMEOUT = 30;
+    /**
+     * Instance of the {@link PersistenceService}
+     */
+    private static PersistenceService instance;
+    /**
+     * Executor which runs the writes
+     */
+    private final ScheduledExecutorService executor;
+    /**
+     * Registered {@link IPersistenceSink}s
+     */
+    private final List<IPersistenceSink> sinks;
+    /**
+     * Names of the disabled {@link IPersistenceSink}s
+     */
+    private final Set<String> disabled;
+    /**
+     * Scheduled writes by artifact
+     */
+    private final Map<Artifact, Write> pending;
+    /**
+     * Writes which wait for a free slot, by artifact in submit order
+     */
+    private final Map<Artifact, Write> deferred;
+    /**
+     * Free slots for scheduled writes
+     */
+    private final Semaphore capacity;
+
+    /**
+     * Private constructor of {@link PersistenceService}
+     */
+    private PersistenceService() {
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Persistence Service");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        sinks = new CopyOnWriteArrayList<>();
+        disabled = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        pending = new HashMap<>();
+        deferred = new LinkedHashMap<>();
+        capacity = new Semaphore(MAX_PENDING);
+        addSink(new XMLPersistenceSink());
+        addSink(new AnvilPersistenceSink());
+        addSink(new RDFPersistenceSink());
+        setEnabled(XMLPersistenceSink.NAME, false);
+    }
+
+    /**
+     * Returns the instance of {@link PersistenceService}
+     *
+     * @return {@link PersistenceService}
+     */
+    public synchronized static PersistenceService getInstance() {
+        if (instance == null) {
+            instance = new PersistenceService();
+        }
+        return instance;
+    }
+
+    /**
+     * Registers an {@link IPersistenceSink}.
+     *
+     * @param sink {@link IPersistenceSink}
+     */
+    public void addSink(IPersistenceSink sink) {
+        sinks.add(sink);
+    }
+
+    /**
+     * Enables or disables the {@link IPersistenceSink} with the given name.
+     *
+     * @param name name of the {@link IPersistenceSink}
+     * @param enabled true to enable
+     */
+    public void setEnabled(String name, boolean enabled) {
+        if (enabled) {
+            disabled.remove(name);
+        } else {
+            disabled.add(name);
+        }
+    }
+
+    /**
+     * Returns true if the {@link IPersistenceSink} with the given name is
+     * enabled.
+     *
+     * @param name name of the {@link IPersistenceSink}
+     * @return true if enabled
+     */
+    public boolean isEnabled(String name) {
+        return !disabled.contains(name);
+    }
+
+    /**
+     * Submits a changed {@link AnnotationData} to all enabled
+     * {@link IPersistenceSink}s.
+     *
+     * @param data changed {@link AnnotationData}
+     */
+    public void submit(AnnotationData data) {
+        for (IPersistenceSink sink : sinks) {
+            if (isEnabled(sink.getName())) {
+                submit(sink, data);
+            }
+        }
+    }
+
+    /**
+     * Schedules the write of one artifact unless it is already pending. If
+     * all slots are taken the write is deferred instead of waiting for one.
+     *
+     * @param sink {@link IPersistenceSink}
+     * @param data changed {@link AnnotationData}
+     */
+    private synchronized void submit(IPersistenceSink sink, AnnotationData data) {
+        Artifact artifact = new Artifact(sink.getName(),
+                sink.isPerVideo() ? data.uuid : null);
+        if (coalesce(artifact, data)) {
+            return;
+        }
+        if (executor.isShutdown()) {
+            log.warn("Persistence service is shut down, write {} directly",
+                    sink.getName());
+            sink.persist(data);
+            return;
+        }
+        Write write = new Write(artifact, sink, data);
+        if (capacity.tryAcquire()) {
+            schedule(write, COALESCE_DELAY);
+        } else {
+            deferred.put(artifact, write);
+        }
+    }
+
+    /**
+     * Schedules a write which holds a slot.
+     *
+     * @param write {@link Write}
+     * @param delay delay in ms
+     */
+    private void schedule(Write write, long delay) {
+        pending.put(write.artifact, write);
+        write.future = executor.schedule(write, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Updates an already pending or deferred write of the artifact.
+     *
+     * @param artifact {@link Artifact}
+     * @param data changed {@link AnnotationData}
+     * @return true if a write of the artifact is pending or deferred
+     */
+    private boolean coalesce(Artifact artifact, AnnotationData data) {
+        Write write = pending.get(artifact);
+        if (write == null) {
+            write = deferred.get(artifact);
+        }
+        if (write != null) {
+            write.data = data;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Hands the slot of a started write to the oldest deferred write, or
+     * frees it.
+     */
+    private synchronized void releaseSlot() {
+        Iterator<Write> next = deferred.values().iterator();
+        if (next.hasNext() && !executor.isShutdown()) {
+            Write write = next.next();
+            next.remove();
+            schedule(write, 0);
+        } else {
+            capacity.release();
+        }
+    }
+
+    /**
+     * Writes the snapshot of an evicted {@link AnnotationData} and closes its
+     * journal, then hands it back to the {@link AnnotationStorage}.
+     *
+     * Note that this method does not block, it is called while the
+     * {@link AnnotationStorage} is locked.
+     *
+     * @param data evicted {@link AnnotationData}
+     */
+    public void release(final AnnotationData data) {
+        Runnable release = new Runnable() {
+            @Override
+            public void run() {
+                data.write();
+                data.close();
+                AnnotationStorage.getInstance().onReleased(data);
+            }
+        };
+        synchronized (this) {
+            if (!executor.isShutdown()) {
+                executor.execute(release);
+                return;
+            }
+        }
+        release.run();
+    }
+
+    /**
+     * Runs all pending and deferred writes immediately and waits until they
+     * are finished.
+     */
+    public void flush() {
+        boolean more = true;
+        while (more) {
+            List<Write> writes;
+            synchronized (this) {
+                writes = new ArrayList<>(pending.values());
+            }
+            for (Write write : writes) {
+                if (write.future.cancel(false)) {
+                    executor.execute(write);
+                }
+            }
+            try {
+                executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                    }
+                }).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                log.error("", e);
+            }
+            synchronized (this) {
+                more = !deferred.isEmpty() || !pending.isEmpty();
+            }
+        }
+    }
+
+    /**
+     * Flushes all pending writes and stops the {@link PersistenceService}.
+     */
+    public void shutdown() {
+        flush();
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.SECONDS)) {
+                log.warn("Persistence service did not terminate in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Artifact which is written by an {@link IPersistenceSink}, identified by
+     * the sink name and, for per video sinks, the video {@link UUID}.
+     */
+    private static class Artifact {
+
+        private final String sink;
+        private final UUID video;
+
+        private Artifact(String sink, UUID video) {
+            this.sink = sink;
+            this.video = video;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Artifact)) {
+                return false;
+            }
+            Artifact other = (Artifact) obj;
+            return sink.equals(other.sink) && (video == null
+                    ? other.video == null : video.equals(other.video));
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * sink.hashCode() + (video == null ? 0 : video.hashCode());
+        }
+    }
+
+    /**
+     * Pending write of an {@link Artifact}
+     */
+    private class Write implements Runnable {
+
+        private final Artifact artifact;
+        private final IPersistenceSink sink;
+        private volatile AnnotationData data;
+        private Future<?> future;
+
+        private Write(Artifact artifact, IPersistenceSink sink, AnnotationData data) {
+            this.artifact = artifact;
+            this.sink = sink;
+            this.data = data;
+        }
+
+        @Override
+        public void run() {
+            synchronized (PersistenceService.this) {
+                if (pending.get(artifact) == this) {
+                    pending.remove(artifact);
+                }
+            }
+            releaseSlot();
+            try {
+                sink.persist(data);
+            } catch (RuntimeException e) {
+                log.error("Write of " + sink.getName() + " failed", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,479 @@
+/*
+ * RDFStore.java
+ *
+ * Copyright (c) 2012, Tobias Zimmermann All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of
+ * conditions and the following disclaimer. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors may be used to endorse or
+ * promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package de.dfki.covida.covidacore.data;
+
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.vocabulary.DC;
+import com.hp.hpl.jena.vocabulary.VCARD;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Incremental RDF model of the {@link AnnotationStorage}.
+ *
+ * The statements of each video form one named graph. The model is persisted
+ * as an append-only patch log in N-Quads syntax, each line is prefixed with
+ * {@code A} for an asserted or {@code D} for a retracted statement. An
+ * update of an {@link AnnotationData} only appends the statements which
+ * differ from the previous state of its graph. The log is rewritten from the
+ * live statements once it holds more than twice as many lines.
+ *
+ * The patch log is the only thing written on updates. A N-Triples export is
+ * produced on demand by {@link #export(Writer)}, which compacts the log, so
+ * it holds the statements grouped by graph, and streams it into the export.
+ *
+ * The model is derived from the {@link AnnotationData}, therefore the log is
+ * flushed but not forced to disk.
+ *
+ * @author Tobias Zimmermann <Tobias.Zimmermann@dfki.de>
+ */
+public class RDFStore {
+
+    /**
+     * Logger
+     */
+    private static Logger log = LoggerFactory.getLogger(RDFStore.class);
+    /**
+     * Prefix of an asserted statement
+     */
+    private static final String ASSERT = "A ";
+    /**
+     * Prefix of a retracted statement
+     */
+    private static final String RETRACT = "D ";
+    /**
+     * Minimal amount of log lines before the log is compacted
+     */
+    private static final int COMPACT_MIN = 1024;
+    /**
+     * Charset of N-Triples and N-Quads
+     */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    /**
+     * Patch log
+     */
+    private final File file;
+    /**
+     * Live statements by graph
+     */
+    private final Map<String, Set<String>> graphs;
+    /**
+     * Amount of live statements
+     */
+    private int live;
+    /**
+     * Amount of lines in the patch log
+     */
+    private int logged;
+    /**
+     * Writer which appends to the patch log
+     */
+    private Writer out;
+
+    /**
+     * Creates a {@link RDFStore} and replays its patch log.
+     *
+     * @param file patch log
+     */
+    public RDFStore(File file) {
+        this.file = file;
+        this.graphs = new HashMap<>();
+        replay();
+    }
+
+    /**
+     * Replaces the graph of the {@link AnnotationData} with its current
+     * statements.
+     *
+     * @param data {@link AnnotationData}
+     * @return true if statements were asserted or retracted
+     */
+    public synchronized boolean update(AnnotationData data) {
+        String graph = uri(graph(data));
+        Set<String> current = new LinkedHashSet<>();
+        describe(data, current);
+        Set<String> previous = graphs.get(graph);
+        if (previous == null) {
+            previous = Collections.emptySet();
+        }
+        List<String> lines = new ArrayList<>();
+        for (String statement : previous) {
+            if (!current.contains(statement)) {
+                lines.add(RETRACT + statement + " " + graph + " .");
+            }
+        }
+        for (String statement : current) {
+            if (!previous.contains(statement)) {
+                lines.add(ASSERT + statement + " " + graph + " .");
+            }
+        }
+        if (lines.isEmpty()) {
+            return false;
+        }
+        live += current.size() - previous.size();
+        if (current.isEmpty()) {
+            graphs.remove(graph);
+        } else {
+            graphs.put(graph, current);
+        }
+        try {
+            append(lines);
+            if (logged > COMPACT_MIN && logged > 2 * live) {
+                compact();
+            }
+        } catch (IOException e) {
+            log.error("Could not write rdf patch log: " + file, e);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the amount of live statements.
+     *
+     * @return amount of statements
+     */
+    public synchronized int size() {
+        return live;
+    }
+
+    /**
+     * Returns true if the store holds statements of the video with the
+     * given source and {@link UUID}.
+     *
+     * @param videoSource video source or null
+     * @param uuid {@link UUID} of the video
+     * @return true if the graph of the video exists
+     */
+    public synchronized boolean contains(String videoSource, UUID uuid) {
+        return graphs.containsKey(uri(graph(videoSource, uuid)));
+    }
+
+    /**
+     * Writes all live statements as N-Triples. The patch log is compacted
+     * and then streamed line by line into the writer, one graph after the
+     * other.
+     *
+     * @param writer {@link Writer}
+     * @throws IOException
+     */
+    public synchronized void export(Writer writer) throws IOException {
+        compact();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                        new FileInputStream(file), UTF8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int end = line.length() - 2;
+                int split = line.lastIndexOf(" <", end);
+                if (!line.startsWith(ASSERT) || !line.endsWith(" .")
+                        || split < 2) {
+                    throw new IOException("Invalid rdf patch log line: "
+                            + line);
+                }
+                writer.write(line, 2, split - 2);
+                writer.write(" .\n");
+            }
+        }
+    }
+
+    /**
+     * Closes the patch log.
+     */
+    public synchronized void close() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                log.error("", e);
+            }
+            out = null;
+        }
+    }
+
+    /**
+     * Appends lines to the patch log.
+     *
+     * @param lines log lines
+     * @throws IOException
+     */
+    private void append(List<String> lines) throws IOException {
+        if (out == null) {
+            out = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(file, true), UTF8));
+        }
+        for (String line : lines) {
+            out.write(line);
+            out.write('\n');
+        }
+        out.flush();
+        logged += lines.size();
+    }
+
+    /**
+     * Rewrites the patch log from the live statements.
+     *
+     * @throws IOException
+     */
+    private void compact() throws IOException {
+        close();
+        File tmp = new File(file.getPath() + ".tmp");
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                        new FileOutputStream(tmp), UTF8))) {
+            for (Map.Entry<String, Set<String>> entry : graphs.entrySet()) {
+                for (String statement : entry.getValue()) {
+                    writer.write(ASSERT);
+                    writer.write(statement);
+                    writer.write(' ');
+                    writer.write(entry.getKey());
+                    writer.write(" .\n");
+                }
+            }
+        }
+        Files.move(tmp.toPath(), file.toPath(),
+                StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+        logged = live;
+        log.debug("Compacted rdf patch log to {} statements", live);
+    }
+
+    /**
+     * Rebuilds the live statements from the patch log. A torn last line is
+     * dropped by compacting the log.
+     */
+    private void replay() {
+        if (!file.canRead()) {
+            return;
+        }
+        boolean torn = false;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                        new FileInputStream(file), UTF8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int end = line.length() - 2;
+                int split = line.lastIndexOf(" <", end);
+                if (!line.endsWith(" .") || split < 2) {
+                    torn = true;
+                    break;
+                }
+                String statement = line.substring(2, split);
+                String graph = line.substring(split + 1, end);
+                Set<String> statements = graphs.get(graph);
+                if (line.startsWith(ASSERT)) {
+                    if (statements == null) {
+                        statements = new LinkedHashSet<>();
+                        graphs.put(graph, statements);
+                    }
+                    if (statements.add(statement)) {
+                        live++;
+                    }
+                } else if (line.startsWith(RETRACT) && statements != null) {
+                    if (statements.remove(statement)) {
+                        live--;
+                    }
+                    if (statements.isEmpty()) {
+                        graphs.remove(graph);
+                    }
+                }
+                logged++;
+            }
+        } catch (IOException e) {
+            log.error("Could not read rdf patch log: " + file, e);
+        }
+        if (torn) {
+            log.warn("Drop torn tail of rdf patch log: {}", file);
+            try {
+                compact();
+            } catch (IOException e) {
+                log.error("", e);
+            }
+        }
+    }
+
+    /**
+     * Adds the N-Triples statements of the {@link AnnotationData}, without
+     * the terminating dot, to the given {@link Collection}.
+     *
+     * @param data {@link AnnotationData}
+     * @param statements {@link Collection} of statements
+     */
+    public static void describe(AnnotationData data,
+            Collection<String> statements) {
+        DateAdapter dateAdapter = new DateAdapter();
+        String video = uri(graph(data));
+        if (data.title != null) {
+            statements.add(statement(video, DC.title, literal(data.title)));
+        }
+        if (data.videoSource != null) {
+            statements.add(statement(video, DC.source,
+                    literal(data.videoSource)));
+        }
+        for (Annotation annotation : data.copyAnnotations()) {
+            String annot = uri("urn:uuid:" + annotation.uuid);
+            String creator = uri("urn:uuid:" + annotation.uuid + "#creator");
+            statements.add(statement(creator, VCARD.NAME,
+                    literal(creator(annotation))));
+            statements.add(statement(creator, VCARD.CLASS, literal("User")));
+            String date = "";
+            if (annotation.date != null) {
+                try {
+                    date = dateAdapter.marshal(annotation.date);
+                } catch (Exception ex) {
+                    log.error("", ex);
+                }
+            }
+            statements.add(statement(annot, DC.creator, creator));
+            statements.add(statement(annot, DC.date, literal(date)));
+            if (annotation.description != null) {
+                statements.add(statement(annot, DC.description,
+                        literal(annotation.description)));
+            }
+            statements.add(statement(video, DC.subject, annot));
+        }
+    }
+
+    /**
+     * Returns the creator of the {@link Annotation}, or the first logged in
+     * user if the {@link Annotation} has none.
+     *
+     * @param annotation {@link Annotation}
+     * @return creator
+     */
+    private static String creator(Annotation annotation) {
+        if (annotation.creator != null) {
+            return annotation.creator;
+        }
+        for (PenData pen : CovidaConfiguration.getInstance().pens) {
+            if (pen.userlogin != null) {
+                return pen.userlogin;
+            }
+        }
+        return "default_user";
+    }
+
+    /**
+     * Returns the graph name of the {@link AnnotationData}, which is the URI
+     * of its video.
+     *
+     * @param data {@link AnnotationData}
+     * @return graph name
+     */
+    private static String graph(AnnotationData data) {
+        return graph(data.videoSource, data.uuid);
+    }
+
+    /**
+     * Returns the graph name of a video, which is its URI.
+     *
+     * @param videoSource video source or null
+     * @param uuid {@link UUID} of the video
+     * @return graph name
+     */
+    private static String graph(String videoSource, UUID uuid) {
+        if (videoSource != null) {
+            return new File(videoSource).toURI().toString();
+        }
+        return "urn:uuid:" + uuid;
+    }
+
+    /**
+     * Returns a N-Triples statement without the terminating dot.
+     *
+     * @param subject subject term
+     * @param predicate {@link Property}
+     * @param object object term
+     * @return statement
+     */
+    private static String statement(String subject, Property predicate,
+            String object) {
+        return subject + " " + uri(predicate.getURI()) + " " + object;
+    }
+
+    /**
+     * Returns the N-Triples term of an URI.
+     *
+     * @param uri URI
+     * @return term
+     */
+    private static String uri(String uri) {
+        return "<" + uri + ">";
+    }
+
+    /**
+     * Returns the N-Triples term of a plain literal.
+     *
+     * @param value literal value
+     * @return term
+     */
+    private static String literal(String value) {
+        StringBuilder term = new StringBuilder(value.length() + 2);
+        term.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\':
+                    term.append("\\\\");
+                    break;
+                case '"':
+                    term.append("\\\"");
+                    break;
+                case '\n':
+                    term.append("\\n");
+                    break;
+                case '\r':
+                    term.append("\\r");
+                    break;
+                case '\t':
+                    term.append("\\t");
+                    break;
+                default:
+                    term.append(c);
+            }
+        }
+        return term.append('"').toString();
+    }
+}
@@ -28,9 +28,16 @@
 package de.dfki.covida.covidacore.data;
 
 import java.awt.Point;
+import java.awt.Rectangle;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
 import java.io.Serializable;
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import javax.xml.bind.Unmarshaller;
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlElementWrapper;
 import javax.xml.bind.annotation.adapters.XmlAdapter;
@@ -40,29 +47,457 @@ import javax.xml.bind.annotation.adapters.XmlJavaTypeAdapter;
 /**
  * Stroke class
  *
+ * The points are held as interleaved x and y coordinates in a primitive
+ * array, optionally with a timestamp and a pressure value per point. In XML
+ * a stroke is written as base64 of its delta and varint encoding, see
+ * {@link #encode()}. Strokes in the former {@code "x,y"} point list format
+ * are still read and converted while unmarshalling.
+ *
  * @author Tobias Zimmermann <Tobias.Zimmermann@dfki.de>
  */
-public class Stroke implements Serializable {
+public class Stroke implements Serializable, Iterable<Point> {
 
     /**
      * serialVersionUID
      */
-    private static final long serialVersionUID = 5408416424492049610L;
+    private static final long serialVersionUID = 5408416424492049611L;
+    /**
+     * Encoding flag for timestamps
+     */
+    private static final int TIMES = 1;
+    /**
+     * Encoding flag for pressure values
+     */
+    private static final int PRESSURE = 2;
+    /**
+     * Interleaved x and y coordinates
+     */
+    private int[] coords;
     /**
-     * List of {@link Point}
+     * Timestamps in ms or {@code null}
+     */
+    private long[] times;
+    /**
+     * Pressure values or {@code null}
+     */
+    private int[] pressure;
+    /**
+     * Amount of points
+     */
+    private int size;
+    /**
+     * Points of the former {@code "x,y"} format, only set while unmarshalling
      */
     @XmlElementWrapper(name = "points")
     @XmlElement(name = "point")
     @XmlJavaTypeAdapter(PointAdapter.class)
-    public List<Point> points;
+    private List<Point> points;
+    /**
+     * Determines if the encoded points could not be decoded while
+     * unmarshalling
+     */
+    private transient boolean corrupt;
 
     /**
      * Creates a new {@link Stroke} instance.
      */
     public Stroke() {
-        points = new ArrayList<>();
+        coords = new int[16];
+    }
+
+    /**
+     * Returns the amount of points.
+     *
+     * @return amount of points
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Returns true if the {@link Stroke} has no points.
+     *
+     * @return true if empty
+     */
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the x coordinate of a point.
+     *
+     * @param index point index
+     * @return x coordinate
+     */
+    public synchronized int getX(int index) {
+        check(index);
+        return coords[2 * index];
+    }
+
+    /**
+     * Returns the y coordinate of a point.
+     *
+     * @param index point index
+     * @return y coordinate
+     */
+    public synchronized int getY(int index) {
+        check(index);
+        return coords[2 * index + 1];
+    }
+
+    /**
+     * Returns true if the points have timestamps or pressure values.
+     *
+     * @return true if timestamps or pressure values are held
+     */
+    public synchronized boolean hasTimes() {
+        return times != null || pressure != null;
+    }
+
+    /**
+     * Returns the timestamp of a point.
+     *
+     * @param index point index
+     * @return timestamp in ms or 0 if the point has none
+     */
+    public synchronized long getTime(int index) {
+        check(index);
+        return times == null ? 0 : times[index];
+    }
+
+    /**
+     * Returns the pressure of a point.
+     *
+     * @param index point index
+     * @return pressure or 0 if the point has none
+     */
+    public synchronized int getPressure(int index) {
+        check(index);
+        return pressure == null ? 0 : pressure[index];
+    }
+
+    /**
+     * Returns a point as new {@link Point}.
+     *
+     * @param index point index
+     * @return {@link Point}
+     */
+    public synchronized Point getPoint(int index) {
+        check(index);
+        return new Point(coords[2 * index], coords[2 * index + 1]);
+    }
+
+    /**
+     * Returns the bounding box of the points.
+     *
+     * @return {@link Rectangle} or {@code null} if the {@link Stroke} is empty
+     */
+    public synchronized Rectangle getBounds() {
+        if (size == 0) {
+            return null;
+        }
+        int minX = coords[0], maxX = coords[0];
+        int minY = coords[1], maxY = coords[1];
+        for (int i = 1; i < size; i++) {
+            minX = Math.min(minX, coords[2 * i]);
+            maxX = Math.max(maxX, coords[2 * i]);
+            minY = Math.min(minY, coords[2 * i + 1]);
+            maxY = Math.max(maxY, coords[2 * i + 1]);
+        }
+        return new Rectangle(minX, minY, maxX - minX, maxY - minY);
+    }
+
+    /**
+     * Adds a point.
+     *
+     * @param point {@link Point}
+     */
+    public void add(Point point) {
+        add(point.x, point.y);
+    }
+
+    /**
+     * Adds a point.
+     *
+     * @param x x coordinate
+     * @param y y coordinate
+     */
+    public synchronized void add(int x, int y) {
+        grow();
+        coords[2 * size] = x;
+        coords[2 * size + 1] = y;
+        size++;
+    }
+
+    /**
+     * Adds a point with timestamp and pressure.
+     *
+     * @param x x coordinate
+     * @param y y coordinate
+     * @param time timestamp in ms
+     * @param pressure pressure value
+     */
+    public synchronized void add(int x, int y, long time, int pressure) {
+        if (times == null) {
+            times = new long[coords.length / 2];
+        }
+        if (this.pressure == null) {
+            this.pressure = new int[coords.length / 2];
+        }
+        grow();
+        times[size] = time;
+        this.pressure[size] = pressure;
+        add(x, y);
+    }
+
+    /**
+     * Returns an {@link Iterator} which creates a {@link Point} per point.
+     *
+     * Note that loops over large strokes should prefer {@link #getX(int)} and
+     * {@link #getY(int)}.
+     *
+     * @return {@link Iterator} of {@link Point}
+     */
+    @Override
+    public Iterator<Point> iterator() {
+        final int[] snapshot;
+        final int count;
+        synchronized (this) {
+            snapshot = coords;
+            count = size;
+        }
+        return new Iterator<Point>() {
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                return index < count;
+            }
+
+            @Override
+            public Point next() {
+                if (index >= count) {
+                    throw new NoSuchElementException();
+                }
+                Point point = new Point(snapshot[2 * index],
+                        snapshot[2 * index + 1]);
+                index++;
+                return point;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Encodes the {@link Stroke}.
+     *
+     * Layout: {@code flags, count} followed by {@code dx, dy[, dt][, dp]}
+     * per point. Every value is a zig-zag varint, the deltas refer to the
+     * previous point.
+     *
+     * @return encoded {@link Stroke}
+     */
+    public synchronized byte[] encode() {
+        int flags = (times != null ? TIMES : 0)
+                | (pressure != null ? PRESSURE : 0);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(4 + size * 3);
+        writeVarint(out, flags);
+        writeVarint(out, size);
+        int x = 0, y = 0, p = 0;
+        long t = 0;
+        for (int i = 0; i < size; i++) {
+            writeVarint(out, zigzag(coords[2 * i] - x));
+            writeVarint(out, zigzag(coords[2 * i + 1] - y));
+            x = coords[2 * i];
+            y = coords[2 * i + 1];
+            if (times != null) {
+                writeVarint(out, zigzag(times[i] - t));
+                t = times[i];
+            }
+            if (pressure != null) {
+                writeVarint(out, zigzag(pressure[i] - p));
+                p = pressure[i];
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes a {@link Stroke} written by {@link #encode()}.
+     *
+     * @param data encoded {@link Stroke}
+     * @return {@link Stroke}
+     * @throws IOException if the data is truncated or corrupt
+     */
+    public static Stroke decode(byte[] data) throws IOException {
+        Stroke stroke = new Stroke();
+        stroke.read(data);
+        return stroke;
+    }
+
+    /**
+     * Replaces the points with the decoded points.
+     *
+     * Note that the points are only replaced if the whole data could be
+     * decoded.
+     *
+     * @param data encoded {@link Stroke}
+     * @throws IOException if the data is truncated or corrupt
+     */
+    private synchronized void read(byte[] data) throws IOException {
+        if (data == null) {
+            throw new IOException("Missing stroke data");
+        }
+        int[] position = new int[1];
+        int flags = (int) readVarint(data, position);
+        long count = readVarint(data, position);
+        // every point takes at least one byte per coordinate
+        if (count < 0 || count > (data.length - position[0]) / 2) {
+            throw new IOException("Invalid stroke size: " + count);
+        }
+        int size = (int) count;
+        int[] coords = new int[Math.max(16, 2 * size)];
+        long[] times = (flags & TIMES) != 0 ? new long[coords.length / 2] : null;
+        int[] pressure = (flags & PRESSURE) != 0 ? new int[coords.length / 2] : null;
+        int x = 0, y = 0, p = 0;
+        long t = 0;
+        for (int i = 0; i < size; i++) {
+            x += (int) unzigzag(readVarint(data, position));
+            y += (int) unzigzag(readVarint(data, position));
+            coords[2 * i] = x;
+            coords[2 * i + 1] = y;
+            if (times != null) {
+                t += unzigzag(readVarint(data, position));
+                times[i] = t;
+            }
+            if (pressure != null) {
+                p += (int) unzigzag(readVarint(data, position));
+                pressure[i] = p;
+            }
+        }
+        this.size = size;
+        this.coords = coords;
+        this.times = times;
+        this.pressure = pressure;
+    }
+
+    /**
+     * Returns the encoded points for JAXB, which writes them as base64.
+     *
+     * @return encoded {@link Stroke}
+     */
+    @XmlElement(name = "data")
+    private byte[] getData() {
+        return encode();
+    }
+
+    /**
+     * Sets the encoded points, used by JAXB. If the data is truncated or
+     * corrupt the {@link Stroke} is marked as corrupt, so {@link StrokeList}
+     * drops it and the rest of the document is still loaded.
+     *
+     * @param data encoded {@link Stroke}
+     */
+    private void setData(byte[] data) {
+        try {
+            read(data);
+        } catch (IOException e) {
+            corrupt = true;
+        }
+    }
+
+    /**
+     * Returns true if the encoded points of the {@link Stroke} could not be
+     * decoded while unmarshalling.
+     *
+     * @return true if corrupt
+     */
+    boolean isCorrupt() {
+        return corrupt;
+    }
+
+    /**
+     * Converts points of the former {@code "x,y"} format, called by JAXB.
+     *
+     * @param unmarshaller {@link Unmarshaller}
+     * @param parent parent object
+     */
+    private void afterUnmarshal(Unmarshaller unmarshaller, Object parent) {
+        if (points != null) {
+            for (Point point : points) {
+                add(point.x, point.y);
+            }
+            points = null;
+        }
+    }
+
+    /**
+     * Throws an {@link IndexOutOfBoundsException} for invalid indices.
+     *
+     * @param index point index
+     */
+    private void check(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index
+                    + ", Size: " + size);
+        }
+    }
+
+    /**
+     * Ensures the capacity for one more point.
+     */
+    private void grow() {
+        if (2 * size + 2 > coords.length) {
+            coords = Arrays.copyOf(coords, coords.length * 2);
+        }
+        if (times != null && size + 1 > times.length) {
+            times = Arrays.copyOf(times, coords.length / 2);
+        }
+        if (pressure != null && size + 1 > pressure.length) {
+            pressure = Arrays.copyOf(pressure, coords.length / 2);
+        }
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarint(byte[] data, int[] position)
+            throws IOException {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            if (position[0] >= data.length) {
+                throw new EOFException("Truncated stroke data");
+            }
+            if (shift > 63) {
+                throw new IOException("Malformed varint in stroke data");
+            }
+            b = data[position[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
     }
 }
+
 /**
  * Adapter for serialize {@link Point} objects.
  *
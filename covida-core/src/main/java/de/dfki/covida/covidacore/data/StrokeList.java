@@ -9,11 +9,15 @@ import java.awt.Polygon;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Iterator;
+import javax.xml.bind.Unmarshaller;
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlElementWrapper;
 import javax.xml.bind.annotation.XmlRootElement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  *
@@ -27,6 +31,10 @@ public class StrokeList implements Serializable {
      * serialVersionUID
      */
     private static final long serialVersionUID = 5408416424492049610L;
+    /**
+     * Logger
+     */
+    private static Logger log = LoggerFactory.getLogger(StrokeList.class);
     /**
      * List of {@link Point}
      */
@@ -37,4 +45,23 @@ public class StrokeList implements Serializable {
     public StrokeList(){
         strokelist = new ArrayList<>();
     }
+
+    /**
+     * Drops the {@link Stroke}s whose encoded points are corrupt, called by
+     * JAXB. Only the corrupt strokes are lost, not the whole document.
+     *
+     * @param unmarshaller {@link Unmarshaller}
+     * @param parent parent object
+     */
+    private void afterUnmarshal(Unmarshaller unmarshaller, Object parent) {
+        if (strokelist == null) {
+            return;
+        }
+        for (Iterator<Stroke> i = strokelist.iterator(); i.hasNext();) {
+            if (i.next().isCorrupt()) {
+                i.remove();
+                log.warn("Dropped stroke with corrupt data");
+            }
+        }
+    }
 }
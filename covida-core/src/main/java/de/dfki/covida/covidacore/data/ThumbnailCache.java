@@ -0,0 +1,393 @@
+/*
+ * ThumbnailCache.java
+ *
+ * Copyright (c) 2012, Tobias Zimmermann All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of
+ * conditions and the following disclaimer. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors may be used to endorse or
+ * promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package de.dfki.covida.covidacore.data;
+
+import java.awt.Graphics;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import javax.imageio.ImageIO;
+import javax.xml.bind.DatatypeConverter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Content addressed on disk cache of video thumbnails.
+ *
+ * Each thumbnail is stored as raw ARGB pixel tile in
+ * {@code ../covida-res/thumbs/<key>.tile}. The key is the SHA-1 of the video
+ * path, its modification time, its size and the thumbnail position, so a
+ * changed video gets new keys. {@link VideoMediaData} only keeps the keys,
+ * the tiles are memory mapped when a thumbnail is requested.
+ *
+ * @author Tobias Zimmermann <Tobias.Zimmermann@dfki.de>
+ */
+public class ThumbnailCache {
+
+    /**
+     * Logger
+     */
+    private static Logger log = LoggerFactory.getLogger(ThumbnailCache.class);
+    /**
+     * Magic number of a tile file, "CVTH"
+     */
+    private static final int MAGIC = 0x43565448;
+    /**
+     * Tile header size in bytes (magic, width, height)
+     */
+    private static final int HEADER = 12;
+    /**
+     * Format of a thumbnail key
+     */
+    private static final Pattern KEY = Pattern.compile("[0-9a-f]{40}");
+    /**
+     * Instance of {@link ThumbnailCache}
+     */
+    private static ThumbnailCache instance;
+    /**
+     * Directory of the tiles
+     */
+    private final File directory;
+    /**
+     * Loaded thumbnails by key
+     */
+    private final Map<String, SoftReference<BufferedImage>> loaded;
+
+    /**
+     * Private constructor of {@link ThumbnailCache}
+     */
+    private ThumbnailCache() {
+        directory = new File("../covida-res/thumbs");
+        loaded = new HashMap<>();
+    }
+
+    /**
+     * Returns the instance of {@link ThumbnailCache}
+     *
+     * @return {@link ThumbnailCache}
+     */
+    public static synchronized ThumbnailCache getInstance() {
+        if (instance == null) {
+            instance = new ThumbnailCache();
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the relative thumbnail positions for {@code count} thumbnails,
+     * evenly spread without the start and the end of the video.
+     *
+     * @param count amount of thumbnails
+     * @return positions between 0 and 1
+     */
+    public static float[] positions(int count) {
+        float[] positions = new float[count];
+        float step = (100.f / ((float) count + 1)) / 100.f;
+        float position = step;
+        for (int i = 0; i < count; i++) {
+            positions[i] = position;
+            position += step;
+        }
+        return positions;
+    }
+
+    /**
+     * Returns the key of the thumbnail at {@code position} of the video.
+     *
+     * @param source video path
+     * @param position relative position of the thumbnail
+     * @return key as {@link String}
+     */
+    public static String key(String source, float position) {
+        File file = new File(source);
+        String id = source + '|' + file.lastModified() + '|' + file.length()
+                + '|' + Float.floatToIntBits(position);
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(id.getBytes(StandardCharsets.UTF_8));
+            return DatatypeConverter.printHexBinary(hash).toLowerCase();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns the keys of all thumbnails of the video.
+     *
+     * @param source video path
+     * @param count amount of thumbnails
+     * @return {@link List} of keys
+     */
+    public static List<String> keys(String source, int count) {
+        List<String> keys = new ArrayList<>();
+        for (float position : positions(count)) {
+            keys.add(key(source, position));
+        }
+        return keys;
+    }
+
+    /**
+     * Returns true if {@code key} has the format of a thumbnail key.
+     *
+     * @param key {@link String}
+     * @return true if it is a key
+     */
+    public static boolean isKey(String key) {
+        return key != null && KEY.matcher(key).matches();
+    }
+
+    /**
+     * Returns true if the thumbnail is stored.
+     *
+     * @param key thumbnail key
+     * @return true if the tile exists
+     */
+    public boolean contains(String key) {
+        return isKey(key) && file(key).isFile();
+    }
+
+    /**
+     * Returns true if all thumbnails are stored.
+     *
+     * @param keys thumbnail keys
+     * @return true if all tiles exist
+     */
+    public boolean containsAll(List<String> keys) {
+        for (String key : keys) {
+            if (!contains(key)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if the thumbnails of the video were created for the
+     * current video file and thumbnail count and are all stored. The
+     * thumbnails may be a part of the {@link #keys(String, int)} if some
+     * positions could not be reached, so such a video is not processed
+     * again on every start.
+     *
+     * @param source video path
+     * @param count amount of thumbnails
+     * @param thumbs stored thumbnail keys of the video
+     * @return true if no thumbnails have to be created
+     */
+    public boolean isComplete(String source, int count, List<String> thumbs) {
+        if (thumbs == null || thumbs.isEmpty()) {
+            return count == 0;
+        }
+        return keys(source, count).containsAll(thumbs) && containsAll(thumbs);
+    }
+
+    /**
+     * Stores the thumbnail as tile.
+     *
+     * @param key thumbnail key
+     * @param image thumbnail
+     */
+    public void put(String key, Image image) {
+        BufferedImage tile = toArgb(image);
+        if (tile == null) {
+            return;
+        }
+        int width = tile.getWidth();
+        int height = tile.getHeight();
+        int[] pixels = tile.getRGB(0, 0, width, height, null, 0, width);
+        directory.mkdirs();
+        File file = file(key);
+        File tmp = new File(directory, key + ".tmp");
+        try (RandomAccessFile out = new RandomAccessFile(tmp, "rw")) {
+            out.setLength(0);
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER + pixels.length * 4);
+            buffer.putInt(MAGIC).putInt(width).putInt(height);
+            buffer.asIntBuffer().put(pixels);
+            out.getChannel().write(buffer);
+        } catch (IOException e) {
+            log.error("Could not write thumbnail " + key, e);
+            return;
+        }
+        if (!tmp.renameTo(file)) {
+            file.delete();
+            if (!tmp.renameTo(file)) {
+                log.error("Could not store thumbnail " + key);
+                return;
+            }
+        }
+        synchronized (loaded) {
+            loaded.put(key, new SoftReference<>(tile));
+        }
+    }
+
+    /**
+     * Returns the thumbnail, the tile is mapped on the first request.
+     *
+     * @param key thumbnail key
+     * @return {@link BufferedImage} or null if not stored
+     */
+    public BufferedImage get(String key) {
+        synchronized (loaded) {
+            SoftReference<BufferedImage> reference = loaded.get(key);
+            if (reference != null && reference.get() != null) {
+                return reference.get();
+            }
+        }
+        if (!contains(key)) {
+            return null;
+        }
+        BufferedImage image;
+        try (RandomAccessFile in = new RandomAccessFile(file(key), "r")) {
+            MappedByteBuffer buffer = in.getChannel().map(
+                    FileChannel.MapMode.READ_ONLY, 0, in.length());
+            if (buffer.remaining() < HEADER || buffer.getInt() != MAGIC) {
+                log.warn("Invalid thumbnail " + key);
+                return null;
+            }
+            int width = buffer.getInt();
+            int height = buffer.getInt();
+            IntBuffer pixels = buffer.asIntBuffer();
+            if (width < 1 || height < 1 || pixels.remaining() < width * height) {
+                log.warn("Truncated thumbnail " + key);
+                return null;
+            }
+            image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            int[] row = new int[width];
+            for (int y = 0; y < height; y++) {
+                pixels.get(row);
+                image.setRGB(0, y, width, 1, row, 0, width);
+            }
+        } catch (IOException e) {
+            log.error("Could not read thumbnail " + key, e);
+            return null;
+        }
+        synchronized (loaded) {
+            loaded.put(key, new SoftReference<>(image));
+        }
+        return image;
+    }
+
+    /**
+     * Returns all stored thumbnails of the keys.
+     *
+     * @param keys thumbnail keys
+     * @return {@link List} of {@link Image}
+     */
+    public List<Image> get(List<String> keys) {
+        List<Image> images = new ArrayList<>();
+        if (keys != null) {
+            for (String key : keys) {
+                BufferedImage image = get(key);
+                if (image != null) {
+                    images.add(image);
+                }
+            }
+        }
+        return images;
+    }
+
+    /**
+     * Moves thumbnails which were stored inline as base64 PNG in former
+     * configurations into the cache and replaces them with their keys.
+     *
+     * @param data {@link VideoMediaData}
+     * @return true if anything was migrated
+     */
+    boolean migrate(VideoMediaData data) {
+        if (data.thumbs == null || data.thumbs.isEmpty()) {
+            return false;
+        }
+        boolean migrated = false;
+        float[] positions = positions(data.thumbs.size());
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < data.thumbs.size(); i++) {
+            String thumb = data.thumbs.get(i);
+            if (isKey(thumb)) {
+                keys.add(thumb);
+                continue;
+            }
+            migrated = true;
+            try {
+                byte[] png = DatatypeConverter.parseBase64Binary(thumb.trim());
+                BufferedImage image = ImageIO.read(new ByteArrayInputStream(png));
+                if (image != null) {
+                    String key = key(data.videoSource, positions[i]);
+                    put(key, image);
+                    keys.add(key);
+                }
+            } catch (IOException | IllegalArgumentException e) {
+                log.warn("Could not migrate thumbnail of " + data.videoName, e);
+            }
+        }
+        data.thumbs = keys;
+        return migrated;
+    }
+
+    /**
+     * Returns the tile file of the key.
+     */
+    private File file(String key) {
+        return new File(directory, key + ".tile");
+    }
+
+    /**
+     * Converts the {@link Image} to an ARGB {@link BufferedImage}.
+     */
+    private static BufferedImage toArgb(Image image) {
+        if (image instanceof BufferedImage
+                && ((BufferedImage) image).getType() == BufferedImage.TYPE_INT_ARGB) {
+            return (BufferedImage) image;
+        }
+        int width = image.getWidth(null);
+        int height = image.getHeight(null);
+        if (width < 1 || height < 1) {
+            return null;
+        }
+        BufferedImage argb = new BufferedImage(width, height,
+                BufferedImage.TYPE_INT_ARGB);
+        Graphics g = argb.getGraphics();
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+        return argb;
+    }
+}
@@ -33,6 +33,7 @@ import java.util.List;
 import java.util.UUID;
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlElementWrapper;
+import javax.xml.bind.annotation.XmlTransient;
 
 /**
  * Video media data
@@ -85,11 +86,21 @@ public class VideoMediaData implements Serializable {
      */
     @XmlElement(name = "uuid")
     public UUID uuid;
-    
+
     /**
-     * UUID which is generated from the application
+     * Keys of the thumbnails in the {@link ThumbnailCache}
      */
     @XmlElementWrapper(name = "thumbs")
     @XmlElement(name = "thumb")
-    public List<Image> thumbs;
+    public List<String> thumbs;
+
+    /**
+     * Returns the thumbnails from the {@link ThumbnailCache}.
+     *
+     * @return {@link List} of {@link Image}
+     */
+    @XmlTransient
+    public List<Image> getThumbnails() {
+        return ThumbnailCache.getInstance().get(thumbs);
+    }
 }
@@ -0,0 +1,188 @@
+/*
+ * CorruptStrokeTest.java
+ *
+ * Copyright (c) 2012, Tobias Zimmermann All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of
+ * conditions and the following disclaimer. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors may be used to endorse or
+ * promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package de.dfki.covida.covidacore.data.test;
+
+import de.dfki.covida.covidacore.components.IVideoComponent;
+import de.dfki.covida.covidacore.data.Annotation;
+import de.dfki.covida.covidacore.data.AnnotationData;
+import de.dfki.covida.covidacore.data.Stroke;
+import de.dfki.covida.covidacore.data.StrokeList;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Loads an {@link AnnotationData} file with one corrupt stroke and checks
+ * that only that stroke is dropped, also after the snapshot was written
+ * again, and that a file which cannot be loaded at all is kept as
+ * {@code .xml.corrupt} instead of being overwritten.
+ *
+ * @author Tobias Zimmermann <Tobias.Zimmermann@dfki.de>
+ */
+public class CorruptStrokeTest {
+
+    /**
+     * Logger
+     */
+    private static Logger log = LoggerFactory.getLogger(CorruptStrokeTest.class);
+    private static final Pattern DATA = Pattern.compile("<data>[^<]*</data>");
+
+    /**
+     * @param args
+     */
+    public static void main(String[] args) throws Exception {
+        File dir = Files.createTempDirectory("covida").toFile();
+        final String source = new File(dir, "video.mp4").getPath();
+        IVideoComponent video = new IVideoComponent() {
+            private final UUID uuid = UUID.randomUUID();
+
+            @Override
+            public String getSource() {
+                return source;
+            }
+
+            @Override
+            public String getTitle() {
+                return "Corrupt Stroke Test";
+            }
+
+            @Override
+            public void load(Annotation annotation) {
+            }
+
+            @Override
+            public void create() {
+            }
+
+            @Override
+            public UUID getUUID() {
+                return uuid;
+            }
+        };
+        int failures = 0;
+        try {
+            failures += checkStroke(video);
+            failures += checkDocument(video);
+        } finally {
+            for (File file : dir.listFiles()) {
+                file.delete();
+            }
+            dir.delete();
+        }
+        log.info("Corrupt stroke check: {} failures", failures);
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Corrupts the second of three strokes in the snapshot.
+     */
+    private static int checkStroke(IVideoComponent video) throws IOException {
+        AnnotationData data = AnnotationData.load(video);
+        Annotation annotation = new Annotation();
+        annotation.description = "three strokes";
+        annotation.strokelist = new StrokeList();
+        for (int i = 0; i < 3; i++) {
+            Stroke stroke = new Stroke();
+            for (int j = 0; j < 20; j++) {
+                stroke.add(10 * i + j, 5 * j);
+            }
+            annotation.strokelist.strokelist.add(stroke);
+        }
+        data.save(annotation);
+        data.write();
+        data.close();
+        List<Stroke> strokes = annotation.strokelist.strokelist;
+
+        File file = new File(video.getSource() + ".xml");
+        String xml = new String(Files.readAllBytes(file.toPath()),
+                StandardCharsets.UTF_8);
+        Matcher matcher = DATA.matcher(xml);
+        if (!matcher.find() || !matcher.find()) {
+            log.error("No stroke data in {}", file);
+            return 1;
+        }
+        xml = xml.substring(0, matcher.start()) + "<data>gYCA</data>"
+                + xml.substring(matcher.end());
+        Files.write(file.toPath(), xml.getBytes(StandardCharsets.UTF_8));
+
+        int failures = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            data = AnnotationData.load(video);
+            Annotation loaded = data.getAnnotation(annotation.uuid);
+            if (loaded == null) {
+                log.error("Annotation lost in pass {}", pass);
+                failures++;
+                continue;
+            }
+            List<Stroke> survived = loaded.strokelist.strokelist;
+            if (survived.size() != 2
+                    || !Arrays.equals(survived.get(0).encode(),
+                    strokes.get(0).encode())
+                    || !Arrays.equals(survived.get(1).encode(),
+                    strokes.get(2).encode())) {
+                log.error("Pass {}: {} strokes survived instead of 2", pass,
+                        survived.size());
+                failures++;
+            }
+            // the second pass loads the snapshot written without the stroke
+            data.write();
+            data.close();
+        }
+        return failures;
+    }
+
+    /**
+     * Replaces the snapshot with a document which cannot be parsed.
+     */
+    private static int checkDocument(IVideoComponent video) throws IOException {
+        File file = new File(video.getSource() + ".xml");
+        File corrupt = new File(video.getSource() + ".xml.corrupt");
+        byte[] garbage = "<data><annotations><annot".getBytes(
+                StandardCharsets.UTF_8);
+        Files.write(file.toPath(), garbage);
+        AnnotationData data = AnnotationData.load(video);
+        data.write();
+        data.close();
+        if (!corrupt.exists() || !Arrays.equals(garbage,
+                Files.readAllBytes(corrupt.toPath()))) {
+            log.error("Corrupt data file was not kept");
+            return 1;
+        }
+        return 0;
+    }
+}
@@ -40,7 +40,6 @@ import de.dfki.covida.covidacore.data.Stroke;
 import de.dfki.covida.covidacore.data.StrokeList;
 import de.dfki.touchandwrite.shape.ShapeType;
 import java.awt.Graphics2D;
-import java.awt.Point;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.io.File;
@@ -82,15 +81,15 @@ public class DataTest {
             annotation.strokelist = new StrokeList();
             StrokeList shapes = new StrokeList();
             Stroke shape = new Stroke();
-            shape.points.add(new Point(24, 30));
-            shape.points.add(new Point(98, 32));
-            shape.points.add(new Point(100, 121));
-            shape.points.add(new Point(22, 119));
-            shape.points.add(new Point(24, 30));
+            shape.add(24, 30);
+            shape.add(98, 32);
+            shape.add(100, 121);
+            shape.add(22, 119);
+            shape.add(24, 30);
             shapes.strokelist.add(shape);
             shape = new Stroke();
-            shape.points.add(new Point(333, 30));
-            shape.points.add(new Point(2, 32));
+            shape.add(333, 30);
+            shape.add(2, 32);
             shapes.strokelist.add(shape);
             annotation.strokelist = shapes;
             annotation.shapeType = ShapeType.POLYGON;
@@ -0,0 +1,147 @@
+/*
+ * FuzzySearchBenchmark.java
+ *
+ * Copyright (c) 2012, Tobias Zimmermann All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of
+ * conditions and the following disclaimer. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors may be used to endorse or
+ * promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package de.dfki.covida.covidacore.data.test;
+
+import de.dfki.covida.covidacore.utils.AnnotationSearch;
+import de.dfki.covida.covidacore.utils.BKTree;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Benchmark of the fuzzy annotation search which compares the linear
+ * Levenshtein scan over all tokens with the {@link BKTree} lookup.
+ *
+ * @author Tobias Zimmermann <Tobias.Zimmermann@dfki.de>
+ */
+public class FuzzySearchBenchmark {
+
+    /**
+     * Logger
+     */
+    private static Logger log = LoggerFactory.getLogger(FuzzySearchBenchmark.class);
+    /**
+     * Vocabulary sizes to benchmark
+     */
+    private static final int[] SIZES = {10000, 100000};
+    /**
+     * Amount of queries per run
+     */
+    private static final int QUERIES = 200;
+    /**
+     * Amount of warm up runs
+     */
+    private static final int WARMUP = 3;
+
+    /**
+     * @param args
+     */
+    public static void main(String[] args) {
+        Random random = new Random(42);
+        for (int size : SIZES) {
+            List<String> vocabulary = new ArrayList<>();
+            BKTree tree = new BKTree();
+            while (tree.size() < size) {
+                String word = randomWord(random);
+                if (tree.add(word)) {
+                    vocabulary.add(word);
+                }
+            }
+            List<String> queries = new ArrayList<>();
+            for (int i = 0; i < QUERIES; i++) {
+                queries.add(mutate(vocabulary.get(random.nextInt(size)), random));
+            }
+            long linear = 0;
+            long bktree = 0;
+            int linearHits = 0;
+            int bktreeHits = 0;
+            for (int run = 0; run <= WARMUP; run++) {
+                long start = System.nanoTime();
+                linearHits = linear(vocabulary, queries);
+                linear = System.nanoTime() - start;
+                start = System.nanoTime();
+                bktreeHits = bktree(tree, queries);
+                bktree = System.nanoTime() - start;
+            }
+            log.info("{} tokens: linear {} us/query ({} hits), bk-tree {} us/query ({} hits)",
+                    new Object[]{size, linear / 1000 / QUERIES, linearHits,
+                        bktree / 1000 / QUERIES, bktreeHits});
+        }
+    }
+
+    /**
+     * Linear Levenshtein scan as done by the former search implementation.
+     */
+    private static int linear(List<String> vocabulary, List<String> queries) {
+        int hits = 0;
+        for (String query : queries) {
+            for (String word : vocabulary) {
+                if (StringUtils.getLevenshteinDistance(query, word)
+                        < AnnotationSearch.MAX_DISTANCE) {
+                    hits++;
+                }
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * {@link BKTree} lookup.
+     */
+    private static int bktree(BKTree tree, List<String> queries) {
+        int hits = 0;
+        for (String query : queries) {
+            hits += tree.search(query, AnnotationSearch.MAX_DISTANCE - 1).size();
+        }
+        return hits;
+    }
+
+    /**
+     * Creates a random lower case word with 3 to 12 characters.
+     */
+    private static String randomWord(Random random) {
+        int length = 3 + random.nextInt(10);
+        StringBuilder word = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            word.append((char) ('a' + random.nextInt(26)));
+        }
+        return word.toString();
+    }
+
+    /**
+     * Replaces one character of the word to simulate a handwriting error.
+     */
+    private static String mutate(String word, Random random) {
+        char[] chars = word.toCharArray();
+        chars[random.nextInt(chars.length)] = (char) ('a' + random.nextInt(26));
+        return new String(chars);
+    }
+}
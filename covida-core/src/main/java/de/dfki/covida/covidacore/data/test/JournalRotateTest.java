@@ -0,0 +1,157 @@
+/*
+ * JournalRotateTest.java
+ *
+ * Copyright (c) 2012, Tobias Zimmermann All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of
+ * conditions and the following disclaimer. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors may be used to endorse or
+ * promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package de.dfki.covida.covidacore.data.test;
+
+import de.dfki.covida.covidacore.components.IVideoComponent;
+import de.dfki.covida.covidacore.data.Annotation;
+import de.dfki.covida.covidacore.data.AnnotationData;
+import de.dfki.covida.covidacore.data.StrokeList;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.UUID;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Rotates journals with a torn tail and checks that the records appended
+ * after the torn record are still replayed.
+ *
+ * The snapshot write is made to fail by a directory in place of its
+ * temporary file, so the rotated journal is kept like after a crash during
+ * the compaction.
+ *
+ * @author Tobias Zimmermann <Tobias.Zimmermann@dfki.de>
+ */
+public class JournalRotateTest {
+
+    /**
+     * Logger
+     */
+    private static Logger log = LoggerFactory.getLogger(JournalRotateTest.class);
+
+    /**
+     * @param args
+     */
+    public static void main(String[] args) throws Exception {
+        File dir = Files.createTempDirectory("covida").toFile();
+        final String source = new File(dir, "video.mp4").getPath();
+        final UUID uuid = UUID.randomUUID();
+        IVideoComponent video = new IVideoComponent() {
+            @Override
+            public String getSource() {
+                return source;
+            }
+
+            @Override
+            public String getTitle() {
+                return "Journal Rotate Test";
+            }
+
+            @Override
+            public void load(Annotation annotation) {
+            }
+
+            @Override
+            public void create() {
+            }
+
+            @Override
+            public UUID getUUID() {
+                return uuid;
+            }
+        };
+        File journal = new File(source + ".journal");
+        File rotated = new File(source + ".journal.old");
+        File tmp = new File(source + ".xml.tmp");
+        int failures = 0;
+        try {
+            AnnotationData data = AnnotationData.load(video);
+            save(data, "first");
+            save(data, "second");
+            data.close();
+            tear(journal);
+
+            // the torn journal is rotated, the snapshot is not written
+            tmp.mkdir();
+            data = AnnotationData.load(video);
+            data.write();
+            save(data, "third");
+            data.close();
+            tear(rotated);
+
+            // the rotated journal is torn too, the journal is appended to it
+            data = AnnotationData.load(video);
+            save(data, "fourth");
+            data.write();
+            data.close();
+            if (!rotated.exists() || journal.exists()) {
+                log.error("Journal was not rotated");
+                failures++;
+            }
+
+            tmp.delete();
+            data = AnnotationData.load(video);
+            if (data.size() != 4) {
+                log.error("{} of 4 annotations replayed", data.size());
+                failures++;
+            }
+            data.close();
+        } finally {
+            tmp.delete();
+            for (File file : dir.listFiles()) {
+                file.delete();
+            }
+            dir.delete();
+        }
+        log.info("Journal rotate check: {} failures", failures);
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Saves a new {@link Annotation}.
+     */
+    private static void save(AnnotationData data, String description) {
+        Annotation annotation = new Annotation();
+        annotation.description = description;
+        annotation.strokelist = new StrokeList();
+        data.save(annotation);
+    }
+
+    /**
+     * Appends the beginning of a record, like a write which was cut off.
+     */
+    private static void tear(File journal) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(journal, true)) {
+            out.write(new byte[]{1, 0x12, 0x34, 0x56});
+        }
+    }
+}
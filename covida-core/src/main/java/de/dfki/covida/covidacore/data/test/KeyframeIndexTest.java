@@ -0,0 +1,299 @@
+/*
+ * KeyframeIndexTest.java
+ *
+ * Copyright (c) 2012, Tobias Zimmermann All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of
+ * conditions and the following disclaimer. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors may be used to endorse or
+ * promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package de.dfki.covida.covidacore.data.test;
+
+import de.dfki.covida.covidacore.data.KeyframeIndex;
+import de.dfki.covida.covidacore.data.KeyframeIndexWriter;
+import de.dfki.covida.covidacore.utils.KeyframeScanner;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Checks the {@link KeyframeScanner} on generated mp4 and flv files, the
+ * {@link KeyframeIndexWriter} round trip including the detection of
+ * outdated index files, and the lookups of the {@link KeyframeIndex}
+ * against a linear scan.
+ *
+ * Videos given as arguments are scanned as well and their keyframes are
+ * logged.
+ *
+ * @author Tobias Zimmermann <Tobias.Zimmermann@dfki.de>
+ */
+public class KeyframeIndexTest {
+
+    /**
+     * Logger
+     */
+    private static Logger log = LoggerFactory.getLogger(KeyframeIndexTest.class);
+    /**
+     * Amount of frames of the generated videos, 25 fps
+     */
+    private static final int FRAMES = 1500;
+    /**
+     * Keyframe interval in frames
+     */
+    private static final int GOP = 50;
+
+    /**
+     * @param args optional video files
+     * @throws Exception
+     */
+    public static void main(String[] args) throws Exception {
+        int failures = 0;
+        long[] expected = new long[FRAMES / GOP];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = i * GOP * 40L;
+        }
+        File mp4 = File.createTempFile("keyframes", ".mp4");
+        File flv = File.createTempFile("keyframes", ".flv");
+        try {
+            write(mp4, mp4());
+            write(flv, flv());
+            failures += check("mp4", expected, KeyframeScanner.scan(mp4));
+            failures += check("flv", expected, KeyframeScanner.scan(flv));
+            failures += checkWriter(mp4, expected);
+        } finally {
+            mp4.delete();
+            flv.delete();
+            KeyframeIndex.file(mp4.getPath()).delete();
+        }
+        failures += checkLookups(new Random(42));
+        log.info("Keyframe index check: {} failures", failures);
+        for (String arg : args) {
+            long start = System.currentTimeMillis();
+            long[] keyframes = KeyframeScanner.scan(new File(arg));
+            log.info("{}: {} in {} ms", new Object[]{arg, keyframes == null
+                        ? "not supported" : keyframes.length + " keyframes",
+                        System.currentTimeMillis() - start});
+        }
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static int check(String name, long[] expected, long[] actual) {
+        if (!Arrays.equals(expected, actual)) {
+            log.error("{} keyframes differ: {}", name, actual == null ? null
+                    : actual.length + " keyframes");
+            return 1;
+        }
+        return 0;
+    }
+
+    /**
+     * Writes, loads and invalidates the index of the video.
+     */
+    private static int checkWriter(File video, long[] expected) {
+        int failures = 0;
+        String source = video.getPath();
+        if (KeyframeIndex.load(source) != null) {
+            log.error("Index loaded before it was written");
+            failures++;
+        }
+        KeyframeIndexWriter.write(source);
+        KeyframeIndex index = KeyframeIndex.load(source);
+        if (index == null || index.size() != expected.length) {
+            log.error("Written index not loaded");
+            return failures + 1;
+        }
+        if (!video.setLastModified(video.lastModified() - 10000)) {
+            log.warn("Could not change modification time of {}", source);
+        } else if (KeyframeIndex.load(source) != null) {
+            log.error("Outdated index loaded");
+            failures++;
+        } else if (KeyframeIndexWriter.write(source) == null
+                || KeyframeIndex.load(source) == null) {
+            log.error("Outdated index not rebuilt");
+            failures++;
+        }
+        return failures;
+    }
+
+    /**
+     * Compares floor and nearest with a linear scan.
+     */
+    private static int checkLookups(Random random) {
+        int failures = 0;
+        for (int n = 0; n < 200; n++) {
+            long[] times = new long[random.nextInt(50)];
+            long time = 0;
+            for (int i = 0; i < times.length; i++) {
+                time += 1 + random.nextInt(5000);
+                times[i] = time;
+            }
+            KeyframeIndex index = new KeyframeIndex(times);
+            for (int q = 0; q < 100; q++) {
+                long t = random.nextInt((int) time + 10000) - 5000;
+                long floor = t;
+                long nearest = t;
+                long distance = Long.MAX_VALUE;
+                for (long keyframe : times) {
+                    if (keyframe <= t) {
+                        floor = keyframe;
+                    }
+                    if (Math.abs(keyframe - t) < distance) {
+                        distance = Math.abs(keyframe - t);
+                        nearest = keyframe;
+                    }
+                }
+                if (index.floor(t) != floor || index.nearest(t) != nearest) {
+                    log.error("Lookup of {} failed", t);
+                    failures++;
+                }
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Generates an mp4 file with one video track at 25 fps, a time scale of
+     * 90 kHz, a B-frame composition offset of two frames and an edit list
+     * which skips that offset.
+     */
+    private static byte[] mp4() throws IOException {
+        int delta = 3600;
+        ByteArrayOutputStream stts = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(stts);
+        out.writeInt(0);
+        out.writeInt(1);
+        out.writeInt(FRAMES);
+        out.writeInt(delta);
+        ByteArrayOutputStream stss = new ByteArrayOutputStream();
+        out = new DataOutputStream(stss);
+        out.writeInt(0);
+        out.writeInt(FRAMES / GOP);
+        for (int i = 0; i < FRAMES / GOP; i++) {
+            out.writeInt(i * GOP + 1);
+        }
+        ByteArrayOutputStream ctts = new ByteArrayOutputStream();
+        out = new DataOutputStream(ctts);
+        out.writeInt(0);
+        out.writeInt(1);
+        out.writeInt(FRAMES);
+        out.writeInt(2 * delta);
+        ByteArrayOutputStream elst = new ByteArrayOutputStream();
+        out = new DataOutputStream(elst);
+        out.writeInt(0);
+        out.writeInt(1);
+        out.writeInt(FRAMES * delta);
+        out.writeInt(2 * delta);
+        out.writeInt(0x10000);
+        ByteArrayOutputStream mdhd = new ByteArrayOutputStream();
+        out = new DataOutputStream(mdhd);
+        out.writeInt(0);
+        out.writeInt(0);
+        out.writeInt(0);
+        out.writeInt(90000);
+        out.writeInt(FRAMES * delta);
+        out.writeInt(0);
+        ByteArrayOutputStream hdlr = new ByteArrayOutputStream();
+        out = new DataOutputStream(hdlr);
+        out.writeInt(0);
+        out.writeInt(0);
+        out.writeBytes("vide");
+        out.write(new byte[13]);
+        byte[] stbl = box("stbl", box("stsd", new byte[8]),
+                box("stts", stts.toByteArray()), box("ctts", ctts.toByteArray()),
+                box("stss", stss.toByteArray()));
+        byte[] mdia = box("mdia", box("mdhd", mdhd.toByteArray()),
+                box("hdlr", hdlr.toByteArray()), box("minf", stbl));
+        byte[] trak = box("trak", box("tkhd", new byte[84]),
+                box("edts", box("elst", elst.toByteArray())), mdia);
+        // moov after mdat, as written by most encoders
+        return concat(box("ftyp", "isom\0\0\0\0isom".getBytes("ISO-8859-1")),
+                box("mdat", new byte[4096]),
+                box("moov", box("mvhd", new byte[100]), trak));
+    }
+
+    /**
+     * Generates an flv file with an AVC sequence header, 25 fps video tags
+     * and audio tags in between.
+     */
+    private static byte[] flv() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeBytes("FLV");
+        out.writeByte(1);
+        out.writeByte(5);
+        out.writeInt(9);
+        out.writeInt(0);
+        tag(out, 9, 0, new byte[]{0x17, 0, 0, 0, 0});
+        for (int i = 0; i < FRAMES; i++) {
+            int frameType = i % GOP == 0 ? 0x10 : 0x20;
+            tag(out, 9, i * 40, new byte[]{(byte) (frameType | 7), 1, 0, 0, 0, 42});
+            tag(out, 8, i * 40, new byte[]{(byte) 0xaf, 1, 42});
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void tag(DataOutputStream out, int type, int time,
+            byte[] data) throws IOException {
+        out.writeByte(type);
+        out.writeByte(data.length >> 16);
+        out.writeShort(data.length);
+        out.writeByte(time >> 16);
+        out.writeShort(time);
+        out.writeByte(time >> 24);
+        out.writeByte(0);
+        out.writeShort(0);
+        out.write(data);
+        out.writeInt(11 + data.length);
+    }
+
+    private static byte[] box(String type, byte[]... children)
+            throws IOException {
+        byte[] payload = concat(children);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(8 + payload.length);
+        out.writeBytes(type);
+        out.write(payload);
+        return bytes.toByteArray();
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            bytes.write(part, 0, part.length);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void write(File file, byte[] data) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(data);
+        }
+    }
+}
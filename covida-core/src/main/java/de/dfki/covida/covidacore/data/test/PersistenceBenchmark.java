@@ -0,0 +1,131 @@
+/*
+ * PersistenceBenchmark.java
+ *
+ * Copyright (c) 2012, Tobias Zimmermann All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of
+ * conditions and the following disclaimer. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors may be used to endorse or
+ * promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package de.dfki.covida.covidacore.data.test;
+
+import de.dfki.covida.covidacore.data.Annotation;
+import de.dfki.covida.covidacore.data.CovidaConfiguration;
+import de.dfki.covida.covidacore.data.JAXBRegistry;
+import de.dfki.covida.covidacore.data.Stroke;
+import de.dfki.covida.covidacore.data.StrokeList;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Calendar;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Benchmark of the save and load latency of the XML persistence with a new
+ * {@link JAXBContext} per call compared to the {@link JAXBRegistry}.
+ *
+ * @author Tobias Zimmermann <Tobias.Zimmermann@dfki.de>
+ */
+public class PersistenceBenchmark {
+
+    /**
+     * Logger
+     */
+    private static Logger log = LoggerFactory.getLogger(PersistenceBenchmark.class);
+    /**
+     * Amount of measured save / load round trips
+     */
+    private static final int ITERATIONS = 200;
+
+    /**
+     * @param args
+     * @throws JAXBException
+     */
+    public static void main(String[] args) throws JAXBException {
+        Annotation annotation = new Annotation();
+        annotation.description = "Persistence Benchmark DFKI";
+        annotation.time_start = 1000L;
+        annotation.time_end = 2000L;
+        annotation.creator = "covida";
+        annotation.date = Calendar.getInstance().getTime();
+        annotation.strokelist = new StrokeList();
+        Stroke stroke = new Stroke();
+        for (int i = 0; i < 100; i++) {
+            stroke.add(i, 2 * i);
+        }
+        annotation.strokelist.strokelist.add(stroke);
+        run("Annotation", annotation);
+        run("CovidaConfiguration", CovidaConfiguration.getInstance());
+    }
+
+    /**
+     * Measures save / load round trips of the given object.
+     *
+     * @param name name for the log output
+     * @param object object to marshal
+     * @throws JAXBException
+     */
+    private static void run(String name, Object object) throws JAXBException {
+        // warm up class loading and JIT for both variants
+        uncached(object, ITERATIONS / 10);
+        cached(object, ITERATIONS / 10);
+        long uncached = uncached(object, ITERATIONS);
+        long cached = cached(object, ITERATIONS);
+        log.info("{}: new context {} us/round trip, registry {} us/round trip",
+                new Object[]{name, uncached / 1000 / ITERATIONS,
+                    cached / 1000 / ITERATIONS});
+    }
+
+    /**
+     * Save / load round trips with a new {@link JAXBContext} each time.
+     */
+    private static long uncached(Object object, int iterations) throws JAXBException {
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            JAXBContext jc = JAXBContext.newInstance(object.getClass());
+            Marshaller m = jc.createMarshaller();
+            m.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            m.marshal(object, out);
+            jc = JAXBContext.newInstance(object.getClass());
+            jc.createUnmarshaller().unmarshal(
+                    new ByteArrayInputStream(out.toByteArray()));
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Save / load round trips through the {@link JAXBRegistry}.
+     */
+    private static long cached(Object object, int iterations) throws JAXBException {
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            JAXBRegistry registry = JAXBRegistry.get(object.getClass());
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            registry.marshal(object, out);
+            registry.unmarshal(new ByteArrayInputStream(out.toByteArray()));
+        }
+        return System.nanoTime() - start;
+    }
+}
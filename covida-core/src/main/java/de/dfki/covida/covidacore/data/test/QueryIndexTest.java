@@ -0,0 +1,215 @@
+/*
+ * QueryIndexTest.java
+ *
+ * Copyright (c) 2012, Tobias Zimmermann All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of
+ * conditions and the following disclaimer. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors may be used to endorse or
+ * promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package de.dfki.covida.covidacore.data.test;
+
+import de.dfki.covida.covidacore.utils.IntervalTree;
+import de.dfki.covida.covidacore.utils.RTree;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Checks the {@link IntervalTree} and the {@link RTree} against a linear scan
+ * with random inserts, removes and queries, and measures the query time on a
+ * large index.
+ *
+ * @author Tobias Zimmermann <Tobias.Zimmermann@dfki.de>
+ */
+public class QueryIndexTest {
+
+    /**
+     * Logger
+     */
+    private static Logger log = LoggerFactory.getLogger(QueryIndexTest.class);
+    /**
+     * Amount of random steps of the comparison
+     */
+    private static final int STEPS = 40000;
+    /**
+     * Amount of entries of the timed index
+     */
+    private static final int ENTRIES = 200000;
+    /**
+     * Amount of timed queries
+     */
+    private static final int QUERIES = 20000;
+
+    /**
+     * @param args
+     */
+    public static void main(String[] args) {
+        Random random = new Random(42);
+        int failures = checkIntervalTree(random) + checkRTree(random);
+        log.info("Query index check: {} failures", failures);
+        measure(random);
+    }
+
+    /**
+     * Compares the {@link IntervalTree} with a linear scan.
+     *
+     * @return amount of failures
+     */
+    private static int checkIntervalTree(Random random) {
+        IntervalTree<Integer> tree = new IntervalTree<>();
+        List<long[]> intervals = new ArrayList<>();
+        int failures = 0;
+        int next = 0;
+        for (int step = 0; step < STEPS; step++) {
+            int op = random.nextInt(4);
+            if (op == 0 && !intervals.isEmpty()) {
+                long[] interval = intervals.remove(random.nextInt(intervals.size()));
+                if (!tree.remove(interval[0], (int) interval[2])) {
+                    failures++;
+                    log.error("IntervalTree: interval {} not removed", interval[2]);
+                }
+            } else if (op == 1) {
+                long start = random.nextInt(100000);
+                long end = start + random.nextInt(2000);
+                long[] interval = new long[]{start, end, next++};
+                intervals.add(interval);
+                tree.add(start, end, (int) interval[2]);
+            } else {
+                long from = random.nextInt(100000);
+                long to = from + random.nextInt(5000);
+                List<Integer> expected = new ArrayList<>();
+                for (long[] interval : intervals) {
+                    if (interval[0] <= to && interval[1] >= from) {
+                        expected.add((int) interval[2]);
+                    }
+                }
+                List<Integer> actual = tree.overlapping(from, to);
+                Collections.sort(expected);
+                Collections.sort(actual);
+                if (!expected.equals(actual)) {
+                    failures++;
+                    log.error("IntervalTree: [{}, {}] returned {} instead of {}",
+                            new Object[]{from, to, actual.size(), expected.size()});
+                }
+            }
+            if (tree.size() != intervals.size()) {
+                failures++;
+                log.error("IntervalTree: size {} instead of {}", tree.size(),
+                        intervals.size());
+                break;
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Compares the {@link RTree} with a linear scan.
+     *
+     * @return amount of failures
+     */
+    private static int checkRTree(Random random) {
+        RTree<Integer> tree = new RTree<>();
+        List<Rectangle> boxes = new ArrayList<>();
+        List<Integer> values = new ArrayList<>();
+        int failures = 0;
+        int next = 0;
+        for (int step = 0; step < STEPS; step++) {
+            int op = random.nextInt(4);
+            if (op == 0 && !boxes.isEmpty()) {
+                int index = random.nextInt(boxes.size());
+                Rectangle box = boxes.remove(index);
+                Integer value = values.remove(index);
+                if (!tree.remove(box, value)) {
+                    failures++;
+                    log.error("RTree: entry {} not removed", value);
+                }
+            } else if (op == 1) {
+                // zero width and height boxes as of straight strokes
+                Rectangle box = new Rectangle(random.nextInt(2000),
+                        random.nextInt(2000), random.nextInt(4) * 20,
+                        random.nextInt(4) * 20);
+                boxes.add(box);
+                values.add(next);
+                tree.add(box, next++);
+            } else {
+                Rectangle region = new Rectangle(random.nextInt(2000),
+                        random.nextInt(2000), random.nextInt(200),
+                        random.nextInt(200));
+                List<Integer> expected = new ArrayList<>();
+                for (int i = 0; i < boxes.size(); i++) {
+                    Rectangle box = boxes.get(i);
+                    if (box.x <= region.x + region.width
+                            && region.x <= box.x + box.width
+                            && box.y <= region.y + region.height
+                            && region.y <= box.y + box.height) {
+                        expected.add(values.get(i));
+                    }
+                }
+                List<Integer> actual = tree.intersecting(region);
+                Collections.sort(expected);
+                Collections.sort(actual);
+                if (!expected.equals(actual)) {
+                    failures++;
+                    log.error("RTree: {} returned {} instead of {}",
+                            new Object[]{region, actual.size(), expected.size()});
+                }
+            }
+            if (tree.size() != boxes.size()) {
+                failures++;
+                log.error("RTree: size {} instead of {}", tree.size(),
+                        boxes.size());
+                break;
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Measures interval and region queries on {@link #ENTRIES} entries.
+     */
+    private static void measure(Random random) {
+        IntervalTree<Integer> intervals = new IntervalTree<>();
+        RTree<Integer> boxes = new RTree<>();
+        for (int i = 0; i < ENTRIES; i++) {
+            long start = random.nextInt(10000000);
+            intervals.add(start, start + random.nextInt(10000), i);
+            boxes.add(new Rectangle(random.nextInt(20000), random.nextInt(20000),
+                    random.nextInt(100), random.nextInt(100)), i);
+        }
+        long results = 0;
+        long time = System.nanoTime();
+        for (int i = 0; i < QUERIES; i++) {
+            long from = random.nextInt(10000000);
+            results += intervals.overlapping(from, from + 1000).size();
+            results += boxes.intersecting(new Rectangle(random.nextInt(20000),
+                    random.nextInt(20000), 200, 200)).size();
+        }
+        time = System.nanoTime() - time;
+        log.info("{} interval and region queries on {} entries: {} ms, {}"
+                + " results", new Object[]{QUERIES, ENTRIES, time / 1000000,
+                    results});
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * StreamingTest.java
+ *
+ * Copyright (c) 2012, Tobias Zimmermann All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of
+ * conditions and the following disclaimer. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors may be used to endorse or
+ * promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package de.dfki.covida.covidacore.data.test;
+
+import de.dfki.covida.covidacore.streaming.TCPServer;
+import java.awt.Dimension;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Streams synthetic frames through the {@link TCPServer} to a fast and a
+ * slow client and checks that both reconstruct the last frame, that the
+ * slow client does not block the producer and how much the tile encoding
+ * saves compared to raw frames.
+ *
+ * @author Tobias Zimmermann <Tobias.Zimmermann@dfki.de>
+ */
+public class StreamingTest {
+
+    /**
+     * Logger
+     */
+    private static Logger log = LoggerFactory.getLogger(StreamingTest.class);
+    private static final int WIDTH = 1280;
+    private static final int HEIGHT = 800;
+    private static final int DEPTH = 3;
+    private static final int FRAMES = 300;
+
+    /**
+     * @param args
+     */
+    public static void main(String[] args) throws Exception {
+        TCPServer server = TCPServer.getInstance();
+        server.setScreenSize(new Dimension(WIDTH, HEIGHT));
+        server.start();
+        Thread.sleep(200);
+        Receiver fast = new Receiver(0);
+        Receiver slow = new Receiver(2000);
+        fast.start();
+        slow.start();
+        Thread.sleep(200);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(WIDTH * HEIGHT * DEPTH);
+        byte[] frame = new byte[WIDTH * HEIGHT * DEPTH];
+        long maxWrite = 0;
+        for (int i = 0; i < FRAMES; i++) {
+            paint(frame, i);
+            buffer.clear();
+            buffer.put(frame);
+            long start = System.nanoTime();
+            server.writeByteBuffer(buffer, WIDTH, HEIGHT, DEPTH);
+            maxWrite = Math.max(maxWrite, System.nanoTime() - start);
+            Thread.sleep(10);
+        }
+        Thread.sleep(3000);
+        // the same frame again, only clients which dropped frames get a keyframe
+        buffer.clear();
+        buffer.put(frame);
+        server.writeByteBuffer(buffer, WIDTH, HEIGHT, DEPTH);
+        Thread.sleep(1000);
+        log.info("max writeByteBuffer time: {} ms", maxWrite / 1e6);
+        for (Receiver receiver : new Receiver[]{fast, slow}) {
+            log.info("{} ms delayed client: {} frames ({} keyframes), {} KiB"
+                    + " instead of {} KiB raw, last frame {}", receiver.delay,
+                    receiver.frames, receiver.keyframes, receiver.bytes / 1024,
+                    (long) receiver.frames * frame.length / 1024,
+                    Arrays.equals(frame, receiver.image) ? "ok" : "DIFFERS");
+        }
+    }
+
+    /**
+     * Paints a static background with a moving box and a counter area.
+     */
+    private static void paint(byte[] frame, int index) {
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int i = (y * WIDTH + x) * DEPTH;
+                frame[i] = (byte) (x / 5);
+                frame[i + 1] = (byte) (y / 4);
+                frame[i + 2] = (byte) ((x ^ y) & 0x3f);
+            }
+        }
+        int bx = (index * 7) % (WIDTH - 100);
+        int by = (index * 3) % (HEIGHT - 100);
+        for (int y = by; y < by + 100; y++) {
+            for (int x = bx; x < bx + 100; x++) {
+                int i = (y * WIDTH + x) * DEPTH;
+                frame[i] = (byte) index;
+                frame[i + 1] = (byte) 0xff;
+                frame[i + 2] = 0;
+            }
+        }
+        for (int x = 0; x < 40; x++) {
+            frame[x * DEPTH] = (byte) (index + x);
+        }
+    }
+
+    /**
+     * Client which decodes the stream into an image.
+     */
+    private static class Receiver extends Thread {
+
+        final long delay;
+        byte[] image;
+        volatile int frames;
+        volatile int keyframes;
+        volatile long bytes;
+
+        Receiver(long delay) {
+            this.delay = delay;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try (Socket socket = new Socket("localhost", 1500)) {
+                socket.setReceiveBufferSize(64 * 1024);
+                DataInputStream in = new DataInputStream(socket.getInputStream());
+                Thread.sleep(delay);
+                Inflater inflater = new Inflater();
+                while (true) {
+                    int length = in.readInt();
+                    byte[] message = new byte[length];
+                    in.readFully(message);
+                    bytes += 4 + length;
+                    ByteBuffer m = ByteBuffer.wrap(message);
+                    if (m.get() == TCPServer.HELLO) {
+                        if (m.getInt() != TCPServer.MAGIC) {
+                            throw new IOException("bad magic");
+                        }
+                        continue;
+                    }
+                    decode(m, inflater);
+                }
+            } catch (IOException | InterruptedException | DataFormatException e) {
+                log.error("", e);
+            }
+        }
+
+        private void decode(ByteBuffer m, Inflater inflater)
+                throws DataFormatException, IOException {
+            boolean keyframe = (m.get() & TCPServer.KEYFRAME) != 0;
+            m.getLong();
+            int width = m.getInt();
+            int height = m.getInt();
+            int depth = m.get();
+            int tile = m.getShort();
+            int count = m.getInt();
+            if (keyframe) {
+                keyframes++;
+                image = new byte[width * height * depth];
+            } else if (image == null) {
+                throw new IOException("delta before keyframe");
+            }
+            byte[] raw = new byte[tile * tile * depth];
+            for (int t = 0; t < count; t++) {
+                int col = m.getShort();
+                int row = m.getShort();
+                byte[] data = new byte[m.getInt()];
+                m.get(data);
+                inflater.reset();
+                inflater.setInput(data);
+                inflater.inflate(raw);
+                int x0 = col * tile * depth;
+                int rowBytes = Math.min(width, (col + 1) * tile) * depth - x0;
+                int y1 = Math.min(height, (row + 1) * tile);
+                int offset = 0;
+                for (int y = row * tile; y < y1; y++) {
+                    System.arraycopy(raw, offset, image,
+                            y * width * depth + x0, rowBytes);
+                    offset += rowBytes;
+                }
+            }
+            frames++;
+        }
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ * StrokeEncodingBenchmark.java
+ *
+ * Copyright (c) 2012, Tobias Zimmermann All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of
+ * conditions and the following disclaimer. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors may be used to endorse or
+ * promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package de.dfki.covida.covidacore.data.test;
+
+import de.dfki.covida.covidacore.data.Annotation;
+import de.dfki.covida.covidacore.data.JAXBRegistry;
+import de.dfki.covida.covidacore.data.Stroke;
+import de.dfki.covida.covidacore.data.StrokeList;
+import de.dfki.touchandwrite.shape.ShapeType;
+import java.awt.Point;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.xml.bind.DatatypeConverter;
+import javax.xml.bind.JAXBException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compares memory and XML size of the {@link Stroke} encoding with the
+ * former {@link List} of {@link Point} and {@code "x,y"} string format, on
+ * the {@link DataTest} annotations scaled up to dense pen input.
+ *
+ * @author Tobias Zimmermann <Tobias.Zimmermann@dfki.de>
+ */
+public class StrokeEncodingBenchmark {
+
+    /**
+     * Logger
+     */
+    private static Logger log = LoggerFactory.getLogger(StrokeEncodingBenchmark.class);
+    /**
+     * Amount of annotations
+     */
+    private static final int ANNOTATIONS = 1000;
+    /**
+     * Points per stroke
+     */
+    private static final int POINTS = 500;
+    /**
+     * Encoded stroke element
+     */
+    private static final Pattern DATA = Pattern.compile("<data>([^<]*)</data>");
+
+    /**
+     * @param args
+     * @throws Exception
+     */
+    public static void main(String[] args) throws Exception {
+        Random random = new Random(42);
+        List<Annotation> annotations = new ArrayList<>();
+        for (int i = 0; i < ANNOTATIONS; i++) {
+            Annotation annotation = new Annotation();
+            annotation.description = "Data Test DFKI";
+            annotation.strokelist = new StrokeList();
+            // two strokes like DataTest, sampled as dense pen input
+            annotation.strokelist.strokelist.add(stroke(random, 24, 30));
+            annotation.strokelist.strokelist.add(stroke(random, 333, 30));
+            annotation.shapeType = ShapeType.POLYGON;
+            annotation.time_start = (long) 455322 + i * 10000;
+            annotation.time_end = (long) 456343 + i * 10000;
+            annotation.creator = "covida";
+            annotation.date = Calendar.getInstance().getTime();
+            annotations.add(annotation);
+        }
+        measureMemory(annotations);
+        measureXml(annotations);
+        checkCorruption(annotations, random);
+    }
+
+    /**
+     * Creates a {@link Stroke} as random walk.
+     */
+    private static Stroke stroke(Random random, int x, int y) {
+        Stroke stroke = new Stroke();
+        for (int i = 0; i < POINTS; i++) {
+            x += random.nextInt(7) - 3;
+            y += random.nextInt(7) - 3;
+            stroke.add(x, y);
+        }
+        return stroke;
+    }
+
+    /**
+     * Compares the retained heap of the strokes with the same points as
+     * {@link List}s of {@link Point}.
+     */
+    private static void measureMemory(List<Annotation> annotations)
+            throws IOException {
+        long base = usedMemory();
+        List<List<Point>> legacy = new ArrayList<>();
+        for (Annotation annotation : annotations) {
+            for (Stroke stroke : annotation.strokelist.strokelist) {
+                List<Point> points = new ArrayList<>();
+                for (Point point : stroke) {
+                    points.add(point);
+                }
+                legacy.add(points);
+            }
+        }
+        long legacyBytes = usedMemory() - base;
+        legacy.clear();
+        base = usedMemory();
+        List<Stroke> strokes = new ArrayList<>();
+        for (Annotation annotation : annotations) {
+            for (Stroke stroke : annotation.strokelist.strokelist) {
+                Stroke copy = Stroke.decode(stroke.encode());
+                strokes.add(copy);
+            }
+        }
+        long strokeBytes = usedMemory() - base;
+        log.info("Heap of {} points: List<Point> {} KB, Stroke {} KB",
+                new Object[]{2 * ANNOTATIONS * POINTS, legacyBytes / 1024,
+                    strokeBytes / 1024});
+        if (strokes.isEmpty()) {
+            log.error("No strokes measured");
+        }
+    }
+
+    /**
+     * Compares the XML size of the encoded strokes with the former point
+     * list format and verifies the migration of the former format.
+     */
+    private static void measureXml(List<Annotation> annotations)
+            throws JAXBException, IOException {
+        JAXBRegistry registry = JAXBRegistry.get(Annotation.class);
+        long encodedSize = 0;
+        long legacySize = 0;
+        int mismatches = 0;
+        for (Annotation annotation : annotations) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            registry.marshal(annotation, out);
+            String xml = out.toString("UTF-8");
+            encodedSize += out.size();
+            String legacyXml = toLegacy(xml);
+            byte[] legacyBytes = legacyXml.getBytes("UTF-8");
+            legacySize += legacyBytes.length;
+            Annotation migrated = (Annotation) registry.unmarshal(
+                    new ByteArrayInputStream(legacyBytes));
+            for (int i = 0; i < annotation.strokelist.strokelist.size(); i++) {
+                Stroke expected = annotation.strokelist.strokelist.get(i);
+                Stroke actual = migrated.strokelist.strokelist.get(i);
+                if (!equal(expected, actual)) {
+                    mismatches++;
+                }
+            }
+        }
+        log.info("XML of {} annotations: \"x,y\" points {} KB, encoded {} KB,"
+                + " {} migration mismatches", new Object[]{ANNOTATIONS,
+                    legacySize / 1024, encodedSize / 1024, mismatches});
+    }
+
+    /**
+     * Decodes truncated and randomly modified strokes and unmarshals an
+     * {@link Annotation} with truncated stroke data. Corrupt data has to be
+     * reported as {@link IOException}, never as runtime exception, and a
+     * corrupt stroke of an {@link Annotation} has to be dropped while the
+     * other strokes are kept.
+     */
+    private static void checkCorruption(List<Annotation> annotations,
+            Random random) throws JAXBException, IOException {
+        int rejected = 0;
+        int failures = 0;
+        for (Annotation annotation : annotations) {
+            byte[] data = annotation.strokelist.strokelist.get(0).encode();
+            byte[] corrupt = Arrays.copyOf(data, random.nextInt(data.length));
+            if (random.nextBoolean() && corrupt.length > 0) {
+                corrupt[random.nextInt(corrupt.length)] = (byte) random.nextInt();
+            }
+            try {
+                Stroke.decode(corrupt);
+            } catch (IOException e) {
+                rejected++;
+            } catch (RuntimeException e) {
+                failures++;
+                log.error("Corrupt stroke not rejected", e);
+            }
+        }
+        JAXBRegistry registry = JAXBRegistry.get(Annotation.class);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        registry.marshal(annotations.get(0), out);
+        Matcher matcher = DATA.matcher(out.toString("UTF-8"));
+        String xml = matcher.replaceFirst("<data>gYCA</data>");
+        Annotation loaded = (Annotation) registry.unmarshal(
+                new ByteArrayInputStream(xml.getBytes("UTF-8")));
+        List<Stroke> strokes = annotations.get(0).strokelist.strokelist;
+        List<Stroke> survived = loaded.strokelist.strokelist;
+        if (survived.size() == strokes.size() - 1
+                && Arrays.equals(survived.get(0).encode(),
+                strokes.get(1).encode())) {
+            rejected++;
+        } else {
+            failures++;
+            log.error("Truncated stroke data not dropped: {} of {} strokes",
+                    survived.size(), strokes.size());
+        }
+        log.info("Corrupt strokes: {} rejected, {} failures", rejected,
+                failures);
+    }
+
+    /**
+     * Replaces the encoded strokes of a marshalled {@link Annotation} with
+     * the former point list format.
+     */
+    private static String toLegacy(String xml) throws IOException {
+        Matcher matcher = DATA.matcher(xml);
+        StringBuffer legacy = new StringBuffer();
+        while (matcher.find()) {
+            Stroke stroke = Stroke.decode(
+                    DatatypeConverter.parseBase64Binary(matcher.group(1)));
+            StringBuilder points = new StringBuilder("<points>");
+            for (int i = 0; i < stroke.size(); i++) {
+                points.append("<point>").append(stroke.getX(i)).append(',')
+                        .append(stroke.getY(i)).append("</point>");
+            }
+            points.append("</points>");
+            matcher.appendReplacement(legacy, points.toString());
+        }
+        matcher.appendTail(legacy);
+        return legacy.toString();
+    }
+
+    private static boolean equal(Stroke a, Stroke b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            if (a.getX(i) != b.getX(i) || a.getY(i) != b.getY(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
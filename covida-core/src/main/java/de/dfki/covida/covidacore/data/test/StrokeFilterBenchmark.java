@@ -0,0 +1,213 @@
+/*
+ * StrokeFilterBenchmark.java
+ *
+ * Copyright (c) 2012, Tobias Zimmermann All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of
+ * conditions and the following disclaimer. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors may be used to endorse or
+ * promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package de.dfki.covida.covidacore.data.test;
+
+import de.dfki.covida.covidacore.data.Stroke;
+import de.dfki.covida.covidacore.utils.StrokeFilter;
+import java.util.Random;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measures the point reduction of the {@link StrokeFilter} on synthetic
+ * handwriting sampled like a pen at 200 Hz, and the maximum distance of the
+ * raw samples to the simplified strokes.
+ *
+ * @author Tobias Zimmermann <Tobias.Zimmermann@dfki.de>
+ */
+public class StrokeFilterBenchmark {
+
+    /**
+     * Logger
+     */
+    private static Logger log = LoggerFactory.getLogger(StrokeFilterBenchmark.class);
+    /**
+     * Amount of strokes
+     */
+    private static final int STROKES = 1000;
+    /**
+     * Samples per stroke, 1.5 s at 200 Hz
+     */
+    private static final int SAMPLES = 300;
+
+    /**
+     * @param args
+     */
+    public static void main(String[] args) {
+        Random random = new Random(42);
+        long raw = 0;
+        long filtered = 0;
+        long simplified = 0;
+        double maxError = 0;
+        long time = 0;
+        for (int i = 0; i < STROKES; i++) {
+            Stroke stroke = handwriting(random);
+            raw += stroke.size();
+            long start = System.nanoTime();
+            StrokeFilter filter = new StrokeFilter();
+            Stroke accepted = new Stroke();
+            for (int j = 0; j < stroke.size(); j++) {
+                if (filter.add(stroke.getX(j), stroke.getY(j))) {
+                    accepted.add(filter.getX(), filter.getY());
+                }
+            }
+            Stroke result = StrokeFilter.simplify(penUp(filter, stroke,
+                    accepted), StrokeFilter.TOLERANCE);
+            time += System.nanoTime() - start;
+            filtered += accepted.size();
+            simplified += result.size();
+            maxError = Math.max(maxError, maxDistance(stroke, result));
+        }
+        log.info("{} strokes: {} raw points, {} after filter, {} after "
+                + "Douglas-Peucker ({}x), max error {} px, {} us/stroke",
+                new Object[]{STROKES, raw, filtered, simplified,
+                    raw / simplified, String.format("%.2f", maxError),
+                    time / STROKES / 1000});
+        int failures = checkRetrace();
+        log.info("Retrace check: {} failures", failures);
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Finishes a filtered stroke like the pen up handling: the pending
+     * sample is flushed, then the last sample is drawn.
+     */
+    private static Stroke penUp(StrokeFilter filter, Stroke stroke,
+            Stroke accepted) {
+        int x = stroke.getX(stroke.size() - 1);
+        int y = stroke.getY(stroke.size() - 1);
+        if (filter.flush() && (filter.getX() != x || filter.getY() != y)) {
+            accepted.add(filter.getX(), filter.getY());
+        }
+        accepted.add(x, y);
+        return accepted;
+    }
+
+    /**
+     * Draws strokes which run back on their own path and checks that the
+     * point where the pen turned is kept by the filter and by
+     * Douglas-Peucker.
+     */
+    private static int checkRetrace() {
+        int failures = 0;
+        // (10,0) to (10,100) and back to (10,40)
+        Stroke stroke = new Stroke();
+        for (int y = 0; y <= 100; y++) {
+            stroke.add(10, y);
+        }
+        for (int y = 99; y >= 40; y--) {
+            stroke.add(10, y);
+        }
+        // up and back down to 1 px short of the start
+        Stroke back = new Stroke();
+        for (int x = 0; x <= 80; x += 2) {
+            back.add(x, 50);
+        }
+        for (int x = 79; x >= 1; x--) {
+            back.add(x, 50);
+        }
+        for (Stroke raw : new Stroke[]{stroke, back}) {
+            Stroke simplified = StrokeFilter.simplify(raw,
+                    StrokeFilter.TOLERANCE);
+            StrokeFilter filter = new StrokeFilter();
+            Stroke accepted = new Stroke();
+            for (int j = 0; j < raw.size(); j++) {
+                if (filter.add(raw.getX(j), raw.getY(j))) {
+                    accepted.add(filter.getX(), filter.getY());
+                }
+            }
+            Stroke filtered = StrokeFilter.simplify(penUp(filter, raw,
+                    accepted), StrokeFilter.TOLERANCE);
+            for (Stroke result : new Stroke[]{simplified, filtered}) {
+                double error = maxDistance(raw, result);
+                if (error > StrokeFilter.TOLERANCE) {
+                    failures++;
+                    log.error("Retrace lost its tip: {} points, error {} px",
+                            result.size(), error);
+                }
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Creates a cursive like stroke with sensor jitter: loops moving to the
+     * right with a slowly varying speed.
+     */
+    private static Stroke handwriting(Random random) {
+        Stroke stroke = new Stroke();
+        double radius = 10 + random.nextInt(20);
+        // about 1 px per sample, i.e. 5 cm/s at 96 dpi
+        double speed = (0.6 + random.nextDouble() * 0.8) / radius;
+        double advance = 0.2 + random.nextDouble() * 0.4;
+        double phase = 0;
+        for (int i = 0; i < SAMPLES; i++) {
+            phase += speed * (1 + 0.5 * Math.sin(i / 40.0));
+            double x = 100 + i * advance + radius * Math.cos(phase);
+            double y = 100 + radius * Math.sin(phase) * 1.5;
+            stroke.add((int) Math.round(x + random.nextGaussian() * 0.3),
+                    (int) Math.round(y + random.nextGaussian() * 0.3));
+        }
+        return stroke;
+    }
+
+    /**
+     * Returns the maximum distance of the points to the polyline.
+     */
+    private static double maxDistance(Stroke points, Stroke line) {
+        double max = 0;
+        for (int i = 0; i < points.size(); i++) {
+            double min = Double.MAX_VALUE;
+            for (int j = 1; j < line.size(); j++) {
+                min = Math.min(min, segmentDistance(points.getX(i),
+                        points.getY(i), line.getX(j - 1), line.getY(j - 1),
+                        line.getX(j), line.getY(j)));
+            }
+            max = Math.max(max, min);
+        }
+        return max;
+    }
+
+    /**
+     * Returns the distance of a point to a line segment.
+     */
+    private static double segmentDistance(double px, double py, double ax,
+            double ay, double bx, double by) {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double lengthSquare = dx * dx + dy * dy;
+        double t = lengthSquare == 0 ? 0
+                : ((px - ax) * dx + (py - ay) * dy) / lengthSquare;
+        t = Math.max(0, Math.min(1, t));
+        double x = ax + t * dx - px;
+        double y = ay + t * dy - py;
+        return Math.sqrt(x * x + y * y);
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * FrameEncoder.java
+ *
+ * Copyright (c) 2012, Tobias Zimmermann All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of
+ * conditions and the following disclaimer. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors may be used to endorse or
+ * promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package de.dfki.covida.covidacore.streaming;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+/**
+ * Encodes grabbed screen frames as {@link TCPServer} frame messages.
+ *
+ * The frame is divided into {@link #TILE_SIZE} x {@link #TILE_SIZE} pixel
+ * tiles. {@link #update(byte[], int, int, int)} compares each tile with the
+ * previous frame and deflates the changed ones. The compressed tiles are
+ * kept, so {@link #keyframe()} assembles a full frame without compressing
+ * again.
+ *
+ * Not thread safe, used by the encoder thread of the {@link TCPServer} only.
+ *
+ * @author Tobias Zimmermann <Tobias.Zimmermann@dfki.de>
+ */
+public class FrameEncoder {
+
+    /**
+     * Tile side length in pixels
+     */
+    public static final int TILE_SIZE = 64;
+    /**
+     * Size of the frame message header after the length field
+     */
+    private static final int HEADER = 1 + 1 + 8 + 4 + 4 + 1 + 2 + 4;
+    /**
+     * Size of the tile header
+     */
+    private static final int TILE_HEADER = 2 + 2 + 4;
+    private int width;
+    private int height;
+    private int depth;
+    private int cols;
+    private int rows;
+    /**
+     * Previous frame or null
+     */
+    private byte[] previous;
+    /**
+     * Compressed tiles of the current frame, row major
+     */
+    private byte[][] tiles;
+    /**
+     * Tiles changed by the last update
+     */
+    private boolean[] changed;
+    private int changedCount;
+    /**
+     * Determines if the frame size changed with the last update
+     */
+    private boolean resized;
+    private long timestamp;
+    private final Deflater deflater;
+    private byte[] raw;
+    private byte[] compressed;
+
+    /**
+     * Creates a new {@link FrameEncoder}.
+     */
+    public FrameEncoder() {
+        deflater = new Deflater(Deflater.BEST_SPEED);
+    }
+
+    /**
+     * Compares the frame with the previous one and compresses the changed
+     * tiles.
+     *
+     * @param frame pixel data, rows as grabbed
+     * @param width frame width
+     * @param height frame height
+     * @param depth bytes per pixel
+     * @return the previous frame which is no longer needed, or null
+     */
+    public byte[] update(byte[] frame, int width, int height, int depth) {
+        timestamp = System.currentTimeMillis();
+        resized = previous == null || width != this.width
+                || height != this.height || depth != this.depth;
+        if (resized) {
+            this.width = width;
+            this.height = height;
+            this.depth = depth;
+            cols = (width + TILE_SIZE - 1) / TILE_SIZE;
+            rows = (height + TILE_SIZE - 1) / TILE_SIZE;
+            tiles = new byte[cols * rows][];
+            changed = new boolean[cols * rows];
+            raw = new byte[TILE_SIZE * TILE_SIZE * depth];
+            compressed = new byte[raw.length + raw.length / 100 + 64];
+        }
+        changedCount = 0;
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                int index = row * cols + col;
+                changed[index] = resized || tileChanged(frame, col, row);
+                if (changed[index]) {
+                    tiles[index] = compress(frame, col, row);
+                    changedCount++;
+                }
+            }
+        }
+        byte[] recycled = resized ? null : previous;
+        previous = frame;
+        return recycled;
+    }
+
+    /**
+     * Returns true if the last update changed the frame size, so clients
+     * need a keyframe.
+     *
+     * @return true if resized
+     */
+    public boolean isResized() {
+        return resized;
+    }
+
+    /**
+     * Returns the amount of tiles changed by the last update.
+     *
+     * @return changed tiles
+     */
+    public int getChangedCount() {
+        return changedCount;
+    }
+
+    /**
+     * Returns a frame message with the tiles changed by the last update.
+     *
+     * @return message
+     */
+    public ByteBuffer delta() {
+        return message(false);
+    }
+
+    /**
+     * Returns a frame message with all tiles.
+     *
+     * @return message
+     */
+    public ByteBuffer keyframe() {
+        return message(true);
+    }
+
+    /**
+     * Builds a frame message.
+     */
+    private ByteBuffer message(boolean keyframe) {
+        int count = 0;
+        int size = HEADER;
+        for (int i = 0; i < tiles.length; i++) {
+            if (keyframe || changed[i]) {
+                count++;
+                size += TILE_HEADER + tiles[i].length;
+            }
+        }
+        ByteBuffer message = ByteBuffer.allocate(4 + size);
+        message.putInt(size);
+        message.put(TCPServer.FRAME);
+        message.put(keyframe ? TCPServer.KEYFRAME : 0);
+        message.putLong(timestamp);
+        message.putInt(width);
+        message.putInt(height);
+        message.put((byte) depth);
+        message.putShort((short) TILE_SIZE);
+        message.putInt(count);
+        for (int i = 0; i < tiles.length; i++) {
+            if (keyframe || changed[i]) {
+                message.putShort((short) (i % cols));
+                message.putShort((short) (i / cols));
+                message.putInt(tiles[i].length);
+                message.put(tiles[i]);
+            }
+        }
+        message.flip();
+        return message;
+    }
+
+    /**
+     * Compares a tile of the frame with the previous frame.
+     */
+    private boolean tileChanged(byte[] frame, int col, int row) {
+        int stride = width * depth;
+        int x0 = col * TILE_SIZE * depth;
+        int x1 = Math.min(width, (col + 1) * TILE_SIZE) * depth;
+        int y1 = Math.min(height, (row + 1) * TILE_SIZE);
+        for (int y = row * TILE_SIZE; y < y1; y++) {
+            int offset = y * stride;
+            for (int i = offset + x0; i < offset + x1; i++) {
+                if (frame[i] != previous[i]) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Deflates the rows of a tile.
+     */
+    private byte[] compress(byte[] frame, int col, int row) {
+        int stride = width * depth;
+        int x0 = col * TILE_SIZE * depth;
+        int rowBytes = Math.min(width, (col + 1) * TILE_SIZE) * depth - x0;
+        int y1 = Math.min(height, (row + 1) * TILE_SIZE);
+        int length = 0;
+        for (int y = row * TILE_SIZE; y < y1; y++) {
+            System.arraycopy(frame, y * stride + x0, raw, length, rowBytes);
+            length += rowBytes;
+        }
+        deflater.reset();
+        deflater.setInput(raw, 0, length);
+        deflater.finish();
+        int size = 0;
+        while (!deflater.finished()) {
+            if (size == compressed.length) {
+                compressed = Arrays.copyOf(compressed, 2 * compressed.length);
+            }
+            size += deflater.deflate(compressed, size, compressed.length - size);
+        }
+        return Arrays.copyOf(compressed, size);
+    }
+
+    /**
+     * Releases the native resources.
+     */
+    public void dispose() {
+        deflater.end();
+    }
+}
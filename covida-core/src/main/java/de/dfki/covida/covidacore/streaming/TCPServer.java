@@ -28,42 +28,112 @@
 package de.dfki.covida.covidacore.streaming;
 
 import java.awt.Dimension;
-import java.io.*;
-import java.lang.reflect.Array;
-import java.net.*;
+import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * TCP Server
+ * TCP Server which streams the screen to its clients.
+ *
+ * Protocol: every message starts with its length as int (big endian, not
+ * counting the length field itself) followed by a type byte.
+ * <ul>
+ * <li>{@link #HELLO}: int magic {@code "CVST"}, short version, int screen
+ * width, int screen height. Sent once after connecting.</li>
+ * <li>{@link #FRAME}: byte flags ({@link #KEYFRAME}), long timestamp in ms,
+ * int width, int height, byte bytes per pixel, short tile size, int tile
+ * count, then per tile short column, short row, int length and the deflated
+ * pixel rows of the tile, as grabbed from the frame buffer.</li>
+ * </ul>
+ * A keyframe holds all tiles, other frames only the tiles which changed.
+ *
+ * {@link #writeByteBuffer(ByteBuffer, int, int, int)} only copies the frame
+ * and hands it to an encoder thread, dropping the pending frame if the
+ * encoder is busy. Each client has a queue of {@link #QUEUE_SIZE} messages
+ * which are written by a single NIO selector thread. If the queue of a slow
+ * client is full it is cleared and the client continues with the next
+ * keyframe, so the render thread is never blocked by clients.
  *
  * @author Tobias Zimmermann <Tobias.Zimmermann@dfki.de>
  */
 public class TCPServer extends Thread {
 
+    /**
+     * Hello message type
+     */
+    public static final byte HELLO = 0;
+    /**
+     * Frame message type
+     */
+    public static final byte FRAME = 1;
+    /**
+     * Frame flag of keyframes
+     */
+    public static final byte KEYFRAME = 1;
+    /**
+     * Magic number of the hello message, {@code "CVST"}
+     */
+    public static final int MAGIC = 0x43565354;
+    /**
+     * Protocol version
+     */
+    public static final short VERSION = 1;
+    /**
+     * Maximum amount of queued messages per client
+     */
+    private static final int QUEUE_SIZE = 3;
+    /**
+     * Delay in ms before accepting again after a failed accept
+     */
+    private static final long ACCEPT_RETRY_DELAY = 100;
     /**
      * Logger
      */
-    private static Logger log = LoggerFactory.getLogger(TcpThread.class);
+    private static Logger log = LoggerFactory.getLogger(TCPServer.class);
     /**
      * {@link TCPServer} instance
      */
     private static TCPServer instance;
-    /**
-     * the socket used by the server
-     */
-    private ServerSocket serverSocket;
     /**
      * the port used by the server
      */
     private static int port = 1500;
     /**
-     * {@link List} of all active {@link TcpThread}
+     * Connected clients by channel
+     */
+    private final Map<SocketChannel, Client> clients;
+    /**
+     * Encoder thread, holds at most one pending frame
+     */
+    private final ThreadPoolExecutor encoder;
+    /**
+     * {@link FrameEncoder} used by the encoder thread
      */
-    private List<TcpThread> tcpThreads;
+    private final FrameEncoder frameEncoder;
+    /**
+     * Frame arrays which can be reused
+     */
+    private final Queue<byte[]> freeFrames;
+    /**
+     * Selector of the server thread
+     */
+    private volatile Selector selector;
     /**
      * {@link Dimension} of the image frame.
      */
@@ -73,32 +143,25 @@ public class TCPServer extends Thread {
      * Private constructor of {@link TCPServer}
      */
     private TCPServer() {
-        tcpThreads = new ArrayList<>();
-    }
-
-    /**
-     * Sends a {@link Array} of {@link Byte}
-     *
-     * @param bytes {@link Array} of {@link Byte}
-     */
-    public synchronized void writeByteBuffer(byte[] bytes) {
-        List<TcpThread> deadThreads = new ArrayList<>();
-        for (TcpThread tcpThread : tcpThreads) {
-            if (tcpThread.running) {
-                tcpThread.writeByteBuffer(bytes);
-                bytes = null;
-            } else {
-                deadThreads.add(tcpThread);
-            }
-        }
-        for (TcpThread deadThread : deadThreads) {
-            tcpThreads.remove(deadThread);
-            deadThread = null;
-        }
+        super("TCP-Server");
+        setDaemon(true);
+        clients = new ConcurrentHashMap<>();
+        frameEncoder = new FrameEncoder();
+        freeFrames = new ConcurrentLinkedQueue<>();
+        encoder = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(1), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "Stream Encoder");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                }, new ThreadPoolExecutor.DiscardOldestPolicy());
     }
 
     /**
-     * Converts {@link ByteBuffer} to an {@link Array} of {@link Byte}.
+     * Copies the image frame and queues it for encoding. Returns immediately,
+     * a frame which is still waiting for the encoder is replaced.
      *
      * @param buffer {@link ByteBuffer} which holds the image frame data
      * @param width Width of the image frame
@@ -107,29 +170,24 @@ public class TCPServer extends Thread {
      */
     public void writeByteBuffer(ByteBuffer buffer, int width, int height,
             int depth) {
-        int buffSize = depth * width * height;
-        byte[] bytes = new byte[buffSize];
-        for (int i = 0; i < buffSize; i++) {
-            bytes[i] = buffer.get(i);
-        }
-        List<TcpThread> deadThreads = new ArrayList<>();
-        for (TcpThread tcpThread : tcpThreads) {
-            if (tcpThread.running) {
-                tcpThread.writeByteBuffer(bytes);
-                bytes = null;
-            } else {
-                deadThreads.add(tcpThread);
-            }
+        if (clients.isEmpty()) {
+            buffer.clear();
+            return;
         }
-        for (TcpThread deadThread : deadThreads) {
-            tcpThreads.remove(deadThread);
-            deadThread = null;
+        int size = depth * width * height;
+        byte[] frame = freeFrames.poll();
+        if (frame == null || frame.length != size) {
+            frame = new byte[size];
         }
+        buffer.position(0);
+        buffer.get(frame, 0, size);
         buffer.clear();
+        encoder.execute(new EncodeTask(frame, width, height, depth));
     }
 
     /**
-     * Sets the image frame {@link Dimension}
+     * Sets the image frame {@link Dimension}, which is announced in the hello
+     * message.
      *
      * @param dimension {@link Dimension}
      */
@@ -150,96 +208,247 @@ public class TCPServer extends Thread {
     }
 
     /**
-     * Create socket server and wait for connection requests
+     * Accepts clients and writes their queued messages.
      */
     @Override
     public void run() {
-        try {
-            serverSocket = new ServerSocket(port);
+        try (Selector sel = Selector.open();
+                ServerSocketChannel server = ServerSocketChannel.open()) {
+            selector = sel;
+            server.socket().bind(new InetSocketAddress(port));
+            server.configureBlocking(false);
+            server.register(sel, SelectionKey.OP_ACCEPT);
             log.debug("Streaming TCP Server waiting for client on port "
-                    + serverSocket.getLocalPort() + " #");
-
-            while (true) {
-                Socket socket = serverSocket.accept();
-                log.debug("New client asked for a connection");
-                TcpThread t = new TcpThread(socket);
-                log.debug("Starting a thread for a new Client");
-                t.start();
-                tcpThreads.add(t);
+                    + server.socket().getLocalPort() + " #");
+            ByteBuffer scratch = ByteBuffer.allocate(1024);
+            while (!isInterrupted()) {
+                sel.select();
+                for (Client client : clients.values()) {
+                    client.updateInterest();
+                }
+                Iterator<SelectionKey> keys = sel.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        try {
+                            accept(server.accept());
+                        } catch (IOException e) {
+                            if (!server.isOpen()) {
+                                throw e;
+                            }
+                            log.error("Could not accept streaming client: "
+                                    + e);
+                            // e.g. out of file handles, don't spin on it
+                            try {
+                                Thread.sleep(ACCEPT_RETRY_DELAY);
+                            } catch (InterruptedException ex) {
+                                interrupt();
+                            }
+                        }
+                        continue;
+                    }
+                    Client client = (Client) key.attachment();
+                    try {
+                        if (key.isReadable()) {
+                            scratch.clear();
+                            if (client.channel.read(scratch) < 0) {
+                                close(client);
+                                continue;
+                            }
+                        }
+                        if (key.isWritable()) {
+                            client.write();
+                        }
+                    } catch (IOException e) {
+                        log.debug("Closing streaming client: " + e);
+                        close(client);
+                    }
+                }
             }
         } catch (IOException e) {
             log.error("Exception on new ServerSocket: " + e);
+        } finally {
+            selector = null;
+        }
+    }
+
+    /**
+     * Registers a new client and queues the hello message.
+     */
+    private void accept(SocketChannel channel) throws IOException {
+        if (channel == null) {
+            return;
+        }
+        log.debug("New client asked for a connection");
+        Client client = new Client(channel);
+        try {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            client.key = channel.register(selector, SelectionKey.OP_READ,
+                    client);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        Dimension d = dimension;
+        ByteBuffer hello = ByteBuffer.allocate(4 + 15);
+        hello.putInt(15);
+        hello.put(HELLO);
+        hello.putInt(MAGIC);
+        hello.putShort(VERSION);
+        hello.putInt(d == null ? 0 : d.width);
+        hello.putInt(d == null ? 0 : d.height);
+        hello.flip();
+        client.queue.offer(hello);
+        client.updateInterest();
+        clients.put(channel, client);
+    }
+
+    /**
+     * Closes and removes a client.
+     */
+    private void close(Client client) {
+        clients.remove(client.channel);
+        client.key.cancel();
+        try {
+            client.channel.close();
+        } catch (IOException e) {
+            log.debug("", e);
+        }
+        if (client.dropped > 0) {
+            log.debug("Streaming client dropped {} frames", client.dropped);
+        }
+    }
+
+    /**
+     * Encodes a frame and queues the messages for the clients.
+     */
+    private class EncodeTask implements Runnable {
+
+        private final byte[] frame;
+        private final int width;
+        private final int height;
+        private final int depth;
+
+        EncodeTask(byte[] frame, int width, int height, int depth) {
+            this.frame = frame;
+            this.width = width;
+            this.height = height;
+            this.depth = depth;
+        }
+
+        @Override
+        public void run() {
+            byte[] recycled = frameEncoder.update(frame, width, height, depth);
+            if (recycled != null) {
+                freeFrames.offer(recycled);
+            }
+            ByteBuffer delta = null;
+            ByteBuffer keyframe = null;
+            for (Client client : clients.values()) {
+                if (client.needsKeyframe || frameEncoder.isResized()) {
+                    if (keyframe == null) {
+                        keyframe = frameEncoder.keyframe();
+                    }
+                    client.offer(keyframe.duplicate(), true);
+                } else if (frameEncoder.getChangedCount() > 0) {
+                    if (delta == null) {
+                        delta = frameEncoder.delta();
+                    }
+                    client.offer(delta.duplicate(), false);
+                }
+            }
+            Selector sel = selector;
+            if (sel != null) {
+                sel.wakeup();
+            }
         }
     }
 
     /**
-     * One instance of this thread will run for each client
+     * Connected client
      */
-    class TcpThread extends Thread {
+    private class Client {
 
+        final SocketChannel channel;
+        SelectionKey key;
+        /**
+         * Queued messages
+         */
+        final BlockingQueue<ByteBuffer> queue;
         /**
-         * the socket where to listen/talk.
+         * Message which is currently written or null
          */
-        private Socket socket;
+        ByteBuffer current;
         /**
-         * Output stream
+         * Determines if the client missed frames and waits for a keyframe
          */
-        private ObjectOutputStream Soutput;
+        volatile boolean needsKeyframe;
         /**
-         * Indicades if client is running.
+         * Amount of dropped frames
          */
-        public boolean running;
+        volatile int dropped;
+
+        Client(SocketChannel channel) {
+            this.channel = channel;
+            this.queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+            this.needsKeyframe = true;
+        }
 
         /**
-         * Creates an instance of {@link TcpThread}
-         *
-         * @param socket
+         * Queues a frame message. If the queue is full, the queued frames
+         * are dropped and the client waits for the next keyframe.
          */
-        public TcpThread(Socket socket) {
-            this.socket = socket;
-            this.running = true;
+        void offer(ByteBuffer message, boolean keyframe) {
+            if (queue.offer(message)) {
+                if (keyframe) {
+                    needsKeyframe = false;
+                }
+            } else {
+                dropped += queue.size();
+                queue.clear();
+                needsKeyframe = true;
+            }
         }
 
         /**
-         * Sends a {@link Array} of {@link Byte}.
-         *
-         * @param bytes {@link Byte}
+         * Registers interest in writing if messages are pending.
          */
-        public void writeByteBuffer(byte[] bytes) {
-            try {
-                Soutput.reset();
-                Soutput.writeObject(bytes);
-            } catch (IOException e) {
-                log.error("Exception writing  Image: " + e);
-                log.error("Closing connection");
-                running = false;
+        void updateInterest() {
+            if (!key.isValid()) {
+                return;
+            }
+            int ops = SelectionKey.OP_READ;
+            if (current != null || !queue.isEmpty()) {
+                ops |= SelectionKey.OP_WRITE;
+            }
+            if (key.interestOps() != ops) {
+                key.interestOps(ops);
             }
         }
 
-        @Override
-        public void run() {
-            Thread.currentThread().setName("TCP-Server");
-            try {
-                Soutput = new ObjectOutputStream(socket.getOutputStream());
-                Soutput.writeObject(dimension);
-                Soutput.reset();
-            } catch (IOException ex) {
-                log.error("", ex);
-                running = false;
-                try {
-                    Soutput.flush();
-                    Soutput.close();
-                } catch (IOException ex1) {
-                    log.error("", ex1);
+        /**
+         * Writes queued messages until the socket buffer is full.
+         */
+        void write() throws IOException {
+            while (true) {
+                if (current == null) {
+                    current = queue.poll();
+                    if (current == null) {
+                        break;
+                    }
                 }
-            }
-            while (running) {
-                try {
-                    Thread.sleep(50);
-                } catch (InterruptedException ex) {
-                    log.error("", ex);
+                channel.write(current);
+                if (current.hasRemaining()) {
+                    break;
                 }
+                current = null;
             }
+            updateInterest();
         }
     }
 }
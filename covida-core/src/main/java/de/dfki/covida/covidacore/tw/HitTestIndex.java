@@ -0,0 +1,324 @@
+/*
+ * HitTestIndex.java
+ *
+ * Copyright (c) 2012, Tobias Zimmermann All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of
+ * conditions and the following disclaimer. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors may be used to endorse or
+ * promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package de.dfki.covida.covidacore.tw;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Spatial index of the screen bounds of the {@link ITouchAndWriteComponent}s
+ * used to dispatch touch and pen events.
+ *
+ * The screen is divided into a uniform grid of {@link #CELL} x {@link #CELL}
+ * pixel cells. Each cell holds the components whose bounds overlap it,
+ * sorted by z-order. A query only visits the components of the cell the
+ * event falls into and confirms candidates with
+ * {@link ITouchAndWriteComponent#inArea(int, int)}, so the result equals a
+ * scan over all components.
+ *
+ * Bounds are given in screen pixels (origin top left, as for touch and pen
+ * events) by {@link #update(ITouchAndWriteComponent, int, int, int, int)}.
+ * Components which never reported bounds are checked for every query. The
+ * grid is rebuilt by {@link #commit()} only if bounds or z-orders changed,
+ * and published as an immutable snapshot, so {@link #find(int, int, int)}
+ * neither locks nor allocates.
+ *
+ * @author Tobias Zimmermann <Tobias.Zimmermann@dfki.de>
+ */
+public class HitTestIndex {
+
+    /**
+     * Query mode for {@link ITouchAndWriteComponent#isTouchable()}
+     * components
+     */
+    public static final int TOUCHABLE = 0;
+    /**
+     * Query mode for {@link ITouchAndWriteComponent#isDrawable()} components
+     */
+    public static final int DRAWABLE = 1;
+    /**
+     * Cell side length in pixels
+     */
+    private static final int CELL = 128;
+    /**
+     * Empty cell
+     */
+    private static final ITouchAndWriteComponent[] EMPTY =
+            new ITouchAndWriteComponent[0];
+    /**
+     * Registered components with their bounds {minX, minY, maxX, maxY,
+     * zOrder} or null if no bounds were reported yet
+     */
+    private final Map<ITouchAndWriteComponent, int[]> bounds;
+    /**
+     * Current snapshot
+     */
+    private volatile Grid grid;
+    /**
+     * Determines if the snapshot is outdated
+     */
+    private boolean dirty;
+
+    /**
+     * Creates an empty {@link HitTestIndex}
+     */
+    public HitTestIndex() {
+        bounds = new LinkedHashMap<>();
+        grid = new Grid(0, 0, new ITouchAndWriteComponent[0][], EMPTY);
+    }
+
+    /**
+     * Registers a component. Until it reports its bounds it is a candidate
+     * for every query.
+     *
+     * @param component {@link ITouchAndWriteComponent}
+     */
+    public synchronized void add(ITouchAndWriteComponent component) {
+        if (!bounds.containsKey(component)) {
+            bounds.put(component, null);
+            dirty = true;
+        }
+    }
+
+    /**
+     * Removes a component.
+     *
+     * @param component {@link ITouchAndWriteComponent}
+     */
+    public synchronized void remove(ITouchAndWriteComponent component) {
+        if (bounds.containsKey(component)) {
+            bounds.remove(component);
+            dirty = true;
+        }
+    }
+
+    /**
+     * Sets the screen bounds of a registered component. An empty rectangle
+     * (min greater than max) excludes the component from all queries, e.g.
+     * while it is not attached to the scene.
+     *
+     * @param component {@link ITouchAndWriteComponent}
+     * @param minX left bound
+     * @param minY top bound
+     * @param maxX right bound
+     * @param maxY bottom bound
+     */
+    public synchronized void update(ITouchAndWriteComponent component,
+            int minX, int minY, int maxX, int maxY) {
+        if (!bounds.containsKey(component)) {
+            return;
+        }
+        int zOrder = component.getZOrder();
+        int[] b = bounds.get(component);
+        if (b == null) {
+            b = new int[5];
+            bounds.put(component, b);
+        } else if (b[0] == minX && b[1] == minY && b[2] == maxX
+                && b[3] == maxY && b[4] == zOrder) {
+            return;
+        }
+        b[0] = minX;
+        b[1] = minY;
+        b[2] = maxX;
+        b[3] = maxY;
+        b[4] = zOrder;
+        dirty = true;
+    }
+
+    /**
+     * Publishes the changes made since the last commit.
+     */
+    public synchronized void commit() {
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+        final Map<ITouchAndWriteComponent, Integer> zOrders = new HashMap<>();
+        Comparator<ITouchAndWriteComponent> order =
+                new Comparator<ITouchAndWriteComponent>() {
+                    @Override
+                    public int compare(ITouchAndWriteComponent o1,
+                            ITouchAndWriteComponent o2) {
+                        return Integer.compare(zOrders.get(o1), zOrders.get(o2));
+                    }
+                };
+        int width = 0;
+        int height = 0;
+        List<ITouchAndWriteComponent> unbounded = new ArrayList<>();
+        for (Map.Entry<ITouchAndWriteComponent, int[]> entry : bounds.entrySet()) {
+            int[] b = entry.getValue();
+            zOrders.put(entry.getKey(), b == null
+                    ? entry.getKey().getZOrder() : b[4]);
+            if (b == null) {
+                unbounded.add(entry.getKey());
+            } else if (b[0] <= b[2] && b[1] <= b[3] && b[2] >= 0 && b[3] >= 0) {
+                width = Math.max(width, b[2] + 1);
+                height = Math.max(height, b[3] + 1);
+            }
+        }
+        int cols = (width + CELL - 1) / CELL;
+        int rows = (height + CELL - 1) / CELL;
+        List<List<ITouchAndWriteComponent>> lists = new ArrayList<>(cols * rows);
+        for (int i = 0; i < cols * rows; i++) {
+            lists.add(null);
+        }
+        for (Map.Entry<ITouchAndWriteComponent, int[]> entry : bounds.entrySet()) {
+            int[] b = entry.getValue();
+            if (b == null || b[0] > b[2] || b[1] > b[3] || b[2] < 0 || b[3] < 0) {
+                continue;
+            }
+            int col0 = Math.max(0, b[0]) / CELL;
+            int row0 = Math.max(0, b[1]) / CELL;
+            int col1 = b[2] / CELL;
+            int row1 = b[3] / CELL;
+            for (int row = row0; row <= row1; row++) {
+                for (int col = col0; col <= col1; col++) {
+                    List<ITouchAndWriteComponent> list = lists.get(row * cols + col);
+                    if (list == null) {
+                        list = new ArrayList<>();
+                        lists.set(row * cols + col, list);
+                    }
+                    list.add(entry.getKey());
+                }
+            }
+        }
+        ITouchAndWriteComponent[][] cells = new ITouchAndWriteComponent[cols * rows][];
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = toSortedArray(lists.get(i), order);
+        }
+        grid = new Grid(cols, rows, cells, toSortedArray(unbounded, order));
+    }
+
+    /**
+     * Returns the front most component of the given mode which contains the
+     * given screen position.
+     *
+     * @param x x position in pixels
+     * @param y y position in pixels
+     * @param mode {@link #TOUCHABLE} or {@link #DRAWABLE}
+     * @return {@link ITouchAndWriteComponent} or null
+     */
+    public ITouchAndWriteComponent find(int x, int y, int mode) {
+        Grid g = grid;
+        ITouchAndWriteComponent result = find(g.unbounded, x, y, mode, null);
+        if (x >= 0 && y >= 0) {
+            int col = x / CELL;
+            int row = y / CELL;
+            if (col < g.cols && row < g.rows) {
+                result = find(g.cells[row * g.cols + col], x, y, mode, result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Searches the candidates for a component in front of the current
+     * result. Z-orders may have changed since the candidates were sorted, so
+     * the current z-order is compared instead of stopping at the first hit;
+     * components behind the current result are skipped without the area
+     * test.
+     *
+     * @param candidates sorted candidates
+     * @param x x position in pixels
+     * @param y y position in pixels
+     * @param mode {@link #TOUCHABLE} or {@link #DRAWABLE}
+     * @param result current result or null
+     * @return new result or null
+     */
+    private ITouchAndWriteComponent find(ITouchAndWriteComponent[] candidates,
+            int x, int y, int mode, ITouchAndWriteComponent result) {
+        int zOrder = result == null ? Integer.MAX_VALUE : result.getZOrder();
+        for (ITouchAndWriteComponent component : candidates) {
+            if (mode == TOUCHABLE ? !component.isTouchable()
+                    : !component.isDrawable()) {
+                continue;
+            }
+            int z = component.getZOrder();
+            if ((result == null || z < zOrder) && component.inArea(x, y)) {
+                result = component;
+                zOrder = z;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Converts a candidate list to an array sorted by z-order.
+     *
+     * @param list {@link List} or null
+     * @param order front to back {@link Comparator}
+     * @return sorted array
+     */
+    private static ITouchAndWriteComponent[] toSortedArray(
+            List<ITouchAndWriteComponent> list,
+            Comparator<ITouchAndWriteComponent> order) {
+        if (list == null || list.isEmpty()) {
+            return EMPTY;
+        }
+        ITouchAndWriteComponent[] array =
+                list.toArray(new ITouchAndWriteComponent[list.size()]);
+        Arrays.sort(array, order);
+        return array;
+    }
+
+    /**
+     * Immutable snapshot of the index
+     */
+    private static class Grid {
+
+        /**
+         * Amount of columns
+         */
+        final int cols;
+        /**
+         * Amount of rows
+         */
+        final int rows;
+        /**
+         * Candidates per cell, row major
+         */
+        final ITouchAndWriteComponent[][] cells;
+        /**
+         * Components without bounds
+         */
+        final ITouchAndWriteComponent[] unbounded;
+
+        Grid(int cols, int rows, ITouchAndWriteComponent[][] cells,
+                ITouchAndWriteComponent[] unbounded) {
+            this.cols = cols;
+            this.rows = rows;
+            this.cells = cells;
+            this.unbounded = unbounded;
+        }
+    }
+}
@@ -169,10 +169,11 @@ public interface ITouchAndWriteComponent {
     /**
      * Abstract method for drawing incoming pen events
      *
+     * @param device pen device as {@link String}
      * @param x x coordinate on the display as {@link Integer}
      * @param y y coordinate on the display as {@link Integer}
      */
-    public void draw(int x, int y);
+    public void draw(String device, int x, int y);
 
     /**
      * Abstract method for incomming rotate events
@@ -241,10 +242,11 @@ public interface ITouchAndWriteComponent {
     /**
      * Pen up draw event, last point of stroke.
      * 
+     * @param device pen device as {@link String}
      * @param x x coordinate on the display as {@link Integer}
      * @param y y coordinate on the display as {@link Integer}
      */
-    public void drawEnd(int x, int y);
+    public void drawEnd(String device, int x, int y);
 
     public void setZOrder(int zOrder);
 }
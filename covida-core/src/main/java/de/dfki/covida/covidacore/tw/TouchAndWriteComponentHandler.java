@@ -29,8 +29,12 @@ package de.dfki.covida.covidacore.tw;
 
 import de.dfki.covida.covidacore.components.IVideoComponent;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Handles the Touch and Write Components
@@ -48,6 +52,14 @@ public class TouchAndWriteComponentHandler {
      */
     private Collection<ITouchAndWriteComponent> components;
     private Collection<IVideoComponent> videos;
+    /**
+     * Opened {@link IVideoComponent}s by video {@link UUID}
+     */
+    private Map<UUID, Collection<IVideoComponent>> videosByUUID;
+    /**
+     * {@link HitTestIndex} of the registered components
+     */
+    private final HitTestIndex hitTestIndex;
     private boolean login;
 
     /**
@@ -56,6 +68,8 @@ public class TouchAndWriteComponentHandler {
     private TouchAndWriteComponentHandler() {
         components = new ConcurrentLinkedQueue<>();
         videos = new ConcurrentLinkedQueue<>();
+        videosByUUID = new ConcurrentHashMap<>();
+        hitTestIndex = new HitTestIndex();
     }
 
     /**
@@ -78,8 +92,20 @@ public class TouchAndWriteComponentHandler {
     public void addComponent(ITouchAndWriteComponent component) {
         if (!components.contains(component)) {
             components.add(component);
+            hitTestIndex.add(component);
             if (component instanceof IVideoComponent) {
-                videos.add((IVideoComponent) component);
+                IVideoComponent video = (IVideoComponent) component;
+                videos.add(video);
+                Collection<IVideoComponent> list = videosByUUID.get(video.getUUID());
+                if (list == null) {
+                    list = new CopyOnWriteArrayList<>();
+                    Collection<IVideoComponent> previous =
+                            videosByUUID.putIfAbsent(video.getUUID(), list);
+                    if (previous != null) {
+                        list = previous;
+                    }
+                }
+                list.add(video);
             }
         }
 
@@ -102,22 +128,50 @@ public class TouchAndWriteComponentHandler {
         return components;
     }
     
+    /**
+     * Returns the {@link HitTestIndex} of the registered components.
+     *
+     * @return {@link HitTestIndex}
+     */
+    public HitTestIndex getHitTestIndex() {
+        return hitTestIndex;
+    }
+
     public Collection<IVideoComponent> getVideos() {
         return videos;
     }
 
+    /**
+     * Returns the opened {@link IVideoComponent}s of the video with the given
+     * {@link UUID}.
+     *
+     * @param uuid {@link UUID} of the video
+     * @return {@link Collection} of {@link IVideoComponent}
+     */
+    public Collection<IVideoComponent> getVideos(UUID uuid) {
+        Collection<IVideoComponent> list = videosByUUID.get(uuid);
+        if (list == null) {
+            return Collections.emptyList();
+        }
+        return list;
+    }
+
     public void removeComponent(ITouchAndWriteComponent component) {
         if (components.contains(component)) {
             components.remove(component);
         }
+        hitTestIndex.remove(component);
+        if (component instanceof IVideoComponent) {
+            IVideoComponent video = (IVideoComponent) component;
+            videos.remove(video);
+            Collection<IVideoComponent> list = videosByUUID.get(video.getUUID());
+            if (list != null) {
+                list.remove(video);
+            }
+        }
     }
 
     public boolean isOpen(UUID uuid) {
-        for(IVideoComponent video : getVideos()){
-            if(uuid.equals(video.getUUID())){
-                return true;
-            }
-        }
-        return false;
+        return !getVideos(uuid).isEmpty();
     }
 }
@@ -28,7 +28,9 @@
 package de.dfki.covida.covidacore.tw;
 
 import de.dfki.covida.covidacore.components.IVideoComponent;
+import de.dfki.covida.covidacore.data.CovidaConfiguration;
 import de.dfki.covida.covidacore.utils.HWRPostProcessing;
+import de.dfki.covida.covidacore.utils.StrokeFilter;
 import de.dfki.touchandwrite.ApplicationType;
 import de.dfki.touchandwrite.analyser.touch.gestures.events.DragEventImpl;
 import de.dfki.touchandwrite.analyser.touch.gestures.events.PanEventImpl;
@@ -48,6 +50,7 @@ import de.dfki.touchandwrite.remote.RemoteTouchAndWriteApplication;
 import de.dfki.touchandwrite.remote.event.HandwritingListener;
 import de.dfki.touchandwrite.remote.event.TouchEventListener;
 import de.dfki.touchandwrite.shape.Shape;
+import java.awt.Dimension;
 import java.awt.Point;
 import java.util.*;
 import org.slf4j.Logger;
@@ -75,6 +78,14 @@ public class TouchAndWriteEventHandler extends RemoteTouchAndWriteApplication im
     private final IApplication application;
     private Map<Integer, ITouchAndWriteComponent> activeTouchComponents;
     private Map<String, ITouchAndWriteComponent> activeDrawComponents;
+    /**
+     * {@link StrokeFilter} by pen device
+     */
+    private Map<String, StrokeFilter> strokeFilters;
+    /**
+     * Screen size used to convert relative touch positions
+     */
+    private Dimension screen;
 
     /**
      * Creates an instance of the TouchAndWriteEventHandler class wich wraps the
@@ -88,6 +99,7 @@ public class TouchAndWriteEventHandler extends RemoteTouchAndWriteApplication im
         this.application = application;
         this.activeTouchComponents = new HashMap<>();
         this.activeDrawComponents = new HashMap<>();
+        this.strokeFilters = new HashMap<>();
     }
 
     /**
@@ -98,6 +110,8 @@ public class TouchAndWriteEventHandler extends RemoteTouchAndWriteApplication im
         this.clientManager.addTouchListener(this);
         this.controlManager.triggerEvent(new RegisterWindowEvent(application.getWindowTitle()));
         this.componentHandler = TouchAndWriteComponentHandler.getInstance();
+        this.screen = application.getScreenSize();
+        TouchEventPipeline.getInstance().start(this);
     }
 
     /**
@@ -199,25 +213,23 @@ public class TouchAndWriteEventHandler extends RemoteTouchAndWriteApplication im
 
     @Override
     public void newTouchEvent(TouchEvent event) {
+        TouchEventPipeline.getInstance().offer(event);
+    }
+
+    /**
+     * Dispatches a {@link TouchEvent} to the touched component. Called by
+     * the {@link TouchEventPipeline} input thread.
+     *
+     * @param event {@link TouchEvent}
+     */
+    void dispatchTouchEvent(TouchEvent event) {
         int id = event.getID();
         if (event.getTouchState().equals(TouchState.TOUCH_BIRTH)) {
-            SortedMap<Integer, ITouchAndWriteComponent> components =
-                    new TreeMap<>();
-            for (ITouchAndWriteComponent component : componentHandler
-                    .getComponents()) {
-                if (component.isTouchable()) {
-                    int x = (int) (event.getX() * component.getDisplaySize()
-                            .getWidth());
-                    int y = (int) (event.getY() * component.getDisplaySize()
-                            .getHeight());
-                    if (component.inArea(x, y)) {
-                        components.put(component.getZOrder(), component);
-                    }
-                }
-            }
-            if (!components.isEmpty()) {
-                ITouchAndWriteComponent component =
-                        components.get(components.firstKey());
+            int x = (int) (event.getX() * screen.getWidth());
+            int y = (int) (event.getY() * screen.getHeight());
+            ITouchAndWriteComponent component = componentHandler
+                    .getHitTestIndex().find(x, y, HitTestIndex.TOUCHABLE);
+            if (component != null) {
                 activeTouchComponents.put(event.getID(), component);
                 if (component instanceof IVideoComponent) {
                     for (IVideoComponent video : TouchAndWriteComponentHandler.getInstance().getVideos()) {
@@ -263,6 +275,16 @@ public class TouchAndWriteEventHandler extends RemoteTouchAndWriteApplication im
 
     @Override
     public void newGestureEvent(TouchGestureEvent event) {
+        TouchEventPipeline.getInstance().offer(event);
+    }
+
+    /**
+     * Dispatches a {@link TouchGestureEvent} to the touched component. Called
+     * by the {@link TouchEventPipeline} input thread.
+     *
+     * @param event {@link TouchGestureEvent}
+     */
+    void dispatchGestureEvent(TouchGestureEvent event) {
         if (event instanceof PanEventImpl) {
             panAction((PanEventImpl) event);
         } else if (event instanceof RotationGestureEventImpl) {
@@ -288,27 +310,25 @@ public class TouchAndWriteEventHandler extends RemoteTouchAndWriteApplication im
         if(componentHandler.isLogin()){
             application.clearDrawings();
         }
-        SortedMap<Integer, ITouchAndWriteComponent> components = new TreeMap<>();
-        for (ITouchAndWriteComponent component : componentHandler.getComponents()) {
-            if (component.isDrawable()) {
-                for (Shape shape : event.getDetectedShapes()) {
-                    for (Point point : shape.getPoints()) {
-                        if (component.inArea(point.x, point.y)) {
-                            components.put(component.getZOrder(), component);
-                            break;
-                        }
-                    }
+        HitTestIndex index = componentHandler.getHitTestIndex();
+        ITouchAndWriteComponent result = null;
+        for (Shape shape : event.getDetectedShapes()) {
+            for (Point point : shape.getPoints()) {
+                ITouchAndWriteComponent component =
+                        index.find(point.x, point.y, HitTestIndex.DRAWABLE);
+                if (component != null && (result == null
+                        || component.getZOrder() < result.getZOrder())) {
+                    result = component;
                 }
             }
         }
-        if (!components.isEmpty()) {
-            components.get(components.firstKey()).onShapeEvent(event);
+        if (result != null) {
+            result.onShapeEvent(event);
         }
     }
 
     @Override
     public void onPenEvent(String device, int x, int y, float force, PenEventDataType penEventState, long timestamp, String eventPageID) {
-        SortedMap<Integer, ITouchAndWriteComponent> components = new TreeMap<>();
         if (componentHandler.isLogin()) {
             if (penEventState.equals(PenEventDataType.PEN_UP)) {
                 application.draw(device, x, y, true);
@@ -317,26 +337,37 @@ public class TouchAndWriteEventHandler extends RemoteTouchAndWriteApplication im
             }
         }
         if (penEventState.equals(PenEventDataType.PEN_DOWN)) {
-
-            for (ITouchAndWriteComponent component : componentHandler.getComponents()) {
-                if (component.isDrawable()) {
-                    if (component.inArea(x, y)) {
-
-                        components.put(component.getZOrder(), component);
-                    }
+            ITouchAndWriteComponent component = componentHandler
+                    .getHitTestIndex().find(x, y, HitTestIndex.DRAWABLE);
+            if (component != null) {
+                log.debug("Put: {}", component);
+                activeDrawComponents.put(device, component);
+                StrokeFilter filter = strokeFilters.get(device);
+                if (filter == null) {
+                    filter = new StrokeFilter();
+                    strokeFilters.put(device, filter);
                 }
-            }
-            if (!components.isEmpty()) {
-                log.debug("Put: {}", components.get(components.firstKey()));
-                activeDrawComponents.put(device, components.get(components.firstKey()));
+                filter.reset();
             }
         }
         if (activeDrawComponents.containsKey(device)) {
+            ITouchAndWriteComponent component = activeDrawComponents.get(device);
+            boolean raw = CovidaConfiguration.getInstance().rawstrokes;
             if (penEventState.equals(PenEventDataType.PEN_UP)) {
-                activeDrawComponents.get(device).drawEnd(x, y);
+                StrokeFilter filter = strokeFilters.get(device);
+                if (!raw && filter.flush()
+                        && (filter.getX() != x || filter.getY() != y)) {
+                    component.draw(device, filter.getX(), filter.getY());
+                }
+                component.drawEnd(device, x, y);
                 activeDrawComponents.remove(device);
             } else if (penEventState.equals(PenEventDataType.PEN_MOVE)) {
-                activeDrawComponents.get(device).draw(x, y);
+                StrokeFilter filter = strokeFilters.get(device);
+                if (raw) {
+                    component.draw(device, x, y);
+                } else if (filter.add(x, y)) {
+                    component.draw(device, filter.getX(), filter.getY());
+                }
             }
         }
     }
@@ -350,18 +381,11 @@ public class TouchAndWriteEventHandler extends RemoteTouchAndWriteApplication im
                     event.getHWRResultSet().topResult());
             componentHandler.setLogin(false);
         } else {
-            SortedMap<Integer, ITouchAndWriteComponent> components = new TreeMap<>();
             String topResult = HWRPostProcessing.getResult(event);
-            for (ITouchAndWriteComponent component : componentHandler.getComponents()) {
-                if (component.isDrawable()) {
-                    if (component.inArea(x, y)) {
-                        components.put(component.getZOrder(), component);
-                    }
-                }
-            }
-            if (!components.isEmpty()) {
-                components.get(components.firstKey()).hwrAction(
-                        event.getDeviceAddress(), topResult);
+            ITouchAndWriteComponent component = componentHandler
+                    .getHitTestIndex().find(x, y, HitTestIndex.DRAWABLE);
+            if (component != null) {
+                component.hwrAction(event.getDeviceAddress(), topResult);
             }
         }
     }
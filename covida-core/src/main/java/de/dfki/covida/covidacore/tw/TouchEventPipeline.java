@@ -0,0 +1,320 @@
+/*
+ * TouchEventPipeline.java
+ *
+ * Copyright (c) 2012, Tobias Zimmermann All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of
+ * conditions and the following disclaimer. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors may be used to endorse or
+ * promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package de.dfki.covida.covidacore.tw;
+
+import de.dfki.touchandwrite.input.touch.event.TouchEvent;
+import de.dfki.touchandwrite.input.touch.event.TouchState;
+import de.dfki.touchandwrite.input.touch.gesture.TouchGestureEvent;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Batches touch and touch gesture events and dispatches them on a dedicated
+ * input thread once per rendered frame.
+ *
+ * Consecutive {@link TouchState#TOUCH_LIVING} events of a touch id are
+ * coalesced into the latest position, so a fast sensor does not flood the
+ * components and the update queue with moves the display never shows.
+ * Births, deaths and gestures are kept in arrival order. If no frame is
+ * signaled via {@link #frame()} within {@link #MAX_FRAME_WAIT} ms the
+ * pending batch is dispatched anyway.
+ *
+ * The latency from the arrival of the oldest event of a batch to the next
+ * frame after its dispatch is logged every {@link #LOG_INTERVAL} ms.
+ *
+ * @author Tobias Zimmermann <Tobias.Zimmermann@dfki.de>
+ */
+public class TouchEventPipeline implements Runnable {
+
+    /**
+     * Logger
+     */
+    private static Logger log = LoggerFactory.getLogger(TouchEventPipeline.class);
+    /**
+     * Maximum time in ms a pending batch waits for a frame
+     */
+    private static final long MAX_FRAME_WAIT = 100;
+    /**
+     * Interval in ms of the latency log
+     */
+    private static final long LOG_INTERVAL = 10000;
+    /**
+     * Instance of {@link TouchEventPipeline}
+     */
+    private static TouchEventPipeline instance;
+    /**
+     * Lock for the pending events and the frame counter
+     */
+    private final Object lock = new Object();
+    /**
+     * Pending events in arrival order
+     */
+    private List<Entry> pending;
+    /**
+     * Batch which is dispatched by the input thread
+     */
+    private List<Entry> batch;
+    /**
+     * Pending {@link TouchState#TOUCH_LIVING} event by touch id
+     */
+    private final Map<Integer, Entry> moves;
+    /**
+     * Amount of signaled frames
+     */
+    private long frames;
+    /**
+     * {@link TouchAndWriteEventHandler} which dispatches the events
+     */
+    private TouchAndWriteEventHandler handler;
+    /**
+     * Input thread
+     */
+    private Thread thread;
+    /**
+     * Arrival in ns of the oldest event dispatched since the last frame, 0
+     * if none
+     */
+    private long dispatchedArrival;
+    /**
+     * Statistics since the last log
+     */
+    private long events;
+    private long coalesced;
+    private long batches;
+    private long latencySum;
+    private long latencyMax;
+    private long lastLog;
+
+    /**
+     * Private constructor of {@link TouchEventPipeline}
+     */
+    private TouchEventPipeline() {
+        pending = new ArrayList<>();
+        batch = new ArrayList<>();
+        moves = new HashMap<>();
+        lastLog = System.currentTimeMillis();
+    }
+
+    /**
+     * Returns the instance of the {@link TouchEventPipeline}.
+     *
+     * @return {@link TouchEventPipeline}
+     */
+    public synchronized static TouchEventPipeline getInstance() {
+        if (instance == null) {
+            instance = new TouchEventPipeline();
+        }
+        return instance;
+    }
+
+    /**
+     * Starts the input thread which dispatches to the given handler.
+     *
+     * @param handler {@link TouchAndWriteEventHandler}
+     */
+    synchronized void start(TouchAndWriteEventHandler handler) {
+        this.handler = handler;
+        if (thread == null) {
+            thread = new Thread(this, "Touch Input");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Queues a {@link TouchEvent}. A {@link TouchState#TOUCH_LIVING} event
+     * replaces a pending one of the same touch id, unless any other event
+     * was queued after it, so no event is dispatched after a later position.
+     *
+     * @param event {@link TouchEvent}
+     */
+    void offer(TouchEvent event) {
+        synchronized (lock) {
+            events++;
+            if (event.getTouchState().equals(TouchState.TOUCH_LIVING)) {
+                Entry move = moves.get(event.getID());
+                if (move != null) {
+                    move.event = event;
+                    coalesced++;
+                    return;
+                }
+                move = new Entry(event);
+                moves.put(event.getID(), move);
+                pending.add(move);
+            } else {
+                moves.clear();
+                pending.add(new Entry(event));
+            }
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Queues a {@link TouchGestureEvent}.
+     *
+     * @param event {@link TouchGestureEvent}
+     */
+    void offer(TouchGestureEvent event) {
+        synchronized (lock) {
+            events++;
+            moves.clear();
+            pending.add(new Entry(event));
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Signals a frame. Must be called once per frame by the render loop,
+     * after the update queue was executed.
+     */
+    public void frame() {
+        long latency = 0;
+        synchronized (lock) {
+            frames++;
+            if (dispatchedArrival != 0) {
+                latency = System.nanoTime() - dispatchedArrival;
+                dispatchedArrival = 0;
+                batches++;
+                latencySum += latency;
+                latencyMax = Math.max(latencyMax, latency);
+            }
+            lock.notifyAll();
+        }
+        if (latency != 0) {
+            logStatistics();
+        }
+    }
+
+    /**
+     * Logs and resets the statistics every {@link #LOG_INTERVAL} ms.
+     */
+    private void logStatistics() {
+        long now = System.currentTimeMillis();
+        synchronized (lock) {
+            if (now - lastLog < LOG_INTERVAL) {
+                return;
+            }
+            log.debug("Touch input: {} events, {} coalesced, {} batches, "
+                    + "latency avg {} ms, max {} ms", events, coalesced, batches,
+                    latencySum / batches / 1000000, latencyMax / 1000000);
+            events = 0;
+            coalesced = 0;
+            batches = 0;
+            latencySum = 0;
+            latencyMax = 0;
+            lastLog = now;
+        }
+    }
+
+    @Override
+    public void run() {
+        long handledFrame = -1;
+        while (true) {
+            List<Entry> dispatched;
+            try {
+                synchronized (lock) {
+                    long deadline = 0;
+                    while (pending.isEmpty() || frames == handledFrame) {
+                        if (pending.isEmpty()) {
+                            lock.wait();
+                            continue;
+                        }
+                        long now = System.currentTimeMillis();
+                        if (deadline == 0) {
+                            deadline = now + MAX_FRAME_WAIT;
+                        } else if (now >= deadline) {
+                            break;
+                        }
+                        lock.wait(Math.max(1, deadline - now));
+                    }
+                    handledFrame = frames;
+                    dispatched = pending;
+                    pending = batch;
+                    batch = dispatched;
+                    moves.clear();
+                }
+            } catch (InterruptedException e) {
+                log.debug("Touch input thread interrupted.");
+                return;
+            }
+            long arrival = dispatched.get(0).arrival;
+            for (Entry entry : dispatched) {
+                arrival = Math.min(arrival, entry.arrival);
+                dispatch(entry.event);
+            }
+            dispatched.clear();
+            synchronized (lock) {
+                if (dispatchedArrival == 0
+                        || arrival < dispatchedArrival) {
+                    dispatchedArrival = arrival;
+                }
+            }
+        }
+    }
+
+    /**
+     * Dispatches an event to the {@link TouchAndWriteEventHandler}.
+     *
+     * @param event {@link TouchEvent} or {@link TouchGestureEvent}
+     */
+    private void dispatch(Object event) {
+        try {
+            if (event instanceof TouchEvent) {
+                handler.dispatchTouchEvent((TouchEvent) event);
+            } else {
+                handler.dispatchGestureEvent((TouchGestureEvent) event);
+            }
+        } catch (RuntimeException e) {
+            log.error("Touch event dispatch failed: {}", e.toString());
+        }
+    }
+
+    /**
+     * Queued event with its arrival time
+     */
+    private static class Entry {
+
+        /**
+         * {@link TouchEvent} or {@link TouchGestureEvent}
+         */
+        Object event;
+        /**
+         * Arrival in ns of the first coalesced event
+         */
+        final long arrival;
+
+        Entry(Object event) {
+            this.event = event;
+            this.arrival = System.nanoTime();
+        }
+    }
+}
@@ -29,196 +29,147 @@ package de.dfki.covida.covidacore.utils;
 
 import de.dfki.covida.covidacore.data.Annotation;
 import de.dfki.covida.covidacore.data.AnnotationData;
+import de.dfki.covida.covidacore.data.AnnotationIndex;
+import de.dfki.covida.covidacore.data.AnnotationStorage;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import org.apache.commons.lang.StringUtils;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import java.util.Set;
+import java.util.UUID;
 
 /**
  * Annotation search procedure class
  *
+ * The search runs four tiers against an {@link AnnotationIndex}: exact token
+ * match, case insensitive match, substring match and Levenshtein distance
+ * match. Each tier contributes a score, so the merged result is ranked with
+ * the best matches first.
+ *
  * @author Tobias Zimmermann <Tobias.Zimmermann@dfki.de>
  */
 public class AnnotationSearch {
 
     /**
-     * Logger
+     * Score of an exact match
      */
-    private static Logger log = LoggerFactory.getLogger(AnnotationSearch.class);
-
+    private static final int EXACT_SCORE = 24;
     /**
-     * Search after the occurence of a {@link List} of search terms in a
-     * {@link List} of {@link AnnotationData}.
-     *
-     * @param hwrResults search terms
-     * @param dataList {@link List} of {@link AnnotationData}
-     * @return {@link Map} of {@link AnnotationData} to {@link List} of
-     * {@link Annotation}
+     * Score of a case insensitive match
      */
-    public static Map<AnnotationData, List<Annotation>> search(List<String> hwrResults, Iterable<AnnotationData> dataList) {
-        Map<AnnotationData, List<Annotation>> searchResult = new HashMap<>();
-        if (dataList != null && hwrResults != null) {
-            for (String hwrResult : hwrResults) {
-                searchResult = exactSearch(hwrResult, dataList, searchResult);
-                searchResult = caseInsensitiveSearch(hwrResult, dataList, searchResult);
-                searchResult = wrapAroundSearch(hwrResult, dataList, searchResult);
-                searchResult = levenshteinSearch(hwrResult, dataList, searchResult);
-            }
-        }
-        return searchResult;
-    }
+    private static final int CASE_INSENSITIVE_SCORE = 12;
+    /**
+     * Score of a substring match
+     */
+    private static final int WRAP_AROUND_SCORE = 6;
+    /**
+     * Maximal Levenshtein distance (exclusive) of a match
+     */
+    public static final int MAX_DISTANCE = 3;
 
     /**
-     * Exact search after the occurence of a search term
-     * in a {@link List} of {@link AnnotationData}.
+     * Search after the occurence of a {@link List} of search terms in an
+     * {@link AnnotationIndex}.
      *
-     * @param hwrResult search term
-     * @param dataList {@link List} of {@link AnnotationData}
-     * @param searchResult {@link Map} of {@link AnnotationData} to {@link List} of
-     * {@link Annotation}
-     * @return {@link Map} of {@link AnnotationData} to {@link List} of
+     * @param hwrResults search terms
+     * @param index {@link AnnotationIndex}
+     * @return ranked {@link Map} of {@link AnnotationData} to {@link List} of
      * {@link Annotation}
      */
-    private static Map<AnnotationData, List<Annotation>> exactSearch(String hwrResult, Iterable<AnnotationData> dataList, Map<AnnotationData, List<Annotation>> searchResult) {
-        for (AnnotationData data : dataList) {
-            if (data != null) {
-                for (Annotation annotation : data.getAnnotations()) {
-                    if (annotation.description != null) {
-                        for (String s : annotation.description.split(" ")) {
-                            if (s.equals(hwrResult)) {
-                                if (searchResult.containsKey(data)) {
-                                    if (!searchResult.get(data).contains(annotation)) {
-                                        searchResult.get(data).add(annotation);
-                                    }
-                                } else {
-                                    List<Annotation> list = new ArrayList<>();
-                                    list.add(annotation);
-                                    searchResult.put(data, list);
-                                }
-                                break;
-                            }
-                        }
-                    }
+    public static Map<AnnotationData, List<Annotation>> search(List<String> hwrResults, AnnotationIndex index) {
+        Map<UUID, Integer> scores = new HashMap<>();
+        if (index != null && hwrResults != null) {
+            for (String hwrResult : hwrResults) {
+                if (hwrResult == null || hwrResult.isEmpty()) {
+                    continue;
+                }
+                Map<UUID, Integer> termScores = new HashMap<>();
+                score(termScores, index.exact(hwrResult), EXACT_SCORE);
+                score(termScores, index.caseInsensitive(hwrResult), CASE_INSENSITIVE_SCORE);
+                score(termScores, index.substring(hwrResult), WRAP_AROUND_SCORE);
+                levenshteinSearch(hwrResult, index, termScores);
+                for (Map.Entry<UUID, Integer> entry : termScores.entrySet()) {
+                    Integer score = scores.get(entry.getKey());
+                    scores.put(entry.getKey(), score == null ? entry.getValue()
+                            : score + entry.getValue());
                 }
             }
         }
-        return searchResult;
+        return rank(scores, index);
     }
 
     /**
-     * Case insensitive search after the occurence of a search term
-     * in a {@link List} of {@link AnnotationData}.
+     * Levenshtein distance search after the occurence of a search term in the
+     * vocabulary of an {@link AnnotationIndex}. Closer matches get a higher
+     * score.
      *
      * @param hwrResult search term
-     * @param dataList {@link List} of {@link AnnotationData}
-     * @param searchResult {@link Map} of {@link AnnotationData} to {@link List} of
-     * {@link Annotation}
-     * @return {@link Map} of {@link AnnotationData} to {@link List} of
-     * {@link Annotation}
+     * @param index {@link AnnotationIndex}
+     * @param termScores scores of the current term
      */
-    private static Map<AnnotationData, List<Annotation>> caseInsensitiveSearch(String hwrResult, Iterable<AnnotationData> dataList, Map<AnnotationData, List<Annotation>> searchResult) {
-        for (AnnotationData data : dataList) {
-            if (data != null) {
-                for (Annotation annotation : data.getAnnotations()) {
-                    if (annotation.description != null) {
-                        for (String s : annotation.description.split(" ")) {
-                            if (s.equalsIgnoreCase(hwrResult)) {
-                                if (searchResult.containsKey(data)) {
-                                    if (!searchResult.get(data).contains(annotation)) {
-                                        searchResult.get(data).add(annotation);
-                                    }
-                                } else {
-                                    List<Annotation> list = new ArrayList<>();
-                                    list.add(annotation);
-                                    searchResult.put(data, list);
-                                }
-                                break;
-                            }
-                        }
-                    }
-                }
-            }
+    private static void levenshteinSearch(String hwrResult, AnnotationIndex index, Map<UUID, Integer> termScores) {
+        Map<String, Integer> matches = index.fuzzy(hwrResult, MAX_DISTANCE - 1);
+        for (Map.Entry<String, Integer> match : matches.entrySet()) {
+            score(termScores, index.lookup(Collections.singleton(match.getKey())),
+                    MAX_DISTANCE - match.getValue());
         }
-        return searchResult;
     }
 
     /**
-     * Wrap around search after the occurence of a search term
-     * in a {@link List} of {@link AnnotationData}.
+     * Keeps the best tier score of each {@link Annotation} for one term.
      *
-     * @param hwrResult search term
-     * @param dataList {@link List} of {@link AnnotationData}
-     * @param searchResult {@link Map} of {@link AnnotationData} to {@link List} of
-     * {@link Annotation}
-     * @return {@link Map} of {@link AnnotationData} to {@link List} of
-     * {@link Annotation}
+     * @param termScores scores of the current term
+     * @param matches matching {@link Annotation} {@link UUID}s
+     * @param score score of the tier
      */
-    private static Map<AnnotationData, List<Annotation>> wrapAroundSearch(String hwrResult, Iterable<AnnotationData> dataList, Map<AnnotationData, List<Annotation>> searchResult) {
-        for (AnnotationData data : dataList) {
-            if (data != null) {
-                for (Annotation annotation : data.getAnnotations()) {
-                    if (annotation.description != null) {
-                        for (String s : annotation.description.split(" ")) {
-                            if (s.contains(hwrResult)) {
-                                if (searchResult.containsKey(data)) {
-                                    if (!searchResult.get(data).contains(annotation)) {
-                                        searchResult.get(data).add(annotation);
-                                    }
-                                } else {
-                                    List<Annotation> list = new ArrayList<>();
-                                    list.add(annotation);
-                                    searchResult.put(data, list);
-                                }
-                                break;
-                            }
-                        }
-                    }
-                }
+    private static void score(Map<UUID, Integer> termScores, Set<UUID> matches, int score) {
+        for (UUID uuid : matches) {
+            Integer current = termScores.get(uuid);
+            if (current == null || current < score) {
+                termScores.put(uuid, score);
             }
         }
-        return searchResult;
     }
 
     /**
-     * Levenshtein distance search after the occurence of a search term
-     * in a {@link List} of {@link AnnotationData}.
+     * Groups the scored {@link Annotation}s by {@link AnnotationData}. Both the
+     * {@link AnnotationData} entries and the {@link Annotation} lists are
+     * ordered by descending score.
      *
-     * @param hwrResult search term
-     * @param dataList {@link List} of {@link AnnotationData}
-     * @param searchResult {@link Map} of {@link AnnotationData} to {@link List} of
-     * {@link Annotation}
-     * @return {@link Map} of {@link AnnotationData} to {@link List} of
+     * @param scores {@link Annotation} scores
+     * @param index {@link AnnotationIndex}
+     * @return ranked {@link Map} of {@link AnnotationData} to {@link List} of
      * {@link Annotation}
      */
-    private static Map<AnnotationData, List<Annotation>> levenshteinSearch(String hwrResult, Iterable<AnnotationData> dataList, Map<AnnotationData, List<Annotation>> searchResult) {
-        for (AnnotationData data : dataList) {
-            if (data != null) {
-                for (Annotation annotation : data.getAnnotations()) {
-                    if (annotation.description != null) {
-                        for (String s : annotation.description.split(" ")) {
-                            int distance = StringUtils.getLevenshteinDistance(hwrResult, s);
-                            log.debug("SearchString: " + hwrResult
-                                    + " - " + s + " distance: "
-                                    + distance);
-                            if (distance < 3) {
-                                if (searchResult.containsKey(data)) {
-                                    if (!searchResult.get(data).contains(annotation)) {
-                                        searchResult.get(data).add(annotation);
-                                    }
-                                } else {
-                                    List<Annotation> list = new ArrayList<>();
-                                    list.add(annotation);
-                                    searchResult.put(data, list);
-                                }
-                                break;
-                            }
-                        }
-                    }
-                }
+    private static Map<AnnotationData, List<Annotation>> rank(final Map<UUID, Integer> scores, AnnotationIndex index) {
+        List<UUID> ranked = new ArrayList<>(scores.keySet());
+        Collections.sort(ranked, new Comparator<UUID>() {
+            @Override
+            public int compare(UUID o1, UUID o2) {
+                return scores.get(o2).compareTo(scores.get(o1));
+            }
+        });
+        Map<AnnotationData, List<Annotation>> searchResult = new LinkedHashMap<>();
+        for (UUID uuid : ranked) {
+            UUID video = index.getVideo(uuid);
+            if (video == null) {
+                continue;
+            }
+            AnnotationData data = AnnotationStorage.getInstance()
+                    .getAnnotationData(video);
+            Annotation annotation = data == null ? null : data.getAnnotation(uuid);
+            if (annotation == null) {
+                continue;
+            }
+            List<Annotation> list = searchResult.get(data);
+            if (list == null) {
+                list = new ArrayList<>();
+                searchResult.put(data, list);
             }
+            list.add(annotation);
         }
         return searchResult;
     }
@@ -0,0 +1,237 @@
+/*
+ * BKTree.java
+ *
+ * Copyright (c) 2012, Tobias Zimmermann All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of
+ * conditions and the following disclaimer. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors may be used to endorse or
+ * promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package de.dfki.covida.covidacore.utils;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Burkhard-Keller tree over a vocabulary of {@link String}s.
+ *
+ * The tree answers bounded Levenshtein distance queries without comparing the
+ * query against every word: because the Levenshtein distance is a metric,
+ * only children whose edge distance lies within {@code [d - max, d + max]} of
+ * the distance {@code d} to the current node can contain matches.
+ *
+ * Removed words are kept as tombstones until more than half of the nodes are
+ * dead, then the tree is rebuilt from the remaining words.
+ *
+ * Note that this class is not thread safe.
+ *
+ * @author Tobias Zimmermann <Tobias.Zimmermann@dfki.de>
+ */
+public class BKTree {
+
+    /**
+     * Root {@link Node}
+     */
+    private Node root;
+    /**
+     * Live words mapped to their {@link Node}
+     */
+    private final Map<String, Node> nodes;
+    /**
+     * Amount of tombstone {@link Node}s
+     */
+    private int deleted;
+
+    /**
+     * Creates a new empty {@link BKTree}
+     */
+    public BKTree() {
+        nodes = new HashMap<>();
+    }
+
+    /**
+     * Adds a word to the {@link BKTree}.
+     *
+     * @param word word to add
+     * @return true if the word was not contained before
+     */
+    public boolean add(String word) {
+        if (nodes.containsKey(word)) {
+            return false;
+        }
+        if (root == null) {
+            root = new Node(word);
+            nodes.put(word, root);
+            return true;
+        }
+        Node node = root;
+        while (true) {
+            int distance = distance(node.word, word);
+            if (distance == 0) {
+                // revive tombstone
+                node.deleted = false;
+                deleted--;
+                nodes.put(word, node);
+                return true;
+            }
+            Node child = node.children == null ? null : node.children.get(distance);
+            if (child == null) {
+                if (node.children == null) {
+                    node.children = new HashMap<>();
+                }
+                child = new Node(word);
+                node.children.put(distance, child);
+                nodes.put(word, child);
+                return true;
+            }
+            node = child;
+        }
+    }
+
+    /**
+     * Removes a word from the {@link BKTree}.
+     *
+     * @param word word to remove
+     * @return true if the word was contained
+     */
+    public boolean remove(String word) {
+        Node node = nodes.remove(word);
+        if (node == null) {
+            return false;
+        }
+        node.deleted = true;
+        deleted++;
+        if (deleted > nodes.size()) {
+            rebuild();
+        }
+        return true;
+    }
+
+    /**
+     * Returns the amount of words in the {@link BKTree}.
+     *
+     * @return amount of words
+     */
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * Returns all words which have a Levenshtein distance lower or equal than
+     * {@code maxDistance} to the query.
+     *
+     * @param query query word
+     * @param maxDistance maximal distance (inclusive)
+     * @return {@link Map} of matching words to their distance
+     */
+    public Map<String, Integer> search(String query, int maxDistance) {
+        Map<String, Integer> result = new LinkedHashMap<>();
+        if (root == null) {
+            return result;
+        }
+        Deque<Node> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            Node node = stack.pop();
+            int distance = distance(node.word, query);
+            if (distance <= maxDistance && !node.deleted) {
+                result.put(node.word, distance);
+            }
+            if (node.children != null) {
+                int min = distance - maxDistance;
+                int max = distance + maxDistance;
+                for (Map.Entry<Integer, Node> child : node.children.entrySet()) {
+                    int edge = child.getKey();
+                    if (edge >= min && edge <= max) {
+                        stack.push(child.getValue());
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Rebuilds the tree without tombstones.
+     */
+    private void rebuild() {
+        String[] words = nodes.keySet().toArray(new String[nodes.size()]);
+        root = null;
+        nodes.clear();
+        deleted = 0;
+        for (String word : words) {
+            add(word);
+        }
+    }
+
+    /**
+     * Computes the Levenshtein distance of two {@link String}s.
+     *
+     * @param s first {@link String}
+     * @param t second {@link String}
+     * @return Levenshtein distance
+     */
+    public static int distance(String s, String t) {
+        int n = s.length();
+        int m = t.length();
+        if (n == 0) {
+            return m;
+        }
+        if (m == 0) {
+            return n;
+        }
+        int[] previous = new int[m + 1];
+        int[] current = new int[m + 1];
+        for (int j = 0; j <= m; j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= n; i++) {
+            char c = s.charAt(i - 1);
+            current[0] = i;
+            for (int j = 1; j <= m; j++) {
+                int cost = c == t.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1,
+                        previous[j] + 1), previous[j - 1] + cost);
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[m];
+    }
+
+    /**
+     * Node of the {@link BKTree}
+     */
+    private static class Node {
+
+        private final String word;
+        private Map<Integer, Node> children;
+        private boolean deleted;
+
+        private Node(String word) {
+            this.word = word;
+        }
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * IntervalTree.java
+ *
+ * Copyright (c) 2012, Tobias Zimmermann All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of
+ * conditions and the following disclaimer. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors may be used to endorse or
+ * promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package de.dfki.covida.covidacore.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Interval tree over closed {@code [start, end]} intervals.
+ *
+ * The tree is a treap ordered by interval start and value, every node is
+ * augmented with the maximal end of its subtree. Insert and remove take
+ * expected {@code O(log n)}, an overlap query {@code O(log n + k)} for
+ * {@code k} results because subtrees whose maximal end lies before the query
+ * are skipped.
+ *
+ * Note that this class is not thread safe.
+ *
+ * @param <T> value type, values of intervals with the same start must be
+ * distinct
+ * @author Tobias Zimmermann <Tobias.Zimmermann@dfki.de>
+ */
+public class IntervalTree<T extends Comparable<T>> {
+
+    /**
+     * Root {@link Node}
+     */
+    private Node<T> root;
+    /**
+     * Amount of intervals
+     */
+    private int size;
+    /**
+     * Source of the node priorities
+     */
+    private final Random random = new Random();
+
+    /**
+     * Adds an interval.
+     *
+     * @param start interval start
+     * @param end interval end, not before {@code start}
+     * @param value value of the interval
+     */
+    public void add(long start, long end, T value) {
+        if (end < start) {
+            throw new IllegalArgumentException("end < start");
+        }
+        root = insert(root, new Node<>(start, end, value, random.nextInt()));
+        size++;
+    }
+
+    /**
+     * Removes an interval.
+     *
+     * @param start interval start
+     * @param value value of the interval
+     * @return true if the interval was contained
+     */
+    public boolean remove(long start, T value) {
+        int before = size;
+        root = delete(root, start, value);
+        return size < before;
+    }
+
+    /**
+     * Returns the amount of intervals.
+     *
+     * @return amount of intervals
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the values of all intervals which overlap {@code [from, to]},
+     * ordered by interval start.
+     *
+     * @param from query start
+     * @param to query end
+     * @return {@link List} of values
+     */
+    public List<T> overlapping(long from, long to) {
+        List<T> result = new ArrayList<>();
+        overlapping(root, from, to, result);
+        return result;
+    }
+
+    private void overlapping(Node<T> node, long from, long to, List<T> result) {
+        if (node == null || node.max < from) {
+            return;
+        }
+        overlapping(node.left, from, to, result);
+        if (node.start > to) {
+            return;
+        }
+        if (node.end >= from) {
+            result.add(node.value);
+        }
+        overlapping(node.right, from, to, result);
+    }
+
+    private Node<T> insert(Node<T> node, Node<T> added) {
+        if (node == null) {
+            return added;
+        }
+        if (compare(added.start, added.value, node) < 0) {
+            node.left = insert(node.left, added);
+            if (node.left.priority > node.priority) {
+                node = rotateRight(node);
+            }
+        } else {
+            node.right = insert(node.right, added);
+            if (node.right.priority > node.priority) {
+                node = rotateLeft(node);
+            }
+        }
+        node.update();
+        return node;
+    }
+
+    private Node<T> delete(Node<T> node, long start, T value) {
+        if (node == null) {
+            return null;
+        }
+        int c = compare(start, value, node);
+        if (c < 0) {
+            node.left = delete(node.left, start, value);
+        } else if (c > 0) {
+            node.right = delete(node.right, start, value);
+        } else {
+            size--;
+            return merge(node.left, node.right);
+        }
+        node.update();
+        return node;
+    }
+
+    /**
+     * Merges two treaps whose keys are ordered.
+     */
+    private Node<T> merge(Node<T> left, Node<T> right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            left.update();
+            return left;
+        }
+        right.left = merge(left, right.left);
+        right.update();
+        return right;
+    }
+
+    private Node<T> rotateRight(Node<T> node) {
+        Node<T> left = node.left;
+        node.left = left.right;
+        left.right = node;
+        node.update();
+        left.update();
+        return left;
+    }
+
+    private Node<T> rotateLeft(Node<T> node) {
+        Node<T> right = node.right;
+        node.right = right.left;
+        right.left = node;
+        node.update();
+        right.update();
+        return right;
+    }
+
+    private int compare(long start, T value, Node<T> node) {
+        if (start != node.start) {
+            return start < node.start ? -1 : 1;
+        }
+        return value.compareTo(node.value);
+    }
+
+    /**
+     * Treap node
+     */
+    private static class Node<T> {
+
+        private final long start;
+        private final long end;
+        private final T value;
+        private final int priority;
+        private long max;
+        private Node<T> left;
+        private Node<T> right;
+
+        private Node(long start, long end, T value, int priority) {
+            this.start = start;
+            this.end = end;
+            this.value = value;
+            this.priority = priority;
+            this.max = end;
+        }
+
+        private void update() {
+            max = end;
+            if (left != null && left.max > max) {
+                max = left.max;
+            }
+            if (right != null && right.max > max) {
+                max = right.max;
+            }
+        }
+    }
+}
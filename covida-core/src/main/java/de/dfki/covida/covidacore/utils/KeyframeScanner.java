@@ -0,0 +1,374 @@
+/*
+ * KeyframeScanner.java
+ *
+ * Copyright (c) 2012, Tobias Zimmermann All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of
+ * conditions and the following disclaimer. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors may be used to endorse or
+ * promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package de.dfki.covida.covidacore.utils;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Reads the keyframe time stamps of a video from its container without
+ * decoding, so a keyframe index can be built by the player itself.
+ *
+ * Supported are ISO base media files (mp4, m4v, mov, 3gp), whose sync
+ * sample table of the first video track is read from the {@code moov} box,
+ * and flv files, whose video tags are skipped through. Fragmented mp4 files
+ * and other containers are not supported.
+ *
+ * @author Tobias Zimmermann <Tobias.Zimmermann@dfki.de>
+ */
+public class KeyframeScanner {
+
+    /**
+     * Maximal size of a {@code moov} box which is read
+     */
+    private static final int MAX_MOOV = 64 * 1024 * 1024;
+    /**
+     * Maximal amount of keyframes of an index
+     */
+    private static final int MAX_KEYFRAMES = 1 << 20;
+    /**
+     * FLV tag type of video tags
+     */
+    private static final int FLV_VIDEO = 9;
+    /**
+     * FLV frame type of keyframes
+     */
+    private static final int FLV_KEYFRAME = 1;
+    /**
+     * FLV codec id of AVC
+     */
+    private static final int FLV_AVC = 7;
+
+    private KeyframeScanner() {
+    }
+
+    /**
+     * Returns the keyframe time stamps of the first video track.
+     *
+     * @param file video file
+     * @return keyframe time stamps in ms, ascending
+     * @return null if the container is not supported
+     * @throws IOException if the file could not be read or is corrupt
+     */
+    public static long[] scan(File file) throws IOException {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            byte[] head = new byte[8];
+            if (in.length() < head.length) {
+                return null;
+            }
+            in.readFully(head);
+            in.seek(0);
+            if (head[0] == 'F' && head[1] == 'L' && head[2] == 'V') {
+                return scanFlv(in);
+            }
+            String type = new String(head, 4, 4, "ISO-8859-1");
+            if (type.equals("ftyp") || type.equals("moov")
+                    || type.equals("mdat") || type.equals("wide")
+                    || type.equals("free")) {
+                return scanMp4(in);
+            }
+            return null;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException("Corrupt container: " + file, e);
+        }
+    }
+
+    /**
+     * Collects the time stamps of the FLV video tags of keyframes.
+     */
+    private static long[] scanFlv(RandomAccessFile in) throws IOException {
+        in.seek(5);
+        long offset = in.readInt() & 0xffffffffL;
+        long length = in.length();
+        long[] times = new long[256];
+        int count = 0;
+        // each tag is preceded by the size of the previous tag
+        offset += 4;
+        while (offset + 11 <= length) {
+            in.seek(offset);
+            int type = in.readUnsignedByte() & 0x1f;
+            int size = readUnsigned24(in);
+            long time = readUnsigned24(in) | (long) in.readUnsignedByte() << 24;
+            in.skipBytes(3);
+            if (type == FLV_VIDEO && size >= 2) {
+                int flags = in.readUnsignedByte();
+                boolean sequenceHeader = (flags & 0x0f) == FLV_AVC
+                        && in.readUnsignedByte() == 0;
+                if (flags >> 4 == FLV_KEYFRAME && !sequenceHeader
+                        && (count == 0 || times[count - 1] != time)) {
+                    if (count == MAX_KEYFRAMES) {
+                        return null;
+                    }
+                    if (count == times.length) {
+                        times = Arrays.copyOf(times, 2 * count);
+                    }
+                    times[count++] = time;
+                }
+            }
+            offset += 11 + size + 4;
+        }
+        times = Arrays.copyOf(times, count);
+        Arrays.sort(times);
+        return times;
+    }
+
+    private static int readUnsigned24(RandomAccessFile in) throws IOException {
+        return in.readUnsignedByte() << 16 | in.readUnsignedByte() << 8
+                | in.readUnsignedByte();
+    }
+
+    /**
+     * Finds the top level {@code moov} box and reads the first video track.
+     */
+    private static long[] scanMp4(RandomAccessFile in) throws IOException {
+        long offset = 0;
+        long length = in.length();
+        while (offset + 8 <= length) {
+            in.seek(offset);
+            long size = in.readInt() & 0xffffffffL;
+            int type = in.readInt();
+            int header = 8;
+            if (size == 1) {
+                size = in.readLong();
+                header = 16;
+            } else if (size == 0) {
+                size = length - offset;
+            }
+            if (size < header) {
+                throw new IOException("Invalid box size " + size);
+            }
+            if (type == type("moov")) {
+                if (size - header > MAX_MOOV) {
+                    throw new IOException("moov box too large: " + size);
+                }
+                byte[] moov = new byte[(int) (size - header)];
+                in.readFully(moov);
+                return scanMoov(ByteBuffer.wrap(moov));
+            }
+            offset += size;
+        }
+        throw new EOFException("No moov box");
+    }
+
+    /**
+     * Returns the keyframes of the first video track of the {@code moov}
+     * payload.
+     */
+    private static long[] scanMoov(ByteBuffer moov) {
+        ByteBuffer trak;
+        while ((trak = child(moov, "trak")) != null) {
+            ByteBuffer mdia = child(trak.duplicate(), "mdia");
+            ByteBuffer hdlr = mdia == null ? null : child(mdia.duplicate(), "hdlr");
+            if (hdlr == null || hdlr.getInt(hdlr.position() + 8) != type("vide")) {
+                continue;
+            }
+            ByteBuffer mdhd = child(mdia.duplicate(), "mdhd");
+            ByteBuffer minf = child(mdia.duplicate(), "minf");
+            ByteBuffer stbl = minf == null ? null : child(minf, "stbl");
+            if (mdhd == null || stbl == null) {
+                return null;
+            }
+            int version = mdhd.get(mdhd.position());
+            long timescale = mdhd.getInt(mdhd.position()
+                    + (version == 1 ? 20 : 12)) & 0xffffffffL;
+            if (timescale == 0) {
+                return null;
+            }
+            long mediaTime = mediaTime(trak.duplicate());
+            return keyframes(stbl, timescale, mediaTime);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the media time of the first edit of the track, which is shown
+     * at presentation time 0.
+     */
+    private static long mediaTime(ByteBuffer trak) {
+        ByteBuffer edts = child(trak, "edts");
+        ByteBuffer elst = edts == null ? null : child(edts, "elst");
+        if (elst == null) {
+            return 0;
+        }
+        int version = elst.get();
+        elst.position(elst.position() + 3);
+        int entries = elst.getInt();
+        for (int i = 0; i < entries; i++) {
+            long time;
+            if (version == 1) {
+                elst.getLong();
+                time = elst.getLong();
+            } else {
+                elst.getInt();
+                time = elst.getInt();
+            }
+            elst.getInt();
+            // an empty edit delays the track, it is not skipped
+            if (time >= 0) {
+                return time;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Computes the presentation times of the sync samples from the sample
+     * tables.
+     */
+    private static long[] keyframes(ByteBuffer stbl, long timescale,
+            long mediaTime) {
+        ByteBuffer stts = child(stbl.duplicate(), "stts");
+        ByteBuffer stss = child(stbl.duplicate(), "stss");
+        ByteBuffer ctts = child(stbl.duplicate(), "ctts");
+        if (stts == null) {
+            return null;
+        }
+        stts.getInt();
+        int sttsEntries = stts.getInt();
+        if (sttsEntries < 0 || sttsEntries > stts.remaining() / 8) {
+            throw new IndexOutOfBoundsException("stts entries " + sttsEntries);
+        }
+        long[] samples;
+        if (stss != null) {
+            stss.getInt();
+            int count = stss.getInt();
+            if (count < 0 || count > stss.remaining() / 4
+                    || count > MAX_KEYFRAMES) {
+                throw new IndexOutOfBoundsException("stss entries " + count);
+            }
+            samples = new long[count];
+            for (int i = 0; i < count; i++) {
+                samples[i] = stss.getInt() & 0xffffffffL;
+            }
+            Arrays.sort(samples);
+        } else {
+            // without sync sample table every sample is a sync sample
+            long count = 0;
+            for (int i = 0; i < sttsEntries; i++) {
+                count += stts.getInt(stts.position() + 8 * i) & 0xffffffffL;
+            }
+            if (count > MAX_KEYFRAMES) {
+                return null;
+            }
+            samples = new long[(int) count];
+            for (int i = 0; i < samples.length; i++) {
+                samples[i] = i + 1;
+            }
+        }
+        int cttsEntries = 0;
+        if (ctts != null) {
+            ctts.getInt();
+            cttsEntries = ctts.getInt();
+            if (cttsEntries < 0 || cttsEntries > ctts.remaining() / 8) {
+                throw new IndexOutOfBoundsException("ctts entries " + cttsEntries);
+            }
+        }
+        long[] times = new long[samples.length];
+        // decoding time: walk the stts runs
+        long runFirst = 1;
+        long runCount = 0;
+        long runDelta = 0;
+        long runTime = 0;
+        int run = 0;
+        // composition offset: walk the ctts runs
+        long offsetFirst = 1;
+        long offsetCount = 0;
+        long offset = 0;
+        int offsetRun = 0;
+        for (int i = 0; i < samples.length; i++) {
+            long sample = samples[i];
+            while (sample >= runFirst + runCount) {
+                if (run == sttsEntries) {
+                    throw new IndexOutOfBoundsException("sample " + sample);
+                }
+                runTime += runCount * runDelta;
+                runFirst += runCount;
+                runCount = stts.getInt() & 0xffffffffL;
+                runDelta = stts.getInt() & 0xffffffffL;
+                run++;
+            }
+            long dts = runTime + (sample - runFirst) * runDelta;
+            while (offsetRun < cttsEntries && sample >= offsetFirst + offsetCount) {
+                offsetFirst += offsetCount;
+                offsetCount = ctts.getInt() & 0xffffffffL;
+                offset = ctts.getInt();
+                offsetRun++;
+            }
+            long cts = sample < offsetFirst + offsetCount ? offset : 0;
+            times[i] = Math.max(0, (dts + cts - mediaTime) * 1000 / timescale);
+        }
+        Arrays.sort(times);
+        return times;
+    }
+
+    /**
+     * Returns the payload of the next child box of the given type and moves
+     * the position of the parent behind it.
+     *
+     * @param parent payload of the parent box
+     * @param name box type
+     * @return payload or null if there is no such child
+     */
+    private static ByteBuffer child(ByteBuffer parent, String name) {
+        int type = type(name);
+        while (parent.remaining() >= 8) {
+            int start = parent.position();
+            long size = parent.getInt() & 0xffffffffL;
+            int boxType = parent.getInt();
+            int header = 8;
+            if (size == 1) {
+                size = parent.getLong();
+                header = 16;
+            } else if (size == 0) {
+                size = parent.limit() - start;
+            }
+            if (size < header || size > parent.limit() - start) {
+                throw new IndexOutOfBoundsException("box size " + size);
+            }
+            int end = start + (int) size;
+            parent.position(end);
+            if (boxType == type) {
+                ByteBuffer payload = parent.duplicate();
+                payload.limit(end);
+                payload.position(start + header);
+                return payload.slice();
+            }
+        }
+        return null;
+    }
+
+    private static int type(String name) {
+        return name.charAt(0) << 24 | name.charAt(1) << 16
+                | name.charAt(2) << 8 | name.charAt(3);
+    }
+}
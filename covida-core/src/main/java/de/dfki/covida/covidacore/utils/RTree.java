@@ -0,0 +1,387 @@
+/*
+ * RTree.java
+ *
+ * Copyright (c) 2012, Tobias Zimmermann All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of
+ * conditions and the following disclaimer. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors may be used to endorse or
+ * promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package de.dfki.covida.covidacore.utils;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * R-tree over axis aligned bounding boxes.
+ *
+ * Inner nodes hold up to {@link #MAX_ENTRIES} children, overflowing nodes are
+ * split with the linear split of Guttman. Removing an entry dissolves nodes
+ * with less than {@link #MIN_ENTRIES} children and reinserts their entries.
+ *
+ * Bounding boxes are closed, so boxes of zero width or height, as of
+ * horizontal or vertical strokes, are found as well.
+ *
+ * Note that this class is not thread safe.
+ *
+ * @param <T> value type
+ * @author Tobias Zimmermann <Tobias.Zimmermann@dfki.de>
+ */
+public class RTree<T> {
+
+    /**
+     * Maximal amount of children per node
+     */
+    private static final int MAX_ENTRIES = 8;
+    /**
+     * Minimal amount of children per node
+     */
+    private static final int MIN_ENTRIES = 3;
+    /**
+     * Root {@link Node}
+     */
+    private Node<T> root;
+    /**
+     * Amount of entries
+     */
+    private int size;
+
+    /**
+     * Creates an empty {@link RTree}
+     */
+    public RTree() {
+        root = new Node<>(true);
+    }
+
+    /**
+     * Adds an entry.
+     *
+     * @param bounds bounding box
+     * @param value value
+     */
+    public void add(Rectangle bounds, T value) {
+        Node<T> entry = new Node<>(new Rectangle(bounds), value);
+        insert(entry);
+        size++;
+    }
+
+    /**
+     * Removes an entry.
+     *
+     * @param bounds bounding box the entry was added with
+     * @param value value
+     * @return true if the entry was contained
+     */
+    public boolean remove(Rectangle bounds, T value) {
+        Node<T> entry = find(root, bounds, value);
+        if (entry == null) {
+            return false;
+        }
+        Node<T> leaf = entry.parent;
+        leaf.children.remove(entry);
+        condense(leaf);
+        size--;
+        return true;
+    }
+
+    /**
+     * Returns the amount of entries.
+     *
+     * @return amount of entries
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the values of all entries whose bounding box intersects the
+     * given region.
+     *
+     * @param region query region
+     * @return {@link List} of values
+     */
+    public List<T> intersecting(Rectangle region) {
+        List<T> result = new ArrayList<>();
+        if (root.bounds != null) {
+            intersecting(root, region, result);
+        }
+        return result;
+    }
+
+    private void intersecting(Node<T> node, Rectangle region, List<T> result) {
+        for (Node<T> child : node.children) {
+            if (intersects(child.bounds, region)) {
+                if (node.leaf) {
+                    result.add(child.value);
+                } else {
+                    intersecting(child, region, result);
+                }
+            }
+        }
+    }
+
+    /**
+     * Inserts an entry into the leaf which needs the least enlargement.
+     */
+    private void insert(Node<T> entry) {
+        Node<T> node = root;
+        while (!node.leaf) {
+            Node<T> best = null;
+            long bestGrowth = Long.MAX_VALUE;
+            long bestArea = Long.MAX_VALUE;
+            for (Node<T> child : node.children) {
+                long area = area(child.bounds);
+                long growth = area(union(child.bounds, entry.bounds)) - area;
+                if (growth < bestGrowth
+                        || (growth == bestGrowth && area < bestArea)) {
+                    best = child;
+                    bestGrowth = growth;
+                    bestArea = area;
+                }
+            }
+            node = best;
+        }
+        node.add(entry);
+        while (node != null) {
+            Node<T> parent = node.parent;
+            if (node.children.size() > MAX_ENTRIES) {
+                Node<T> sibling = split(node);
+                if (parent == null) {
+                    root = new Node<>(false);
+                    root.add(node);
+                    root.add(sibling);
+                    parent = root;
+                } else {
+                    parent.add(sibling);
+                }
+            }
+            node.updateBounds();
+            node = parent;
+        }
+    }
+
+    /**
+     * Splits an overflowing node with the linear split and returns the new
+     * sibling.
+     */
+    private Node<T> split(Node<T> node) {
+        List<Node<T>> entries = new ArrayList<>(node.children);
+        int[] seeds = pickSeeds(entries);
+        Node<T> first = entries.get(seeds[0]);
+        Node<T> second = entries.get(seeds[1]);
+        entries.remove(Math.max(seeds[0], seeds[1]));
+        entries.remove(Math.min(seeds[0], seeds[1]));
+        node.children.clear();
+        node.add(first);
+        node.updateBounds();
+        Node<T> sibling = new Node<>(node.leaf);
+        sibling.add(second);
+        sibling.updateBounds();
+        for (int i = 0; i < entries.size(); i++) {
+            Node<T> entry = entries.get(i);
+            int remaining = entries.size() - i;
+            Node<T> target;
+            if (node.children.size() + remaining <= MIN_ENTRIES) {
+                target = node;
+            } else if (sibling.children.size() + remaining <= MIN_ENTRIES) {
+                target = sibling;
+            } else {
+                long growNode = area(union(node.bounds, entry.bounds))
+                        - area(node.bounds);
+                long growSibling = area(union(sibling.bounds, entry.bounds))
+                        - area(sibling.bounds);
+                target = growNode <= growSibling ? node : sibling;
+            }
+            target.add(entry);
+            target.bounds = union(target.bounds, entry.bounds);
+        }
+        return sibling;
+    }
+
+    /**
+     * Picks the two entries with the greatest normalized separation along
+     * one axis.
+     */
+    private int[] pickSeeds(List<Node<T>> entries) {
+        int[] best = {0, 1};
+        double bestSeparation = -1;
+        for (int axis = 0; axis < 2; axis++) {
+            int highestLow = 0;
+            int lowestHigh = 0;
+            long min = Long.MAX_VALUE;
+            long max = Long.MIN_VALUE;
+            for (int i = 0; i < entries.size(); i++) {
+                Rectangle r = entries.get(i).bounds;
+                if (low(r, axis) > low(entries.get(highestLow).bounds, axis)) {
+                    highestLow = i;
+                }
+                if (high(r, axis) < high(entries.get(lowestHigh).bounds, axis)) {
+                    lowestHigh = i;
+                }
+                min = Math.min(min, low(r, axis));
+                max = Math.max(max, high(r, axis));
+            }
+            if (highestLow == lowestHigh) {
+                continue;
+            }
+            double separation = (double) (low(entries.get(highestLow).bounds, axis)
+                    - high(entries.get(lowestHigh).bounds, axis))
+                    / Math.max(1, max - min);
+            if (separation > bestSeparation) {
+                bestSeparation = separation;
+                best = new int[]{lowestHigh, highestLow};
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Finds the entry node of a value.
+     */
+    private Node<T> find(Node<T> node, Rectangle bounds, T value) {
+        for (Node<T> child : node.children) {
+            if (node.leaf) {
+                if (child.value.equals(value) && child.bounds.equals(bounds)) {
+                    return child;
+                }
+            } else if (contains(child.bounds, bounds)) {
+                Node<T> found = find(child, bounds, value);
+                if (found != null) {
+                    return found;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Dissolves underfull nodes on the path to the root and reinserts their
+     * entries.
+     */
+    private void condense(Node<T> node) {
+        List<Node<T>> orphans = new ArrayList<>();
+        while (node != root) {
+            Node<T> parent = node.parent;
+            if (node.children.size() < MIN_ENTRIES) {
+                parent.children.remove(node);
+                collect(node, orphans);
+            } else {
+                node.updateBounds();
+            }
+            node = parent;
+        }
+        root.updateBounds();
+        if (!root.leaf && root.children.size() == 1) {
+            root = root.children.get(0);
+            root.parent = null;
+        } else if (!root.leaf && root.children.isEmpty()) {
+            root = new Node<>(true);
+        }
+        for (Node<T> orphan : orphans) {
+            insert(orphan);
+        }
+    }
+
+    /**
+     * Collects the entries of a subtree.
+     */
+    private void collect(Node<T> node, List<Node<T>> entries) {
+        for (Node<T> child : node.children) {
+            if (node.leaf) {
+                entries.add(child);
+            } else {
+                collect(child, entries);
+            }
+        }
+    }
+
+    private static long low(Rectangle r, int axis) {
+        return axis == 0 ? r.x : r.y;
+    }
+
+    private static long high(Rectangle r, int axis) {
+        return axis == 0 ? (long) r.x + r.width : (long) r.y + r.height;
+    }
+
+    private static long area(Rectangle r) {
+        return ((long) r.width + 1) * ((long) r.height + 1);
+    }
+
+    private static Rectangle union(Rectangle a, Rectangle b) {
+        if (a == null) {
+            return new Rectangle(b);
+        }
+        int x = Math.min(a.x, b.x);
+        int y = Math.min(a.y, b.y);
+        int maxX = Math.max(a.x + a.width, b.x + b.width);
+        int maxY = Math.max(a.y + a.height, b.y + b.height);
+        return new Rectangle(x, y, maxX - x, maxY - y);
+    }
+
+    private static boolean intersects(Rectangle a, Rectangle b) {
+        return a.x <= (long) b.x + b.width && b.x <= (long) a.x + a.width
+                && a.y <= (long) b.y + b.height && b.y <= (long) a.y + a.height;
+    }
+
+    private static boolean contains(Rectangle outer, Rectangle inner) {
+        return outer.x <= inner.x && outer.y <= inner.y
+                && (long) outer.x + outer.width >= (long) inner.x + inner.width
+                && (long) outer.y + outer.height >= (long) inner.y + inner.height;
+    }
+
+    /**
+     * Node of the {@link RTree}, entries are nodes without children.
+     */
+    private static class Node<T> {
+
+        private final boolean leaf;
+        private final List<Node<T>> children;
+        private final T value;
+        private Rectangle bounds;
+        private Node<T> parent;
+
+        private Node(boolean leaf) {
+            this.leaf = leaf;
+            this.children = new ArrayList<>(MAX_ENTRIES + 1);
+            this.value = null;
+        }
+
+        private Node(Rectangle bounds, T value) {
+            this.leaf = false;
+            this.children = null;
+            this.value = value;
+            this.bounds = bounds;
+        }
+
+        private void add(Node<T> child) {
+            children.add(child);
+            child.parent = this;
+        }
+
+        private void updateBounds() {
+            bounds = null;
+            for (Node<T> child : children) {
+                bounds = union(bounds, child.bounds);
+            }
+        }
+    }
+}
@@ -5,7 +5,6 @@
 package de.dfki.covida.covidacore.utils;
 
 import de.dfki.covida.covidacore.data.Stroke;
-import java.awt.Point;
 import java.awt.Polygon;
 
 /**
@@ -16,8 +15,8 @@ public class ShapeUtils {
 
     public static Polygon getPolygon (Stroke stroke){
         Polygon polygon = new Polygon();
-        for(Point point : stroke.points){
-            polygon.addPoint(point.x, point.y);
+        for(int i = 0; i < stroke.size(); i++){
+            polygon.addPoint(stroke.getX(i), stroke.getY(i));
         }
         return polygon;
     }
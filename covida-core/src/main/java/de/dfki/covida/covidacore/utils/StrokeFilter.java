@@ -0,0 +1,300 @@
+/*
+ * StrokeFilter.java
+ *
+ * Copyright (c) 2012, Tobias Zimmermann All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of
+ * conditions and the following disclaimer. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors may be used to endorse or
+ * promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package de.dfki.covida.covidacore.utils;
+
+import de.dfki.covida.covidacore.data.Stroke;
+
+/**
+ * Reduces the points of pen strokes.
+ *
+ * While drawing, {@link #add(int, int)} filters the pen samples by distance
+ * and direction: samples closer than {@link #MIN_DISTANCE} to the last
+ * emitted point are dropped, and so are samples which stay within
+ * {@link #TOLERANCE} of the direction the pen took after it, up to
+ * {@link #MAX_DISTANCE}, as long as the pen does not move back. When a
+ * sample leaves that strip the previous sample
+ * is emitted, so every dropped sample lies close to the drawn line. At
+ * the end of the stroke {@link #flush()} emits the pending sample, and
+ * {@link #simplify(Stroke, double)} removes the
+ * remaining redundant points with the Douglas-Peucker algorithm.
+ *
+ * @author Tobias Zimmermann <Tobias.Zimmermann@dfki.de>
+ */
+public class StrokeFilter {
+
+    /**
+     * Minimum distance in pixels between emitted points
+     */
+    public static final int MIN_DISTANCE = 3;
+    /**
+     * Distance in pixels after which a point is emitted regardless of its
+     * direction, so the drawn line follows the pen on straight segments
+     */
+    public static final int MAX_DISTANCE = 16;
+    /**
+     * Maximum distance in pixels of dropped points to the drawn line, also
+     * used as Douglas-Peucker tolerance for finished strokes
+     */
+    public static final double TOLERANCE = 1.0;
+    /**
+     * Last emitted point
+     */
+    private int lastX;
+    private int lastY;
+    /**
+     * Direction of the pen after the last emitted point, 0 if unknown
+     */
+    private int dirX;
+    private int dirY;
+    /**
+     * Last sample which was not emitted
+     */
+    private int pendingX;
+    private int pendingY;
+    private boolean pending;
+    /**
+     * Progress of the pending sample along the direction, as dot product
+     */
+    private double pendingDot;
+    /**
+     * Determines if a point was emitted in the current stroke
+     */
+    private boolean started;
+    /**
+     * Point returned by {@link #getX()} and {@link #getY()}
+     */
+    private int x;
+    private int y;
+
+    /**
+     * Starts a new stroke.
+     */
+    public void reset() {
+        started = false;
+        pending = false;
+        dirX = 0;
+        dirY = 0;
+    }
+
+    /**
+     * Adds a pen sample. Returns true if a point of the stroke should be
+     * drawn, which is available via {@link #getX()} and {@link #getY()}. The
+     * first sample of a stroke is emitted immediately, later points with a
+     * delay of one sample.
+     *
+     * @param x x coordinate
+     * @param y y coordinate
+     * @return true if a point was emitted
+     */
+    public boolean add(int x, int y) {
+        if (!started) {
+            started = true;
+            emit(x, y);
+            return true;
+        }
+        int dx = x - lastX;
+        int dy = y - lastY;
+        long distanceSquare = (long) dx * dx + (long) dy * dy;
+        if (distanceSquare < MIN_DISTANCE * MIN_DISTANCE) {
+            return false;
+        }
+        if (dirX == 0 && dirY == 0) {
+            dirX = dx;
+            dirY = dy;
+            pend(x, y);
+            pendingDot = distanceSquare;
+            return false;
+        }
+        if (distanceSquare <= MAX_DISTANCE * MAX_DISTANCE) {
+            double cross = (double) dx * dirY - (double) dy * dirX;
+            double dot = (double) dx * dirX + (double) dy * dirY;
+            double lengthSquare = (double) dirX * dirX + (double) dirY * dirY;
+            if (dot >= pendingDot
+                    && cross * cross <= TOLERANCE * TOLERANCE * lengthSquare) {
+                pend(x, y);
+                pendingDot = dot;
+                return false;
+            }
+        }
+        if (!pending) {
+            emit(x, y);
+            return true;
+        }
+        emit(pendingX, pendingY);
+        pending = false;
+        dx = x - lastX;
+        dy = y - lastY;
+        distanceSquare = (long) dx * dx + (long) dy * dy;
+        if (distanceSquare >= MIN_DISTANCE * MIN_DISTANCE) {
+            dirX = dx;
+            dirY = dy;
+            pend(x, y);
+            pendingDot = distanceSquare;
+        }
+        return true;
+    }
+
+    /**
+     * Emits the pending sample when the stroke ends, so the last turn of
+     * the pen is not lost if the final sample is dropped. Returns true if a
+     * point was emitted, which is available via {@link #getX()} and
+     * {@link #getY()}.
+     *
+     * @return true if a point was emitted
+     */
+    public boolean flush() {
+        if (!pending) {
+            return false;
+        }
+        emit(pendingX, pendingY);
+        pending = false;
+        return true;
+    }
+
+    /**
+     * Returns the x coordinate of the last emitted point.
+     *
+     * @return x coordinate
+     */
+    public int getX() {
+        return x;
+    }
+
+    /**
+     * Returns the y coordinate of the last emitted point.
+     *
+     * @return y coordinate
+     */
+    public int getY() {
+        return y;
+    }
+
+    /**
+     * Remembers a sample which may be emitted later.
+     */
+    private void pend(int x, int y) {
+        pendingX = x;
+        pendingY = y;
+        pending = true;
+    }
+
+    /**
+     * Emits a point and starts a new segment there.
+     */
+    private void emit(int x, int y) {
+        this.x = x;
+        this.y = y;
+        lastX = x;
+        lastY = y;
+        dirX = 0;
+        dirY = 0;
+    }
+
+    /**
+     * Simplifies a {@link Stroke} with the Douglas-Peucker algorithm. The
+     * first and the last point are kept, as well as the timestamps and
+     * pressure values of the kept points. Distances are measured to the
+     * simplified segments, so points where the pen turned back are kept.
+     *
+     * @param stroke {@link Stroke}
+     * @param tolerance maximum distance in pixels of a removed point to the
+     * simplified line
+     * @return simplified {@link Stroke}, or the given one if no point was
+     * removed
+     */
+    public static Stroke simplify(Stroke stroke, double tolerance) {
+        int size = stroke.size();
+        if (size < 3) {
+            return stroke;
+        }
+        int[] x = new int[size];
+        int[] y = new int[size];
+        for (int i = 0; i < size; i++) {
+            x[i] = stroke.getX(i);
+            y[i] = stroke.getY(i);
+        }
+        boolean[] keep = new boolean[size];
+        keep[0] = true;
+        keep[size - 1] = true;
+        int kept = 2;
+        int[] stack = new int[2 * size];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = size - 1;
+        double toleranceSquare = tolerance * tolerance;
+        while (top > 0) {
+            int last = stack[--top];
+            int first = stack[--top];
+            double lx = x[last] - x[first];
+            double ly = y[last] - y[first];
+            double lengthSquare = lx * lx + ly * ly;
+            double max = -1;
+            int index = -1;
+            for (int i = first + 1; i < last; i++) {
+                double px = x[i] - x[first];
+                double py = y[i] - y[first];
+                // distance to the segment, not to the line through it, so
+                // the tip of a stroke which runs back on itself is kept
+                double t = lengthSquare == 0 ? 0
+                        : (px * lx + py * ly) / lengthSquare;
+                t = Math.max(0, Math.min(1, t));
+                double dx = px - t * lx;
+                double dy = py - t * ly;
+                double distanceSquare = dx * dx + dy * dy;
+                if (distanceSquare > max) {
+                    max = distanceSquare;
+                    index = i;
+                }
+            }
+            if (index != -1 && max > toleranceSquare) {
+                keep[index] = true;
+                kept++;
+                stack[top++] = first;
+                stack[top++] = index;
+                stack[top++] = index;
+                stack[top++] = last;
+            }
+        }
+        if (kept == size) {
+            return stroke;
+        }
+        Stroke result = new Stroke();
+        boolean extended = stroke.hasTimes();
+        for (int i = 0; i < size; i++) {
+            if (keep[i]) {
+                if (extended) {
+                    result.add(x[i], y[i], stroke.getTime(i),
+                            stroke.getPressure(i));
+                } else {
+                    result.add(x[i], y[i]);
+                }
+            }
+        }
+        return result;
+    }
+}
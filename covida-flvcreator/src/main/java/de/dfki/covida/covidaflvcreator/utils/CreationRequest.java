@@ -43,6 +43,10 @@ import javax.xml.bind.Unmarshaller;
  */
 public class CreationRequest implements Serializable {
 
+    /**
+     * Shared {@link JAXBContext} of the {@link StrokeList} XML
+     */
+    private static JAXBContext context;
     public final String filename;
     public final long timeStart;
     public final long timeEnd;
@@ -62,8 +66,7 @@ public class CreationRequest implements Serializable {
             String shapeXML, String label) {
         StrokeList list = new StrokeList();
         try {
-            JAXBContext jc = JAXBContext.newInstance(StrokeList.class);
-            Unmarshaller u = jc.createUnmarshaller();
+            Unmarshaller u = getContext().createUnmarshaller();
             Reader r = new StringReader(shapeXML);
             list = (StrokeList) u.unmarshal(r);
         } catch (JAXBException ex) {
@@ -75,4 +78,17 @@ public class CreationRequest implements Serializable {
         this.strokelist = list;
         this.label = label;
     }
+
+    /**
+     * Returns the shared {@link JAXBContext} of the {@link StrokeList} XML.
+     *
+     * @return {@link JAXBContext}
+     * @throws JAXBException
+     */
+    private static synchronized JAXBContext getContext() throws JAXBException {
+        if (context == null) {
+            context = JAXBContext.newInstance(StrokeList.class);
+        }
+        return context;
+    }
 }
@@ -4,16 +4,27 @@
  */
 package de.dfki.covida.covidastreamclient;
 
+import de.dfki.covida.covidacore.streaming.TCPServer;
 import java.awt.Dimension;
 import java.io.*;
 import java.net.*;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
 import org.apache.log4j.Logger;
 
 /**
  * TCP Client to receive images from the streaming server
  *
+ * Reads the messages of the {@link TCPServer} protocol: the hello message
+ * with the screen size, then frame messages whose deflated tiles are
+ * applied to a persistent frame. Keyframes replace all tiles, other frames
+ * only the changed ones. The receivers get the whole frame, as grabbed, after
+ * each frame message. The frame array is reused, so receivers have to copy
+ * it if they keep it.
+ *
  * @author Tobias
  */
 public class TCPClient extends Thread {
@@ -25,16 +36,30 @@ public class TCPClient extends Thread {
     private Socket socket;
     private List<IRemoteReceiver> receivers;
     private boolean listening;
-    private ObjectInputStream Sinput;
+    private DataInputStream Sinput;
+    private final Inflater inflater;
+    /**
+     * Current frame, null until the first keyframe was received
+     */
+    private byte[] frame;
+    private int width;
+    private int height;
+    private int depth;
+    /**
+     * Buffer for an inflated tile
+     */
+    private byte[] raw;
 
     // Constructor connection receiving a socket number
     public TCPClient(int port) {
         this.receivers = new ArrayList<>();
+        this.inflater = new Inflater();
         // we use "localhost" as host name, the server is on the same machine
         // but you can put the "real" server name or IP address
         connect();
         try {
-            Sinput = new ObjectInputStream(socket.getInputStream());
+            Sinput = new DataInputStream(new BufferedInputStream(
+                    socket.getInputStream()));
         } catch (IOException ex) {
             log.error(ex);
             log.error("Try to reconnect");
@@ -69,22 +94,29 @@ public class TCPClient extends Thread {
     public void run() {
         while (listening) {
             try {
-                Object object = Sinput.readObject();
-                if (object instanceof byte[]) {
-                    for (IRemoteReceiver receiver : receivers) {
-                        receiver.onNewFrame((byte[]) object);
-                    }
-                }else if (object instanceof Dimension) {
-                    for (IRemoteReceiver receiver : receivers) {
-                        receiver.setScreenSize((Dimension) object);
+                int length = Sinput.readInt();
+                byte[] data = new byte[length];
+                Sinput.readFully(data);
+                ByteBuffer message = ByteBuffer.wrap(data);
+                byte type = message.get();
+                if (type == TCPServer.HELLO) {
+                    readHello(message);
+                } else if (type == TCPServer.FRAME) {
+                    if (readFrame(message)) {
+                        for (IRemoteReceiver receiver : receivers) {
+                            receiver.onNewFrame(frame);
+                        }
                     }
+                } else {
+                    log.debug("Skipped unknown message type " + type);
                 }
-            } catch (IOException | ClassNotFoundException e) {
+            } catch (IOException | DataFormatException | RuntimeException e) {
                 log.error("Problem reading back from server: " + e);
                 close();
             }
 
         }
+        inflater.end();
         try {
             Sinput.close();
         } catch (IOException ex) {
@@ -92,6 +124,94 @@ public class TCPClient extends Thread {
         }
     }
 
+    /**
+     * Checks the hello message and passes the screen size to the receivers.
+     */
+    private void readHello(ByteBuffer message) throws IOException {
+        if (message.getInt() != TCPServer.MAGIC) {
+            throw new IOException("Not a covida stream");
+        }
+        short version = message.getShort();
+        if (version != TCPServer.VERSION) {
+            throw new IOException("Unsupported stream version " + version);
+        }
+        Dimension dimension = new Dimension(message.getInt(), message.getInt());
+        for (IRemoteReceiver receiver : receivers) {
+            receiver.setScreenSize(dimension);
+        }
+    }
+
+    /**
+     * Applies the tiles of a frame message to the current frame.
+     *
+     * @return false if the frame is not complete yet, i.e. no keyframe was
+     * received
+     */
+    private boolean readFrame(ByteBuffer message)
+            throws IOException, DataFormatException {
+        boolean keyframe = (message.get() & TCPServer.KEYFRAME) != 0;
+        message.getLong();
+        int frameWidth = message.getInt();
+        int frameHeight = message.getInt();
+        int frameDepth = message.get();
+        int tile = message.getShort();
+        int count = message.getInt();
+        if (frameWidth <= 0 || frameHeight <= 0 || frameDepth <= 0
+                || tile <= 0) {
+            throw new IOException("Invalid frame header");
+        }
+        if (keyframe) {
+            if (frame == null || frameWidth != width || frameHeight != height
+                    || frameDepth != depth) {
+                width = frameWidth;
+                height = frameHeight;
+                depth = frameDepth;
+                frame = new byte[width * height * depth];
+                Dimension dimension = new Dimension(width, height);
+                for (IRemoteReceiver receiver : receivers) {
+                    receiver.setScreenSize(dimension);
+                }
+            }
+        } else if (frame == null || frameWidth != width
+                || frameHeight != height || frameDepth != depth) {
+            log.debug("Skipped frame until the next keyframe");
+            return false;
+        }
+        if (raw == null || raw.length < tile * tile * depth) {
+            raw = new byte[tile * tile * depth];
+        }
+        int cols = (width + tile - 1) / tile;
+        int rows = (height + tile - 1) / tile;
+        for (int t = 0; t < count; t++) {
+            int col = message.getShort();
+            int row = message.getShort();
+            int length = message.getInt();
+            if (col < 0 || col >= cols || row < 0 || row >= rows
+                    || length < 0 || length > message.remaining()) {
+                throw new IOException("Invalid tile " + col + "," + row);
+            }
+            int x0 = col * tile * depth;
+            int rowBytes = Math.min(width, (col + 1) * tile) * depth - x0;
+            int y0 = row * tile;
+            int y1 = Math.min(height, y0 + tile);
+            inflater.reset();
+            inflater.setInput(message.array(), message.position(), length);
+            message.position(message.position() + length);
+            int size = inflater.inflate(raw, 0, rowBytes * (y1 - y0));
+            if (size != rowBytes * (y1 - y0)) {
+                throw new DataFormatException("Truncated tile " + col + ","
+                        + row);
+            }
+            int offset = 0;
+            for (int y = y0; y < y1; y++) {
+                System.arraycopy(raw, offset, frame, y * width * depth + x0,
+                        rowBytes);
+                offset += rowBytes;
+            }
+        }
+        return true;
+    }
+
     public void addReceiver(IRemoteReceiver receiver) {
         this.receivers.add(receiver);
     }
@@ -27,27 +27,38 @@
  */
 package de.dfki.covida.videovlcj;
 
-import com.sun.jna.Platform;
 import de.dfki.covida.covidacore.components.IVideoComponent;
+import de.dfki.covida.covidacore.data.KeyframeIndex;
 import de.dfki.covida.covidacore.data.Stroke;
 import de.dfki.covida.covidacore.data.StrokeList;
 import de.dfki.covida.covidacore.data.VideoMediaData;
 import de.dfki.covida.covidacore.utils.VideoUtils;
+import de.dfki.covida.videovlcj.preload.FramePrefetch;
+import de.dfki.covida.videovlcj.preload.FramePrefetcher;
+import de.dfki.covida.videovlcj.preload.PreloadService;
 import de.dfki.covida.videovlcj.preload.VideoPreload;
+import de.dfki.covida.videovlcj.rendered.CachedFrame;
+import de.dfki.covida.videovlcj.rendered.FrameCache;
+import de.dfki.covida.videovlcj.rendered.IFrameConsumer;
 import de.dfki.covida.videovlcj.rendered.RenderedVideoHandler;
 import de.dfki.covida.videovlcj.rendered.VideoRenderer;
 import java.awt.Dimension;
+import java.awt.Graphics2D;
 import java.awt.Point;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import uk.co.caprica.vlcj.binding.internal.libvlc_media_t;
+import uk.co.caprica.vlcj.binding.internal.libvlc_state_t;
 import uk.co.caprica.vlcj.player.MediaPlayer;
 import uk.co.caprica.vlcj.player.MediaPlayerEventListener;
-import uk.co.caprica.vlcj.player.MediaPlayerFactory;
-import uk.co.caprica.vlcj.player.embedded.videosurface.VideoSurface;
 
 /**
  * Component to create a {@link MediaPlayer} and {@link VideoRenderer} to play
@@ -57,30 +68,46 @@ import uk.co.caprica.vlcj.player.embedded.videosurface.VideoSurface;
  */
 public abstract class AbstractVideoHandler implements MediaPlayerEventListener {
 
+    /**
+     * Largest divisor of the video size for decoding
+     */
+    private static final int MAX_DECODE_DIVISOR = 4;
+    /**
+     * Minimum decoded frame width
+     */
+    private static final int MIN_DECODE_WIDTH = 160;
+    /**
+     * The decode size is only reduced if the video is displayed at most this
+     * fraction of the reduced size. Each change restarts the media, so
+     * normal zooming must not switch back and forth.
+     */
+    private static final float DECODE_HYSTERESIS = 0.6f;
+    /**
+     * The decode size is only increased if the video is displayed at more
+     * than this multiple of the decoded size.
+     */
+    private static final float DECODE_UPSCALE = 1.25f;
+    /**
+     * Delay in ms after the last display scale change before the decode size
+     * is changed
+     */
+    private static final long DECODE_RESIZE_DELAY = 1500;
+    /**
+     * Changes the decode sizes of all videos in the background
+     */
+    private static final ScheduledExecutorService resizer =
+            Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "Video Decode Resize");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
     /**
      * Logger.
      */
     private Logger log = LoggerFactory.getLogger(AbstractVideoHandler.class);
-    private static final String[] VLC_ARGS = {
-        "--intf", "dummy", /* no interface */
-        "--vout", "dummy", /* we don't want video (output) */
-        "--no-video-title-show", /* nor the filename displayed */
-        "--no-stats", /* no stats */ //        
-        "--no-sub-autodetect-file", /* we don't want subtitles */
-        "--no-disable-screensaver", /* we don't want interfaces */
-        "--no-snapshot-preview", /* no blending in dummy vout */
-        "--ffmpeg-threads", "0"
-    };
-    private static final String[] VLC_ARGS_MAC = {
-        "--intf", "dummy", /* no interface */
-        "--vout", "dummy", /* we don't want video (output) */
-        "--no-video-title-show", /* nor the filename displayed */
-        "--no-stats", /* no stats */ //        
-        "--no-sub-autodetect-file", /* we don't want subtitles */
-        "--no-disable-screensaver", /* we don't want interfaces */
-        "--no-snapshot-preview", /* no blending in dummy vout */
-        "--ffmpeg-threads", "0"
-    };
     /**
      * Video Slider {@link ISlider}
      */
@@ -95,16 +122,12 @@ public abstract class AbstractVideoHandler implements MediaPlayerEventListener {
      */
     protected String hwr;
     /**
-     * {@link MediaPlayer} instance to play the {@code source}
+     * {@link MediaPlayer} instance to play the {@code source}, guarded by
+     * {@code playerLock}
      */
-    protected MediaPlayer mediaPlayer;
+    private volatile MediaPlayer mediaPlayer;
 
     protected IVideoGraphicsHandler graphics;
-    /**
-     * The {@link MediaPlayerFactory} to crate {@link VideoSurface} or
-     * {@link MediaPlayer}
-     */
-    protected MediaPlayerFactory mediaPlayerFactory;
     /**
      * Corresponding {@link IVideoComponent}
      */
@@ -114,6 +137,53 @@ public abstract class AbstractVideoHandler implements MediaPlayerEventListener {
      */
     private VideoPreload preload;
     private final VideoMediaData data;
+    /**
+     * Keyframe index of the video, null if the video is not indexed
+     */
+    private KeyframeIndex keyframes;
+    /**
+     * Exact time position in ms to seek to after a keyframe seek was
+     * rendered, -1 if there is none
+     */
+    private volatile long refineTime = -1;
+    /**
+     * Frame sequence number at the time of the keyframe seek
+     */
+    private volatile long refineSequence;
+    /**
+     * The video is decoded at its size divided by this divisor
+     */
+    private int decodeDivisor = 1;
+    /**
+     * Decode divisor requested by {@link #setDisplayScale(float)}
+     */
+    private volatile int requestedDivisor = 1;
+    /**
+     * Pending change of the decode size
+     */
+    private ScheduledFuture<?> decodeResize;
+    /**
+     * Guards every access to the {@link MediaPlayer}, which is exchanged by
+     * {@link #resizeDecoding()} and released to the {@link MediaPlayerPool}
+     * afterwards. It must not be used without holding this lock.
+     */
+    private final Object playerLock = new Object();
+    /**
+     * True if the video is not visible
+     */
+    private boolean hidden;
+    /**
+     * True if the playing video was paused because it is not visible
+     */
+    private volatile boolean decodingSuspended;
+    /**
+     * Time position in ms when the decoding was suspended
+     */
+    private volatile long suspendedTime;
+    /**
+     * System time in ms when the decoding was suspended
+     */
+    private volatile long suspendedAt;
 
     /**
      * Creates an instance of {@link AbstractVideoHandler}
@@ -142,9 +212,7 @@ public abstract class AbstractVideoHandler implements MediaPlayerEventListener {
      */
     private void preload() {
         preload = new VideoPreload(data, this);
-        Thread preloadThread = new Thread(preload);
-        preloadThread.setName(data.videoName + " preload");
-        preloadThread.start();
+        PreloadService.getInstance().submit(preload);
     }
 
     /**
@@ -156,18 +224,27 @@ public abstract class AbstractVideoHandler implements MediaPlayerEventListener {
     public final void create(int width, int height) {
         data.width = width;
         data.height = height;
-        String[] args;
-        if (Platform.isMac()) {
-            args = VLC_ARGS_MAC;
-        } else {
-            args = VLC_ARGS;
-        }
-        this.mediaPlayerFactory = new MediaPlayerFactory(args);
+        keyframes = KeyframeIndex.load(data.videoSource);
         graphics = new VideoRenderer(data.width, data.height, data.videoName);
-        mediaPlayer = mediaPlayerFactory.newDirectMediaPlayer(width, height,
-                (VideoRenderer) graphics);
-        addEventListener();
+        synchronized (playerLock) {
+            mediaPlayer = MediaPlayerPool.getInstance().leaseDirect(width,
+                    height, (VideoRenderer) graphics);
+            decodeDivisor = 1;
+            requestedDivisor = 1;
+            addEventListener();
+        }
         video.create();
+        prefetchAnnotationFrames();
+    }
+
+    /**
+     * Prefetches the frames at the time stamps of the annotations of the
+     * video into the {@link FrameCache} in the background.
+     */
+    public void prefetchAnnotationFrames() {
+        if (isReady()) {
+            FramePrefetcher.getInstance().submit(new FramePrefetch(data, video));
+        }
     }
 
     /**
@@ -202,33 +279,35 @@ public abstract class AbstractVideoHandler implements MediaPlayerEventListener {
      * @return current time stamp in milliseconds
      */
     public long getTime() {
-        if (mediaPlayer == null) {
-            return -1;
+        long time;
+        synchronized (playerLock) {
+            if (mediaPlayer == null) {
+                return -1;
+            }
+            time = mediaPlayer.getTime();
+        }
+        if (decodingSuspended) {
+            time = suspendedTime + System.currentTimeMillis() - suspendedAt;
         }
         if (data.time_start > 0) {
-            if (isReady()) {
-                return mediaPlayer.getTime() - data.time_start;
-            }
-            return -1;
-        } else {
-            if (isReady()) {
-                return mediaPlayer.getTime();
-            }
-            return -1;
+            return time - data.time_start;
         }
+        return time;
     }
 
     /**
      * Start video
      */
     public void open() {
-        if (mediaPlayer == null) {
-            log.warn("Could not start video, mediaPlayer == null!");
-            return;
+        synchronized (playerLock) {
+            if (mediaPlayer == null) {
+                log.warn("Could not start video, mediaPlayer == null!");
+                return;
+            }
+            mediaPlayer.prepareMedia(getSource());
+            mediaPlayer.setPlaySubItems(true);
+            mediaPlayer.setVolume(0);
         }
-        mediaPlayer.prepareMedia(getSource());
-        mediaPlayer.setPlaySubItems(true);
-        mediaPlayer.setVolume(0);
         controls.highlightPlay();
     }
 
@@ -289,10 +368,9 @@ public abstract class AbstractVideoHandler implements MediaPlayerEventListener {
      * @return true if video is active
      */
     public boolean isActive() {
-        if (mediaPlayer == null) {
-            return false;
+        synchronized (playerLock) {
+            return mediaPlayer != null && mediaPlayer.isPlaying();
         }
-        return (mediaPlayer.isPlaying());
     }
 
     /**
@@ -301,7 +379,7 @@ public abstract class AbstractVideoHandler implements MediaPlayerEventListener {
      * @return true if video currently playing
      */
     public boolean isPlaying() {
-        return mediaPlayer.isPlaying();
+        return decodingSuspended || isActive();
     }
 
     /**
@@ -310,15 +388,155 @@ public abstract class AbstractVideoHandler implements MediaPlayerEventListener {
      * @return {@link Integer}
      */
     public int getVolume() {
-        return mediaPlayer.getVolume();
+        synchronized (playerLock) {
+            return mediaPlayer != null ? mediaPlayer.getVolume() : 0;
+        }
     }
 
     /**
      * Clean up all resources of the {@link AbstractVideoHandler}
      */
     public void cleanUp() {
-        if (mediaPlayer != null) {
-            mediaPlayer.release();
+        FramePrefetcher.getInstance().cancel(data.videoSource);
+        synchronized (playerLock) {
+            if (decodeResize != null) {
+                decodeResize.cancel(false);
+                decodeResize = null;
+            }
+            if (mediaPlayer != null) {
+                mediaPlayer.removeMediaPlayerEventListener(this);
+                MediaPlayerPool.getInstance().release(mediaPlayer);
+                mediaPlayer = null;
+            }
+        }
+        if (graphics != null) {
+            graphics.dispose();
+        }
+    }
+
+    /**
+     * Sets the scale at which the video is displayed, i.e. displayed pixels
+     * per video pixel. If the video is displayed at less than a third of its
+     * size, it is decoded at a divided size to save decoding, copying
+     * and uploading. Shapes and drawings stay in the coordinates of the
+     * video.
+     *
+     * @param scale display scale
+     */
+    public void setDisplayScale(float scale) {
+        int divisor = requestedDivisor;
+        while (divisor > 1 && scale * divisor > DECODE_UPSCALE) {
+            divisor /= 2;
+        }
+        while (divisor < MAX_DECODE_DIVISOR
+                && scale * divisor * 2 <= DECODE_HYSTERESIS
+                && data.width / (divisor * 2) >= MIN_DECODE_WIDTH) {
+            divisor *= 2;
+        }
+        if (divisor == requestedDivisor) {
+            return;
+        }
+        requestedDivisor = divisor;
+        synchronized (playerLock) {
+            if (mediaPlayer == null) {
+                return;
+            }
+            if (decodeResize != null) {
+                decodeResize.cancel(false);
+            }
+            decodeResize = resizer.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    resizeDecoding();
+                }
+            }, DECODE_RESIZE_DELAY, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Exchanges the {@link MediaPlayer} for one which renders at the
+     * requested decode size, continuing at the same time position and play
+     * state.
+     */
+    private void resizeDecoding() {
+        synchronized (playerLock) {
+            int divisor = requestedDivisor;
+            if (mediaPlayer == null || divisor == decodeDivisor) {
+                return;
+            }
+            int width = Math.max(2, (data.width / divisor) & ~1);
+            int height = Math.max(2, (data.height / divisor) & ~1);
+            MediaPlayer previous = mediaPlayer;
+            String mrl = previous.mrl();
+            libvlc_state_t state = previous.getMediaPlayerState();
+            long time = previous.getTime();
+            int volume = previous.getVolume();
+            previous.removeMediaPlayerEventListener(this);
+            MediaPlayerPool.getInstance().release(previous);
+            VideoRenderer renderer = (VideoRenderer) graphics;
+            renderer.resizeFrames(width, height);
+            mediaPlayer = MediaPlayerPool.getInstance().leaseDirect(width,
+                    height, renderer);
+            decodeDivisor = divisor;
+            mediaPlayer.setPlaySubItems(true);
+            mediaPlayer.setVolume(volume);
+            addEventListener();
+            if (mrl == null) {
+                return;
+            }
+            if (state == libvlc_state_t.libvlc_Playing
+                    || state == libvlc_state_t.libvlc_Paused) {
+                mediaPlayer.startMedia(getSource(),
+                        ":start-time=" + Math.max(0, time) / 1000.f);
+                if (state == libvlc_state_t.libvlc_Paused) {
+                    mediaPlayer.setPause(true);
+                }
+            } else {
+                mediaPlayer.prepareMedia(getSource());
+            }
+        }
+    }
+
+    /**
+     * Sets if the video is hidden, i.e. fully occluded or off screen.
+     *
+     * Frames of a hidden video are not copied anymore. A hidden video which
+     * plays muted is paused, and continues at the time position it would
+     * have reached when it becomes visible again. Audible videos keep
+     * playing, so the audio does not stop.
+     *
+     * Note that this must only be called from one thread, e.g. the render
+     * thread.
+     *
+     * @param hidden true if the video is not visible
+     */
+    public void setHidden(boolean hidden) {
+        synchronized (playerLock) {
+            if (this.hidden == hidden || mediaPlayer == null) {
+                return;
+            }
+            this.hidden = hidden;
+            ((VideoRenderer) graphics).setSuspended(hidden);
+            if (hidden) {
+                if (mediaPlayer.isPlaying() && mediaPlayer.getVolume() == 0) {
+                    suspendedTime = mediaPlayer.getTime();
+                    suspendedAt = System.currentTimeMillis();
+                    decodingSuspended = true;
+                    mediaPlayer.setPause(true);
+                    log.debug("Suspended decoding of " + data.videoName);
+                }
+            } else if (decodingSuspended) {
+                decodingSuspended = false;
+                long time = suspendedTime
+                        + System.currentTimeMillis() - suspendedAt;
+                long length = mediaPlayer.getLength();
+                if (length > 0 && time >= length) {
+                    time = data.repeat ? time % length : length - 1;
+                }
+                mediaPlayer.setTime(time);
+                mediaPlayer.play();
+                log.debug("Resumed decoding of " + data.videoName);
+            }
         }
     }
 
@@ -326,12 +544,13 @@ public abstract class AbstractVideoHandler implements MediaPlayerEventListener {
      * Stops the video.
      */
     public void stop() {
+        decodingSuspended = false;
         controls.highlightStop();
         controls.highlightPlay();
-        if (mediaPlayer == null) {
-            return;
-        }
-        if (isReady()) {
+        synchronized (playerLock) {
+            if (mediaPlayer == null) {
+                return;
+            }
             setTimePostion(0);
             mediaPlayer.stop();
         }
@@ -345,23 +564,26 @@ public abstract class AbstractVideoHandler implements MediaPlayerEventListener {
      * @param source video source as {@link String}
      */
     public void setMedia(String source) {
-        if (mediaPlayer == null) {
-            return;
+        synchronized (playerLock) {
+            if (mediaPlayer == null) {
+                return;
+            }
+            mediaPlayer.prepareMedia(source);
+            mediaPlayer.playMedia(source);
         }
-        mediaPlayer.prepareMedia(source);
-        mediaPlayer.playMedia(source);
     }
 
     /**
      * Pauses the video.
      */
     public void pause() {
-        if (mediaPlayer == null) {
-            return;
-        }
-        if (isReady()) {
-            if (this.mediaPlayer.isPlaying()) {
-                this.mediaPlayer.pause();
+        decodingSuspended = false;
+        synchronized (playerLock) {
+            if (mediaPlayer == null) {
+                return;
+            }
+            if (mediaPlayer.isPlaying()) {
+                mediaPlayer.pause();
             }
         }
         controls.highlightPlay();
@@ -371,16 +593,20 @@ public abstract class AbstractVideoHandler implements MediaPlayerEventListener {
      * Resumes the video.
      */
     public void resume() {
-        if (mediaPlayer == null) {
-            return;
-        }
-        if (isReady()) {
+        boolean started = false;
+        synchronized (playerLock) {
+            if (mediaPlayer == null) {
+                return;
+            }
             if (!mediaPlayer.isPlaying()) {
-                this.mediaPlayer.play();
-                controls.highlightPause();
+                mediaPlayer.play();
+                started = true;
             }
-            slider.attach();
         }
+        if (started) {
+            controls.highlightPause();
+        }
+        slider.attach();
     }
 
     /**
@@ -394,19 +620,85 @@ public abstract class AbstractVideoHandler implements MediaPlayerEventListener {
      * @param time
      */
     public void setTimePosition(long time) {
-        if (mediaPlayer == null) {
+        if (!isReady()) {
             return;
         }
+        refineTime = -1;
         if (data.time_start > 0) {
-            if (isReady()) {
-                mediaPlayer.setTime(time + data.time_start);
+            time += data.time_start;
+        }
+        CachedFrame frame = FrameCache.getInstance().get(data.videoSource, time);
+        if (frame != null) {
+            showCachedFrame(frame);
+        } else if (keyframes != null) {
+            long keyframe = Math.max(data.time_start, keyframes.floor(time));
+            if (keyframe < time && !isPlaying()) {
+                refineSequence = getFrameSequence();
+                refineTime = time;
             }
-        } else {
-            if (isReady()) {
+            time = keyframe;
+        }
+        synchronized (playerLock) {
+            if (mediaPlayer != null) {
                 mediaPlayer.setTime(time);
+                mediaPlayer.nextFrame();
+            }
+        }
+    }
+
+    /**
+     * Sets the time position of the video in percentage while the user drags
+     * the slider. The position snaps to the nearest keyframe if the video has
+     * a {@link KeyframeIndex}, so no frames have to be decoded in between.
+     * The drag has to end with {@link #setTimePostion(float)} to seek to the
+     * exact position.
+     *
+     * @param percentage
+     */
+    public void scrubTimePosition(float percentage) {
+        if (keyframes == null) {
+            setTimePostion(percentage);
+            return;
+        }
+        if (!isReady()) {
+            return;
+        }
+        refineTime = -1;
+        long time = (long) (percentage * (getMaxTime() - data.time_start))
+                + data.time_start;
+        synchronized (playerLock) {
+            if (mediaPlayer != null) {
+                mediaPlayer.setTime(Math.max(data.time_start,
+                        keyframes.nearest(time)));
+            }
+        }
+        if (!isPlaying()) {
+            slider.setSlider(percentage);
+            int perc = (int) (percentage * 100);
+            graphics.setTimecode(VideoUtils.getTimeCode(
+                    (long) (percentage * getMaxTime()))
+                    + "\t<BR>\t" + String.valueOf(perc) + " %");
+        }
+    }
+
+    /**
+     * Seeks to the exact position of a previous keyframe seek of
+     * {@link #setTimePosition(long)} once the keyframe was rendered.
+     *
+     * @param sequence sequence number of the rendered frame
+     */
+    protected void frameRendered(long sequence) {
+        long time = refineTime;
+        if (time < 0 || sequence == refineSequence) {
+            return;
+        }
+        refineTime = -1;
+        synchronized (playerLock) {
+            if (mediaPlayer != null && !isPlaying()) {
+                mediaPlayer.setTime(time);
+                mediaPlayer.nextFrame();
             }
         }
-        mediaPlayer.nextFrame();
     }
 
     /**
@@ -420,16 +712,15 @@ public abstract class AbstractVideoHandler implements MediaPlayerEventListener {
      * @param percentage
      */
     public void setTimePostion(float percentage) {
-        if (mediaPlayer == null && mediaPlayer.isSeekable()) {
-            return;
-        }
-        if (data.time_start > 0) {
-            if (isReady()) {
+        synchronized (playerLock) {
+            if (mediaPlayer == null) {
+                return;
+            }
+            refineTime = -1;
+            if (data.time_start > 0) {
                 mediaPlayer.setTime((long) ((percentage * (getMaxTime()
                         - data.time_start)) + data.time_start));
-            }
-        } else {
-            if (isReady()) {
+            } else {
                 mediaPlayer.setTime((long) (percentage * getMaxTime()));
             }
         }
@@ -480,19 +771,14 @@ public abstract class AbstractVideoHandler implements MediaPlayerEventListener {
      * @return max time position
      */
     public long getMaxTime() {
-        if (mediaPlayer == null) {
-            return -1;
-        }
-        if (data.time_end > 0) {
-            if (isReady()) {
-                return data.time_end;
+        synchronized (playerLock) {
+            if (mediaPlayer == null) {
+                return -1;
             }
-            return -1;
-        } else {
-            if (isReady()) {
-                return mediaPlayer.getLength();
+            if (data.time_end > 0) {
+                return data.time_end;
             }
-            return -1;
+            return mediaPlayer.getLength();
         }
     }
 
@@ -502,8 +788,10 @@ public abstract class AbstractVideoHandler implements MediaPlayerEventListener {
      * @param volume percentage of video volume as {@link Integer}
      */
     public void setVolume(int volume) {
-        if (isReady()) {
-            this.mediaPlayer.setVolume(volume);
+        synchronized (playerLock) {
+            if (mediaPlayer != null) {
+                mediaPlayer.setVolume(volume);
+            }
         }
     }
 
@@ -594,7 +882,7 @@ public abstract class AbstractVideoHandler implements MediaPlayerEventListener {
      */
     @Override
     public void paused(MediaPlayer mp) {
-        if (controls != null) {
+        if (mp == mediaPlayer && controls != null) {
             controls.highlightPause();
         }
     }
@@ -635,6 +923,9 @@ public abstract class AbstractVideoHandler implements MediaPlayerEventListener {
      */
     @Override
     public void positionChanged(MediaPlayer mp, float f) {
+        if (mp != mediaPlayer) {
+            return;
+        }
         if (slider != null) {
             slider.setSlider(f);
         }
@@ -817,12 +1108,16 @@ public abstract class AbstractVideoHandler implements MediaPlayerEventListener {
      */
     @Override
     public void finished(MediaPlayer mp) {
-        controls.highlightPlay();
-        if (mediaPlayer == null) {
-            return;
+        synchronized (playerLock) {
+            if (mp != mediaPlayer) {
+                return;
+            }
+            if (isRepeat()) {
+                mediaPlayer.playMedia(getSource());
+            }
         }
+        controls.highlightPlay();
         if (isRepeat()) {
-            mediaPlayer.playMedia(getSource());
             controls.highlightPause();
         }
     }
@@ -834,10 +1129,12 @@ public abstract class AbstractVideoHandler implements MediaPlayerEventListener {
      */
     @Override
     public void stopped(MediaPlayer mp) {
-        if (mediaPlayer == null) {
-            return;
+        synchronized (playerLock) {
+            if (mp != mediaPlayer) {
+                return;
+            }
+            mediaPlayer.prepareMedia(getSource());
         }
-        mediaPlayer.prepareMedia(getSource());
         slider.setSlider(0.f);
     }
 
@@ -855,14 +1152,20 @@ public abstract class AbstractVideoHandler implements MediaPlayerEventListener {
     abstract public void saveAnnotatedFrame();
 
     /**
-     * Adds the {@link Point} to the {@link List} which should be draw on the
+     * Adds the {@link Point} to the stroke the pen device is drawing on the
      * video.
      *
+     * @param device pen device or null
      * @param point {@link Point}
      */
-    abstract public void draw(Point point);
+    abstract public void draw(String device, Point point);
 
-    abstract public void endDrawStroke();
+    /**
+     * Finishes the stroke the pen device is drawing on the video.
+     *
+     * @param device pen device or null
+     */
+    abstract public void endDrawStroke(String device);
 
     /**
      * Renturns the video as {@link BufferedImage}
@@ -875,6 +1178,46 @@ public abstract class AbstractVideoHandler implements MediaPlayerEventListener {
      */
     abstract public BufferedImage getVideoImage();
 
+    /**
+     * Passes the current video frame to the {@link IFrameConsumer}.
+     *
+     * @param consumer {@link IFrameConsumer}
+     * @return sequence number of the consumed frame
+     */
+    abstract public long readFrame(IFrameConsumer consumer);
+
+    /**
+     * Shows the {@link CachedFrame} until the next frame was rendered.
+     *
+     * @param frame {@link CachedFrame}
+     */
+    abstract public void showCachedFrame(CachedFrame frame);
+
+    /**
+     * Returns the sequence number of the current video frame. It changes
+     * whenever a new frame was rendered.
+     *
+     * @return frame sequence number
+     */
+    abstract public long getFrameSequence();
+
+    /**
+     * Returns the sequence number of the overlays. It changes whenever the
+     * overlays have to be drawn again.
+     *
+     * @return overlay sequence number
+     */
+    abstract public long getOverlaySequence();
+
+    /**
+     * Draws the overlays (drawings, shapes, time code, title and handwriting)
+     * of the video on the {@link Graphics2D}.
+     *
+     * @param g2d {@link Graphics2D} with the size of the video
+     * @return true if anything was drawn
+     */
+    abstract public boolean drawOverlay(Graphics2D g2d);
+
     /**
      * Enables / Disables the title overlay.
      *
@@ -81,5 +81,10 @@ public interface IVideoGraphicsHandler {
     public void clear();
 
     public void setTimecode(String string);
+
+    /**
+     * Releases the resources of the graphics handler.
+     */
+    public void dispose();
     
 }
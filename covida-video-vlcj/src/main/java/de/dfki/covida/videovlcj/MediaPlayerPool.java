@@ -0,0 +1,310 @@
+/*
+ * MediaPlayerPool.java
+ *
+ * Copyright (c) 2012, Tobias Zimmermann All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of
+ * conditions and the following disclaimer. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors may be used to endorse or
+ * promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package de.dfki.covida.videovlcj;
+
+import com.sun.jna.Memory;
+import com.sun.jna.Platform;
+import de.dfki.covida.covidacore.data.CovidaConfiguration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.co.caprica.vlcj.player.MediaPlayer;
+import uk.co.caprica.vlcj.player.MediaPlayerFactory;
+import uk.co.caprica.vlcj.player.direct.DirectMediaPlayer;
+import uk.co.caprica.vlcj.player.direct.RenderCallback;
+import uk.co.caprica.vlcj.player.headless.HeadlessMediaPlayer;
+
+/**
+ * Process wide libvlc instance and pool of {@link MediaPlayer}s.
+ *
+ * All video components and preloads share one {@link MediaPlayerFactory}.
+ * Players are leased and given back with {@link #release(MediaPlayer)}
+ * instead of being created and released per video. Direct media players
+ * render through a {@link RenderCallback} which is switched to the
+ * {@link RenderCallback} of the current lease, so they can be reused for
+ * other videos with the same dimension.
+ *
+ * The amount of players is capped by {@code maxplayers} of the
+ * {@link CovidaConfiguration}. Idle players are released first to stay
+ * below the cap. If all players are leased, a new player is still created
+ * but not kept when it is given back.
+ *
+ * @author Tobias Zimmermann <Tobias.Zimmermann@dfki.de>
+ */
+public class MediaPlayerPool {
+
+    /**
+     * Logger.
+     */
+    private static Logger log = LoggerFactory.getLogger(MediaPlayerPool.class);
+    private static final String[] VLC_ARGS = {
+        "--intf", "dummy", /* no interface */
+        "--vout", "dummy", /* we don't want video (output) */
+        "--no-video-title-show", /* nor the filename displayed */
+        "--no-stats", /* no stats */ //        
+        "--no-sub-autodetect-file", /* we don't want subtitles */
+        "--no-disable-screensaver", /* we don't want interfaces */
+        "--no-snapshot-preview", /* no blending in dummy vout */
+        "--ffmpeg-threads", "0"
+    };
+    private static final String[] VLC_ARGS_MAC = {
+        "--intf", "dummy", /* no interface */
+        "--vout", "dummy", /* we don't want video (output) */
+        "--no-video-title-show", /* nor the filename displayed */
+        "--no-stats", /* no stats */ //        
+        "--no-sub-autodetect-file", /* we don't want subtitles */
+        "--no-disable-screensaver", /* we don't want interfaces */
+        "--no-snapshot-preview", /* no blending in dummy vout */
+        "--ffmpeg-threads", "0"
+    };
+    /**
+     * Instance of {@link MediaPlayerPool}
+     */
+    private static MediaPlayerPool instance;
+    /**
+     * Shared {@link MediaPlayerFactory}
+     */
+    private MediaPlayerFactory factory;
+    /**
+     * Idle direct media players
+     */
+    private final Deque<DirectMediaPlayer> idleDirect;
+    /**
+     * Idle headless media players
+     */
+    private final Deque<HeadlessMediaPlayer> idleHeadless;
+    /**
+     * Switchable callbacks of the direct media players
+     */
+    private final Map<MediaPlayer, PooledRenderCallback> callbacks;
+    /**
+     * Amount of created and not released players
+     */
+    private int players;
+
+    /**
+     * Private constructor of {@link MediaPlayerPool}
+     */
+    private MediaPlayerPool() {
+        idleDirect = new ArrayDeque<>();
+        idleHeadless = new ArrayDeque<>();
+        callbacks = new IdentityHashMap<>();
+    }
+
+    /**
+     * Returns the instance of {@link MediaPlayerPool}
+     *
+     * @return {@link MediaPlayerPool}
+     */
+    public static synchronized MediaPlayerPool getInstance() {
+        if (instance == null) {
+            instance = new MediaPlayerPool();
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the shared {@link MediaPlayerFactory}, which is created on the
+     * first call.
+     *
+     * @return {@link MediaPlayerFactory}
+     */
+    public synchronized MediaPlayerFactory getFactory() {
+        if (factory == null) {
+            String[] args;
+            if (Platform.isMac()) {
+                args = VLC_ARGS_MAC;
+            } else {
+                args = VLC_ARGS;
+            }
+            long start = System.currentTimeMillis();
+            factory = new MediaPlayerFactory(args);
+            log.debug("libvlc started in "
+                    + (System.currentTimeMillis() - start) + " ms");
+        }
+        return factory;
+    }
+
+    /**
+     * Leases a {@link DirectMediaPlayer} which renders RV32 frames with the
+     * given dimension into the {@link RenderCallback}.
+     *
+     * @param width frame width
+     * @param height frame height
+     * @param callback {@link RenderCallback}
+     * @return {@link DirectMediaPlayer}
+     */
+    public synchronized DirectMediaPlayer leaseDirect(int width, int height,
+            RenderCallback callback) {
+        Iterator<DirectMediaPlayer> iterator = idleDirect.iterator();
+        while (iterator.hasNext()) {
+            DirectMediaPlayer player = iterator.next();
+            PooledRenderCallback pooled = callbacks.get(player);
+            if (pooled.width == width && pooled.height == height) {
+                iterator.remove();
+                pooled.target = callback;
+                return player;
+            }
+        }
+        makeRoom();
+        PooledRenderCallback pooled = new PooledRenderCallback(width, height);
+        pooled.target = callback;
+        DirectMediaPlayer player = getFactory().newDirectMediaPlayer(width,
+                height, pooled);
+        callbacks.put(player, pooled);
+        players++;
+        return player;
+    }
+
+    /**
+     * Leases a {@link HeadlessMediaPlayer}, e.g. for preloading.
+     *
+     * @return {@link HeadlessMediaPlayer}
+     */
+    public synchronized HeadlessMediaPlayer leaseHeadless() {
+        if (!idleHeadless.isEmpty()) {
+            return idleHeadless.pop();
+        }
+        makeRoom();
+        players++;
+        return getFactory().newHeadlessMediaPlayer();
+    }
+
+    /**
+     * Gives a leased {@link MediaPlayer} back to the pool. The player is
+     * stopped, event listeners of the lease must be removed by the caller.
+     *
+     * @param player leased {@link MediaPlayer}
+     */
+    public void release(MediaPlayer player) {
+        if (player == null) {
+            return;
+        }
+        player.stop();
+        synchronized (this) {
+            PooledRenderCallback pooled = callbacks.get(player);
+            if (pooled != null) {
+                pooled.target = null;
+            }
+            if (players > getMaxPlayers()) {
+                dispose(player);
+            } else if (player instanceof DirectMediaPlayer && pooled != null) {
+                idleDirect.push((DirectMediaPlayer) player);
+            } else if (player instanceof HeadlessMediaPlayer) {
+                idleHeadless.push((HeadlessMediaPlayer) player);
+            } else {
+                dispose(player);
+            }
+        }
+    }
+
+    /**
+     * Releases all idle players and the shared {@link MediaPlayerFactory}.
+     *
+     * Note that all leased players must have been given back before.
+     */
+    public synchronized void shutdown() {
+        while (!idleDirect.isEmpty()) {
+            dispose(idleDirect.pop());
+        }
+        while (!idleHeadless.isEmpty()) {
+            dispose(idleHeadless.pop());
+        }
+        if (factory != null) {
+            factory.release();
+            factory = null;
+        }
+    }
+
+    /**
+     * Releases idle players until a new player can be created without
+     * exceeding the cap.
+     */
+    private void makeRoom() {
+        while (players >= getMaxPlayers()) {
+            if (!idleHeadless.isEmpty()) {
+                dispose(idleHeadless.removeLast());
+            } else if (!idleDirect.isEmpty()) {
+                dispose(idleDirect.removeLast());
+            } else {
+                log.warn("All " + players + " media players are leased,"
+                        + " exceeding maxplayers.");
+                return;
+            }
+        }
+    }
+
+    /**
+     * Releases the native resources of the {@link MediaPlayer}.
+     *
+     * @param player {@link MediaPlayer}
+     */
+    private void dispose(MediaPlayer player) {
+        callbacks.remove(player);
+        player.release();
+        players--;
+    }
+
+    /**
+     * Returns the configured cap of media players.
+     *
+     * @return maximum amount of media players
+     */
+    private int getMaxPlayers() {
+        return Math.max(1, CovidaConfiguration.getInstance().maxplayers);
+    }
+
+    /**
+     * {@link RenderCallback} of a pooled {@link DirectMediaPlayer} which
+     * forwards the frames to the {@link RenderCallback} of the current
+     * lease.
+     */
+    private static class PooledRenderCallback implements RenderCallback {
+
+        private final int width;
+        private final int height;
+        private volatile RenderCallback target;
+
+        PooledRenderCallback(int width, int height) {
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        public void display(Memory nativeBuffer) {
+            RenderCallback callback = target;
+            if (callback != null) {
+                callback.display(nativeBuffer);
+            }
+        }
+    }
+}
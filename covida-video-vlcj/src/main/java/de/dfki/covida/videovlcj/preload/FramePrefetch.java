@@ -0,0 +1,261 @@
+/*
+ * FramePrefetch.java
+ *
+ * Copyright (c) 2012, Tobias Zimmermann All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of
+ * conditions and the following disclaimer. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors may be used to endorse or
+ * promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package de.dfki.covida.videovlcj.preload;
+
+import com.sun.jna.Memory;
+import de.dfki.covida.covidacore.components.IVideoComponent;
+import de.dfki.covida.covidacore.data.AnnotationStorage;
+import de.dfki.covida.covidacore.data.VideoMediaData;
+import de.dfki.covida.videovlcj.MediaPlayerPool;
+import de.dfki.covida.videovlcj.rendered.FrameCache;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.co.caprica.vlcj.player.MediaPlayer;
+import uk.co.caprica.vlcj.player.MediaPlayerEventAdapter;
+import uk.co.caprica.vlcj.player.MediaPlayerEventListener;
+import uk.co.caprica.vlcj.player.direct.DirectMediaPlayer;
+import uk.co.caprica.vlcj.player.direct.RenderCallback;
+
+/**
+ * Decodes the frames at the annotation time stamps of a video into the
+ * {@link FrameCache}.
+ *
+ * For each annotation which is not cached yet, the prefetch seeks a muted
+ * pooled player to {@code time_start}, waits until libvlc reports the new
+ * time and captures {@link #WINDOW} frames from there. Each frame is cached
+ * under the time the player reports when it is rendered, not under the
+ * requested time, so a frame of an unfinished seek is never cached as the
+ * frame of the annotation.
+ *
+ * @author Tobias Zimmermann <Tobias.Zimmermann@dfki.de>
+ */
+public class FramePrefetch implements Runnable, RenderCallback {
+
+    /**
+     * Amount of frames cached from each annotation time stamp on
+     */
+    public static final int WINDOW = 3;
+    /**
+     * Logger
+     */
+    private Logger log = LoggerFactory.getLogger(FramePrefetch.class);
+    private final VideoMediaData data;
+    private final IVideoComponent video;
+    /**
+     * Released when the requested frame was captured
+     */
+    private volatile CountDownLatch frameLatch;
+    /**
+     * Released when the current seek reached its time
+     */
+    private volatile CountDownLatch seekLatch;
+    /**
+     * Media time of the current seek, -1 if no seek is pending
+     */
+    private volatile long seekTime = -1;
+    /**
+     * True while a frame is requested
+     */
+    private volatile boolean capturing;
+    /**
+     * Media time of the last cached frame of the current window
+     */
+    private volatile long lastTime = -1;
+    /**
+     * Player of the prefetch
+     */
+    private volatile DirectMediaPlayer mediaPlayer;
+
+    /**
+     * Creates a new instance of {@link FramePrefetch}
+     *
+     * @param data video data {@link VideoMediaData}
+     * @param video {@link IVideoComponent} of the annotations
+     */
+    public FramePrefetch(VideoMediaData data, IVideoComponent video) {
+        this.data = data;
+        this.video = video;
+    }
+
+    /**
+     * Returns the video data of this prefetch.
+     *
+     * @return {@link VideoMediaData}
+     */
+    public VideoMediaData getData() {
+        return data;
+    }
+
+    @Override
+    public void run() {
+        List<Long> times = getMissingTimes();
+        if (times.isEmpty()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        mediaPlayer = MediaPlayerPool.getInstance()
+                .leaseDirect(data.width, data.height, this);
+        MediaPlayerEventListener listener = new MediaPlayerEventAdapter() {
+            @Override
+            public void timeChanged(MediaPlayer mp, long newTime) {
+                long target = seekTime;
+                if (target >= 0 && Math.abs(newTime - target) <= FrameCache.TOLERANCE) {
+                    seekTime = -1;
+                    seekLatch.countDown();
+                }
+            }
+        };
+        mediaPlayer.addMediaPlayerEventListener(listener);
+        try {
+            mediaPlayer.setVolume(0);
+            if (!mediaPlayer.startMedia(data.videoSource, ":no-audio")) {
+                log.error("Could not start prefetch of " + data.videoSource);
+                return;
+            }
+            mediaPlayer.setPause(true);
+            int cached = 0;
+            for (long time : times) {
+                if (!seek(time)) {
+                    continue;
+                }
+                lastTime = -1;
+                for (int i = 0; i < WINDOW; i++) {
+                    if (!capture(time)) {
+                        break;
+                    }
+                    cached++;
+                }
+            }
+            log.debug("Prefetched " + cached + " frames of " + data.videoName
+                    + " in " + (System.currentTimeMillis() - start) + " ms");
+        } catch (InterruptedException ex) {
+            log.debug("Prefetch of " + data.videoName + " cancelled");
+            Thread.currentThread().interrupt();
+        } finally {
+            capturing = false;
+            seekTime = -1;
+            mediaPlayer.removeMediaPlayerEventListener(listener);
+            MediaPlayerPool.getInstance().release(mediaPlayer);
+            mediaPlayer = null;
+        }
+    }
+
+    /**
+     * Returns the media times of all annotations without a cached frame.
+     *
+     * @return {@link List} of times in ms, ascending
+     */
+    private List<Long> getMissingTimes() {
+        List<Long> times = new ArrayList<>();
+        for (Long time : AnnotationStorage.getInstance()
+                .getAnnotationData(video).getTimeList()) {
+            if (time == null) {
+                continue;
+            }
+            long mediaTime = time + data.time_start;
+            if (!times.contains(mediaTime)
+                    && !FrameCache.getInstance().contains(data.videoSource,
+                    mediaTime)) {
+                times.add(mediaTime);
+            }
+        }
+        Collections.sort(times);
+        return times;
+    }
+
+    /**
+     * Seeks to the time and waits until libvlc reports it.
+     *
+     * @param time media time in ms
+     * @return false if the seek did not finish within
+     * {@link VideoPreload#SEEK_TIMEOUT}
+     * @throws InterruptedException if the prefetch is cancelled
+     */
+    private boolean seek(long time) throws InterruptedException {
+        seekLatch = new CountDownLatch(1);
+        seekTime = time;
+        mediaPlayer.setTime(time);
+        if (!seekLatch.await(VideoPreload.SEEK_TIMEOUT, TimeUnit.MILLISECONDS)) {
+            seekTime = -1;
+            log.warn("Seek to " + time + " ms of " + data.videoName
+                    + " timed out");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Steps to the next frame and waits until it was rendered.
+     *
+     * @param time media time of the seek
+     * @return false if no frame arrived within
+     * {@link VideoPreload#SEEK_TIMEOUT}
+     * @throws InterruptedException if the prefetch is cancelled
+     */
+    private boolean capture(long time) throws InterruptedException {
+        frameLatch = new CountDownLatch(1);
+        capturing = true;
+        mediaPlayer.nextFrame();
+        if (!frameLatch.await(VideoPreload.SEEK_TIMEOUT, TimeUnit.MILLISECONDS)) {
+            capturing = false;
+            log.warn("Prefetch of " + time + " ms of " + data.videoName
+                    + " timed out");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Caches the requested frame under the current time of the player.
+     * Frames rendered while no frame is requested, e.g. during the seek, and
+     * frames whose time did not advance are dropped.
+     *
+     * @param nativeBuffer RV32 frame in native memory
+     */
+    @Override
+    public void display(Memory nativeBuffer) {
+        DirectMediaPlayer player = mediaPlayer;
+        if (!capturing || player == null) {
+            return;
+        }
+        capturing = false;
+        long time = player.getTime();
+        if (time >= 0 && time > lastTime) {
+            lastTime = time;
+            FrameCache.getInstance().put(data.videoSource, time,
+                    nativeBuffer.getByteBuffer(0, data.width * data.height * 4),
+                    data.width, data.height);
+        }
+        frameLatch.countDown();
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * FramePrefetcher.java
+ *
+ * Copyright (c) 2012, Tobias Zimmermann All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of
+ * conditions and the following disclaimer. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors may be used to endorse or
+ * promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package de.dfki.covida.videovlcj.preload;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs {@link FramePrefetch}es one after another on a low priority
+ * background thread, so prefetching never competes with
+ * {@link PreloadService} and playback for more than one player.
+ *
+ * @author Tobias Zimmermann <Tobias.Zimmermann@dfki.de>
+ */
+public class FramePrefetcher {
+
+    /**
+     * Logger
+     */
+    private static Logger log = LoggerFactory.getLogger(FramePrefetcher.class);
+    /**
+     * Instance of {@link FramePrefetcher}
+     */
+    private static FramePrefetcher instance;
+    /**
+     * Worker thread
+     */
+    private final ExecutorService executor;
+    /**
+     * Pending prefetch by video source
+     */
+    private final Map<String, Future<?>> pending;
+
+    /**
+     * Private constructor of {@link FramePrefetcher}
+     */
+    private FramePrefetcher() {
+        executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Frame Prefetch");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        pending = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Returns the instance of {@link FramePrefetcher}
+     *
+     * @return {@link FramePrefetcher}
+     */
+    public static synchronized FramePrefetcher getInstance() {
+        if (instance == null) {
+            instance = new FramePrefetcher();
+        }
+        return instance;
+    }
+
+    /**
+     * Submits a {@link FramePrefetch}. A prefetch of the same video which
+     * did not start yet is replaced, a running one is finished first.
+     *
+     * @param prefetch {@link FramePrefetch}
+     */
+    public void submit(FramePrefetch prefetch) {
+        final String source = prefetch.getData().videoSource;
+        Future<?> previous = pending.get(source);
+        if (previous != null) {
+            previous.cancel(false);
+        }
+        try {
+            pending.put(source, executor.submit(prefetch));
+        } catch (RejectedExecutionException e) {
+            log.debug("Frame prefetcher is shut down");
+        }
+    }
+
+    /**
+     * Cancels the pending or running prefetch of the video.
+     *
+     * @param source video source
+     */
+    public void cancel(String source) {
+        Future<?> future = pending.remove(source);
+        if (future != null) {
+            future.cancel(true);
+        }
+    }
+
+    /**
+     * Cancels all prefetches and stops the worker thread.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+        pending.clear();
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * PreloadService.java
+ *
+ * Copyright (c) 2012, Tobias Zimmermann All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of
+ * conditions and the following disclaimer. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors may be used to endorse or
+ * promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package de.dfki.covida.videovlcj.preload;
+
+import de.dfki.covida.covidacore.data.CovidaConfiguration;
+import de.dfki.covida.covidacore.data.VideoMediaData;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs {@link VideoPreload}s on a bounded pool of worker threads.
+ *
+ * A batch of videos is preloaded with
+ * {@link #preload(Collection, IPreloadListener)}, which reports the progress
+ * of each finished video and saves the {@link CovidaConfiguration} once
+ * after the whole batch. Pending and running preloads can be cancelled with
+ * {@link #cancel()}.
+ *
+ * @author Tobias Zimmermann <Tobias.Zimmermann@dfki.de>
+ */
+public class PreloadService {
+
+    /**
+     * Logger
+     */
+    private static Logger log = LoggerFactory.getLogger(PreloadService.class);
+    /**
+     * Maximum amount of worker threads
+     */
+    private static final int MAX_WORKERS = 4;
+    /**
+     * Instance of {@link PreloadService}
+     */
+    private static PreloadService instance;
+    /**
+     * Worker threads
+     */
+    private final ExecutorService executor;
+    /**
+     * Submitted and not finished preloads
+     */
+    private final Collection<Future<?>> pending;
+
+    /**
+     * Private constructor of {@link PreloadService}
+     */
+    private PreloadService() {
+        int workers = Math.max(1, Math.min(MAX_WORKERS,
+                Runtime.getRuntime().availableProcessors()));
+        executor = Executors.newFixedThreadPool(workers, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Video Preload "
+                        + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        pending = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * Returns the instance of {@link PreloadService}
+     *
+     * @return {@link PreloadService}
+     */
+    public static synchronized PreloadService getInstance() {
+        if (instance == null) {
+            instance = new PreloadService();
+        }
+        return instance;
+    }
+
+    /**
+     * Submits a single {@link VideoPreload}.
+     *
+     * @param preload {@link VideoPreload}
+     * @return {@link Future} of the preload
+     */
+    public Future<?> submit(VideoPreload preload) {
+        return submit(preload, null);
+    }
+
+    /**
+     * Preloads all videos in parallel. The {@link IPreloadListener} is
+     * called on the worker thread after each video, including failed and
+     * cancelled ones.
+     *
+     * @param videos videos as {@link Collection} of {@link VideoMediaData}
+     * @param listener {@link IPreloadListener} or null
+     */
+    public void preload(Collection<VideoMediaData> videos,
+            final IPreloadListener listener) {
+        final int total = videos.size();
+        final AtomicInteger completed = new AtomicInteger();
+        for (final VideoMediaData data : videos) {
+            VideoPreload preload = new VideoPreload(data);
+            preload.setSaveConfiguration(false);
+            submit(preload, new Runnable() {
+                @Override
+                public void run() {
+                    int done = completed.incrementAndGet();
+                    if (done == total) {
+                        CovidaConfiguration.getInstance().save();
+                    }
+                    if (listener != null) {
+                        listener.preloaded(data, done, total);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Cancels all pending and running preloads.
+     */
+    public void cancel() {
+        Iterator<Future<?>> iterator = pending.iterator();
+        while (iterator.hasNext()) {
+            iterator.next().cancel(true);
+        }
+    }
+
+    /**
+     * Cancels all preloads and stops the worker threads.
+     */
+    public void shutdown() {
+        cancel();
+        executor.shutdownNow();
+    }
+
+    /**
+     * Submits the {@link VideoPreload} and runs {@code done} after it
+     * finished, failed or was cancelled.
+     */
+    private Future<?> submit(final VideoPreload preload, final Runnable done) {
+        FutureTask<Void> task = new FutureTask<Void>(preload, null) {
+            @Override
+            protected void done() {
+                pending.remove(this);
+                if (isCancelled()) {
+                    log.debug("Preload of " + preload.getData().videoName
+                            + " cancelled");
+                } else {
+                    try {
+                        get();
+                    } catch (InterruptedException | ExecutionException e) {
+                        log.error("Preload of " + preload.getData().videoName
+                                + " failed", e);
+                    }
+                }
+                if (done != null) {
+                    try {
+                        done.run();
+                    } catch (RuntimeException e) {
+                        log.error("", e);
+                    }
+                }
+            }
+        };
+        pending.add(task);
+        executor.execute(task);
+        return task;
+    }
+}
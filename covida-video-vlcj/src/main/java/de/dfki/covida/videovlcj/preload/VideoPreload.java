@@ -28,50 +28,64 @@
 package de.dfki.covida.videovlcj.preload;
 
 import de.dfki.covida.covidacore.data.CovidaConfiguration;
+import de.dfki.covida.covidacore.data.KeyframeIndexWriter;
+import de.dfki.covida.covidacore.data.ThumbnailCache;
 import de.dfki.covida.covidacore.data.VideoMediaData;
 import de.dfki.covida.videovlcj.AbstractVideoHandler;
+import de.dfki.covida.videovlcj.MediaPlayerPool;
 import java.awt.Dimension;
 import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import uk.co.caprica.vlcj.binding.internal.libvlc_media_t;
 import uk.co.caprica.vlcj.player.MediaPlayer;
 import uk.co.caprica.vlcj.player.MediaPlayerEventListener;
-import uk.co.caprica.vlcj.player.MediaPlayerFactory;
 
 /**
- * Component to preload videos for dimension detection
+ * Component to preload videos for dimension detection, thumbnail creation
+ * and the {@link de.dfki.covida.covidacore.data.KeyframeIndex}.
+ *
+ * Each wait for libvlc is bounded by {@link #SEEK_TIMEOUT}. An interrupt of
+ * the preloading thread cancels the preload.
  *
  * @author Tobias Zimmermann <Tobias.Zimmermann@dfki.de>
  */
 public class VideoPreload implements Runnable, MediaPlayerEventListener {
-    
-    private final CountDownLatch inPositionLatch = new CountDownLatch(1);
-    private static float[] VLC_THUMBNAIL_POSITION;
-    private int vlc_thumbnail_number = 0;
+
+    /**
+     * Timeout in ms for the video output and each thumbnail seek
+     */
+    public static final long SEEK_TIMEOUT = 5000;
     /**
      * Logger
      */
     private Logger log = LoggerFactory.getLogger(VideoPreload.class);
+    /**
+     * Released when the video output is created
+     */
+    private final CountDownLatch outputLatch = new CountDownLatch(1);
+    /**
+     * Released when the current seek reached its position
+     */
+    private volatile CountDownLatch positionLatch = new CountDownLatch(1);
+    /**
+     * Position of the current seek
+     */
+    private volatile float targetPosition;
+    private final float[] thumbnailPositions;
     private Dimension dimension;
-    BufferedImage frame;
     private MediaPlayer mediaPlayer;
     private AbstractVideoHandler video;
-    private static final String[] VLC_ARGS = {
-        "--intf", "dummy", /* no interface */
-        "--vout", "dummy", /* we don't want video (output) */
-        "--no-audio", /* we don't want audio (decoding) */ //        
-        "--no-video-title-show", /* nor the filename displayed */
-        "--no-stats", /* no stats */ //        
-        "--no-sub-autodetect-file", /* we don't want subtitles */
-        "--no-disable-screensaver", /* we don't want interfaces */
-        "--no-snapshot-preview", /* no blending in dummy vout */
-        "--ffmpeg-threads", "0"
-    };
-    private MediaPlayerFactory factory;
     private final VideoMediaData data;
     private final boolean thumbcreation;
+    /**
+     * If true the {@link CovidaConfiguration} is saved after the preload
+     */
+    private boolean saveConfiguration = true;
 
     /**
      * Creates a new intance of {@link VideoPreload}
@@ -85,55 +99,56 @@ public class VideoPreload implements Runnable, MediaPlayerEventListener {
         dimension = null;
         this.data = data;
         int thumbcount = CovidaConfiguration.getInstance().thumbcount;
-        float step = (100.f / ((float) thumbcount + 1)) / 100.f;
-        float position = step;
-        if (data.thumbs.size() != thumbcount) {
-            data.thumbs.clear();
+        if (!ThumbnailCache.getInstance().isComplete(data.videoSource,
+                thumbcount, data.thumbs)) {
             thumbcreation = true;
-            VLC_THUMBNAIL_POSITION = new float[thumbcount];
-            for (int i = 0; i < thumbcount; i++) {
-                VLC_THUMBNAIL_POSITION[i] = position;
-                position += step;
-            }
+            thumbnailPositions = ThumbnailCache.positions(thumbcount);
         } else {
             thumbcreation = false;
+            thumbnailPositions = new float[0];
         }
     }
-    
+
     public VideoPreload(VideoMediaData data) {
         this(data, null);
     }
 
+    /**
+     * Returns the video data of this preload.
+     *
+     * @return {@link VideoMediaData}
+     */
+    public VideoMediaData getData() {
+        return data;
+    }
+
+    /**
+     * Sets if the {@link CovidaConfiguration} is saved after the preload.
+     *
+     * @param saveConfiguration if false the caller has to save it
+     */
+    public void setSaveConfiguration(boolean saveConfiguration) {
+        this.saveConfiguration = saveConfiguration;
+    }
+
     /**
      * Initializes the preload
      */
     private void initComponent() {
         log.debug("VIDEO SOURCE (PRELOAD): " + data.videoName);
-        factory = new MediaPlayerFactory(VLC_ARGS);
-        mediaPlayer = factory.newHeadlessMediaPlayer();
+        KeyframeIndexWriter.write(data.videoSource);
+        mediaPlayer = MediaPlayerPool.getInstance().leaseHeadless();
         mediaPlayer.addMediaPlayerEventListener(this);
         mediaPlayer.setVolume(0);
-        if (mediaPlayer.startMedia(data.videoSource)) {
-            if (thumbcreation) {
-                log.debug("Create thumbnails for video: " + data.videoName);
-                while (vlc_thumbnail_number < VLC_THUMBNAIL_POSITION.length) {
-                    mediaPlayer.setPosition(VLC_THUMBNAIL_POSITION[vlc_thumbnail_number]);
-                    try {
-                        inPositionLatch.await(); // Might wait forever if error
-                    } catch (InterruptedException ex) {
-                        log.error("", ex);
-                    }
-                    int ratio = (int) ((float) data.width / (float) data.height);
-                    BufferedImage image = mediaPlayer.getSnapshot(128, (int) (ratio * 128));
-                    if (image != null) {
-                        data.thumbs.add(image);
-                    }
-                    if (dimension == null) {
-                        dimension = mediaPlayer.getVideoDimension();
-                        data.height = dimension.height;
-                        data.width = dimension.width;
-                    }
-                    vlc_thumbnail_number++;
+        boolean started = false;
+        try {
+            started = mediaPlayer.startMedia(data.videoSource, ":no-audio");
+            if (started) {
+                if (outputLatch.await(SEEK_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                    detectDimension();
+                }
+                if (thumbcreation) {
+                    createThumbnails();
                 }
                 mediaPlayer.stop();
                 if (dimension == null) {
@@ -142,25 +157,66 @@ public class VideoPreload implements Runnable, MediaPlayerEventListener {
                     video.create(dimension.width, dimension.height);
                 }
             } else {
-                while (dimension != null) {
-                    try {
-                        inPositionLatch.await(); // Might wait forever if error
-                    } catch (InterruptedException ex) {
-                        log.error("", ex);
-                    }
-                    if (dimension == null) {
-                        log.error("Video dimension detection failed!");
-                    } else if (video != null) {
-                        video.create(dimension.width, dimension.height);
-                    }
-                }
+                log.error("Could not start preload of " + data.videoSource);
             }
-            mediaPlayer.release();
-            factory.release();
+        } catch (InterruptedException ex) {
+            log.debug("Preload of " + data.videoName + " cancelled");
+            Thread.currentThread().interrupt();
+            started = false;
+        } finally {
+            mediaPlayer.removeMediaPlayerEventListener(this);
+            MediaPlayerPool.getInstance().release(mediaPlayer);
+        }
+        if (started && saveConfiguration) {
             CovidaConfiguration.getInstance().save();
         }
     }
 
+    /**
+     * Sets the video dimension to the {@link VideoMediaData} if available.
+     */
+    private void detectDimension() {
+        if (dimension == null) {
+            dimension = mediaPlayer.getVideoDimension();
+            if (dimension != null) {
+                data.height = dimension.height;
+                data.width = dimension.width;
+            }
+        }
+    }
+
+    /**
+     * Seeks to each thumbnail position and takes a snapshot. Positions which
+     * are not reached within {@link #SEEK_TIMEOUT} are skipped, the
+     * remaining thumbnails count as complete on the next start, see
+     * {@link ThumbnailCache#isComplete(String, int, List)}.
+     *
+     * @throws InterruptedException if the preload is cancelled
+     */
+    private void createThumbnails() throws InterruptedException {
+        log.debug("Create thumbnails for video: " + data.videoName);
+        List<String> thumbs = new ArrayList<>();
+        for (float position : thumbnailPositions) {
+            positionLatch = new CountDownLatch(1);
+            targetPosition = position;
+            mediaPlayer.setPosition(position);
+            if (!positionLatch.await(SEEK_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                log.warn("Seek to " + position + " of " + data.videoName
+                        + " timed out");
+                continue;
+            }
+            int ratio = (int) ((float) data.width / (float) data.height);
+            BufferedImage image = mediaPlayer.getSnapshot(128, (int) (ratio * 128));
+            if (image != null) {
+                String key = ThumbnailCache.key(data.videoSource, position);
+                ThumbnailCache.getInstance().put(key, image);
+                thumbs.add(key);
+            }
+            detectDimension();
+        }
+        data.thumbs = thumbs;
+    }
+
     /**
      * Returns video dimensions
      *
@@ -219,8 +275,8 @@ public class VideoPreload implements Runnable, MediaPlayerEventListener {
     @Override
     public void positionChanged(MediaPlayer mp, float newPosition) {
         /* 90% margin */
-        if (newPosition >= VLC_THUMBNAIL_POSITION[vlc_thumbnail_number] * 0.9f) {
-            inPositionLatch.countDown();
+        if (newPosition >= targetPosition * 0.9f) {
+            positionLatch.countDown();
         }
     }
     
@@ -246,10 +302,14 @@ public class VideoPreload implements Runnable, MediaPlayerEventListener {
     
     @Override
     public void videoOutput(MediaPlayer mp, int i) {
+        outputLatch.countDown();
     }
     
     @Override
     public void error(MediaPlayer mp) {
+        log.error("libvlc error while preloading " + data.videoName);
+        outputLatch.countDown();
+        positionLatch.countDown();
     }
     
     @Override
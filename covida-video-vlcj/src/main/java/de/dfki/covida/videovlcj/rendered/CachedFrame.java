@@ -0,0 +1,201 @@
+/*
+ * CachedFrame.java
+ *
+ * Copyright (c) 2012, Tobias Zimmermann All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of
+ * conditions and the following disclaimer. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors may be used to endorse or
+ * promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package de.dfki.covida.videovlcj.rendered;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Video frame of the {@link FrameCache} in BGRA byte order.
+ *
+ * Each frame is kept in full resolution and downscaled by
+ * {@link #SCALE}. Under memory pressure the {@link FrameCache} drops the
+ * full resolution first, the frame is then scaled up again when it is shown.
+ *
+ * @author Tobias Zimmermann <Tobias.Zimmermann@dfki.de>
+ */
+public class CachedFrame {
+
+    /**
+     * Downscale factor of the small frame in each dimension
+     */
+    public static final int SCALE = 4;
+    /**
+     * Video source of the frame
+     */
+    final String source;
+    /**
+     * Media time of the frame in ms
+     */
+    final long time;
+    /**
+     * Frame width
+     */
+    private final int width;
+    /**
+     * Frame height
+     */
+    private final int height;
+    /**
+     * Width of the small frame
+     */
+    private final int smallWidth;
+    /**
+     * Height of the small frame
+     */
+    private final int smallHeight;
+    /**
+     * Full resolution frame, null if dropped
+     */
+    private volatile byte[] full;
+    /**
+     * Downscaled frame
+     */
+    private final byte[] small;
+
+    /**
+     * Creates a {@link CachedFrame} as copy of {@code frame}.
+     *
+     * @param source video source
+     * @param time media time of the frame in ms
+     * @param frame frame in BGRA byte order, read from its position
+     * @param width frame width
+     * @param height frame height
+     */
+    CachedFrame(String source, long time, ByteBuffer frame, int width,
+            int height) {
+        this.source = source;
+        this.time = time;
+        this.width = width;
+        this.height = height;
+        this.full = new byte[width * height * 4];
+        frame.duplicate().get(full);
+        this.smallWidth = Math.max(1, width / SCALE);
+        this.smallHeight = Math.max(1, height / SCALE);
+        this.small = downscale(full);
+    }
+
+    /**
+     * Averages each {@link #SCALE} x {@link #SCALE} block of the frame.
+     *
+     * @param frame full resolution frame
+     * @return downscaled frame
+     */
+    private byte[] downscale(byte[] frame) {
+        byte[] scaled = new byte[smallWidth * smallHeight * 4];
+        int[] sum = new int[4];
+        for (int sy = 0; sy < smallHeight; sy++) {
+            for (int sx = 0; sx < smallWidth; sx++) {
+                sum[0] = sum[1] = sum[2] = sum[3] = 0;
+                int n = 0;
+                for (int y = sy * SCALE; y < Math.min(height, (sy + 1) * SCALE); y++) {
+                    for (int x = sx * SCALE; x < Math.min(width, (sx + 1) * SCALE); x++) {
+                        int i = (y * width + x) * 4;
+                        for (int c = 0; c < 4; c++) {
+                            sum[c] += frame[i + c] & 0xff;
+                        }
+                        n++;
+                    }
+                }
+                int j = (sy * smallWidth + sx) * 4;
+                for (int c = 0; c < 4; c++) {
+                    scaled[j + c] = (byte) (sum[c] / n);
+                }
+            }
+        }
+        return scaled;
+    }
+
+    /**
+     * Returns the media time of the frame.
+     *
+     * @return time in ms
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * Returns true if the full resolution frame is still cached.
+     *
+     * @return true if in full resolution
+     */
+    public boolean isFullResolution() {
+        return full != null;
+    }
+
+    /**
+     * Drops the full resolution frame.
+     *
+     * @return amount of freed bytes
+     */
+    int dropFullResolution() {
+        byte[] frame = full;
+        full = null;
+        return frame == null ? 0 : frame.length;
+    }
+
+    /**
+     * Returns the amount of cached bytes.
+     *
+     * @return size in bytes
+     */
+    int size() {
+        byte[] frame = full;
+        return small.length + (frame == null ? 0 : frame.length);
+    }
+
+    /**
+     * Copies the frame into {@code target}. The frame is scaled if the size of
+     * {@code target} differs or if the full resolution was dropped.
+     *
+     * @param target frame buffer of {@code width} x {@code height} in BGRA
+     * byte order
+     * @param width width of {@code target}
+     * @param height height of {@code target}
+     */
+    public void copyTo(ByteBuffer target, int width, int height) {
+        target.clear();
+        byte[] frame = full;
+        if (frame != null && width == this.width && height == this.height) {
+            target.put(frame);
+            return;
+        }
+        int sourceWidth = frame == null ? smallWidth : this.width;
+        int sourceHeight = frame == null ? smallHeight : this.height;
+        IntBuffer pixels = target.asIntBuffer();
+        IntBuffer scaled = ByteBuffer.wrap(frame == null ? small : frame)
+                .order(target.order()).asIntBuffer();
+        for (int y = 0; y < height; y++) {
+            int row = (int) ((long) y * sourceHeight / height) * sourceWidth;
+            for (int x = 0; x < width; x++) {
+                pixels.put(scaled.get(row + (int) ((long) x * sourceWidth / width)));
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * FrameBufferPool.java
+ *
+ * Copyright (c) 2012, Tobias Zimmermann All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of
+ * conditions and the following disclaimer. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors may be used to endorse or
+ * promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package de.dfki.covida.videovlcj.rendered;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pool of direct {@link ByteBuffer}s for decoded video frames.
+ *
+ * Direct memory is only given back to the system when the owning
+ * {@link ByteBuffer} is garbage collected, so frame buffers are recycled
+ * between video components instead of allocating a new one for each opened
+ * video.
+ *
+ * @author Tobias Zimmermann <Tobias.Zimmermann@dfki.de>
+ */
+public class FrameBufferPool {
+
+    /**
+     * Logger.
+     */
+    private static Logger log = LoggerFactory.getLogger(FrameBufferPool.class);
+    /**
+     * Maximum amount of idle buffers kept per capacity.
+     */
+    private static final int MAX_IDLE = 8;
+    /**
+     * Instance of {@link FrameBufferPool}
+     */
+    private static FrameBufferPool instance;
+    /**
+     * Idle buffers by capacity
+     */
+    private final Map<Integer, Deque<ByteBuffer>> idle;
+
+    /**
+     * Private constructor of {@link FrameBufferPool}
+     */
+    private FrameBufferPool() {
+        idle = new HashMap<>();
+    }
+
+    /**
+     * Returns the instance of {@link FrameBufferPool}
+     *
+     * @return {@link FrameBufferPool}
+     */
+    public static synchronized FrameBufferPool getInstance() {
+        if (instance == null) {
+            instance = new FrameBufferPool();
+        }
+        return instance;
+    }
+
+    /**
+     * Returns a cleared direct {@link ByteBuffer} in native byte order with
+     * the given capacity.
+     *
+     * @param capacity capacity in bytes
+     * @return {@link ByteBuffer}
+     */
+    public synchronized ByteBuffer acquire(int capacity) {
+        Deque<ByteBuffer> buffers = idle.get(capacity);
+        if (buffers != null && !buffers.isEmpty()) {
+            ByteBuffer buffer = buffers.pop();
+            buffer.clear();
+            return buffer;
+        }
+        log.debug("Allocating frame buffer with " + capacity + " bytes");
+        return ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Gives the {@link ByteBuffer} back to the pool.
+     *
+     * @param buffer {@link ByteBuffer} acquired by {@link #acquire(int)}
+     */
+    public synchronized void release(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect()) {
+            return;
+        }
+        Deque<ByteBuffer> buffers = idle.get(buffer.capacity());
+        if (buffers == null) {
+            buffers = new ArrayDeque<>();
+            idle.put(buffer.capacity(), buffers);
+        }
+        if (buffers.size() < MAX_IDLE) {
+            buffers.push(buffer);
+        }
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * FrameCache.java
+ *
+ * Copyright (c) 2012, Tobias Zimmermann All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of
+ * conditions and the following disclaimer. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors may be used to endorse or
+ * promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package de.dfki.covida.videovlcj.rendered;
+
+import de.dfki.covida.covidacore.data.CovidaConfiguration;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Memory bounded cache of decoded video frames, filled by the
+ * {@code FramePrefetcher} around annotation time stamps.
+ *
+ * The cache is limited to {@code framecache} MB of the
+ * {@link CovidaConfiguration}. If it is full, the least recently used frames
+ * lose their full resolution first and are removed afterwards.
+ *
+ * @author Tobias Zimmermann <Tobias.Zimmermann@dfki.de>
+ */
+public class FrameCache {
+
+    /**
+     * Logger
+     */
+    private static Logger log = LoggerFactory.getLogger(FrameCache.class);
+    /**
+     * Maximum distance in ms of a cached frame before the requested time
+     */
+    public static final long TOLERANCE = 200;
+    /**
+     * Instance of {@link FrameCache}
+     */
+    private static FrameCache instance;
+    /**
+     * Cached frames in access order
+     */
+    private final LinkedHashMap<CachedFrame, CachedFrame> frames;
+    /**
+     * Cached frames by source and time
+     */
+    private final Map<String, TreeMap<Long, CachedFrame>> sources;
+    /**
+     * Cached bytes
+     */
+    private long size;
+    private long hits;
+    private long misses;
+
+    /**
+     * Private constructor of {@link FrameCache}
+     */
+    private FrameCache() {
+        frames = new LinkedHashMap<>(64, 0.75f, true);
+        sources = new HashMap<>();
+    }
+
+    /**
+     * Returns the instance of {@link FrameCache}
+     *
+     * @return {@link FrameCache}
+     */
+    public static synchronized FrameCache getInstance() {
+        if (instance == null) {
+            instance = new FrameCache();
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the latest cached frame of the video at or up to
+     * {@link #TOLERANCE} ms before {@code time}.
+     *
+     * @param source video source
+     * @param time media time in ms
+     * @return {@link CachedFrame} or null if none is cached
+     */
+    public synchronized CachedFrame get(String source, long time) {
+        CachedFrame frame = find(source, time);
+        if (frame == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return frames.get(frame);
+    }
+
+    /**
+     * Returns true if a frame of the video at or up to {@link #TOLERANCE} ms
+     * before {@code time} is cached. The access order is not changed.
+     *
+     * @param source video source
+     * @param time media time in ms
+     * @return true if cached
+     */
+    public synchronized boolean contains(String source, long time) {
+        return find(source, time) != null;
+    }
+
+    /**
+     * Looks up a frame without changing the access order.
+     *
+     * @param source video source
+     * @param time media time in ms
+     * @return {@link CachedFrame} or null
+     */
+    private CachedFrame find(String source, long time) {
+        TreeMap<Long, CachedFrame> times = sources.get(source);
+        if (times == null) {
+            return null;
+        }
+        Map.Entry<Long, CachedFrame> entry = times.floorEntry(time);
+        if (entry == null || time - entry.getKey() > TOLERANCE) {
+            return null;
+        }
+        return entry.getValue();
+    }
+
+    /**
+     * Copies the frame into the cache.
+     *
+     * @param source video source
+     * @param time media time of the frame in ms
+     * @param frame frame in BGRA byte order
+     * @param width frame width
+     * @param height frame height
+     */
+    public void put(String source, long time, ByteBuffer frame, int width,
+            int height) {
+        CachedFrame cached = new CachedFrame(source, time, frame, width, height);
+        synchronized (this) {
+            TreeMap<Long, CachedFrame> times = sources.get(source);
+            if (times == null) {
+                times = new TreeMap<>();
+                sources.put(source, times);
+            }
+            CachedFrame previous = times.put(time, cached);
+            if (previous != null) {
+                frames.remove(previous);
+                size -= previous.size();
+            }
+            frames.put(cached, cached);
+            size += cached.size();
+            trim();
+        }
+    }
+
+    /**
+     * Removes all frames of the video.
+     *
+     * @param source video source
+     */
+    public synchronized void remove(String source) {
+        TreeMap<Long, CachedFrame> times = sources.remove(source);
+        if (times == null) {
+            return;
+        }
+        for (CachedFrame frame : times.values()) {
+            frames.remove(frame);
+            size -= frame.size();
+        }
+    }
+
+    /**
+     * Returns the amount of cached bytes.
+     *
+     * @return size in bytes
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the amount of frames returned by {@link #get(String, long)}.
+     *
+     * @return amount of cache hits
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns the amount of requests of {@link #get(String, long)} without a
+     * cached frame.
+     *
+     * @return amount of cache misses
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Drops full resolutions and then whole frames, least recently used
+     * first, until the cache fits into its limit.
+     */
+    private void trim() {
+        long limit = getLimit();
+        Iterator<CachedFrame> iterator = frames.keySet().iterator();
+        while (size > limit && iterator.hasNext()) {
+            size -= iterator.next().dropFullResolution();
+        }
+        iterator = frames.keySet().iterator();
+        while (size > limit && iterator.hasNext()) {
+            CachedFrame frame = iterator.next();
+            iterator.remove();
+            size -= frame.size();
+            TreeMap<Long, CachedFrame> times = sources.get(frame.source);
+            times.remove(frame.time);
+            if (times.isEmpty()) {
+                sources.remove(frame.source);
+            }
+            log.debug("Evicted frame {} of {}", frame.time, frame.source);
+        }
+    }
+
+    /**
+     * Returns the memory limit of the cache.
+     *
+     * @return limit in bytes
+     */
+    private long getLimit() {
+        return Math.max(0, CovidaConfiguration.getInstance().framecache)
+                * 1024L * 1024L;
+    }
+}
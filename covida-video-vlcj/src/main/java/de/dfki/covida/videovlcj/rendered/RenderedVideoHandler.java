@@ -32,6 +32,7 @@ import de.dfki.covida.covidacore.data.Stroke;
 import de.dfki.covida.covidacore.data.StrokeList;
 import de.dfki.covida.covidacore.data.VideoMediaData;
 import de.dfki.covida.videovlcj.AbstractVideoHandler;
+import java.awt.Graphics2D;
 import java.awt.Point;
 import java.awt.image.BufferedImage;
 import java.io.File;
@@ -80,6 +81,33 @@ public class RenderedVideoHandler extends AbstractVideoHandler {
         return ((VideoRenderer) graphics).getVideoImage();
     }
 
+    @Override
+    public long readFrame(IFrameConsumer consumer) {
+        long sequence = ((VideoRenderer) graphics).readFrame(consumer);
+        frameRendered(sequence);
+        return sequence;
+    }
+
+    @Override
+    public void showCachedFrame(CachedFrame frame) {
+        ((VideoRenderer) graphics).showCachedFrame(frame);
+    }
+
+    @Override
+    public long getFrameSequence() {
+        return ((VideoRenderer) graphics).getFrameSequence();
+    }
+
+    @Override
+    public long getOverlaySequence() {
+        return ((VideoRenderer) graphics).getOverlaySequence();
+    }
+
+    @Override
+    public boolean drawOverlay(Graphics2D g2d) {
+        return ((VideoRenderer) graphics).drawOverlay(g2d);
+    }
+
     /**
      * Makes a snapshot of the video
      *
@@ -92,7 +120,7 @@ public class RenderedVideoHandler extends AbstractVideoHandler {
 
     /**
      * Saves the video frame including the shape to {@link File}
-     * {@code source + "."+ mediaPlayer.getTime() + ".png"}
+     * {@code source + "."+ getTime() + ".png"}
      */
     @Override
     public void saveAnnotatedFrame() {
@@ -100,7 +128,7 @@ public class RenderedVideoHandler extends AbstractVideoHandler {
         if (img != null) {
             try {
                 ImageIO.write(img, "png", new File(getSource() + "."
-                        + mediaPlayer.getTime() + ".png"));
+                        + getTime() + ".png"));
             } catch (IOException e) {
                 log.error("", e);
             }
@@ -111,8 +139,8 @@ public class RenderedVideoHandler extends AbstractVideoHandler {
     }
 
     @Override
-    public void draw(Point point) {
-        ((VideoRenderer) graphics).draw(point);
+    public void draw(String device, Point point) {
+        ((VideoRenderer) graphics).draw(device, point);
     }
 
     @Override
@@ -157,7 +185,7 @@ public class RenderedVideoHandler extends AbstractVideoHandler {
     }
 
     @Override
-    public void endDrawStroke() {
-        ((VideoRenderer) graphics).endDrawStroke();
+    public void endDrawStroke(String device) {
+        ((VideoRenderer) graphics).endDrawStroke(device);
     }
 }
@@ -0,0 +1,134 @@
+/*
+ * StrokeBuffer.java
+ *
+ * Copyright (c) 2012, Tobias Zimmermann All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of
+ * conditions and the following disclaimer. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors may be used to endorse or
+ * promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package de.dfki.covida.videovlcj.rendered;
+
+import de.dfki.covida.covidacore.data.Stroke;
+import java.util.Arrays;
+
+/**
+ * Append only point buffer of the stroke a pen is currently drawing.
+ *
+ * Exactly one thread, the one delivering the events of the pen, may call
+ * {@link #add(int, int)}. Any thread may read the points without locking:
+ * the coordinates are published before the size, so {@link #size()}
+ * followed by {@link #coords()} always yields a consistent prefix of the
+ * stroke. A new buffer is used for every stroke, it is never reset.
+ *
+ * @author Tobias Zimmermann <Tobias.Zimmermann@dfki.de>
+ */
+public class StrokeBuffer {
+
+    /**
+     * Initial amount of points
+     */
+    private static final int INITIAL_CAPACITY = 64;
+    /**
+     * Drawing generation of the {@link VideoRenderer} the stroke belongs to
+     */
+    private final int generation;
+    /**
+     * Interleaved x and y coordinates
+     */
+    private volatile int[] coords;
+    /**
+     * Amount of points
+     */
+    private volatile int size;
+
+    /**
+     * Creates a new {@link StrokeBuffer}.
+     *
+     * @param generation drawing generation of the {@link VideoRenderer}
+     */
+    public StrokeBuffer(int generation) {
+        this.generation = generation;
+        this.coords = new int[2 * INITIAL_CAPACITY];
+    }
+
+    /**
+     * Appends a point. Must only be called by the producing thread.
+     *
+     * @param x x coordinate
+     * @param y y coordinate
+     */
+    public void add(int x, int y) {
+        int n = size;
+        int[] c = coords;
+        if (2 * n + 2 > c.length) {
+            c = Arrays.copyOf(c, 2 * c.length);
+            coords = c;
+        }
+        c[2 * n] = x;
+        c[2 * n + 1] = y;
+        size = n + 1;
+    }
+
+    /**
+     * Returns the amount of published points. Read it before
+     * {@link #coords()}.
+     *
+     * @return amount of points
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the interleaved x and y coordinates, holding at least
+     * {@link #size()} points as read before.
+     *
+     * @return coordinates, must not be modified
+     */
+    public int[] coords() {
+        return coords;
+    }
+
+    /**
+     * Returns the drawing generation the stroke belongs to.
+     *
+     * @return generation
+     */
+    public int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Copies the published points into a new {@link Stroke}.
+     *
+     * @return {@link Stroke}
+     */
+    public Stroke toStroke() {
+        int n = size;
+        int[] c = coords;
+        Stroke stroke = new Stroke();
+        for (int i = 0; i < n; i++) {
+            stroke.add(c[2 * i], c[2 * i + 1]);
+        }
+        return stroke;
+    }
+}
@@ -27,9 +27,11 @@
  */
 package de.dfki.covida.videovlcj.rendered;
 
+import com.sun.jna.Memory;
+import de.dfki.covida.covidacore.data.CovidaConfiguration;
 import de.dfki.covida.covidacore.data.Stroke;
 import de.dfki.covida.covidacore.data.StrokeList;
-import de.dfki.covida.covidacore.utils.ImageUtils;
+import de.dfki.covida.covidacore.utils.StrokeFilter;
 import de.dfki.covida.videovlcj.IVideoGraphicsHandler;
 import java.awt.BasicStroke;
 import java.awt.Color;
@@ -37,22 +39,40 @@ import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.FontMetrics;
 import java.awt.Graphics2D;
-import java.awt.GraphicsEnvironment;
 import java.awt.Point;
 import java.awt.Polygon;
+import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import uk.co.caprica.vlcj.player.direct.RenderCallbackAdapter;
+import uk.co.caprica.vlcj.player.direct.RenderCallback;
 
 /**
  * Video Renderer
  *
+ * vlcj renders each frame as RV32 into native memory. The frame is copied
+ * once into a pooled direct {@link ByteBuffer} which the visual component
+ * uploads to its texture through {@link #readFrame(IFrameConsumer)}. The
+ * decoder and the renderer exchange three of these buffers without locks:
+ * the decoder publishes each completed frame and takes back the previously
+ * published buffer, the renderer takes the latest published buffer. Frames
+ * which are published while the renderer is behind are dropped. The
+ * overlays (strokes, shapes, time code, title and handwriting) are drawn
+ * separately with {@link #drawOverlay(Graphics2D)}. Frames and overlays carry
+ * sequence numbers, so unchanged ones don't have to be uploaded again.
+ *
  * @author Tobias Zimmermann <Tobias.Zimmermann@dfki.de>
  */
-public class VideoRenderer extends RenderCallbackAdapter implements IVideoGraphicsHandler {
+public class VideoRenderer implements RenderCallback, IVideoGraphicsHandler {
 
     /**
      * Logger.
@@ -67,14 +87,105 @@ public class VideoRenderer extends RenderCallbackAdapter implements IVideoGraphi
      */
     private long timeCodeKillTime;
     /**
-     * Video frame
+     * Marks a buffer index in {@code exchange} as not yet taken by the
+     * renderer.
+     */
+    private static final int FRESH = 4;
+    /**
+     * Mask of the buffer index in {@code exchange}.
+     */
+    private static final int INDEX = 3;
+    /**
+     * Video frame buffers in BGRA byte order
+     */
+    private volatile ByteBuffer[] frames;
+    /**
+     * Sequence numbers of the frames in {@code frames}
+     */
+    private final long[] sequences;
+    /**
+     * Index of the buffer owned by the decoder
+     */
+    private int writeIndex;
+    /**
+     * Index of the buffer owned by the renderer
+     */
+    private int readIndex;
+    /**
+     * Index of the last published buffer, with {@code FRESH} set if the
+     * renderer did not take it yet.
+     */
+    private final AtomicInteger exchange;
+    /**
+     * Sequence number of the latest frame
+     */
+    private final AtomicLong frameSequence = new AtomicLong();
+    /**
+     * Sequence number of the last {@link #clear()} request
+     */
+    private volatile long clearSequence = -1;
+    /**
+     * Cached frame to show until vlcj renders the next frame
+     */
+    private volatile CachedFrame cachedFrame;
+    /**
+     * Sequence number of {@code cachedFrame}
+     */
+    private volatile long cachedSequence = -1;
+    /**
+     * If true rendered frames are dropped, e.g. while the video is hidden
      */
-    private BufferedImage frame;
+    private volatile boolean suspended;
+    /**
+     * Sequence number of the frame consumed last
+     */
+    private long readSequence;
+    /**
+     * Guards the renderer side of the exchange against concurrent
+     * snapshots, without blocking the renderer.
+     */
+    private final AtomicBoolean reading = new AtomicBoolean();
+    /**
+     * Creation time in ns
+     */
+    private final long created = System.nanoTime();
+    /**
+     * Time in ms from creation to the first rendered frame, -1 before
+     */
+    private volatile long timeToFirstFrame = -1;
+    /**
+     * Sequence number of the overlays, incremented on each change
+     */
+    private final AtomicLong overlaySequence = new AtomicLong();
+    /**
+     * True if the last {@link #drawOverlay(Graphics2D)} drew the time code
+     */
+    private volatile boolean timeCodeDrawn;
     private final int width;
     private final int height;
-    private List<Stroke> drawedPoints;
+    /**
+     * Size of the decoded frames, which can be smaller than the video
+     */
+    private volatile int frameWidth;
+    private volatile int frameHeight;
+    /**
+     * Finished strokes returned by {@link #getDrawings()}
+     */
+    private final Collection<Stroke> drawedPoints;
     private StrokeList shapePoints;
-    private Collection<Collection<Point>> pointsToDraw;
+    /**
+     * Finished strokes which are drawn
+     */
+    private final Collection<Stroke> pointsToDraw;
+    /**
+     * {@link StrokeBuffer} of the stroke each pen device is drawing
+     */
+    private final Map<String, StrokeBuffer> pens;
+    /**
+     * Drawing generation, incremented by {@link #clearDrawing()}. Strokes
+     * of former generations are neither drawn nor finished.
+     */
+    private final AtomicInteger generation;
     private Collection<Polygon> shapeToDraw;
     private Dimension d;
     private Font f = new Font("Arial", Font.PLAIN, 20);
@@ -91,20 +202,24 @@ public class VideoRenderer extends RenderCallbackAdapter implements IVideoGraphi
      * Constructor
      */
     public VideoRenderer(int width, int height, String title) {
-        super(new int[width * height]);
         this.width = width;
         this.height = height;
         this.title = title;
         this.timecode = "";
         this.hwr = "";
-        this.drawedPoints = new ArrayList<>();
+        this.drawedPoints = new ConcurrentLinkedQueue<>();
         this.shapePoints = new StrokeList();
         this.pointsToDraw = new ConcurrentLinkedQueue<>();
+        this.pens = new ConcurrentHashMap<>();
+        this.generation = new AtomicInteger();
         shapeToDraw = new ConcurrentLinkedQueue<>();
-        this.frame = GraphicsEnvironment.getLocalGraphicsEnvironment()
-                .getDefaultScreenDevice().getDefaultConfiguration()
-                .createCompatibleImage(width, height);
-        this.frame.setAccelerationPriority(1.0f);
+        this.frameWidth = width;
+        this.frameHeight = height;
+        this.frames = acquireFrames(width, height);
+        this.sequences = new long[frames.length];
+        this.writeIndex = 0;
+        this.readIndex = 1;
+        this.exchange = new AtomicInteger(2);
     }
 
     /**
@@ -186,21 +301,23 @@ public class VideoRenderer extends RenderCallbackAdapter implements IVideoGraphi
      * @param g2d {@link Graphics2D}
      */
     private void drawPoints(Graphics2D g2d) {
-        for (Collection<Point> points : pointsToDraw) {
-            Point lastPoint = null;
-            for (Point point : points) {
-                if (lastPoint == null) {
-                    lastPoint = point;
-                } else {
-                    g2d.setColor(Color.black);
-                    g2d.drawLine(lastPoint.x + 2, lastPoint.y + 2, point.x + 2, point.y + 2);
-                    g2d.drawLine(lastPoint.x - 2, lastPoint.y + 2, point.x - 2, point.y + 2);
-                    g2d.drawLine(lastPoint.x + 2, lastPoint.y - 2, point.x + 2, point.y - 2);
-                    g2d.drawLine(lastPoint.x - 2, lastPoint.y - 2, point.x - 2, point.y - 2);
-                    g2d.setColor(defaultG2DColor);
-                    g2d.drawLine(lastPoint.x, lastPoint.y, point.x, point.y);
-                    lastPoint = point;
-                }
+        for (Stroke points : pointsToDraw) {
+            int size = points.size();
+            for (int i = 1; i < size; i++) {
+                drawLine(g2d, points.getX(i - 1), points.getY(i - 1),
+                        points.getX(i), points.getY(i));
+            }
+        }
+        int current = generation.get();
+        for (StrokeBuffer pen : pens.values()) {
+            if (pen.getGeneration() != current) {
+                continue;
+            }
+            int size = pen.size();
+            int[] coords = pen.coords();
+            for (int i = 1; i < size; i++) {
+                drawLine(g2d, coords[2 * i - 2], coords[2 * i - 1],
+                        coords[2 * i], coords[2 * i + 1]);
             }
         }
         for (Polygon polygon : shapeToDraw) {
@@ -219,6 +336,21 @@ public class VideoRenderer extends RenderCallbackAdapter implements IVideoGraphi
         }
     }
 
+    /**
+     * Draws a stroke segment with black outline.
+     *
+     * @param g2d {@link Graphics2D}
+     */
+    private void drawLine(Graphics2D g2d, int x0, int y0, int x1, int y1) {
+        g2d.setColor(Color.black);
+        g2d.drawLine(x0 + 2, y0 + 2, x1 + 2, y1 + 2);
+        g2d.drawLine(x0 - 2, y0 + 2, x1 - 2, y1 + 2);
+        g2d.drawLine(x0 + 2, y0 - 2, x1 + 2, y1 - 2);
+        g2d.drawLine(x0 - 2, y0 - 2, x1 - 2, y1 - 2);
+        g2d.setColor(defaultG2DColor);
+        g2d.drawLine(x0, y0, x1, y1);
+    }
+
     /**
      * Enables / disables time code overlay
      *
@@ -226,6 +358,7 @@ public class VideoRenderer extends RenderCallbackAdapter implements IVideoGraphi
      */
     public void enableTimeCodeOverlay(long timeout) {
         timeCodeKillTime = System.currentTimeMillis() + timeout;
+        overlaySequence.incrementAndGet();
     }
 
     /**
@@ -235,6 +368,7 @@ public class VideoRenderer extends RenderCallbackAdapter implements IVideoGraphi
      */
     public void setTitleOverlayEnabled(boolean enabled) {
         titleOverlayEnabled = enabled;
+        overlaySequence.incrementAndGet();
     }
 
     /**
@@ -245,35 +379,60 @@ public class VideoRenderer extends RenderCallbackAdapter implements IVideoGraphi
     @Override
     public synchronized void setTimecode(String timecode) {
         this.timecode = timecode;
+        if (timeCodeKillTime > System.currentTimeMillis()) {
+            overlaySequence.incrementAndGet();
+        }
     }
 
     /**
-     * Adds a point to {@code pointsToDraw}
+     * Adds a point to the stroke the pen device is drawing. Each device has
+     * its own {@link StrokeBuffer}, so concurrent pens do not interleave.
+     * The points of a device must be added by a single thread.
      *
+     * @param device pen device or null
      * @param point {@link Point}
      */
-    public void draw(Point point) {
-        if (drawedPoints.isEmpty()) {
-            Stroke stroke = new Stroke();
-            drawedPoints.add(stroke);
-        }
-        drawedPoints.get(drawedPoints.size() - 1).points.add(point);
-        Iterator<Collection<Point>> iterator = pointsToDraw.iterator();
-        Collection<Point> last = null;
-        while (iterator.hasNext()) {
-            last = iterator.next();
-        }
-        if (last == null) {
-            last = new ConcurrentLinkedQueue<>();
+    public void draw(String device, Point point) {
+        String key = device == null ? "" : device;
+        int current = generation.get();
+        StrokeBuffer pen = pens.get(key);
+        if (pen == null || pen.getGeneration() != current) {
+            pen = new StrokeBuffer(current);
+            pens.put(key, pen);
         }
-        last.add(point);
-        pointsToDraw.add(last);
+        pen.add(point.x, point.y);
+        overlaySequence.incrementAndGet();
     }
 
-    public void endDrawStroke() {
-        drawedPoints.add(new Stroke());
-        Collection<Point> newStroke = new ConcurrentLinkedQueue<>();
-        pointsToDraw.add(newStroke);
+    /**
+     * Finishes the stroke of the pen device. Unless
+     * {@link CovidaConfiguration#rawstrokes} is set, the stroke is replaced
+     * by its {@link StrokeFilter#simplify(Stroke, double)} result.
+     *
+     * @param device pen device or null
+     */
+    public void endDrawStroke(String device) {
+        String key = device == null ? "" : device;
+        StrokeBuffer pen = pens.get(key);
+        if (pen == null) {
+            return;
+        }
+        if (pen.getGeneration() == generation.get() && pen.size() > 0) {
+            Stroke stroke = pen.toStroke();
+            if (!CovidaConfiguration.getInstance().rawstrokes) {
+                stroke = StrokeFilter.simplify(stroke, StrokeFilter.TOLERANCE);
+            }
+            // published before the buffer is removed, so it never vanishes
+            drawedPoints.add(stroke);
+            pointsToDraw.add(stroke);
+            if (pen.getGeneration() != generation.get()) {
+                // cleared meanwhile
+                drawedPoints.remove(stroke);
+                pointsToDraw.remove(stroke);
+            }
+        }
+        pens.remove(key, pen);
+        overlaySequence.incrementAndGet();
     }
 
     /**
@@ -286,17 +445,62 @@ public class VideoRenderer extends RenderCallbackAdapter implements IVideoGraphi
     }
 
     /**
-     * Returns the video image
+     * Returns the video image including the overlays.
+     *
+     * Note that this copies the whole frame, use
+     * {@link #readFrame(IFrameConsumer)} for rendering.
      *
      * @return {@link BufferedImage}
      */
     public BufferedImage getVideoImage() {
-        if (frame == null) {
-            log.error("Frame is null.");
-            return null;
+        final BufferedImage[] decoded = new BufferedImage[1];
+        IFrameConsumer consumer = new IFrameConsumer() {
+            @Override
+            public void consume(ByteBuffer frame, int width, int height) {
+                decoded[0] = new BufferedImage(width, height,
+                        BufferedImage.TYPE_INT_RGB);
+                int[] pixels = ((DataBufferInt) decoded[0].getRaster()
+                        .getDataBuffer()).getData();
+                frame.duplicate().order(ByteOrder.LITTLE_ENDIAN)
+                        .asIntBuffer().get(pixels);
+            }
+        };
+        while (!reading.compareAndSet(false, true)) {
+            Thread.yield();
+        }
+        try {
+            consumeFrame(consumer);
+        } finally {
+            reading.set(false);
+        }
+        BufferedImage image = decoded[0];
+        if (image == null || image.getWidth() != width
+                || image.getHeight() != height) {
+            image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            if (decoded[0] != null) {
+                Graphics2D scaled = image.createGraphics();
+                scaled.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                        RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                scaled.drawImage(decoded[0], 0, 0, width, height, null);
+                scaled.dispose();
+            }
         }
-        BufferedImage image = ImageUtils.deepCopy(frame);
         Graphics2D g2d = image.createGraphics();
+        drawOverlay(g2d);
+        g2d.dispose();
+        return image;
+    }
+
+    /**
+     * Draws the overlays (strokes, shapes, time code, title and handwriting)
+     * on the {@link Graphics2D}.
+     *
+     * @param g2d {@link Graphics2D} with the size of the video
+     * @return true if anything was drawn
+     */
+    public boolean drawOverlay(Graphics2D g2d) {
+        boolean drawn = !pointsToDraw.isEmpty() || !pens.isEmpty()
+                || !shapeToDraw.isEmpty();
         g2d.setColor(defaultG2DColor);
         BasicStroke bs = new BasicStroke(2);
         g2d.setStroke(bs);
@@ -309,9 +513,12 @@ public class VideoRenderer extends RenderCallbackAdapter implements IVideoGraphi
             fh = ascent + fm.getDescent();
             space = fm.stringWidth(" ");
         }
+        timeCodeDrawn = false;
         if (timeCodeKillTime > System.currentTimeMillis()) {
             if (timecode != null) {
                 drawString(timecode, g2d, true, height / 2);
+                timeCodeDrawn = true;
+                drawn = true;
             } else {
                 log.warn("Can not render time code overlay: timecode == null");
                 timeCodeKillTime = System.currentTimeMillis();
@@ -320,6 +527,7 @@ public class VideoRenderer extends RenderCallbackAdapter implements IVideoGraphi
         if (titleOverlayEnabled) {
             if (title != null) {
                 drawString(title, g2d, true, 0);
+                drawn = true;
             } else {
                 log.warn("Can not render title overlay: tile == null");
                 titleOverlayEnabled = false;
@@ -328,33 +536,270 @@ public class VideoRenderer extends RenderCallbackAdapter implements IVideoGraphi
         if (hwrOverlayEnabled) {
             if (hwr != null) {
                 drawString(hwr, g2d, true, height - 70);
+                drawn |= !hwr.isEmpty();
             } else {
                 log.warn("Can not render hwr result: hwr == null");
                 hwrOverlayEnabled = false;
             }
         }
-        return image;
+        return drawn;
+    }
+
+    /**
+     * Passes the latest frame to the {@link IFrameConsumer}.
+     *
+     * Note that only the render thread should call this method, if a
+     * snapshot is taken at the same time the current frame is not consumed.
+     *
+     * @param consumer {@link IFrameConsumer}
+     * @return sequence number of the consumed frame
+     */
+    public long readFrame(IFrameConsumer consumer) {
+        if (!reading.compareAndSet(false, true)) {
+            return readSequence;
+        }
+        try {
+            return consumeFrame(consumer);
+        } finally {
+            reading.set(false);
+        }
+    }
+
+    /**
+     * Takes the latest published frame, if any, and passes it to the
+     * {@link IFrameConsumer}. The caller must hold {@code reading}.
+     *
+     * @param consumer {@link IFrameConsumer}
+     * @return sequence number of the consumed frame
+     */
+    private long consumeFrame(IFrameConsumer consumer) {
+        ByteBuffer[] buffers = frames;
+        if (buffers == null) {
+            log.error("Frame is null.");
+            return readSequence;
+        }
+        if ((exchange.get() & FRESH) != 0) {
+            readIndex = exchange.getAndSet(readIndex) & INDEX;
+            readSequence = sequences[readIndex];
+        }
+        ByteBuffer frame = buffers[readIndex];
+        long cleared = clearSequence;
+        long cached = cachedSequence;
+        if (cached > readSequence && cached > cleared) {
+            cachedFrame.copyTo(frame, frameWidth, frameHeight);
+            readSequence = cached;
+        } else if (cleared > readSequence) {
+            clearFrame(frame);
+            readSequence = cleared;
+        }
+        frame.rewind();
+        consumer.consume(frame, frameWidth, frameHeight);
+        return readSequence;
     }
 
+    /**
+     * Returns the sequence number of the latest frame, which is incremented
+     * for each frame rendered by vlcj, for each {@link #clear()} and for each
+     * {@link #showCachedFrame(CachedFrame)}.
+     *
+     * @return frame sequence number
+     */
+    public long getFrameSequence() {
+        return frameSequence.get();
+    }
+
+    /**
+     * Returns the sequence number of the overlays, which is incremented
+     * whenever {@link #drawOverlay(Graphics2D)} would draw something else.
+     *
+     * @return overlay sequence number
+     */
+    public long getOverlaySequence() {
+        if (timeCodeDrawn && timeCodeKillTime <= System.currentTimeMillis()) {
+            timeCodeDrawn = false;
+            overlaySequence.incrementAndGet();
+        }
+        return overlaySequence.get();
+    }
+
+    /**
+     * Copies the frame rendered by vlcj into the buffer owned by the decoder
+     * and publishes it.
+     *
+     * @param nativeBuffer RV32 frame in native memory
+     */
     @Override
-    public void onDisplay(int[] data) {
-        frame.setRGB(0, 0, width, height, data, 0, width);
+    public void display(Memory nativeBuffer) {
+        ByteBuffer[] buffers = frames;
+        if (buffers == null || suspended) {
+            return;
+        }
+        ByteBuffer frame = buffers[writeIndex];
+        frame.clear();
+        frame.put(nativeBuffer.getByteBuffer(0, frame.capacity()));
+        sequences[writeIndex] = frameSequence.incrementAndGet();
+        writeIndex = exchange.getAndSet(writeIndex | FRESH) & INDEX;
+        if (timeToFirstFrame < 0) {
+            timeToFirstFrame = (System.nanoTime() - created) / 1000000;
+            log.debug("First frame of " + title + " after " + timeToFirstFrame
+                    + " ms");
+        }
+    }
+
+    /**
+     * Sets if frames rendered by vlcj are dropped instead of copied.
+     *
+     * @param suspended true to drop the frames
+     */
+    public void setSuspended(boolean suspended) {
+        this.suspended = suspended;
+    }
+
+    /**
+     * Returns the time from the creation of this {@link VideoRenderer} to
+     * the first frame rendered by vlcj.
+     *
+     * @return time in ms or -1 if no frame was rendered yet
+     */
+    public long getTimeToFirstFrame() {
+        return timeToFirstFrame;
+    }
+
+    /**
+     * Acquires three black frame buffers.
+     *
+     * @param width frame width
+     * @param height frame height
+     * @return frame buffers
+     */
+    private static ByteBuffer[] acquireFrames(int width, int height) {
+        ByteBuffer[] buffers = new ByteBuffer[3];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = FrameBufferPool.getInstance().acquire(width * height * 4);
+            clearFrame(buffers[i]);
+        }
+        return buffers;
+    }
+
+    /**
+     * Changes the size of the decoded frames, e.g. if the video is rendered
+     * much smaller than its native size. The overlays keep the size of the
+     * video.
+     *
+     * Note that vlcj must not render into this {@link VideoRenderer} while
+     * the size is changed, the next frame must have the new size.
+     *
+     * @param width frame width
+     * @param height frame height
+     */
+    public void resizeFrames(int width, int height) {
+        if (frames == null || (width == frameWidth && height == frameHeight)) {
+            return;
+        }
+        ByteBuffer[] buffers = acquireFrames(width, height);
+        ByteBuffer[] previous;
+        while (!reading.compareAndSet(false, true)) {
+            Thread.yield();
+        }
+        try {
+            previous = frames;
+            if (previous == null) {
+                previous = buffers;
+            } else {
+                frames = buffers;
+                frameWidth = width;
+                frameHeight = height;
+                // the new buffers are black, don't show the one published last
+                exchange.set(exchange.get() & INDEX);
+            }
+        } finally {
+            reading.set(false);
+        }
+        for (ByteBuffer buffer : previous) {
+            FrameBufferPool.getInstance().release(buffer);
+        }
+        log.debug("Decoding " + title + " at " + width + "x" + height);
+    }
+
+    /**
+     * Returns the width of the decoded frames.
+     *
+     * @return frame width
+     */
+    public int getFrameWidth() {
+        return frameWidth;
+    }
+
+    /**
+     * Returns the height of the decoded frames.
+     *
+     * @return frame height
+     */
+    public int getFrameHeight() {
+        return frameHeight;
+    }
+
+    /**
+     * Fills the frame with black.
+     *
+     * @param frame frame buffer
+     */
+    private static void clearFrame(ByteBuffer frame) {
+        frame.clear();
+        while (frame.remaining() >= 8) {
+            frame.putLong(0L);
+        }
+        while (frame.hasRemaining()) {
+            frame.put((byte) 0);
+        }
+    }
+
+    /**
+     * Gives the frame buffers back to the {@link FrameBufferPool}.
+     *
+     * Note that vlcj must not render into this {@link VideoRenderer} anymore.
+     */
+    @Override
+    public void dispose() {
+        ByteBuffer[] buffers = frames;
+        frames = null;
+        if (buffers == null) {
+            return;
+        }
+        while (!reading.compareAndSet(false, true)) {
+            Thread.yield();
+        }
+        try {
+            for (ByteBuffer buffer : buffers) {
+                FrameBufferPool.getInstance().release(buffer);
+            }
+        } finally {
+            reading.set(false);
+        }
     }
 
     @Override
     public synchronized void addShape(Stroke stroke) {
         Polygon polygon = new Polygon();
-        for (Point point : stroke.points) {
-            polygon.addPoint(point.x, point.y);
+        for (int i = 0; i < stroke.size(); i++) {
+            polygon.addPoint(stroke.getX(i), stroke.getY(i));
         }
         this.shapePoints.strokelist.add(stroke);
         this.pointsToDraw.clear();
         shapeToDraw.add(polygon);
+        overlaySequence.incrementAndGet();
     }
 
     @Override
     public List<Stroke> getDrawings() {
-        return drawedPoints;
+        List<Stroke> drawings = new ArrayList<>(drawedPoints);
+        int current = generation.get();
+        for (StrokeBuffer pen : pens.values()) {
+            if (pen.getGeneration() == current && pen.size() > 0) {
+                drawings.add(pen.toStroke());
+            }
+        }
+        return drawings;
     }
 
     @Override
@@ -366,23 +811,36 @@ public class VideoRenderer extends RenderCallbackAdapter implements IVideoGraphi
     public synchronized void clearShapes() {
         shapePoints = new StrokeList();
         shapeToDraw.clear();
+        overlaySequence.incrementAndGet();
     }
 
     @Override
-    public synchronized void clearDrawing() {
-        drawedPoints = new ArrayList<>();
+    public void clearDrawing() {
+        generation.incrementAndGet();
+        drawedPoints.clear();
         pointsToDraw.clear();
+        overlaySequence.incrementAndGet();
     }
 
     @Override
     public void setHWR(String hwr) {
         this.hwr = hwr;
+        overlaySequence.incrementAndGet();
     }
 
     @Override
     public void clear() {
-        frame = GraphicsEnvironment.getLocalGraphicsEnvironment()
-                .getDefaultScreenDevice().getDefaultConfiguration()
-                .createCompatibleImage(width, height);
+        clearSequence = frameSequence.incrementAndGet();
+    }
+
+    /**
+     * Shows the {@link CachedFrame} until vlcj renders the next frame, e.g.
+     * while vlcj is still seeking to it.
+     *
+     * @param frame {@link CachedFrame} with the dimensions of the video
+     */
+    public void showCachedFrame(CachedFrame frame) {
+        cachedFrame = frame;
+        cachedSequence = frameSequence.incrementAndGet();
     }
 }
@@ -0,0 +1,154 @@
+/*
+ * FrameCacheTest.java
+ *
+ * Copyright (c) 2012, Tobias Zimmermann All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of
+ * conditions and the following disclaimer. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors may be used to endorse or
+ * promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package de.dfki.covida.videovlcj.test;
+
+import de.dfki.covida.covidacore.data.CovidaConfiguration;
+import de.dfki.covida.videovlcj.rendered.CachedFrame;
+import de.dfki.covida.videovlcj.rendered.FrameCache;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Checks the lookups of the {@link FrameCache} against a linear scan and
+ * verifies that it stays within its memory limit, dropping full resolutions
+ * of the least recently used frames first.
+ *
+ * @author Tobias Zimmermann <Tobias.Zimmermann@dfki.de>
+ */
+public class FrameCacheTest {
+
+    /**
+     * Logger
+     */
+    private static Logger log = LoggerFactory.getLogger(FrameCacheTest.class);
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 240;
+
+    /**
+     * @param args
+     */
+    public static void main(String[] args) {
+        CovidaConfiguration.getInstance().framecache = 64;
+        int failures = checkLookups(new Random(42)) + checkLimit();
+        log.info("Frame cache check: {} failures, {} hits, {} misses",
+                new Object[]{failures, FrameCache.getInstance().getHits(),
+                    FrameCache.getInstance().getMisses()});
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Compares {@link FrameCache#get(String, long)} with a linear scan over
+     * the cached times of two videos.
+     */
+    private static int checkLookups(Random random) {
+        FrameCache cache = FrameCache.getInstance();
+        ByteBuffer frame = ByteBuffer.allocateDirect(WIDTH * HEIGHT * 4);
+        String[] sources = {"a.mp4", "b.mp4"};
+        List<List<Long>> cached = new ArrayList<>();
+        for (String source : sources) {
+            List<Long> times = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                long time = random.nextInt(60000);
+                cache.put(source, time, frame, WIDTH, HEIGHT);
+                times.add(time);
+            }
+            cached.add(times);
+        }
+        int failures = 0;
+        for (int q = 0; q < 20000; q++) {
+            int video = random.nextInt(sources.length);
+            long time = random.nextInt(61000);
+            long expected = -1;
+            for (long t : cached.get(video)) {
+                if (t <= time && time - t <= FrameCache.TOLERANCE && t > expected) {
+                    expected = t;
+                }
+            }
+            CachedFrame actual = cache.get(sources[video], time);
+            long found = actual == null ? -1 : actual.getTime();
+            if (found != expected) {
+                log.error("Lookup of {} ms returned {} instead of {}",
+                        new Object[]{time, found, expected});
+                failures++;
+            }
+        }
+        // a frame cached under a later time than requested is not used
+        cache.put("c.mp4", 1040, frame, WIDTH, HEIGHT);
+        if (cache.get("c.mp4", 1000) != null || cache.get("c.mp4", 1100) == null) {
+            log.error("Frame of a later time returned");
+            failures++;
+        }
+        for (String source : new String[]{"a.mp4", "b.mp4", "c.mp4"}) {
+            cache.remove(source);
+        }
+        if (cache.getSize() != 0) {
+            log.error("{} bytes left after removing all videos", cache.getSize());
+            failures++;
+        }
+        return failures;
+    }
+
+    /**
+     * Fills the cache beyond its limit.
+     */
+    private static int checkLimit() {
+        FrameCache cache = FrameCache.getInstance();
+        ByteBuffer frame = ByteBuffer.allocateDirect(WIDTH * HEIGHT * 4);
+        long limit = CovidaConfiguration.getInstance().framecache * 1024L * 1024L;
+        int failures = 0;
+        for (int i = 0; i < 1000; i++) {
+            cache.put("d.mp4", i * 40L, frame, WIDTH, HEIGHT);
+            // keep the first frame recently used
+            cache.get("d.mp4", 0);
+            if (cache.getSize() > limit) {
+                log.error("{} bytes cached, limit {}", cache.getSize(), limit);
+                failures++;
+                break;
+            }
+        }
+        CachedFrame first = cache.get("d.mp4", 0);
+        CachedFrame last = cache.get("d.mp4", 999 * 40L);
+        if (first == null || !first.isFullResolution()
+                || last == null || !last.isFullResolution()) {
+            log.error("Recently used frame lost its full resolution");
+            failures++;
+        }
+        if (cache.get("d.mp4", 40) != null && cache.get("d.mp4", 40).isFullResolution()) {
+            log.error("Least recently used frame kept its full resolution");
+            failures++;
+        }
+        cache.remove("d.mp4");
+        return failures;
+    }
+}
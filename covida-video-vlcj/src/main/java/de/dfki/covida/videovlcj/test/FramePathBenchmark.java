@@ -0,0 +1,294 @@
+/*
+ * FramePathBenchmark.java
+ *
+ * Copyright (c) 2012, Tobias Zimmermann All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of
+ * conditions and the following disclaimer. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors may be used to endorse or
+ * promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package de.dfki.covida.videovlcj.test;
+
+import com.sun.jna.Memory;
+import de.dfki.covida.covidacore.utils.ImageUtils;
+import de.dfki.covida.videovlcj.rendered.IFrameConsumer;
+import de.dfki.covida.videovlcj.rendered.VideoRenderer;
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.co.caprica.vlcj.player.direct.RenderCallback;
+
+/**
+ * Compares render passes per second and allocation rate of the former
+ * {@code setRGB}/{@code deepCopy}/{@code ImageGraphics} frame path with the
+ * direct frame buffer path of {@link VideoRenderer} for concurrent 720p
+ * videos.
+ *
+ * The vlcj decoder threads are simulated with 25 fps {@link Memory}
+ * callbacks and the texture upload is simulated with a copy into a direct
+ * {@link ByteBuffer}, so the numbers exclude the libvlc decoding and the
+ * driver side of the upload.
+ *
+ * @author Tobias Zimmermann <Tobias.Zimmermann@dfki.de>
+ */
+public class FramePathBenchmark {
+
+    /**
+     * Logger
+     */
+    private static Logger log = LoggerFactory.getLogger(FramePathBenchmark.class);
+    private static final int WIDTH = 1280;
+    private static final int HEIGHT = 720;
+    /**
+     * Decoder frame interval in ms (25 fps)
+     */
+    private static final long FRAME_INTERVAL = 40;
+    /**
+     * Duration of each run in ms
+     */
+    private static final long DURATION = 5000;
+
+    /**
+     * @param args amounts of concurrent videos, default 4 and 8
+     * @throws Exception
+     */
+    public static void main(String[] args) throws Exception {
+        int[] counts = {4, 8};
+        if (args.length > 0) {
+            counts = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                counts[i] = Integer.parseInt(args[i]);
+            }
+        }
+        for (int count : counts) {
+            List<Video> legacy = new ArrayList<>();
+            List<Video> direct = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                legacy.add(new LegacyVideo());
+                direct.add(new DirectVideo());
+            }
+            // warm up both paths before measuring
+            run(legacy, 1000);
+            run(direct, 1000);
+            Result before = run(legacy, DURATION);
+            Result after = run(direct, DURATION);
+            long uploads = 0;
+            long skipped = 0;
+            for (Video video : direct) {
+                uploads += ((DirectVideo) video).uploads;
+                skipped += ((DirectVideo) video).skipped;
+            }
+            log.info("{} videos direct: {} frame uploads, {} skipped",
+                    new Object[]{count, uploads, skipped});
+            log.info("{} videos {}x{}: legacy {} fps {} MB/s, direct {} fps"
+                    + " {} MB/s", new Object[]{count, WIDTH, HEIGHT,
+                        before.fps, before.allocation, after.fps,
+                        after.allocation});
+        }
+    }
+
+    /**
+     * Renders the videos as fast as possible while decoder threads deliver
+     * frames with 25 fps.
+     */
+    private static Result run(List<Video> videos, long duration)
+            throws InterruptedException {
+        final com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        List<Decoder> decoders = new ArrayList<>();
+        for (Video video : videos) {
+            decoders.add(new Decoder(video));
+        }
+        long[] ids = new long[decoders.size() + 1];
+        ids[0] = Thread.currentThread().getId();
+        for (int i = 0; i < decoders.size(); i++) {
+            decoders.get(i).start();
+            ids[i + 1] = decoders.get(i).getId();
+        }
+        long[] before = threads.getThreadAllocatedBytes(ids);
+        long start = System.currentTimeMillis();
+        long passes = 0;
+        while (System.currentTimeMillis() - start < duration) {
+            for (int i = 0; i < videos.size(); i++) {
+                videos.get(i).render();
+            }
+            passes++;
+        }
+        long[] after = threads.getThreadAllocatedBytes(ids);
+        long elapsed = System.currentTimeMillis() - start;
+        for (Decoder decoder : decoders) {
+            decoder.interrupt();
+            decoder.join();
+        }
+        Result result = new Result();
+        result.fps = passes * 1000 / elapsed;
+        long allocated = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (before[i] >= 0 && after[i] >= before[i]) {
+                allocated += after[i] - before[i];
+            }
+        }
+        result.allocation = allocated * 1000 / elapsed / (1024 * 1024);
+        return result;
+    }
+
+    /**
+     * Render passes per second and allocation in MB per second.
+     */
+    private static class Result {
+
+        long fps;
+        long allocation;
+    }
+
+    /**
+     * Simulated vlcj decoder thread.
+     */
+    private static class Decoder extends Thread {
+
+        private final Video video;
+        private final Memory memory;
+
+        Decoder(Video video) {
+            this.video = video;
+            this.memory = new Memory(WIDTH * HEIGHT * 4);
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            int frame = 0;
+            while (!isInterrupted()) {
+                memory.setByte((frame++ % WIDTH) * 4, (byte) frame);
+                video.display(memory);
+                try {
+                    Thread.sleep(FRAME_INTERVAL);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Video with the vlcj callback and the render pass of the visual
+     * component.
+     */
+    private interface Video extends RenderCallback {
+
+        public void render();
+    }
+
+    /**
+     * Former path: {@code RenderCallbackAdapter} copies into an int array
+     * which is set into a {@link BufferedImage}, each render pass deep copies
+     * it, draws it into the {@code ImageGraphics} image which is converted
+     * into the texture data and uploaded.
+     */
+    private static class LegacyVideo implements Video {
+
+        private final int[] rgb = new int[WIDTH * HEIGHT];
+        private final BufferedImage frame = new BufferedImage(WIDTH, HEIGHT,
+                BufferedImage.TYPE_INT_RGB);
+        private final BufferedImage graphics = new BufferedImage(WIDTH,
+                HEIGHT, BufferedImage.TYPE_4BYTE_ABGR);
+        private final ByteBuffer data = ByteBuffer.allocateDirect(WIDTH * HEIGHT * 4);
+        private final ByteBuffer texture = ByteBuffer.allocateDirect(WIDTH * HEIGHT * 4);
+
+        @Override
+        public void display(Memory nativeBuffer) {
+            nativeBuffer.read(0, rgb, 0, rgb.length);
+            frame.setRGB(0, 0, WIDTH, HEIGHT, rgb, 0, WIDTH);
+        }
+
+        @Override
+        public void render() {
+            BufferedImage image = ImageUtils.deepCopy(frame);
+            Graphics2D g2d = graphics.createGraphics();
+            g2d.drawImage(image, null, 0, 0);
+            g2d.dispose();
+            data.clear();
+            data.put(((DataBufferByte) graphics.getRaster().getDataBuffer()).getData());
+            data.flip();
+            texture.clear();
+            texture.put(data);
+        }
+    }
+
+    /**
+     * Direct path: {@link VideoRenderer} copies the native frame once into
+     * its frame buffer, the render pass uploads it and draws the overlays if
+     * they changed.
+     */
+    private static class DirectVideo implements Video, IFrameConsumer {
+
+        private final VideoRenderer renderer = new VideoRenderer(WIDTH, HEIGHT, "");
+        private final BufferedImage overlay = new BufferedImage(WIDTH, HEIGHT,
+                BufferedImage.TYPE_4BYTE_ABGR);
+        private final Graphics2D g2d = overlay.createGraphics();
+        private final ByteBuffer texture = ByteBuffer.allocateDirect(WIDTH * HEIGHT * 4)
+                .order(ByteOrder.nativeOrder());
+        private boolean overlayDrawn;
+        private long frameSequence = -1;
+        private long overlaySequence = -1;
+        private long uploads;
+        private long skipped;
+
+        @Override
+        public void display(Memory nativeBuffer) {
+            renderer.display(nativeBuffer);
+        }
+
+        @Override
+        public void consume(ByteBuffer frame, int width, int height) {
+            texture.clear();
+            texture.put(frame);
+        }
+
+        @Override
+        public void render() {
+            if (renderer.getFrameSequence() != frameSequence) {
+                frameSequence = renderer.readFrame(this);
+                uploads++;
+            } else {
+                skipped++;
+            }
+            long sequence = renderer.getOverlaySequence();
+            if (sequence != overlaySequence) {
+                if (overlayDrawn) {
+                    g2d.setComposite(AlphaComposite.Clear);
+                    g2d.fillRect(0, 0, WIDTH, HEIGHT);
+                    g2d.setComposite(AlphaComposite.SrcOver);
+                }
+                overlayDrawn = renderer.drawOverlay(g2d);
+                overlaySequence = sequence;
+            }
+        }
+    }
+}
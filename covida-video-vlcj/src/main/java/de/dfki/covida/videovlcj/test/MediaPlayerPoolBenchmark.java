@@ -0,0 +1,117 @@
+/*
+ * MediaPlayerPoolBenchmark.java
+ *
+ * Copyright (c) 2012, Tobias Zimmermann All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of
+ * conditions and the following disclaimer. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors may be used to endorse or
+ * promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package de.dfki.covida.videovlcj.test;
+
+import de.dfki.covida.videovlcj.MediaPlayerPool;
+import de.dfki.covida.videovlcj.rendered.VideoRenderer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.co.caprica.vlcj.player.MediaPlayer;
+import uk.co.caprica.vlcj.player.MediaPlayerFactory;
+
+/**
+ * Measures the time to the first frame when a video is opened, once with a
+ * new {@link MediaPlayerFactory} per video like before and once with the
+ * {@link MediaPlayerPool}.
+ *
+ * Needs libvlc and a video file: {@code <video> <width> <height> [opens]}
+ *
+ * @author Tobias Zimmermann <Tobias.Zimmermann@dfki.de>
+ */
+public class MediaPlayerPoolBenchmark {
+
+    /**
+     * Logger
+     */
+    private static Logger log = LoggerFactory.getLogger(MediaPlayerPoolBenchmark.class);
+    /**
+     * Timeout for the first frame in ms
+     */
+    private static final long TIMEOUT = 10000;
+
+    /**
+     * @param args video, width, height and amount of opens
+     * @throws Exception
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            log.error("Usage: <video> <width> <height> [opens]");
+            return;
+        }
+        String video = args[0];
+        int width = Integer.parseInt(args[1]);
+        int height = Integer.parseInt(args[2]);
+        int opens = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        long factoryTotal = 0;
+        for (int i = 0; i < opens; i++) {
+            VideoRenderer renderer = new VideoRenderer(width, height, video);
+            MediaPlayerFactory factory = new MediaPlayerFactory(
+                    "--intf", "dummy", "--vout", "dummy", "--no-audio");
+            MediaPlayer player = factory.newDirectMediaPlayer(width, height,
+                    renderer);
+            player.playMedia(video);
+            factoryTotal += awaitFirstFrame(renderer);
+            player.release();
+            factory.release();
+            renderer.dispose();
+        }
+        long poolTotal = 0;
+        for (int i = 0; i < opens; i++) {
+            VideoRenderer renderer = new VideoRenderer(width, height, video);
+            MediaPlayer player = MediaPlayerPool.getInstance()
+                    .leaseDirect(width, height, renderer);
+            player.playMedia(video, ":no-audio");
+            poolTotal += awaitFirstFrame(renderer);
+            MediaPlayerPool.getInstance().release(player);
+            renderer.dispose();
+        }
+        MediaPlayerPool.getInstance().shutdown();
+        log.info("Time to first frame over {} opens: factory per video {} ms,"
+                + " pool {} ms", new Object[]{opens, factoryTotal / opens,
+                    poolTotal / opens});
+    }
+
+    /**
+     * Waits for the first frame of the {@link VideoRenderer}.
+     *
+     * @return time to first frame in ms
+     */
+    private static long awaitFirstFrame(VideoRenderer renderer)
+            throws InterruptedException {
+        long end = System.currentTimeMillis() + TIMEOUT;
+        while (renderer.getTimeToFirstFrame() < 0
+                && System.currentTimeMillis() < end) {
+            Thread.sleep(1);
+        }
+        if (renderer.getTimeToFirstFrame() < 0) {
+            log.warn("No frame within " + TIMEOUT + " ms");
+            return TIMEOUT;
+        }
+        return renderer.getTimeToFirstFrame();
+    }
+}
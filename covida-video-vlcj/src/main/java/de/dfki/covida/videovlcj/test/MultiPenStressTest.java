@@ -0,0 +1,181 @@
+/*
+ * MultiPenStressTest.java
+ *
+ * Copyright (c) 2012, Tobias Zimmermann All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of
+ * conditions and the following disclaimer. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors may be used to endorse or
+ * promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package de.dfki.covida.videovlcj.test;
+
+import de.dfki.covida.covidacore.data.CovidaConfiguration;
+import de.dfki.covida.covidacore.data.Stroke;
+import de.dfki.covida.videovlcj.rendered.VideoRenderer;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Draws with {@link #PENS} simulated pens concurrently on one
+ * {@link VideoRenderer} while the overlay is rendered and the drawings are
+ * read on another thread, then verifies that no stroke mixes points of
+ * different pens or lost points. The drawings are cleared after each round.
+ *
+ * Pen {@code i} draws in the rows {@code i * 100} to {@code i * 100 + 99}
+ * with increasing x coordinates, so a stroke is intact if all its points
+ * lie in one band and x grows by one per point.
+ *
+ * @author Tobias Zimmermann <Tobias.Zimmermann@dfki.de>
+ */
+public class MultiPenStressTest {
+
+    /**
+     * Logger
+     */
+    private static Logger log = LoggerFactory.getLogger(MultiPenStressTest.class);
+    private static final int PENS = 4;
+    private static final int ROUNDS = 50;
+    private static final int STROKES = 40;
+    private static final int POINTS = 200;
+
+    /**
+     * @param args
+     * @throws Exception
+     */
+    public static void main(String[] args) throws Exception {
+        CovidaConfiguration.getInstance().rawstrokes = true;
+        final VideoRenderer renderer = new VideoRenderer(640, 480, "Stress");
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicInteger errors = new AtomicInteger();
+        final AtomicInteger renders = new AtomicInteger();
+        Thread render = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                BufferedImage image = new BufferedImage(640, 480,
+                        BufferedImage.TYPE_INT_ARGB);
+                while (running.get()) {
+                    Graphics2D g2d = image.createGraphics();
+                    try {
+                        renderer.drawOverlay(g2d);
+                        for (Stroke stroke : renderer.getDrawings()) {
+                            if (!isIntact(stroke, false)) {
+                                errors.incrementAndGet();
+                            }
+                        }
+                        renders.incrementAndGet();
+                    } catch (RuntimeException e) {
+                        log.error("Render failed: {}", e.toString());
+                        errors.incrementAndGet();
+                    } finally {
+                        g2d.dispose();
+                    }
+                }
+            }
+        }, "Render");
+        render.start();
+        long start = System.nanoTime();
+        int strokes = 0;
+        int broken = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            Thread[] pens = new Thread[PENS];
+            for (int i = 0; i < PENS; i++) {
+                pens[i] = pen(renderer, i);
+                pens[i].start();
+            }
+            for (Thread pen : pens) {
+                pen.join();
+            }
+            List<Stroke> drawings = renderer.getDrawings();
+            strokes += drawings.size();
+            for (Stroke stroke : drawings) {
+                if (!isIntact(stroke, true)) {
+                    broken++;
+                }
+            }
+            renderer.clearDrawing();
+            if (!renderer.getDrawings().isEmpty()) {
+                log.error("Drawings left after clear");
+                errors.incrementAndGet();
+            }
+        }
+        long time = System.nanoTime() - start;
+        running.set(false);
+        render.join();
+        log.info("{} rounds of {} pens x {} strokes x {} points in {} ms, {} "
+                + "overlay renders: {} strokes, {} broken, {} errors",
+                new Object[]{ROUNDS, PENS, STROKES, POINTS, time / 1000000,
+                    renders.get(), strokes, broken, errors.get()});
+        if (strokes != ROUNDS * PENS * STROKES || broken > 0
+                || errors.get() > 0) {
+            log.error("Multi pen stress test failed");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Creates the thread of a simulated pen.
+     */
+    private static Thread pen(final VideoRenderer renderer, int index) {
+        final String device = "pen" + index;
+        final int band = index * 100;
+        return new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int s = 0; s < STROKES; s++) {
+                    int y = band + s % 100;
+                    for (int p = 0; p < POINTS; p++) {
+                        renderer.draw(device, new Point(p, y));
+                        if (p % 20 == 0) {
+                            Thread.yield();
+                        }
+                    }
+                    renderer.endDrawStroke(device);
+                }
+            }
+        }, device);
+    }
+
+    /**
+     * Returns true if all points lie in one pen band with x growing by one.
+     *
+     * @param stroke {@link Stroke}
+     * @param complete true if the stroke must have all {@link #POINTS}
+     */
+    private static boolean isIntact(Stroke stroke, boolean complete) {
+        int size = stroke.size();
+        if (complete && size != POINTS) {
+            return false;
+        }
+        for (int i = 0; i < size; i++) {
+            if (stroke.getX(i) != i
+                    || stroke.getY(i) / 100 != stroke.getY(0) / 100) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
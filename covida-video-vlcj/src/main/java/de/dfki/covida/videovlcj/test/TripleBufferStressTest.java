@@ -0,0 +1,161 @@
+/*
+ * TripleBufferStressTest.java
+ *
+ * Copyright (c) 2012, Tobias Zimmermann All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of
+ * conditions and the following disclaimer. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors may be used to endorse or
+ * promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package de.dfki.covida.videovlcj.test;
+
+import com.sun.jna.Memory;
+import de.dfki.covida.videovlcj.rendered.IFrameConsumer;
+import de.dfki.covida.videovlcj.rendered.VideoRenderer;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Publishes frames from a simulated vlcj decoder thread into a
+ * {@link VideoRenderer} while a render thread reads them and another thread
+ * clears the video and takes snapshots, then verifies that no torn or out
+ * of order frame was read.
+ *
+ * Every pixel of frame {@code n} holds the value {@code n}, so a frame is
+ * intact if all pixels are equal, and cleared frames are black.
+ *
+ * @author Tobias Zimmermann <Tobias.Zimmermann@dfki.de>
+ */
+public class TripleBufferStressTest {
+
+    /**
+     * Logger
+     */
+    private static Logger log = LoggerFactory.getLogger(TripleBufferStressTest.class);
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 240;
+    /**
+     * Duration of the test in ms
+     */
+    private static final long DURATION = 3000;
+
+    /**
+     * @param args
+     * @throws Exception
+     */
+    public static void main(String[] args) throws Exception {
+        final VideoRenderer renderer = new VideoRenderer(WIDTH, HEIGHT, "Stress");
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicInteger errors = new AtomicInteger();
+        final AtomicInteger published = new AtomicInteger();
+        final AtomicInteger snapshots = new AtomicInteger();
+        Thread decoder = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Memory memory = new Memory(WIDTH * HEIGHT * 4);
+                IntBuffer pixels = memory.getByteBuffer(0, memory.size())
+                        .asIntBuffer();
+                while (running.get()) {
+                    int value = published.get() + 1;
+                    pixels.clear();
+                    while (pixels.hasRemaining()) {
+                        pixels.put(value);
+                    }
+                    renderer.display(memory);
+                    published.set(value);
+                }
+            }
+        }, "Decoder");
+        Thread other = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                int step = 0;
+                while (running.get()) {
+                    try {
+                        if (step++ % 2 == 0) {
+                            renderer.clear();
+                        } else if (renderer.getVideoImage() != null) {
+                            snapshots.incrementAndGet();
+                        }
+                        Thread.sleep(5);
+                    } catch (InterruptedException e) {
+                        return;
+                    } catch (RuntimeException e) {
+                        log.error("Snapshot failed: {}", e.toString());
+                        errors.incrementAndGet();
+                    }
+                }
+            }
+        }, "Snapshot");
+        decoder.start();
+        other.start();
+        final int[] last = new int[1];
+        final AtomicInteger distinct = new AtomicInteger();
+        final AtomicInteger cleared = new AtomicInteger();
+        IFrameConsumer consumer = new IFrameConsumer() {
+            @Override
+            public void consume(ByteBuffer frame, int width, int height) {
+                IntBuffer pixels = frame.asIntBuffer();
+                int value = pixels.get(0);
+                while (pixels.hasRemaining()) {
+                    if (pixels.get() != value) {
+                        log.error("Torn frame {}", value);
+                        errors.incrementAndGet();
+                        return;
+                    }
+                }
+                if (value == 0) {
+                    cleared.incrementAndGet();
+                } else if (value < last[0]) {
+                    log.error("Frame {} read after frame {}", value, last[0]);
+                    errors.incrementAndGet();
+                } else if (value > last[0]) {
+                    last[0] = value;
+                    distinct.incrementAndGet();
+                }
+            }
+        };
+        long end = System.currentTimeMillis() + DURATION;
+        int reads = 0;
+        while (System.currentTimeMillis() < end) {
+            renderer.readFrame(consumer);
+            reads++;
+            // leave room for snapshots between the render passes
+            Thread.sleep(1);
+        }
+        running.set(false);
+        decoder.join();
+        other.join();
+        renderer.dispose();
+        log.info("{} frames published, {} reads: {} distinct frames, {} cleared"
+                + " reads, {} snapshots, {} errors", new Object[]{published.get(),
+                    reads, distinct.get(), cleared.get(), snapshots.get(),
+                    errors.get()});
+        if (errors.get() > 0 || distinct.get() == 0) {
+            log.error("Triple buffer stress test failed");
+            System.exit(1);
+        }
+    }
+}
@@ -44,7 +44,17 @@ import com.jme.system.PropertiesGameSettings;
 import com.jme.util.*;
 import com.jme.util.stat.StatCollector;
 import com.jmex.audio.AudioSystem;
+import de.dfki.covida.covidacore.data.AnnotationStorage;
+import de.dfki.covida.covidacore.data.PersistenceService;
+import de.dfki.covida.covidacore.tw.HitTestIndex;
 import de.dfki.covida.covidacore.tw.IApplication;
+import de.dfki.covida.covidacore.tw.ITouchAndWriteComponent;
+import de.dfki.covida.covidacore.tw.TouchAndWriteComponentHandler;
+import de.dfki.covida.covidacore.tw.TouchEventPipeline;
+import de.dfki.covida.videovlcj.preload.FramePrefetcher;
+import de.dfki.covida.videovlcj.preload.PreloadService;
+import de.dfki.covida.visualjme2.components.JMEComponent;
+import de.dfki.covida.visualjme2.components.video.VideoVisibilityManager;
 import de.dfki.covida.visualjme2.utils.CovidaRootNode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -164,9 +174,27 @@ public abstract class AbstractApplication extends AbstractGame implements IAppli
             } catch (IndexOutOfBoundsException e) {
                 log.warn(e.toString());
             }
+            VideoVisibilityManager.getInstance().update();
+            updateHitTestIndex();
+            TouchEventPipeline.getInstance().frame();
         }
     }
 
+    /**
+     * Reports the screen bounds of all {@link JMEComponent}s to the
+     * {@link HitTestIndex} and publishes the changes.
+     */
+    private void updateHitTestIndex() {
+        TouchAndWriteComponentHandler handler =
+                TouchAndWriteComponentHandler.getInstance();
+        for (ITouchAndWriteComponent component : handler.getComponents()) {
+            if (component instanceof JMEComponent) {
+                ((JMEComponent) component).updateHitBounds();
+            }
+        }
+        handler.getHitTestIndex().commit();
+    }
+
     /**
      * Clears stats, the buffers and renders bounds and normals if on.
      *
@@ -531,6 +559,11 @@ public abstract class AbstractApplication extends AbstractGame implements IAppli
      */
     @Override
     protected void quit() {
+        PreloadService.getInstance().shutdown();
+        FramePrefetcher.getInstance().shutdown();
+        PersistenceService.getInstance().shutdown();
+        AnnotationStorage.getInstance().generateRDF();
+        AnnotationStorage.getInstance().close();
         if (display != null) {
             display.close();
         }
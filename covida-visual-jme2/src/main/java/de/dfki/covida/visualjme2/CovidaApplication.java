@@ -79,6 +79,7 @@ public class CovidaApplication extends ApplicationImpl implements IControlableCo
     private SpatialTransformer stPreload;
     private TCPServer tcpServer;
     private long snapshotTimer;
+    private ByteBuffer snapshotBuffer;
     private int sideMenuCount;
     private final boolean streaming = false;
     private final boolean scenemonitor = false;
@@ -87,6 +88,14 @@ public class CovidaApplication extends ApplicationImpl implements IControlableCo
     private final CovidaConfiguration configuration;
     private DrawingOverlay loginOverlay;
     private TextComponent loginInfo;
+    /**
+     * Progress of the video preload, shown during the loading animation
+     */
+    private TextComponent loadingInfo;
+    /**
+     * True while the loading animation is shown
+     */
+    private boolean loading = true;
     private TextComponent loginText;
     private Random random;
 
@@ -157,10 +166,44 @@ public class CovidaApplication extends ApplicationImpl implements IControlableCo
 
     }
 
+    /**
+     * Shows the progress of the video preload below the loading animation.
+     *
+     * Note that the progress is ignored after {@link #endLoadingAnimation()}.
+     *
+     * @param completed amount of preloaded videos
+     * @param total amount of videos
+     */
+    public synchronized void setLoadingProgress(int completed, int total) {
+        if (!loading) {
+            return;
+        }
+        if (loadingInfo == null) {
+            loadingInfo = new TextComponent(this, ActionName.NONE,
+                    CovidaZOrder.getInstance().getPreload());
+            loadingInfo.setFont(1);
+            loadingInfo.setSize(24);
+            loadingInfo.setLocalTranslation(getWidth() / 2,
+                    getHeight() / 2 - 300, 0);
+            GameTaskQueueManager.getManager().update(new AttachChildCallable(
+                    CovidaRootNode.node, loadingInfo.node));
+        }
+        loadingInfo.setText("Loading videos " + completed + " / " + total);
+    }
+
     /**
      * Ends the loading animation
      */
     public void endLoadingAnimation() {
+        synchronized (this) {
+            loading = false;
+            if (loadingInfo != null) {
+                GameTaskQueueManager.getManager().update(new DetachChildCallable(
+                        CovidaRootNode.node, loadingInfo.node));
+                loadingInfo.detach();
+                loadingInfo = null;
+            }
+        }
         GameTaskQueueManager.getManager().update(new RemoveControllerCallable(
                 preloadScreen, stPreload));
         GameTaskQueueManager.getManager().update(new DetachChildCallable(
@@ -203,7 +246,7 @@ public class CovidaApplication extends ApplicationImpl implements IControlableCo
         if (loginOverlay != null) {
             loginOverlay.updateImage(x, y, id);
             if (penUp) {
-                loginOverlay.endDrawStroke();
+                loginOverlay.endDrawStroke(id);
             }
         }
     }
@@ -348,8 +391,8 @@ public class CovidaApplication extends ApplicationImpl implements IControlableCo
             SceneMonitor.getMonitor().showViewer(true);
         }
         if (streaming) {
-            tcpServer.start();
             tcpServer.setScreenSize(new Dimension(display.getWidth(), display.getHeight()));
+            tcpServer.start();
         }
     }
 
@@ -363,13 +406,13 @@ public class CovidaApplication extends ApplicationImpl implements IControlableCo
                     @Override
                     public Void call() throws Exception {
                         int depth = 3;
-                        ByteBuffer buff = BufferUtils.createByteBuffer(display.getWidth()
-                                * display.getWidth() * depth);
-                        display.getRenderer().grabScreenContents(buff, Image.Format.RGB4, 0, 0, display.getWidth(), display.getWidth());
-                        if (buff != null) {
-                            tcpServer.writeByteBuffer(buff, display.getWidth(), display.getHeight(), depth);
+                        int size = display.getWidth() * display.getHeight() * depth;
+                        if (snapshotBuffer == null || snapshotBuffer.capacity() != size) {
+                            snapshotBuffer = BufferUtils.createByteBuffer(size);
                         }
-                        buff.clear();
+                        snapshotBuffer.clear();
+                        display.getRenderer().grabScreenContents(snapshotBuffer, Image.Format.RGB4, 0, 0, display.getWidth(), display.getHeight());
+                        tcpServer.writeByteBuffer(snapshotBuffer, display.getWidth(), display.getHeight(), depth);
                         return null;
                     }
                 });
@@ -31,12 +31,16 @@ import com.jme.util.GameTaskQueueManager;
 import de.dfki.covida.covidacore.data.CovidaConfiguration;
 import de.dfki.covida.covidacore.data.VideoMediaData;
 import de.dfki.covida.covidacore.utils.ActionName;
-import de.dfki.covida.videovlcj.preload.VideoPreload;
+import de.dfki.covida.videovlcj.preload.IPreloadListener;
+import de.dfki.covida.videovlcj.preload.PreloadService;
 import de.dfki.covida.visualjme2.components.ControlButton;
 import de.dfki.covida.visualjme2.components.annotation.AnnotationClipboard;
 import de.dfki.covida.visualjme2.components.annotation.AnnotationSearchField;
 import de.dfki.covida.visualjme2.utils.AttachChildCallable;
 import de.dfki.covida.visualjme2.utils.CovidaZOrder;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -48,6 +52,10 @@ import org.slf4j.LoggerFactory;
  */
 public class CovidaApplicationPreloader implements Runnable {
 
+    /**
+     * Maximum time in ms the loading animation waits for the video preload
+     */
+    private static final long PRELOAD_TIMEOUT = 10000;
     private CovidaApplication application;
     private Logger log = LoggerFactory.getLogger(CovidaApplicationPreloader.class);
 
@@ -134,10 +142,28 @@ public class CovidaApplicationPreloader implements Runnable {
         application.endLoadingAnimation();
     }
 
+    /**
+     * Preloads all configured videos in parallel. Waits at most
+     * {@link #PRELOAD_TIMEOUT} ms, remaining preloads continue in the
+     * background while the UI is shown.
+     */
     private void preloadVideos() {
-        for(VideoMediaData data : CovidaConfiguration.getInstance().videos){
-            VideoPreload preload = new VideoPreload(data);
-            preload.run();
+        List<VideoMediaData> videos = CovidaConfiguration.getInstance().videos;
+        final CountDownLatch latch = new CountDownLatch(videos.size());
+        application.setLoadingProgress(0, videos.size());
+        PreloadService.getInstance().preload(videos, new IPreloadListener() {
+            @Override
+            public void preloaded(VideoMediaData data, int completed, int total) {
+                application.setLoadingProgress(completed, total);
+                latch.countDown();
+            }
+        });
+        try {
+            if (!latch.await(PRELOAD_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                log.debug(latch.getCount() + " videos are still preloading");
+            }
+        } catch (InterruptedException ex) {
+            log.error("", ex);
         }
     }
 }
@@ -229,10 +229,12 @@ public class DrawingOverlay extends Node {
     }
 
     /**
-     * Ends current draw stroke
+     * Ends the current draw stroke of a pen
+     *
+     * @param id pen id
      */
-    public void endDrawStroke() {
-        lastX.clear();
-        lastY.clear();
+    public void endDrawStroke(String id) {
+        lastX.remove(id);
+        lastY.remove(id);
     }
 }
\ No newline at end of file
@@ -171,7 +171,7 @@ public abstract class FieldComponent extends JMEComponent {
     }
     
     @Override
-    public final void draw(int x, int y) {
+    public final void draw(String device, int x, int y) {
         Vector3f local = getLocal(x, y);
         local = local.mult(node.getWorldScale());
         int localX = (int) local.x;
@@ -179,13 +179,13 @@ public abstract class FieldComponent extends JMEComponent {
         localX += getDimension().getWidth() / 2;
         localY = (int) (getDimension().getHeight()
                 - (localY + getDimension().getHeight() / 2));
-        overlay.updateImage(localX, localY, "1");
+        overlay.updateImage(localX, localY, device);
     }
     
     @Override
-    public void drawEnd(int x, int y) {
-        draw(x, y);
-        overlay.endDrawStroke();
+    public void drawEnd(String device, int x, int y) {
+        draw(device, x, y);
+        overlay.endDrawStroke(device);
     }
     
     @Override
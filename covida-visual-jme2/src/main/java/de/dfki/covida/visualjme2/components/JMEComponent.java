@@ -37,6 +37,7 @@ import com.jme.scene.Node;
 import com.jme.scene.Spatial;
 import com.jme.system.DisplaySystem;
 import com.jme.util.GameTaskQueueManager;
+import de.dfki.covida.covidacore.tw.HitTestIndex;
 import de.dfki.covida.covidacore.tw.ITouchAndWriteComponent;
 import de.dfki.covida.covidacore.tw.TouchAndWriteComponentHandler;
 import de.dfki.covida.visualjme2.components.video.VideoComponent;
@@ -94,6 +95,26 @@ public abstract class JMEComponent implements ITouchAndWriteComponent {
     private int zOrder;
     private List<Spatial> spatials;
     private List<JMEComponent> components;
+    /**
+     * World transform, size and attachment of the last
+     * {@link #updateHitBounds()}
+     */
+    private final Vector3f hitTranslation = new Vector3f();
+    private final Quaternion hitRotation = new Quaternion();
+    private final Vector3f hitScale = new Vector3f();
+    private int hitWidth = -1;
+    private int hitHeight = -1;
+    private boolean hitAttached;
+    /**
+     * Screen bounds {minX, minY, maxX, maxY} of the last
+     * {@link #updateHitBounds()}
+     */
+    private final int[] hitBounds = new int[4];
+    /**
+     * Temporary vectors for {@link #updateHitBounds()}
+     */
+    private final Vector3f hitCorner = new Vector3f();
+    private final Vector3f hitWorld = new Vector3f();
 
     public JMEComponent(String nameOfComponent, int zOrder) {
         node = new Node(nameOfComponent);
@@ -431,22 +452,99 @@ public abstract class JMEComponent implements ITouchAndWriteComponent {
 
     @Override
     public boolean inArea(int x, int y) {
+        if (isAttached()) {
+            Vector3f local = getLocal(x, y);
+            int xAbs = (int) Math.abs(local.x);
+            int yAbs = (int) Math.abs(local.y);
+            if (xAbs < getWidth() / 2 && yAbs < getHeight() / 2) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if the top most parent {@link Node} of this component is
+     * attached to the {@link CovidaRootNode}.
+     *
+     * @return true if attached
+     */
+    private boolean isAttached() {
         Node n = node;
         while (n.getParent() != null && !n.getParent()
                 .equals(CovidaRootNode.node)) {
             n = n.getParent();
         }
-        if (n.getParent() != null) {
-            if (n.getParent().equals(CovidaRootNode.node)) {
-                Vector3f local = getLocal(x, y);
-                int xAbs = (int) Math.abs(local.x);
-                int yAbs = (int) Math.abs(local.y);
-                if (xAbs < getWidth() / 2 && yAbs < getHeight() / 2) {
-                    return true;
-                }
-            }
+        return n.getParent() != null
+                && n.getParent().equals(CovidaRootNode.node);
+    }
+
+    /**
+     * Reports the screen bounds of the area checked by
+     * {@link #inArea(int, int)} to the {@link HitTestIndex}. The bounds are
+     * only recalculated if the world transform, the size or the attachment
+     * changed.
+     *
+     * Note that this method must be called on the OpenGL thread after the
+     * geometric state was updated.
+     */
+    public void updateHitBounds() {
+        boolean attached = isAttached();
+        int width = getWidth();
+        int height = getHeight();
+        if (attached != hitAttached || width != hitWidth
+                || height != hitHeight
+                || !hitTranslation.equals(node.getWorldTranslation())
+                || !hitRotation.equals(node.getWorldRotation())
+                || !hitScale.equals(node.getWorldScale())) {
+            hitAttached = attached;
+            hitWidth = width;
+            hitHeight = height;
+            hitTranslation.set(node.getWorldTranslation());
+            hitRotation.set(node.getWorldRotation());
+            hitScale.set(node.getWorldScale());
+            calculateHitBounds();
         }
-        return false;
+        TouchAndWriteComponentHandler.getInstance().getHitTestIndex().update(
+                this, hitBounds[0], hitBounds[1], hitBounds[2], hitBounds[3]);
+    }
+
+    /**
+     * Calculates the screen bounds of the corners of the area checked by
+     * {@link #inArea(int, int)}, clipped to the display. An empty rectangle
+     * is used if the component is not attached or off screen.
+     */
+    private void calculateHitBounds() {
+        hitBounds[0] = 0;
+        hitBounds[1] = 0;
+        hitBounds[2] = -1;
+        hitBounds[3] = -1;
+        if (!hitAttached) {
+            return;
+        }
+        float offset = 0;
+        if (this instanceof TextComponent) {
+            offset = -((TextComponent) this).getFontSize();
+        }
+        float minX = Float.MAX_VALUE;
+        float minY = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE;
+        float maxY = -Float.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            hitCorner.set((i & 1) == 0 ? -hitWidth / 2f : hitWidth / 2f,
+                    ((i & 2) == 0 ? -hitHeight / 2f : hitHeight / 2f) + offset,
+                    0);
+            node.localToWorld(hitCorner, hitWorld);
+            float y = display.y - hitWorld.y;
+            minX = Math.min(minX, hitWorld.x);
+            maxX = Math.max(maxX, hitWorld.x);
+            minY = Math.min(minY, y);
+            maxY = Math.max(maxY, y);
+        }
+        hitBounds[0] = Math.max(0, (int) FastMath.floor(minX) - 1);
+        hitBounds[1] = Math.max(0, (int) FastMath.floor(minY) - 1);
+        hitBounds[2] = Math.min((int) display.x - 1, (int) FastMath.ceil(maxX) + 1);
+        hitBounds[3] = Math.min((int) display.y - 1, (int) FastMath.ceil(maxY) + 1);
     }
 
     @Override
@@ -475,11 +573,11 @@ public abstract class JMEComponent implements ITouchAndWriteComponent {
     }
 
     @Override
-    public void draw(int x, int y) {
+    public void draw(String device, int x, int y) {
     }
 
     @Override
-    public void drawEnd(int x, int y) {
+    public void drawEnd(String device, int x, int y) {
     }
 
     @Override
@@ -72,7 +72,7 @@ public class VideoThumb extends JMEComponent {
         attachChild(videoQuad);
         videoQuad.setZOrder(getZOrder() - 1);
 
-        for (Image image : data.thumbs) {
+        for (Image image : data.getThumbnails()) {
             if (image != null) {
                 Texture defaultTexture = TextureManager.loadTexture(image,
                         Texture.MinificationFilter.BilinearNearestMipMap,
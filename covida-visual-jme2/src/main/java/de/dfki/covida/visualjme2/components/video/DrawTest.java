@@ -28,7 +28,7 @@ public class DrawTest implements Runnable {
             } catch (InterruptedException ex) {
                 Logger.getLogger(DrawTest.class.getName()).log(Level.SEVERE, null, ex);
             }
-            video.draw(new Point((int) (Math.random()*video.getWidth()), (int) (Math.random()*video.getHeight())));
+            video.draw(null, new Point((int) (Math.random()*video.getWidth()), (int) (Math.random()*video.getHeight())));
         }
     }
     
@@ -116,6 +116,10 @@ public final class VideoComponent extends JMEComponent implements
      * {@link AbstractVideoHandler} which plays and renders the video.
      */
     private AbstractVideoHandler video;
+    /**
+     * {@link VideoQuad} which renders the video
+     */
+    private VideoQuad videoQuad;
     /**
      * {@link SpatialTransformer} for the drag animation.
      */
@@ -346,7 +350,7 @@ public final class VideoComponent extends JMEComponent implements
      */
     private void createVideo() {
         createControls();
-        VideoQuad videoQuad = new VideoQuad(video);
+        videoQuad = new VideoQuad(video);
         videoQuad.setZOrder(getZOrder() + 1);
         attachChild(videoQuad);
         video.setSlider(slider);
@@ -511,6 +515,42 @@ public final class VideoComponent extends JMEComponent implements
         }
     }
 
+    /**
+     * Sets if the video is hidden behind other videos or off screen, hidden
+     * videos don't decode frames.
+     *
+     * @see VideoVisibilityManager
+     *
+     * @param hidden true if the video is not visible
+     */
+    public void setHidden(boolean hidden) {
+        if (video.isReady()) {
+            video.setHidden(hidden);
+        }
+    }
+
+    /**
+     * Prefetches the video frames at the annotation time stamps, so jumps to
+     * annotations show their frame immediately.
+     */
+    public void prefetchAnnotationFrames() {
+        if (video.isReady()) {
+            video.prefetchAnnotationFrames();
+        }
+    }
+
+    /**
+     * Sets the video time position in percentage while the slider is dragged.
+     * The position snaps to the nearest keyframe if the video is indexed.
+     *
+     * @param percentage
+     */
+    public void scrubTimePosition(float percentage) {
+        if (video.isReady()) {
+            video.scrubTimePosition(percentage);
+        }
+    }
+
     /**
      *
      * @param start
@@ -748,7 +788,7 @@ public final class VideoComponent extends JMEComponent implements
     }
 
     @Override
-    public void draw(int x, int y) {
+    public void draw(String device, int x, int y) {
         if (video.isReady()) {
             video.pause();
             Vector3f local = getLocal(x, y);
@@ -758,15 +798,15 @@ public final class VideoComponent extends JMEComponent implements
             localY = (int) ((getDimension().getHeight() / node.getLocalScale().y)
                     - ((localY + (getDimension().getHeight() / 2)
                     / node.getLocalScale().y)));
-            video.draw(new Point(localX, localY));
+            video.draw(device, new Point(localX, localY));
         }
     }
 
     @Override
-    public void drawEnd(int x, int y) {
+    public void drawEnd(String device, int x, int y) {
         if (video.isReady()) {
-            draw(x, y);
-            video.endDrawStroke();
+            draw(device, x, y);
+            video.endDrawStroke(device);
         }
     }
 
@@ -777,11 +817,11 @@ public final class VideoComponent extends JMEComponent implements
         }
         if (video.getShapes().strokelist.isEmpty()) {
             Stroke stroke = new Stroke();
-            stroke.points.add(new Point(5, 5));
-            stroke.points.add(new Point(5, getHeight() - 5));
-            stroke.points.add(new Point(getWidth() - 5, getHeight() - 5));
-            stroke.points.add(new Point(getWidth() - 5, 5));
-            stroke.points.add(new Point(5, 5));
+            stroke.add(5, 5);
+            stroke.add(5, getHeight() - 5);
+            stroke.add(getWidth() - 5, getHeight() - 5);
+            stroke.add(getWidth() - 5, 5);
+            stroke.add(5, 5);
             video.addShape(stroke);
             String creator = CovidaConfiguration.getLoggedUser(id);
             setNewAnnotationData(creator);
@@ -838,6 +878,12 @@ public final class VideoComponent extends JMEComponent implements
         listField.cleanUp();
         slider.cleanUp();
         video.cleanUp();
+        if (videoQuad != null) {
+            log.debug("frame uploads " + videoQuad.getFrameUploads()
+                    + " (skipped " + videoQuad.getFrameUploadsSkipped()
+                    + "), overlay uploads " + videoQuad.getOverlayUploads()
+                    + " (skipped " + videoQuad.getOverlayUploadsSkipped() + ")");
+        }
     }
 
     @Override
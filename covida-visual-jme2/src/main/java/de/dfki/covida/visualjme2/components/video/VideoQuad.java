@@ -27,6 +27,7 @@
  */
 package de.dfki.covida.visualjme2.components.video;
 
+import com.jme.image.Image;
 import com.jme.image.Texture;
 import com.jme.image.Texture2D;
 import com.jme.math.Quaternion;
@@ -35,27 +36,43 @@ import com.jme.scene.Spatial;
 import com.jme.scene.shape.Quad;
 import com.jme.scene.state.TextureState;
 import com.jme.system.DisplaySystem;
+import com.jme.util.geom.BufferUtils;
 import com.jmex.awt.swingui.ImageGraphics;
 import de.dfki.covida.videovlcj.AbstractVideoHandler;
+import de.dfki.covida.videovlcj.rendered.IFrameConsumer;
+import java.awt.AlphaComposite;
+import java.awt.Composite;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
-import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL12;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * DrawingQuad
+ * Quad which renders the video frames of an {@link AbstractVideoHandler}.
+ *
+ * The video frame is uploaded directly from the frame buffer of the
+ * {@link AbstractVideoHandler} with {@code glTexSubImage2D} into the texture
+ * of unit 0. The overlays are drawn with Java2D into a second texture which
+ * is applied as decal on unit 1. Both are only uploaded if their sequence
+ * number changed since the last render pass. Frames decoded smaller than the
+ * video are uploaded into the corner of the texture, whose coordinates on
+ * unit 0 are scaled accordingly, while the overlay keeps the full size.
  *
  * @author Tobias Zimmermann <Tobias.Zimmermann@dfki.de>
  */
-public class VideoQuad extends Quad {
+public class VideoQuad extends Quad implements IFrameConsumer {
 
     /**
      * serialVersionUID
      */
     private static final long serialVersionUID = 5408416424492049111L;
     /**
-     * Drawing will be done with Java2D.
+     * Overlay drawing will be done with Java2D.
      */
     protected ImageGraphics g2d;
     /**
@@ -67,9 +84,58 @@ public class VideoQuad extends Quad {
      */
     private AbstractVideoHandler video;
     /**
-     * {@link Texture2D} with the rendered video and the shapes.
+     * {@link Texture2D} with the rendered video.
      */
     private Texture2D texture;
+    /**
+     * {@link Texture2D} with the drawings, shapes and text overlays.
+     */
+    private Texture2D overlay;
+    /**
+     * True if the overlay image contains anything which has to be cleared.
+     */
+    private boolean overlayDrawn;
+    /**
+     * Sequence number of the uploaded frame.
+     */
+    private long frameSequence = -1;
+    /**
+     * Sequence number of the uploaded overlay.
+     */
+    private long overlaySequence = -1;
+    /**
+     * Amount of performed frame uploads.
+     */
+    private long frameUploads;
+    /**
+     * Amount of render passes without new frame.
+     */
+    private long frameUploadsSkipped;
+    /**
+     * Amount of performed overlay uploads.
+     */
+    private long overlayUploads;
+    /**
+     * Amount of render passes without overlay change.
+     */
+    private long overlayUploadsSkipped;
+    /**
+     * Buffer to query the bound texture.
+     */
+    private final IntBuffer idBuff = BufferUtils.createIntBuffer(16);
+    /**
+     * Texture coordinates of unit 0 for frames with the size of the texture
+     */
+    private final float[] frameCoords;
+    /**
+     * Size of the last uploaded frame
+     */
+    private int frameWidth;
+    private int frameHeight;
+    /**
+     * World scale reported last to the {@link AbstractVideoHandler}
+     */
+    private float displayScale = -1;
 
     /*
      * (non-Javadoc)
@@ -84,24 +150,40 @@ public class VideoQuad extends Quad {
         TextureState ts = DisplaySystem.getDisplaySystem().getRenderer().createTextureState();
         ts.setCorrectionType(TextureState.CorrectionType.Perspective);
         ts.setEnabled(true);
+        int width = Math.max(1, (int) getWidth());
+        int height = Math.max(1, (int) getHeight());
+        if (getWidth() < 1 || getHeight() < 1) {
+            log.warn("width < 1");
+        }
+        // RGB8 keeps the texture opaque regardless of the alpha vlcj writes
         texture = new Texture2D();
         texture.setMagnificationFilter(Texture.MagnificationFilter.Bilinear);
         texture.setMinificationFilter(Texture.MinificationFilter.BilinearNoMipMaps);
         texture.setWrap(Texture.WrapMode.Repeat);
-        // ---- Drawable image initialization ----
-        if (getWidth() < 1 || getHeight() < 1) {
-            log.warn("width < 1");
-            g2d = ImageGraphics.createInstance(1, 1, 0);
-        } else {
-            g2d = ImageGraphics.createInstance((int) getWidth(), (int) getHeight(), 0);
-        }
+        texture.setImage(new Image(Image.Format.RGB8, width, height,
+                BufferUtils.createByteBuffer(width * height * 3)));
+        // ---- Drawable overlay initialization ----
+        overlay = new Texture2D();
+        overlay.setMagnificationFilter(Texture.MagnificationFilter.Bilinear);
+        overlay.setMinificationFilter(Texture.MinificationFilter.BilinearNoMipMaps);
+        overlay.setWrap(Texture.WrapMode.EdgeClamp);
+        overlay.setApply(Texture.ApplyMode.Decal);
+        g2d = ImageGraphics.createInstance(width, height, 0);
         enableAntiAlias(g2d);
-        texture.setImage(g2d.getImage());
-        ts.setTexture(texture);
+        overlay.setImage(g2d.getImage());
+        ts.setTexture(texture, 0);
+        ts.setTexture(overlay, 1);
+        copyTextureCoordinates(0, 1, 1f);
+        FloatBuffer coords = getTextureCoords(0).coords;
+        frameCoords = new float[coords.limit()];
+        coords.rewind();
+        coords.get(frameCoords);
+        frameWidth = width;
+        frameHeight = height;
         setRenderState(ts);
         updateRenderState();
         Quaternion q = new Quaternion();
-        // Rotation need because of ImageGraphics
+        // Rotation need because the frames are stored top down
         q.fromAngles(0f, (float) Math.toRadians(180),
                 (float) Math.toRadians(180));
         rotatePoints(q);
@@ -124,20 +206,144 @@ public class VideoQuad extends Quad {
         graphics.setRenderingHints(hints);
     }
 
+    /**
+     * Uploads the video frame into {@code texture}.
+     *
+     * Note that this must be called on the OpenGL thread, the previously
+     * bound texture is restored afterwards to keep the jME texture state
+     * record valid.
+     *
+     * @param frame frame pixels in BGRA order
+     * @param width frame width
+     * @param height frame height
+     */
+    @Override
+    public void consume(ByteBuffer frame, int width, int height) {
+        Image image = texture.getImage();
+        if (width > image.getWidth() || height > image.getHeight()) {
+            log.warn("Frame size " + width + "x" + height
+                    + " exceeds texture size.");
+            return;
+        }
+        if (width != frameWidth || height != frameHeight) {
+            scaleFrameCoords(width, height);
+        }
+        idBuff.clear();
+        GL11.glGetInteger(GL11.GL_TEXTURE_BINDING_2D, idBuff);
+        int bound = idBuff.get(0);
+        GL11.glBindTexture(GL11.GL_TEXTURE_2D, texture.getTextureId());
+        GL11.glTexSubImage2D(GL11.GL_TEXTURE_2D, 0, 0, 0, width, height,
+                GL12.GL_BGRA, GL11.GL_UNSIGNED_BYTE, frame);
+        GL11.glBindTexture(GL11.GL_TEXTURE_2D, bound);
+    }
+
+    /**
+     * Clears the overlay image.
+     */
+    private void clearOverlay() {
+        Composite composite = g2d.getComposite();
+        g2d.setComposite(AlphaComposite.Clear);
+        g2d.fillRect(0, 0, g2d.getImage().getWidth(), g2d.getImage().getHeight());
+        g2d.setComposite(composite);
+    }
+
+    /**
+     * Scales the texture coordinates of unit 0 to the part of the texture
+     * which is covered by frames of the given size. The last row and column
+     * are inset by half a texel, so bilinear filtering does not sample
+     * outside of the frame.
+     *
+     * @param width frame width
+     * @param height frame height
+     */
+    private void scaleFrameCoords(int width, int height) {
+        Image image = texture.getImage();
+        float scaleX = width == image.getWidth() ? 1.f
+                : (width - 0.5f) / image.getWidth();
+        float scaleY = height == image.getHeight() ? 1.f
+                : (height - 0.5f) / image.getHeight();
+        FloatBuffer coords = getTextureCoords(0).coords;
+        coords.clear();
+        for (int i = 0; i + 1 < frameCoords.length; i += 2) {
+            coords.put(frameCoords[i] * scaleX);
+            coords.put(frameCoords[i + 1] * scaleY);
+        }
+        coords.rewind();
+        frameWidth = width;
+        frameHeight = height;
+    }
+
     @Override
     public void draw(Renderer r) {
         if (g2d == null) {
             log.error("Draw failed");
             return;
         }
-        BufferedImage image = video.getVideoImage();
-        if (image != null) {
-            g2d.drawImage(image, null, 0, 0);
+        float scale = getWorldScale().x;
+        if (scale != displayScale) {
+            displayScale = scale;
+            video.setDisplayScale(scale);
         }
-        g2d.update();
         if (texture.getTextureId() > 0) {
-            g2d.update(texture, false);
+            if (video.getFrameSequence() != frameSequence) {
+                frameSequence = video.readFrame(this);
+                frameUploads++;
+            } else {
+                frameUploadsSkipped++;
+            }
+        }
+        if (overlay.getTextureId() > 0) {
+            long sequence = video.getOverlaySequence();
+            if (sequence != overlaySequence) {
+                if (overlayDrawn) {
+                    clearOverlay();
+                }
+                overlayDrawn = video.drawOverlay(g2d);
+                g2d.update(overlay, false);
+                overlaySequence = sequence;
+                overlayUploads++;
+            } else {
+                overlayUploadsSkipped++;
+            }
         }
         super.draw(r);
     }
+
+    /**
+     * Returns the amount of performed video frame uploads.
+     *
+     * @return amount of frame uploads
+     */
+    public long getFrameUploads() {
+        return frameUploads;
+    }
+
+    /**
+     * Returns the amount of render passes which skipped the video frame
+     * upload because no new frame was rendered.
+     *
+     * @return amount of skipped frame uploads
+     */
+    public long getFrameUploadsSkipped() {
+        return frameUploadsSkipped;
+    }
+
+    /**
+     * Returns the amount of performed overlay uploads.
+     *
+     * @return amount of overlay uploads
+     */
+    public long getOverlayUploads() {
+        return overlayUploads;
+    }
+
+    /**
+     * Returns the amount of render passes which skipped the overlay upload
+     * because the overlays did not change.
+     *
+     * @return amount of skipped overlay uploads
+     */
+    public long getOverlayUploadsSkipped() {
+        return overlayUploadsSkipped;
+    }
 }
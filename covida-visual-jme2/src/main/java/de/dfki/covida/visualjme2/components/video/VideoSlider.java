@@ -108,25 +108,38 @@ public class VideoSlider extends JMEComponent implements ISlider {
 
     @Override
     public void touchBirthAction(int id, int x, int y) {
-        touchAction(x, y);
+        touchAction(x, y, false);
     }
 
     @Override
     public void touchAliveAction(int id, int x, int y) {
-        touchAction(x, y);
+        touchAction(x, y, false);
     }
 
     @Override
     public void touchDeadAction(int id, int x, int y) {
-        touchAction(x, y);
+        touchAction(x, y, true);
     }
 
-    private void touchAction(int x, int y) {
+    /**
+     * Sets the video time position to the touched slider position. While
+     * dragging the position snaps to keyframes, the release seeks to the
+     * exact position.
+     *
+     * @param x x position of the touch
+     * @param y y position of the touch
+     * @param release true if the touch was released
+     */
+    private void touchAction(int x, int y, boolean release) {
         if (node.hasChild(sliderNode) && inArea(x, y)) {
             Vector3f result = getLocal(x, y);
             float percentage = (result.x + getWidth() / 2.0f) / getWidth();
             if (percentage <= 1.0f) {
-                video.setTimePosition(percentage);
+                if (release) {
+                    video.setTimePosition(percentage);
+                } else {
+                    video.scrubTimePosition(percentage);
+                }
                 video.enableTimeCodeOverlay(1000);
             }
         }
@@ -0,0 +1,200 @@
+/*
+ * VideoVisibilityManager.java
+ *
+ * Copyright (c) 2012, Tobias Zimmermann All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of
+ * conditions and the following disclaimer. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors may be used to endorse or
+ * promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package de.dfki.covida.visualjme2.components.video;
+
+import com.jme.math.Vector3f;
+import com.jme.system.DisplaySystem;
+import de.dfki.covida.covidacore.components.IVideoComponent;
+import de.dfki.covida.covidacore.tw.TouchAndWriteComponentHandler;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Determines each frame which {@link VideoComponent}s are hidden and
+ * suspends their decoding.
+ *
+ * A video is hidden if none of its {@link #SAMPLES} x {@link #SAMPLES}
+ * sample points is both on screen and not covered by a video in front of it,
+ * i.e. with a lower z-order. Videos become hidden only after
+ * {@link #HIDE_DELAY} ms, so dragging a video across another does not
+ * suspend it, but visible again immediately.
+ *
+ * Note that {@link #update()} must be called on the OpenGL thread after the
+ * geometric state was updated.
+ *
+ * @author Tobias Zimmermann <Tobias.Zimmermann@dfki.de>
+ */
+public class VideoVisibilityManager {
+
+    /**
+     * Amount of sample points per video side
+     */
+    private static final int SAMPLES = 5;
+    /**
+     * Time in ms a video must be hidden before its decoding is suspended
+     */
+    private static final long HIDE_DELAY = 500;
+    /**
+     * Instance of {@link VideoVisibilityManager}
+     */
+    private static VideoVisibilityManager instance;
+    /**
+     * System time in ms since when a video is hidden
+     */
+    private final Map<VideoComponent, Long> hiddenSince;
+    /**
+     * Videos whose decoding is suspended
+     */
+    private final Map<VideoComponent, Boolean> suspended;
+    /**
+     * Open videos sorted by z-order, front first
+     */
+    private final List<VideoComponent> videos;
+    private final Vector3f sample = new Vector3f();
+    private final Vector3f world = new Vector3f();
+    private final Vector3f local = new Vector3f();
+
+    /**
+     * Private constructor of {@link VideoVisibilityManager}
+     */
+    private VideoVisibilityManager() {
+        hiddenSince = new HashMap<>();
+        suspended = new HashMap<>();
+        videos = new ArrayList<>();
+    }
+
+    /**
+     * Returns the instance of {@link VideoVisibilityManager}
+     *
+     * @return {@link VideoVisibilityManager}
+     */
+    public static synchronized VideoVisibilityManager getInstance() {
+        if (instance == null) {
+            instance = new VideoVisibilityManager();
+        }
+        return instance;
+    }
+
+    /**
+     * Updates the visibility of all open {@link VideoComponent}s.
+     */
+    public void update() {
+        videos.clear();
+        for (IVideoComponent component
+                : TouchAndWriteComponentHandler.getInstance().getVideos()) {
+            if (component instanceof VideoComponent) {
+                VideoComponent video = (VideoComponent) component;
+                int i = 0;
+                while (i < videos.size()
+                        && videos.get(i).getZOrder() <= video.getZOrder()) {
+                    i++;
+                }
+                videos.add(i, video);
+            }
+        }
+        hiddenSince.keySet().retainAll(videos);
+        suspended.keySet().retainAll(videos);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < videos.size(); i++) {
+            VideoComponent video = videos.get(i);
+            if (isVisible(video, i)) {
+                hiddenSince.remove(video);
+                if (suspended.remove(video) != null) {
+                    video.setHidden(false);
+                }
+                continue;
+            }
+            Long since = hiddenSince.get(video);
+            if (since == null) {
+                hiddenSince.put(video, now);
+            } else if (now - since >= HIDE_DELAY
+                    && !suspended.containsKey(video)) {
+                suspended.put(video, Boolean.TRUE);
+                video.setHidden(true);
+            }
+        }
+    }
+
+    /**
+     * Returns true if any sample point of the video is on screen and not
+     * covered by a video in front of it.
+     *
+     * @param video {@link VideoComponent}
+     * @param index index of the video in {@code videos}
+     * @return true if visible
+     */
+    private boolean isVisible(VideoComponent video, int index) {
+        if (video.node.getParent() == null) {
+            return false;
+        }
+        int width = DisplaySystem.getDisplaySystem().getWidth();
+        int height = DisplaySystem.getDisplaySystem().getHeight();
+        float w = video.getWidth();
+        float h = video.getHeight();
+        for (int y = 0; y < SAMPLES; y++) {
+            for (int x = 0; x < SAMPLES; x++) {
+                sample.set(w * ((x + 0.5f) / SAMPLES - 0.5f),
+                        h * ((y + 0.5f) / SAMPLES - 0.5f), 0);
+                video.node.localToWorld(sample, world);
+                if (world.x < 0 || world.y < 0 || world.x >= width
+                        || world.y >= height) {
+                    continue;
+                }
+                if (!isCovered(world, index)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if the world point is covered by a video in front of the
+     * video at {@code index}.
+     *
+     * @param point point in world coordinates
+     * @param index index of the video in {@code videos}
+     * @return true if covered
+     */
+    private boolean isCovered(Vector3f point, int index) {
+        for (int i = 0; i < index; i++) {
+            VideoComponent front = videos.get(i);
+            if (front.node.getParent() == null) {
+                continue;
+            }
+            front.node.worldToLocal(point, local);
+            if (Math.abs(local.x) < front.getWidth() / 2.f
+                    && Math.abs(local.y) < front.getHeight() / 2.f) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
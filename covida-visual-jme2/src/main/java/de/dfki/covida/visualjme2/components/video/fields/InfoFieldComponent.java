@@ -40,6 +40,7 @@ import com.jme.util.GameTaskQueueManager;
 import com.jme.util.TextureManager;
 import de.dfki.covida.covidacore.data.Annotation;
 import de.dfki.covida.covidacore.data.AnnotationStorage;
+import de.dfki.covida.covidacore.data.PersistenceService;
 import de.dfki.covida.covidacore.data.StrokeList;
 import de.dfki.covida.covidacore.utils.ActionName;
 import de.dfki.covida.covidacore.utils.VideoUtils;
@@ -287,9 +288,8 @@ public class InfoFieldComponent extends JMEComponent {
         annotation.date = Calendar.getInstance().getTime();
         AnnotationStorage.getInstance().getAnnotationData(video).save(annotation);
         clearDescriptionText();
-        AnnotationStorage.getInstance().getAnnotationData(video).write();
-        AnnotationStorage.getInstance().getAnnotationData(video).export();
-        AnnotationStorage.getInstance().generateRDF();
+        PersistenceService.getInstance().submit(
+                AnnotationStorage.getInstance().getAnnotationData(video));
     }
 
     /**
@@ -550,6 +550,8 @@ public class InfoFieldComponent extends JMEComponent {
         st = CloseAnimation.getController(node, ANIMATION_DURATION, CloseAnimationType.INFO_FIELD);
         GameTaskQueueManager.getManager().update(new AddControllerCallable(node, st));
         AnnotationStorage.getInstance().getAnnotationData(video).remove(annotation);
+        PersistenceService.getInstance().submit(
+                AnnotationStorage.getInstance().getAnnotationData(video));
         close();
     }
 
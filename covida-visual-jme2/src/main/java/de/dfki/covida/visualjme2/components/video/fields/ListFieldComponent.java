@@ -243,6 +243,7 @@ public class ListFieldComponent extends JMEComponent {
     public void drawEntries() {
         if (isOpen()) {
             data = AnnotationStorage.getInstance().getAnnotationData(video);
+            video.prefetchAnnotationFrames();
             int k = data.getAnnotations().size();
             while(getTextY(k+1)< - getHeight()/2){
                 k--;